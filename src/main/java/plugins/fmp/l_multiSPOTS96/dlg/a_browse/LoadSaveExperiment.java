@@ -30,9 +30,11 @@ import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import plugins.fmp.l_multiSPOTS96.L_MultiSPOTS96;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
 import plugins.fmp.l_multiSPOTS96.experiment.ExperimentDirectories;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentPinScope;
 import plugins.fmp.l_multiSPOTS96.experiment.LazyExperiment;
 import plugins.fmp.l_multiSPOTS96.experiment.LazyExperiment.ExperimentMetadata;
 import plugins.fmp.l_multiSPOTS96.tools.DescriptorsIO;
+import plugins.fmp.l_multiSPOTS96.tools.ExperimentCatalog;
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.SequenceNameListRenderer;
 import icy.sequence.SequenceListener;
 
@@ -219,6 +221,12 @@ public class LoadSaveExperiment extends JPanel implements PropertyChangeListener
 		final String subDir = parent0.expListComboLazy.stringExpBinSubDirectory;
 		final int totalFiles = selectedNames.size();
 
+		// experiments already catalogued under the root searched are not scanned
+		// again
+		ExperimentCatalog searchCatalog = dialogSelect != null ? dialogSelect.getCatalog() : null;
+		final ExperimentCatalog catalog = searchCatalog != null ? searchCatalog : ExperimentCatalog.open(null);
+		parent0.descriptorIndex.setCatalog(catalog);
+
 		try {
 			// Process files in batches for metadata only
 			for (int i = 0; i < totalFiles; i += METADATA_BATCH_SIZE) {
@@ -236,7 +244,7 @@ public class LoadSaveExperiment extends JPanel implements PropertyChangeListener
 				// Process batch for metadata only
 				for (int j = i; j < endIndex; j++) {
 					final String fileName = selectedNames.get(j);
-					processSingleFileMetadataOnly(fileName, subDir);
+					boolean catalogued = processSingleFileMetadataOnly(fileName, subDir, catalog);
 					processingCount.incrementAndGet();
 
 					// Update progress periodically
@@ -247,6 +255,9 @@ public class LoadSaveExperiment extends JPanel implements PropertyChangeListener
 						});
 					}
 
+					if (catalogued)
+						continue;
+
 					// Minimal delay to prevent UI freezing
 					try {
 						Thread.sleep(1); // Very small delay
@@ -257,6 +268,8 @@ public class LoadSaveExperiment extends JPanel implements PropertyChangeListener
 				}
 			}
 
+			catalog.save();
+
 			// Add metadata to UI
 			SwingUtilities.invokeLater(() -> {
 				addMetadataToUI();
@@ -273,7 +286,18 @@ public class LoadSaveExperiment extends JPanel implements PropertyChangeListener
 		}
 	}
 
-	private void processSingleFileMetadataOnly(String fileName, String subDir) {
+	/**
+	 * @return true if the experiment was taken from the catalog, without any
+	 *         file system scan
+	 */
+	private boolean processSingleFileMetadataOnly(String fileName, String subDir, ExperimentCatalog catalog) {
+		ExperimentCatalog.Entry entry = catalog.getValidEntry(fileName);
+		if (entry != null) {
+			experimentMetadataList
+					.add(new ExperimentMetadata(entry.getCameraDirectory(), entry.getResultsDirectory(), subDir));
+			return true;
+		}
+
 		try {
 			// Create lightweight ExperimentDirectories for metadata scanning only
 			ExperimentDirectories expDirectories = new ExperimentDirectories();
@@ -284,18 +308,27 @@ public class LoadSaveExperiment extends JPanel implements PropertyChangeListener
 				String resultsDirectory = expDirectories.getResultsDirectory();
 				ExperimentMetadata metadata = new ExperimentMetadata(camDataImagesDirectory, resultsDirectory, subDir);
 				experimentMetadataList.add(metadata);
+				catalog.updateExperiment(fileName, camDataImagesDirectory, resultsDirectory);
 			}
 
 		} catch (Exception e) {
 			LOGGER.warning("Failed to process metadata for file " + fileName + ": " + e.getMessage());
 		}
+		return false;
 	}
 
 	private void addMetadataToUI() {
 		try {
+			ExperimentCatalog catalog = parent0.descriptorIndex.getCatalog();
 			List<LazyExperiment> lazyExperiments = new ArrayList<>();
 			for (ExperimentMetadata metadata : experimentMetadataList) {
 				LazyExperiment lazyExp = new LazyExperiment(metadata);
+				// properties from the catalog: combos are filled without parsing XML
+				ExperimentCatalog.Entry entry = catalog != null
+						? catalog.getEntryFromResultsDirectory(metadata.getResultsDirectory())
+						: null;
+				if (entry != null)
+					lazyExp.setCatalogEntry(entry);
 				lazyExperiments.add(lazyExp);
 			}
 
@@ -336,7 +369,9 @@ public class LoadSaveExperiment extends JPanel implements PropertyChangeListener
 	public boolean openSelectedExperiment(Experiment exp) {
 		ProgressFrame progressFrame = new ProgressFrame("Load Experiment Data");
 
-		try {
+		// not evicted by other loads until its viewer is open
+		try (ExperimentPinScope pins = new ExperimentPinScope()) {
+			pins.pin(exp);
 			// If it's a LazyExperiment, load the data first
 			if (exp instanceof LazyExperiment) {
 				progressFrame.setMessage("Loading experiment data...");
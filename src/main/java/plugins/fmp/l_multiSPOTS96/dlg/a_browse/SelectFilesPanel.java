@@ -5,15 +5,11 @@ import java.awt.FlowLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import javax.swing.ButtonGroup;
 import javax.swing.DefaultListModel;
@@ -33,6 +29,7 @@ import icy.preferences.XMLPreferences;
 import plugins.fmp.l_multiSPOTS96.L_MultiSPOTS96;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
 import plugins.fmp.l_multiSPOTS96.experiment.ExperimentDirectories;
+import plugins.fmp.l_multiSPOTS96.tools.ExperimentCatalog;
 
 public class SelectFilesPanel extends JPanel {
 	/**
@@ -51,6 +48,9 @@ public class SelectFilesPanel extends JPanel {
 	private JList<String> directoriesJList = new JList<String>(new DefaultListModel<String>());
 	private L_MultiSPOTS96 parent0 = null;
 	List<String> selectedNames = null;
+	// catalog of the root directory searched last: lists only the directories
+	// changed since the previous search
+	private ExperimentCatalog catalog = null;
 
 	public void initialize(L_MultiSPOTS96 parent0, List<String> stringList) {
 		this.parent0 = parent0;
@@ -101,6 +101,14 @@ public class SelectFilesPanel extends JPanel {
 		dialogFrame.close();
 	}
 
+	/**
+	 * Returns the catalog of the root directory searched last, or null if no
+	 * search was done.
+	 */
+	ExperimentCatalog getCatalog() {
+		return catalog;
+	}
+
 	void addActionListeners() {
 		findButton.addActionListener(new ActionListener() {
 			@Override
@@ -171,16 +179,7 @@ public class SelectFilesPanel extends JPanel {
 	}
 
 	private boolean getListofFilesMatchingFileNamePattern(String pattern, File directory) {
-		final String lastUsedPathString = directory.getAbsolutePath();
-		Path lastPath = Paths.get(lastUsedPathString);
-
-		List<Path> result = null;
-		try (Stream<Path> walk = Files.walk(lastPath)) {
-			result = walk.filter(Files::isRegularFile) // is a file
-					.filter(p -> p.getFileName().toString().contains(pattern)).collect(Collectors.toList());
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		List<Path> result = catalog.findFiles(directory.getAbsolutePath(), pattern);
 
 		boolean flag = false;
 		if (result != null && result.size() > 0) {
@@ -192,16 +191,7 @@ public class SelectFilesPanel extends JPanel {
 	}
 
 	private boolean getListofFilesMatchingDirectoryNamePattern(String pattern, File directory) {
-		final String lastUsedPathString = directory.getAbsolutePath();
-		Path lastPath = Paths.get(lastUsedPathString);
-
-		List<Path> result = null;
-		try (Stream<Path> walk = Files.walk(lastPath)) {
-			result = walk.filter(Files::isDirectory) // is a directory
-					.filter(p -> p.getFileName().toString().contains(pattern)).collect(Collectors.toList());
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		List<Path> result = catalog.findDirectories(directory.getAbsolutePath(), pattern);
 
 		if (result != null) {
 			for (Path path : result) {
@@ -234,12 +224,18 @@ public class SelectFilesPanel extends JPanel {
 		final String lastUsedPathString = dir.getAbsolutePath();
 		setPreferencesPath(lastUsedPathString);
 
+		// one catalog per root: reused when the same root is searched again
+		if (catalog == null || !Paths.get(lastUsedPathString).toAbsolutePath().normalize().toString()
+				.equals(catalog.getRootDirectory()))
+			catalog = ExperimentCatalog.open(lastUsedPathString);
+
 		if (isFileName)
 			getListofFilesMatchingFileNamePattern(pattern, dir);
 		else {
 			if (!getListofFilesMatchingDirectoryNamePattern(pattern, dir) && (pattern == "cam"))
 				getListofFilesMatchingDirectoryNamePattern("grab", dir);
 		}
+		catalog.save();
 	}
 
 	private void addNameToListIfNew(String fileName) {
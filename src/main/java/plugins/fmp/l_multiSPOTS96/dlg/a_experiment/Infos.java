@@ -17,6 +17,7 @@ import icy.gui.viewer.Viewer;
 import icy.sequence.Sequence;
 import plugins.fmp.l_multiSPOTS96.L_MultiSPOTS96;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentPinScope;
 import plugins.fmp.l_multiSPOTS96.experiment.ExperimentProperties;
 import plugins.fmp.l_multiSPOTS96.tools.DialogTools;
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.JComboBoxModelSorted;
@@ -231,9 +232,11 @@ public class Infos extends JPanel {
 		if (iprevious < 0)
 			return;
 
-		Experiment exp0 = (Experiment) parent0.expListComboLazy.getItemAt(iprevious);
-		Experiment exp = (Experiment) parent0.expListComboLazy.getItemAt(iprevious + 1);
-		transferPreviousExperimentInfosToDialog(exp0, exp);
+		try (ExperimentPinScope pins = new ExperimentPinScope()) {
+			Experiment exp0 = parent0.expListComboLazy.getItemAt(iprevious, pins);
+			Experiment exp = parent0.expListComboLazy.getItemAt(iprevious + 1, pins);
+			transferPreviousExperimentInfosToDialog(exp0, exp);
+		}
 	}
 
 	void zoomToUpperCorner(Experiment exp) {
@@ -110,8 +110,10 @@ public class AxisOptions extends JPanel {
 
 		for (int column = 0; column < ncolumns; column++) {
 			for (int row = 0; row < nrows; row++) {
+				if (chartCageArrayFrame.chartPanelArray[row][column] == null)
+					continue;
 				ChartPanel chartPanel = chartCageArrayFrame.chartPanelArray[row][column].getChartPanel();
-				if (chartPanel == null)
+				if (chartPanel == null || chartPanel.getChart() == null)
 					continue;
 				XYPlot plot = (XYPlot) chartPanel.getChart().getPlot();
 				if (plot == null)
@@ -144,8 +146,10 @@ public class AxisOptions extends JPanel {
 		double lower = (double) lowerXSpinner.getValue();
 		for (int column = 0; column < ncolumns; column++) {
 			for (int row = 0; row < nrows; row++) {
+				if (chartCageArrayFrame.chartPanelArray[row][column] == null)
+					continue;
 				ChartPanel chartPanel = chartCageArrayFrame.chartPanelArray[row][column].getChartPanel();
-				if (chartPanel == null)
+				if (chartPanel == null || chartPanel.getChart() == null)
 					continue;
 				XYPlot xyPlot = (XYPlot) chartPanel.getChart().getPlot();
 				NumberAxis xAxis = (NumberAxis) xyPlot.getDomainAxis();
@@ -163,8 +167,10 @@ public class AxisOptions extends JPanel {
 		double lower = (double) lowerYSpinner.getValue();
 		for (int column = 0; column < ncolumns; column++) {
 			for (int row = 0; row < nrows; row++) {
+				if (chartCageArrayFrame.chartPanelArray[row][column] == null)
+					continue;
 				ChartPanel chartPanel = chartCageArrayFrame.chartPanelArray[row][column].getChartPanel();
-				if (chartPanel == null)
+				if (chartPanel == null || chartPanel.getChart() == null)
 					continue;
 				XYPlot xyPlot = (XYPlot) chartPanel.getChart().getPlot();
 				NumberAxis yAxis = (NumberAxis) xyPlot.getRangeAxis();
@@ -155,9 +155,6 @@ public class Charts extends JPanel implements SequenceListener {
 
 	private ChartCageArrayFrame plotSpotMeasuresToChart(Experiment exp, EnumXLSExport exportType,
 			ChartCageArrayFrame iChart) {
-		if (iChart != null)
-			iChart.getMainChartFrame().dispose();
-
 		int first = 0;
 		int last = exp.cagesArray.cagesList.size() - 1;
 		if (!displayAllButton.isSelected()) {
@@ -176,6 +173,15 @@ public class Charts extends JPanel implements SequenceListener {
 				.withRelativeToT0(relativeToCheckbox.isSelected()).withExportType(exportType).withCageRange(first, last)
 				.build();
 
+		if (isDisplayingSameCharts(iChart, exp, options)) {
+			iChart.refreshData(exp);
+			return iChart;
+		}
+		if (iChart != null) {
+			iChart.cancelBuild();
+			iChart.getMainChartFrame().dispose();
+		}
+
 		iChart = new ChartCageArrayFrame();
 		iChart.createMainChartPanel("Spots measures", exp, options, parent0);
 		iChart.setChartSpotUpperLeftLocation(getInitialUpperLeftPosition(exp));
@@ -185,9 +191,23 @@ public class Charts extends JPanel implements SequenceListener {
 		return iChart;
 	}
 
+	private boolean isDisplayingSameCharts(ChartCageArrayFrame iChart, Experiment exp, XLSExportOptions options) {
+		if (iChart == null || iChart.getExperiment() != exp || !iChart.getMainChartFrame().isVisible())
+			return false;
+		XLSExportOptions displayed = iChart.getXlsExportOptions();
+		return displayed != null && displayed.exportType == options.exportType
+				&& displayed.relativeToT0 == options.relativeToT0
+				&& displayed.relativeToMedianT0 == options.relativeToMedianT0
+				&& displayed.medianT0FromNPoints == options.medianT0FromNPoints
+				&& displayed.cageIndexFirst == options.cageIndexFirst
+				&& displayed.cageIndexLast == options.cageIndexLast;
+	}
+
 	public void closeAllCharts() {
-		if (chartCageArrayFrame != null)
+		if (chartCageArrayFrame != null) {
+			chartCageArrayFrame.cancelBuild();
 			chartCageArrayFrame.getMainChartFrame().dispose();
+		}
 		chartCageArrayFrame = null;
 	}
 
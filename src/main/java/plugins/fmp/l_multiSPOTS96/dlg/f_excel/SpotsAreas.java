@@ -7,8 +7,12 @@ import java.awt.event.ActionListener;
 
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumBinStatistic;
+
 public class SpotsAreas extends JPanel {
 	/**
 	 * 
@@ -17,11 +21,17 @@ public class SpotsAreas extends JPanel {
 
 	JButton exportToXLSButton2 = new JButton("save XLS");
 	JButton exportQToXLSButton = new JButton("save XLS as Query");
+	JButton exportTidyButton = new JButton("save CSV");
+	JButton exportSummaryButton = new JButton("save summary");
 
-	JCheckBox areaCheckBox = new JCheckBox("area", false);
-	JCheckBox nPixelsCheckBox = new JCheckBox("n pixels", false);
+	JCheckBox areaCheckBox = new JCheckBox("area", true);
+	JCheckBox nPixelsCheckBox = new JCheckBox("fly present", true);
 	JCheckBox t0CheckBox = new JCheckBox("(max-t)/max", true);
 	JCheckBox discardNoFlyCageCheckBox = new JCheckBox("discard cages with no fly", true);
+	JComboBox<EnumBinStatistic> binStatisticCombo = new JComboBox<EnumBinStatistic>(new EnumBinStatistic[] {
+			EnumBinStatistic.SAMPLE, EnumBinStatistic.MEAN, EnumBinStatistic.MIN, EnumBinStatistic.MAX });
+	JCheckBox gzipCheckBox = new JCheckBox("gzip", false);
+	JCheckBox splitCheckBox = new JCheckBox("1 file per experiment", false);
 
 	void init(GridLayout capLayout) {
 		setLayout(capLayout);
@@ -36,6 +46,11 @@ public class SpotsAreas extends JPanel {
 		add(panel0);
 
 		JPanel panel1 = new JPanel(flowLayout0);
+		panel1.add(new JLabel("value of each bin:"));
+		panel1.add(binStatisticCombo);
+		panel1.add(new JLabel(" CSV:"));
+		panel1.add(gzipCheckBox);
+		panel1.add(splitCheckBox);
 		add(panel1);
 
 		FlowLayout flowLayout2 = new FlowLayout(FlowLayout.RIGHT);
@@ -43,11 +58,10 @@ public class SpotsAreas extends JPanel {
 		JPanel panel2 = new JPanel(flowLayout2);
 		panel2.add(exportToXLSButton2);
 		panel2.add(exportQToXLSButton);
+		panel2.add(exportTidyButton);
+		panel2.add(exportSummaryButton);
 		add(panel2);
 
-		areaCheckBox.setEnabled(false);
-		nPixelsCheckBox.setEnabled(false);
-
 		defineActionListeners();
 	}
 
@@ -65,6 +79,20 @@ public class SpotsAreas extends JPanel {
 				firePropertyChange("EXPORT_SPOTSMEASURES_AS_Q", false, true);
 			}
 		});
+
+		exportTidyButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				firePropertyChange("EXPORT_SPOTSMEASURES_TIDY", false, true);
+			}
+		});
+
+		exportSummaryButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(final ActionEvent e) {
+				firePropertyChange("EXPORT_SPOTSMEASURES_SUMMARY", false, true);
+			}
+		});
 	}
 
 }
@@ -18,6 +18,9 @@ import plugins.fmp.l_multiSPOTS96.L_MultiSPOTS96;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.Dialog;
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.exceptions.FileDialogException;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.CSVExportSummary;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.CSVExportTidy;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumBinStatistic;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.XLSExportMeasuresCagesAsQuery;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.XLSExportMeasuresFromSpot;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.XLSExportOptions;
@@ -116,16 +119,60 @@ public class _DlgExcel_ extends JPanel implements PropertyChangeListener {
 					}
 				}
 			});
+
+		} else if (evt.getPropertyName().equals("EXPORT_SPOTSMEASURES_TIDY")) {
+			String file = defineFileName(exp, "_spotsareas.csv", "csv");
+			if (file == null)
+				return;
+			updateExperrimentsParameters(exp);
+			XLSExportOptions options = getSpotsOptions();
+			boolean compressed = spotsAreas.gzipCheckBox.isSelected();
+			boolean splitByExperiment = spotsAreas.splitCheckBox.isSelected();
+			ThreadUtil.bgRun(new Runnable() {
+				@Override
+				public void run() {
+					CSVExportTidy csvExport = new CSVExportTidy();
+					csvExport.setCompressed(compressed);
+					csvExport.setSplitByExperiment(splitByExperiment);
+					try {
+						csvExport.exportToFile(file, options);
+					} catch (ExcelExportException e) {
+						e.printStackTrace();
+					}
+				}
+			});
+
+		} else if (evt.getPropertyName().equals("EXPORT_SPOTSMEASURES_SUMMARY")) {
+			String file = defineFileName(exp, "_summary.csv", "csv");
+			if (file == null)
+				return;
+			updateExperrimentsParameters(exp);
+			XLSExportOptions options = getSpotsOptions();
+			ThreadUtil.bgRun(new Runnable() {
+				@Override
+				public void run() {
+					CSVExportSummary csvExport = new CSVExportSummary();
+					try {
+						csvExport.exportToFile(file, options);
+					} catch (ExcelExportException e) {
+						e.printStackTrace();
+					}
+				}
+			});
 		}
 	}
 
 	private String defineXlsFileName(Experiment exp, String pattern) {
+		return defineFileName(exp, pattern, "xlsx");
+	}
+
+	private String defineFileName(Experiment exp, String pattern, String extension) {
 		String filename0 = exp.seqCamData.getFileNameFromImageList(0);
 		Path directory = Paths.get(filename0).getParent();
 		Path subpath = directory.getName(directory.getNameCount() - 1);
 		String tentativeName = subpath.toString() + pattern;
 		try {
-			return Dialog.saveFileAs(tentativeName, directory.getParent().toString(), "xlsx");
+			return Dialog.saveFileAs(tentativeName, directory.getParent().toString(), extension);
 		} catch (FileDialogException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -150,6 +197,7 @@ public class _DlgExcel_ extends JPanel implements PropertyChangeListener {
 		options.sum = spotsAreas.areaCheckBox.isSelected();
 		options.nPixels = spotsAreas.nPixelsCheckBox.isSelected();
 		options.relativeToT0 = spotsAreas.t0CheckBox.isSelected();
+		options.binStatistic = (EnumBinStatistic) spotsAreas.binStatisticCombo.getSelectedItem();
 
 		options.transpose = tabCommonOptions.transposeCheckBox.isSelected();
 		options.buildExcelStepMs = tabCommonOptions.getExcelBuildStep();
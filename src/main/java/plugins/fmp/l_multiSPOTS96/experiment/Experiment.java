@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import icy.image.IcyBufferedImage;
@@ -26,6 +27,7 @@ import plugins.fmp.l_multiSPOTS96.experiment.sequence.SequenceCamData;
 import plugins.fmp.l_multiSPOTS96.experiment.sequence.TimeManager;
 import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
 import plugins.fmp.l_multiSPOTS96.tools.Directories;
+import plugins.fmp.l_multiSPOTS96.tools.XMLStreamUtil;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSColumnHeader;
 
 public class Experiment {
@@ -50,6 +52,8 @@ public class Experiment {
 	public Experiment chainToNextExperiment = null;
 	public long chainImageFirst_ms = 0;
 	public int experimentID = 0;
+	// result of the last read of MS96_experiment.xml
+	protected boolean descriptionLoaded = false;
 
 	private final static String ID_VERSION = "version";
 	private final static String ID_VERSIONNUM = "1.0.0";
@@ -86,7 +90,8 @@ public class Experiment {
 		this.seqCamData = seqCamData;
 		resultsDirectory = this.seqCamData.getImagesDirectory() + File.separator + RESULTS;
 		getFileIntervalsFromSeqCamData();
-		load_MS96_experiment(concatenateExptDirectoryWithSubpathAndName(null, ID_MS96_experiment_XML));
+		descriptionLoaded = load_MS96_experiment(
+				concatenateExptDirectoryWithSubpathAndName(null, ID_MS96_experiment_XML));
 	}
 
 	public Experiment(ExperimentDirectories eADF) {
@@ -94,7 +99,7 @@ public class Experiment {
 		resultsDirectory = eADF.getResultsDirectory();
 		seqCamData = SequenceCamData.builder().withStatus(EnumStatus.FILESTACK).build();
 		String fileName = concatenateExptDirectoryWithSubpathAndName(null, ID_MS96_experiment_XML);
-		load_MS96_experiment(fileName);
+		descriptionLoaded = load_MS96_experiment(fileName);
 
 		ImageLoader imgLoader = seqCamData.getImageLoader();
 		imgLoader.setImagesDirectory(eADF.getCameraImagesDirectory());
@@ -292,10 +297,38 @@ public class Experiment {
 			resultsDirectory = camDataImagesDirectory + File.separator + RESULTS;
 		}
 		String csFileName = concatenateExptDirectoryWithSubpathAndName(null, ID_MS96_experiment_XML);
-		return load_MS96_experiment(csFileName);
+		descriptionLoaded = load_MS96_experiment(csFileName);
+		return descriptionLoaded;
+	}
+
+	/**
+	 * @return true if the last read of MS96_experiment.xml succeeded
+	 */
+	public boolean isDescriptionLoaded() {
+		return descriptionLoaded;
 	}
 
 	private boolean load_MS96_experiment(String csFileName) {
+		if (!fileExists(csFileName)) {
+			System.err.println("ERROR: Could not load XML document from " + csFileName);
+			return false;
+		}
+		try {
+			// stream the file and only build the MCexperiment node
+			Element node = XMLStreamUtil.readRootChildElement(csFileName, ID_MCEXPERIMENT);
+			if (node != null)
+				return load_MS96_experiment(node, csFileName);
+		} catch (Exception e) {
+			System.err.println("WARNING: streaming XML read failed, using DOM: " + e.getMessage());
+		}
+		return load_MS96_experiment_DOM(csFileName);
+	}
+
+	/**
+	 * Loads the experiment description through a full DOM tree (previous
+	 * implementation, kept as fallback and for comparison).
+	 */
+	public boolean load_MS96_experiment_DOM(String csFileName) {
 		try {
 			final Document doc = XMLUtil.loadDocument(csFileName);
 			if (doc == null) {
@@ -310,7 +343,16 @@ public class Experiment {
 				System.err.println("ERROR: Could not find MCexperiment node in XML");
 				return false;
 			}
+			return load_MS96_experiment(node, csFileName);
+		} catch (Exception e) {
+			System.err.println("ERROR during experiment XML loading: " + e.getMessage());
+			e.printStackTrace();
+			return false;
+		}
+	}
 
+	private boolean load_MS96_experiment(Node node, String csFileName) {
+		try {
 			// Version validation with detailed logging
 			String version = XMLUtil.getElementValue(node, ID_VERSION, ID_VERSIONNUM);
 			// System.out.println("XML Version: " + version);
@@ -374,6 +416,16 @@ public class Experiment {
 	}
 
 	public boolean save_MS96_experiment() {
+		return save_MS96_experiment(false);
+	}
+
+	/**
+	 * Saves the description of the experiment.
+	 * 
+	 * @param onlyIfChanged true to leave MS96_experiment.xml untouched if it
+	 *                      already has this description
+	 */
+	public boolean save_MS96_experiment(boolean onlyIfChanged) {
 		try {
 			final Document doc = XMLUtil.createDocument(true);
 			if (doc == null) {
@@ -424,7 +476,7 @@ public class Experiment {
 			XMLUtil.setElementValue(node, ID_IMAGESDIRECTORY, camDataImagesDirectory);
 
 			String tempname = concatenateExptDirectoryWithSubpathAndName(null, ID_MS96_experiment_XML);
-			boolean success = XMLUtil.saveDocument(doc, tempname);
+			boolean success = XMLStreamUtil.saveDocument(doc, tempname, onlyIfChanged);
 			return success;
 		} catch (Exception e) {
 			System.err.println("ERROR during experiment XML saving: " + e.getMessage());
@@ -457,12 +509,24 @@ public class Experiment {
 
 	public boolean load_MS96_cages() {
 		String fileName = getXML_MS96_cages_Location(cagesArray.ID_MS96_cages_XML);
+		if (cagesArray.xmlReadCagesFromFileStreaming(fileName))
+			return true;
 		return cagesArray.xmlReadCagesFromFileNoQuestion(fileName);
 	}
 
 	public boolean save_MS96_cages() {
+		return save_MS96_cages(false);
+	}
+
+	/**
+	 * Saves the cages and their spots.
+	 * 
+	 * @param onlyIfChanged true to leave MS96_cages.xml untouched if it already
+	 *                      describes these cages
+	 */
+	public boolean save_MS96_cages(boolean onlyIfChanged) {
 		String fileName = getXML_MS96_cages_Location(cagesArray.ID_MS96_cages_XML);
-		return cagesArray.xmlWriteCagesToFileNoQuestion(fileName);
+		return cagesArray.xmlWriteCagesToFileStreaming(fileName, onlyIfChanged);
 	}
 
 	// -------------------------------
@@ -475,6 +539,10 @@ public class Experiment {
 		return cagesArray.save_SpotsMeasures(getResultsDirectory());
 	}
 
+	public boolean compact_MS96_spotsMeasures() {
+		return cagesArray.compact_SpotsMeasures(getResultsDirectory());
+	}
+
 	public boolean load_MS96_fliesPositions() {
 		// TODO write real code
 		return false;
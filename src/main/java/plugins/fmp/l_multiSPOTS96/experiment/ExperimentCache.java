@@ -0,0 +1,283 @@
+package plugins.fmp.l_multiSPOTS96.experiment;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotMeasure;
+
+/**
+ * Keeps the loaded {@link LazyExperiment}s within a memory budget.
+ *
+ * <p>
+ * Each experiment materialised by {@link LazyExperiment#loadIfNeeded()} is
+ * registered with an estimate of its size (images list, cages, spots measures,
+ * fly positions). When the sum of the estimates exceeds the budget, the least
+ * recently used experiments are returned to their lazy state; their modified
+ * data is saved first, and an experiment which cannot be saved is kept.
+ * Experiments that are displayed (open sequence) or pinned are never evicted.
+ * </p>
+ *
+ * <p>
+ * Hits, misses and evictions are counted so that the budget can be tuned.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class ExperimentCache {
+
+	private static final Logger LOGGER = Logger.getLogger(ExperimentCache.class.getName());
+
+	// === CONSTANTS ===
+	public static final double DEFAULT_HEAP_FRACTION = 0.4;
+
+	// rough sizes of the objects that are not arrays
+	private static final long EXPERIMENT_OVERHEAD = 16 * 1024;
+	private static final long CAGE_OVERHEAD = 2 * 1024;
+	private static final long SPOT_OVERHEAD = 2 * 1024;
+	private static final long IMAGE_NAME_OVERHEAD = 48;
+	private static final long FLY_POSITION_SIZE = 96;
+
+	private static final ExperimentCache instance = new ExperimentCache(
+			(long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_FRACTION));
+
+	// === FIELDS ===
+	private long budgetBytes;
+	private long usedBytes = 0;
+	// access order: the first entry is the least recently used
+	private final LinkedHashMap<LazyExperiment, Long> entries = new LinkedHashMap<LazyExperiment, Long>(16, 0.75f,
+			true);
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long flushes = 0;
+
+	public ExperimentCache(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+	}
+
+	public static ExperimentCache getInstance() {
+		return instance;
+	}
+
+	// === CONFIGURATION ===
+
+	public synchronized long getBudgetBytes() {
+		return budgetBytes;
+	}
+
+	/**
+	 * Sets the budget and evicts experiments until it is respected.
+	 */
+	public void setBudgetBytes(long budgetBytes) {
+		List<LazyExperiment> victims;
+		synchronized (this) {
+			this.budgetBytes = Math.max(0, budgetBytes);
+			victims = selectVictims(null);
+		}
+		unload(victims);
+	}
+
+	// === REGISTRATION ===
+
+	/**
+	 * Called when an experiment has just been materialised.
+	 */
+	void recordLoad(LazyExperiment exp) {
+		List<LazyExperiment> victims;
+		synchronized (this) {
+			misses++;
+			put(exp);
+			victims = selectVictims(exp);
+		}
+		unload(victims);
+	}
+
+	/**
+	 * Called when an already loaded experiment is used again.
+	 */
+	void recordAccess(LazyExperiment exp) {
+		List<LazyExperiment> victims = null;
+		synchronized (this) {
+			hits++;
+			if (entries.get(exp) == null) {
+				// eviction was refused (experiment in use): track it again
+				put(exp);
+				victims = selectVictims(exp);
+			}
+		}
+		unload(victims);
+	}
+
+	/**
+	 * Updates the size of an experiment after more of its data was loaded.
+	 */
+	void updateSize(LazyExperiment exp) {
+		List<LazyExperiment> victims;
+		synchronized (this) {
+			if (!entries.containsKey(exp))
+				return;
+			put(exp);
+			victims = selectVictims(exp);
+		}
+		unload(victims);
+	}
+
+	synchronized void remove(LazyExperiment exp) {
+		Long size = entries.remove(exp);
+		if (size != null)
+			usedBytes -= size;
+	}
+
+	/**
+	 * Forgets all the experiments without unloading them (e.g. when the list of
+	 * experiments is closed).
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		usedBytes = 0;
+	}
+
+	private void put(LazyExperiment exp) {
+		long size = estimateSize(exp);
+		Long previous = entries.put(exp, size);
+		usedBytes += size - (previous != null ? previous : 0);
+	}
+
+	// === EVICTION ===
+
+	private List<LazyExperiment> selectVictims(LazyExperiment keep) {
+		List<LazyExperiment> victims = null;
+		Iterator<Map.Entry<LazyExperiment, Long>> iterator = entries.entrySet().iterator();
+		while (usedBytes > budgetBytes && iterator.hasNext()) {
+			Map.Entry<LazyExperiment, Long> entry = iterator.next();
+			LazyExperiment exp = entry.getKey();
+			if (exp == keep || !exp.isEvictable())
+				continue;
+			iterator.remove();
+			usedBytes -= entry.getValue();
+			if (victims == null)
+				victims = new ArrayList<LazyExperiment>();
+			victims.add(exp);
+		}
+		return victims;
+	}
+
+	// unloading saves data: done outside of the cache lock
+	private void unload(List<LazyExperiment> victims) {
+		if (victims == null)
+			return;
+		for (LazyExperiment exp : victims) {
+			boolean dirty = exp.isDirty();
+			if (exp.unload()) {
+				synchronized (this) {
+					evictions++;
+					if (dirty)
+						flushes++;
+				}
+				LOGGER.fine("Evicted experiment " + exp + (dirty ? " (saved)" : ""));
+			}
+		}
+	}
+
+	// === SIZE ESTIMATION ===
+
+	/**
+	 * Estimates the heap used by the data of a loaded experiment.
+	 */
+	public static long estimateSize(Experiment exp) {
+		long size = EXPERIMENT_OVERHEAD;
+		if (exp.seqCamData != null) {
+			List<String> images = exp.seqCamData.getImageLoader().getImagesList();
+			if (images != null) {
+				for (String name : images)
+					size += IMAGE_NAME_OVERHEAD + 2L * name.length();
+			}
+			long[] times = exp.seqCamData.getTimeManager().getCamImagesTime_Ms();
+			if (times != null)
+				size += 8L * times.length;
+		}
+		if (exp.cagesArray != null && exp.cagesArray.cagesList != null) {
+			for (Cage cage : exp.cagesArray.cagesList) {
+				size += CAGE_OVERHEAD;
+				if (cage.flyPositions != null)
+					size += FLY_POSITION_SIZE * cage.flyPositions.flyPositionList.size();
+				if (cage.spotsArray == null || cage.spotsArray.getSpotsList() == null)
+					continue;
+				for (Spot spot : cage.spotsArray.getSpotsList()) {
+					size += SPOT_OVERHEAD;
+					size += estimateSize(spot.getSum());
+					size += estimateSize(spot.getSumClean());
+					size += estimateSize(spot.getFlyPresent());
+				}
+			}
+			size += exp.cagesArray.getSpotsMeasuresStore().getMemorySize();
+		}
+		return size;
+	}
+
+	private static long estimateSize(SpotMeasure measure) {
+		if (measure == null)
+			return 0;
+		long size = 0;
+		if (measure.getValues() != null)
+			size += 8L * measure.getValues().length;
+		if (measure.getIsPresent() != null)
+			size += 4L * measure.getIsPresent().length;
+		// polyline used for display: x and y points, current and previous
+		if (measure.getSpotLevel2D() != null)
+			size += 32L * measure.getCount();
+		return size;
+	}
+
+	// === METRICS ===
+
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	public synchronized int getLoadedCount() {
+		return entries.size();
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	public synchronized long getFlushes() {
+		return flushes;
+	}
+
+	public synchronized double getHitRatio() {
+		long total = hits + misses;
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+		flushes = 0;
+	}
+
+	public synchronized String getStatistics() {
+		return String.format("Experiments: %d loaded, %dMB/%dMB; hits %d, misses %d (%.1f%% hits), evictions %d (%d saved)",
+				entries.size(), usedBytes / 1024 / 1024, budgetBytes / 1024 / 1024, hits, misses,
+				100. * getHitRatio(), evictions, flushes);
+	}
+}
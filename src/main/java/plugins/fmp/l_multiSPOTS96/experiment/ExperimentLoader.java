@@ -0,0 +1,232 @@
+package plugins.fmp.l_multiSPOTS96.experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import icy.gui.frame.progress.CancelableProgressFrame;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+
+/**
+ * Loads a list of experiments on a bounded pool of I/O threads.
+ *
+ * <p>
+ * Two levels of loading are provided:
+ * <ul>
+ * <li><strong>metadata</strong>: properties, frame count, time range and bins
+ * (see {@link LazyExperiment#loadMetadataIfNeeded()}); this is what chaining
+ * experiments and computing the time range of a list of experiments need</li>
+ * <li><strong>measures</strong>: the full experiment (images list, cages,
+ * spots measures and optionally fly positions)</li>
+ * </ul>
+ * </p>
+ *
+ * <p>
+ * Each experiment is loaded by its own task; the progress frame is updated as
+ * experiments complete and can be used to cancel the remaining tasks. Loading
+ * is mostly file I/O, so the number of threads is kept small by default to
+ * avoid thrashing the disk.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class ExperimentLoader {
+
+	private static final Logger LOGGER = Logger.getLogger(ExperimentLoader.class.getName());
+
+	// === CONSTANTS ===
+	public static final int DEFAULT_IO_THREADS = Math.max(1, Math.min(8, SystemUtil.getNumberOfCPUs()));
+
+	// === FIELDS ===
+	private int nThreads = DEFAULT_IO_THREADS;
+	private volatile boolean stopFlag = false;
+	private ProgressListener progressListener = null;
+
+	/**
+	 * Notified (from the loading threads) each time an experiment is loaded.
+	 */
+	public interface ProgressListener {
+		void experimentLoaded(Experiment exp, int nLoaded, int nExperiments);
+	}
+
+	private interface ExperimentTask {
+		boolean load(Experiment exp);
+	}
+
+	public ExperimentLoader() {
+	}
+
+	public ExperimentLoader(int nThreads) {
+		setNumberOfThreads(nThreads);
+	}
+
+	public int getNumberOfThreads() {
+		return nThreads;
+	}
+
+	public void setNumberOfThreads(int nThreads) {
+		this.nThreads = Math.max(1, nThreads);
+	}
+
+	public void setProgressListener(ProgressListener listener) {
+		this.progressListener = listener;
+	}
+
+	/**
+	 * Requests the cancellation of the current loading: experiments not yet
+	 * started are skipped.
+	 */
+	public void cancel() {
+		stopFlag = true;
+	}
+
+	public boolean isCancelled() {
+		return stopFlag;
+	}
+
+	// === LOADING ===
+
+	/**
+	 * Loads the description of each experiment, without images list, cages nor
+	 * measures.
+	 *
+	 * @return false if cancelled or if an experiment could not be read
+	 */
+	public boolean loadMetadata(List<Experiment> experiments) {
+		return loadAll(experiments, "Load experiment(s) description", new ExperimentTask() {
+			@Override
+			public boolean load(Experiment exp) {
+				if (exp instanceof LazyExperiment)
+					return ((LazyExperiment) exp).loadMetadataIfNeeded();
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Loads each experiment with its cages and, on request, its spots measures
+	 * and fly positions. The experiments can be evicted as soon as they are
+	 * loaded.
+	 *
+	 * @return false if cancelled or if an experiment could not be read
+	 */
+	public boolean loadMeasures(List<Experiment> experiments, boolean loadSpots, boolean loadDrosoTrack) {
+		return loadMeasures(experiments, loadSpots, loadDrosoTrack, null);
+	}
+
+	/**
+	 * Loads each experiment with its cages and, on request, its spots measures
+	 * and fly positions, and pins it in a scope so that it stays loaded until
+	 * the caller closes the scope.
+	 *
+	 * @param pins the scope keeping the experiments loaded, or null
+	 * @return false if cancelled or if an experiment could not be read
+	 */
+	public boolean loadMeasures(List<Experiment> experiments, final boolean loadSpots, final boolean loadDrosoTrack,
+			final ExperimentPinScope pins) {
+		return loadAll(experiments, "Load experiment(s) parameters", new ExperimentTask() {
+			@Override
+			public boolean load(Experiment exp) {
+				if (pins != null)
+					pins.pin(exp);
+				// a lazy experiment must not be evicted while it is being loaded
+				LazyExperiment lazyExp = exp instanceof LazyExperiment ? (LazyExperiment) exp : null;
+				boolean loaded = false;
+				if (lazyExp != null) {
+					lazyExp.pin();
+					loaded = lazyExp.loadIfNeeded();
+				}
+				try {
+					// an experiment loaded just now has already read MS96_experiment.xml
+					boolean flag = loaded ? exp.isDescriptionLoaded() : exp.load_MS96_experiment();
+					flag &= exp.load_MS96_cages();
+					if (loadSpots)
+						exp.load_MS96_spotsMeasures();
+					if (loadDrosoTrack)
+						exp.zopenPositionsMeasures();
+					return flag;
+				} finally {
+					if (lazyExp != null)
+						lazyExp.unpin();
+				}
+			}
+		});
+	}
+
+	private boolean loadAll(List<Experiment> experiments, String title, final ExperimentTask task) {
+		stopFlag = false;
+		final int nexpts = experiments.size();
+		if (nexpts == 0)
+			return true;
+
+		final CancelableProgressFrame progress = new CancelableProgressFrame(title);
+		progress.setLength(nexpts);
+		final AtomicInteger nLoaded = new AtomicInteger(0);
+		final AtomicInteger nFailed = new AtomicInteger(0);
+
+		final Processor processor = new Processor(Math.min(nThreads, nexpts));
+		processor.setThreadName("loadExperiments");
+		processor.setPriority(Processor.NORM_PRIORITY);
+		List<Future<?>> futures = new ArrayList<Future<?>>(nexpts);
+
+		for (final Experiment exp : experiments) {
+			futures.add(processor.submit(new Runnable() {
+				@Override
+				public void run() {
+					if (stopFlag || progress.isCancelRequested()) {
+						stopFlag = true;
+						return;
+					}
+					try {
+						if (!task.load(exp))
+							nFailed.incrementAndGet();
+					} catch (Exception e) {
+						nFailed.incrementAndGet();
+						LOGGER.warning("Error loading experiment " + exp + ": " + e.getMessage());
+					}
+					int done = nLoaded.incrementAndGet();
+					progress.setMessage("Loaded experiment " + done + " of " + nexpts);
+					progress.setPosition(done);
+					ProgressListener listener = progressListener;
+					if (listener != null)
+						listener.experimentLoaded(exp, done, nexpts);
+				}
+			}));
+		}
+
+		waitFuturesCompletion(futures, progress);
+		processor.shutdown();
+		progress.close();
+
+		if (nFailed.get() > 0)
+			LOGGER.warning(nFailed.get() + " experiment(s) of " + nexpts + " could not be fully loaded");
+		return !stopFlag && nFailed.get() == 0;
+	}
+
+	private void waitFuturesCompletion(List<Future<?>> futures, CancelableProgressFrame progress) {
+		for (Future<?> future : futures) {
+			if (progress.isCancelRequested())
+				stopFlag = true;
+			if (stopFlag) {
+				future.cancel(false);
+				continue;
+			}
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				LOGGER.warning("Experiment loading task failed: " + e.getCause());
+			} catch (CancellationException e) {
+				// cancelled: nothing to wait for
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stopFlag = true;
+			}
+		}
+	}
+}
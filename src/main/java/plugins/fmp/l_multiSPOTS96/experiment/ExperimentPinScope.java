@@ -0,0 +1,58 @@
+package plugins.fmp.l_multiSPOTS96.experiment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps experiments in memory until the scope is closed.
+ *
+ * <p>
+ * {@link ExperimentCache} may evict a {@link LazyExperiment} as soon as it is
+ * no longer pinned. A task which loads experiments and then reads their data,
+ * such as an export or a chart, pins them in a scope that it closes when it has
+ * finished:
+ * </p>
+ *
+ * <pre>
+ * try (ExperimentPinScope pins = new ExperimentPinScope()) {
+ * 	expList.loadListOfMeasuresFromAllExperiments(true, false, pins);
+ * 	// read exp.cagesArray...
+ * }
+ * </pre>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class ExperimentPinScope implements AutoCloseable {
+
+	private final List<LazyExperiment> pinned = new ArrayList<LazyExperiment>();
+
+	/**
+	 * Pins an experiment until the scope is closed; experiments which are not
+	 * lazy are always kept in memory.
+	 */
+	public synchronized void pin(Experiment exp) {
+		if (!(exp instanceof LazyExperiment))
+			return;
+		LazyExperiment lazyExp = (LazyExperiment) exp;
+		lazyExp.pin();
+		pinned.add(lazyExp);
+	}
+
+	/**
+	 * @return the number of pins held by the scope
+	 */
+	public synchronized int size() {
+		return pinned.size();
+	}
+
+	/**
+	 * Unpins the experiments; they can be evicted again.
+	 */
+	@Override
+	public synchronized void close() {
+		for (LazyExperiment lazyExp : pinned)
+			lazyExp.unpin();
+		pinned.clear();
+	}
+}
@@ -1,12 +1,18 @@
 package plugins.fmp.l_multiSPOTS96.experiment;
 
 import java.io.File;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
-import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
-import icy.util.XMLUtil;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.CagesArray;
+import plugins.fmp.l_multiSPOTS96.experiment.sequence.ImageLoader;
+import plugins.fmp.l_multiSPOTS96.experiment.sequence.SequenceCamData;
+import plugins.fmp.l_multiSPOTS96.experiment.sequence.TimeManager;
+import plugins.fmp.l_multiSPOTS96.tools.ExperimentCatalog;
+import plugins.fmp.l_multiSPOTS96.tools.XMLStreamUtil;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSColumnHeader;
 
 /**
@@ -26,6 +32,13 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSColumnHeader;
  * combo boxes.
  * </p>
  * 
+ * <p>
+ * Loaded experiments are registered in the {@link ExperimentCache}, which may
+ * return them to the lazy state to stay within its memory budget. The data
+ * loaded since (cages, spots measures, fly positions) is reloaded
+ * transparently on the next access.
+ * </p>
+ * 
  * @author MultiSPOTS96
  * @version 2.0.0
  */
@@ -34,9 +47,19 @@ public class LazyExperiment extends Experiment {
 	private static final Logger LOGGER = Logger.getLogger(LazyExperiment.class.getName());
 
 	private final ExperimentMetadata metadata;
-	private boolean isLoaded = false;
+	private volatile boolean isLoaded = false;
+	private volatile boolean metadataLoaded = false;
 	private boolean experimentPropertiesLoaded = false;
 	private ExperimentProperties cachedExperimentProperties = null;
+	private ExperimentCatalog.Entry catalogEntry = null;
+
+	// memory management: see ExperimentCache
+	private final AtomicInteger pinCount = new AtomicInteger(0);
+	private volatile boolean dirty = false;
+	private boolean wasUnloaded = false;
+	private boolean cagesLoaded = false;
+	private boolean spotsMeasuresLoaded = false;
+	private boolean fliesPositionsLoaded = false;
 
 	// XML file constants for properties loading
 	private final static String ID_MCEXPERIMENT = "MCexperiment";
@@ -53,29 +76,205 @@ public class LazyExperiment extends Experiment {
 		return metadata.getCameraDirectory();
 	}
 
-	public void loadIfNeeded() {
-		if (!isLoaded) {
-			try {
-				ExperimentDirectories expDirectories = new ExperimentDirectories();
-				if (expDirectories.getDirectoriesFromExptPath(metadata.getBinDirectory(),
-						metadata.getCameraDirectory())) {
-					Experiment fullExp = new Experiment(expDirectories);
-					// Copy essential public properties from the fully loaded experiment
-					this.seqCamData = fullExp.seqCamData;
-					this.cagesArray = fullExp.cagesArray;
-					this.firstImage_FileTime = fullExp.firstImage_FileTime;
-					this.lastImage_FileTime = fullExp.lastImage_FileTime;
+	/**
+	 * Loads the experiment if it is not loaded: its description
+	 * (MS96_experiment.xml), its images list and, after an eviction, the data
+	 * loaded before.
+	 *
+	 * @return true if the experiment was loaded by this call, its description
+	 *         having just been read (see {@link #isDescriptionLoaded()})
+	 */
+	public boolean loadIfNeeded() {
+		// the cache may unload other experiments: never call it holding this lock
+		if (materialize()) {
+			ExperimentCache.getInstance().recordLoad(this);
+			return true;
+		}
+		if (isLoaded)
+			ExperimentCache.getInstance().recordAccess(this);
+		return false;
+	}
+
+	/**
+	 * @return true if the experiment was loaded by this call
+	 */
+	private synchronized boolean materialize() {
+		if (isLoaded)
+			return false;
+		try {
+			ExperimentDirectories expDirectories = new ExperimentDirectories();
+			if (expDirectories.getDirectoriesFromExptPath(metadata.getBinDirectory(),
+					metadata.getCameraDirectory())) {
+				Experiment fullExp = new Experiment(expDirectories);
+				// Copy essential public properties from the fully loaded experiment
+				this.seqCamData = fullExp.seqCamData;
+				this.cagesArray = fullExp.cagesArray;
+				this.firstImage_FileTime = fullExp.firstImage_FileTime;
+				this.lastImage_FileTime = fullExp.lastImage_FileTime;
+				if (!wasUnloaded) {
+					// chaining and position in the list are kept across evictions
 					this.col = fullExp.col;
 					this.chainToPreviousExperiment = fullExp.chainToPreviousExperiment;
 					this.chainToNextExperiment = fullExp.chainToNextExperiment;
 					this.chainImageFirst_ms = fullExp.chainImageFirst_ms;
 					this.experimentID = fullExp.experimentID;
-					this.isLoaded = true;
 				}
-			} catch (Exception e) {
-				LOGGER.warning("Error loading experiment " + metadata.getCameraDirectory() + ": " + e.getMessage());
+				copyProperties(fullExp.getProperties());
+				this.descriptionLoaded = fullExp.isDescriptionLoaded();
+				this.isLoaded = true;
+				if (wasUnloaded)
+					reloadData();
+				return true;
 			}
+		} catch (Exception e) {
+			LOGGER.warning("Error loading experiment " + metadata.getCameraDirectory() + ": " + e.getMessage());
+		}
+		return false;
+	}
+
+	// restores what had been loaded before the experiment was evicted
+	private void reloadData() {
+		if (cagesLoaded)
+			super.load_MS96_cages();
+		if (spotsMeasuresLoaded)
+			super.load_MS96_spotsMeasures();
+		if (fliesPositionsLoaded)
+			super.zopenPositionsMeasures();
+	}
+
+	@Override
+	public boolean load_MS96_cages() {
+		boolean flag = super.load_MS96_cages();
+		cagesLoaded |= flag;
+		updateCachedSize();
+		return flag;
+	}
+
+	@Override
+	public boolean load_MS96_spotsMeasures() {
+		boolean flag = super.load_MS96_spotsMeasures();
+		spotsMeasuresLoaded |= flag;
+		updateCachedSize();
+		return flag;
+	}
+
+	@Override
+	public boolean zopenPositionsMeasures() {
+		boolean flag = super.zopenPositionsMeasures();
+		fliesPositionsLoaded |= flag;
+		updateCachedSize();
+		return flag;
+	}
+
+	private void updateCachedSize() {
+		if (isLoaded)
+			ExperimentCache.getInstance().updateSize(this);
+	}
+
+	/**
+	 * Returns the experiment to its lazy state, saving its modified data first.
+	 * Called by the {@link ExperimentCache}.
+	 *
+	 * <p>
+	 * The data is not only modified through the methods marking the experiment
+	 * as dirty: the dialogs edit the cages, spots and properties directly. The
+	 * data loaded is therefore always written, each file being left untouched if
+	 * it has not changed (see {@link #flush()}).
+	 * </p>
+	 *
+	 * @return false if the experiment is in use, or could not be saved, and was
+	 *         kept
+	 */
+	synchronized boolean unload() {
+		if (!isLoaded || !isEvictable())
+			return false;
+		if (!flush())
+			return false;
+		seqCamData = SequenceCamData.builder().withStatus(EnumStatus.FILESTACK).build();
+		cagesArray = new CagesArray();
+		isLoaded = false;
+		metadataLoaded = false;
+		wasUnloaded = true;
+		return true;
+	}
+
+	/**
+	 * Saves the data modified since the experiment was loaded: the description
+	 * and cages files are only rewritten if their content differs from what is
+	 * in memory, the spots measures only for the values changed.
+	 */
+	public synchronized boolean flush() {
+		if (!isLoaded)
+			return true;
+		boolean flag = save_MS96_experiment(true);
+		if (cagesLoaded) {
+			flag &= save_MS96_cages(true);
+			if (spotsMeasuresLoaded)
+				flag &= save_MS96_spotsMeasures();
 		}
+		if (flag)
+			dirty = false;
+		else
+			LOGGER.warning("Error saving experiment " + metadata.getCameraDirectory() + ": kept in memory");
+		return flag;
+	}
+
+	/**
+	 * Prevents the experiment from being evicted until {@link #unpin()}.
+	 */
+	public void pin() {
+		pinCount.incrementAndGet();
+	}
+
+	public void unpin() {
+		pinCount.decrementAndGet();
+	}
+
+	/**
+	 * An experiment displayed in a viewer, or pinned, is kept in memory.
+	 */
+	public boolean isEvictable() {
+		return pinCount.get() <= 0 && (seqCamData == null || seqCamData.getSequence() == null);
+	}
+
+	/**
+	 * Marks the experiment as modified. Its data is saved before it is evicted
+	 * whether it is marked or not; the mark is counted in the statistics of
+	 * the cache.
+	 */
+	public void markDirty() {
+		dirty = true;
+	}
+
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	@Override
+	public boolean replaceExperimentFieldIfEqualOldValue(EnumXLSColumnHeader fieldEnumCode, String oldValue,
+			String newValue) {
+		boolean flag = super.replaceExperimentFieldIfEqualOldValue(fieldEnumCode, oldValue, newValue);
+		if (flag)
+			markDirty();
+		return flag;
+	}
+
+	@Override
+	public boolean replaceSpotsFieldValueWithNewValueIfOld(EnumXLSColumnHeader fieldEnumCode, String oldValue,
+			String newValue) {
+		boolean flag = super.replaceSpotsFieldValueWithNewValueIfOld(fieldEnumCode, oldValue, newValue);
+		if (flag)
+			markDirty();
+		return flag;
+	}
+
+	@Override
+	public boolean replaceCageFieldValueWithNewValueIfOld(EnumXLSColumnHeader fieldEnumCode, String oldValue,
+			String newValue) {
+		boolean flag = super.replaceCageFieldValueWithNewValueIfOld(fieldEnumCode, oldValue, newValue);
+		if (flag)
+			markDirty();
+		return flag;
 	}
 
 	public boolean loadPropertiesIfNeeded() {
@@ -94,13 +293,8 @@ public class LazyExperiment extends Experiment {
 					return false;
 				}
 
-				Document doc = XMLUtil.loadDocument(xmlFileName);
-				if (doc == null) {
-					LOGGER.warning("Could not load XML document from " + xmlFileName);
-					return false;
-				}
-
-				Node node = XMLUtil.getElement(XMLUtil.getRootElement(doc), ID_MCEXPERIMENT);
+				// stream the file: only the MCexperiment node is built
+				Node node = XMLStreamUtil.readRootChildElement(xmlFileName, ID_MCEXPERIMENT);
 				if (node == null) {
 					LOGGER.warning("Could not find MCexperiment node in XML");
 					return false;
@@ -127,10 +321,71 @@ public class LazyExperiment extends Experiment {
 		return "..";
 	}
 
+	/**
+	 * Loads only the description of the experiment (properties, frame count, time
+	 * range and bins), without listing the images nor reading cages and measures.
+	 * This is enough to chain experiments and compute the time range of a list of
+	 * experiments. The values come from the catalog entry when it is still valid,
+	 * otherwise from MS96_experiment.xml.
+	 */
+	public synchronized boolean loadMetadataIfNeeded() {
+		if (isLoaded || metadataLoaded)
+			return true;
+		if (catalogEntry != null && catalogEntry.isExperimentValid())
+			applyCatalogEntry(catalogEntry);
+		else if (!load_MS96_experiment())
+			return false;
+
+		if (firstImage_FileTime == null)
+			firstImage_FileTime = FileTime.fromMillis(seqCamData.getFirstImageMs());
+		if (lastImage_FileTime == null)
+			lastImage_FileTime = FileTime.fromMillis(seqCamData.getLastImageMs());
+		metadataLoaded = true;
+		return true;
+	}
+
+	private void applyCatalogEntry(ExperimentCatalog.Entry entry) {
+		ImageLoader imgLoader = seqCamData.getImageLoader();
+		imgLoader.setAbsoluteIndexFirstImage(entry.getIndexFrameFirst());
+		imgLoader.setFixedNumberOfImages(entry.getNFrames());
+		imgLoader.setNTotalFrames((int) (entry.getNFrames() - entry.getIndexFrameFirst()));
+
+		TimeManager timeManager = seqCamData.getTimeManager();
+		timeManager.setFirstImageMs(Math.max(0, entry.getFirstImageMs()));
+		timeManager.setLastImageMs(Math.max(0, entry.getLastImageMs()));
+		timeManager.setDurationMs(entry.getLastImageMs() - entry.getFirstImageMs());
+		timeManager.setDeltaImage(entry.getIndexFrameDelta());
+		timeManager.setBinFirst_ms(entry.getBinFirstMs());
+		timeManager.setBinLast_ms(entry.getBinLastMs());
+		timeManager.setBinDurationMs(entry.getBinDurationMs());
+
+		copyProperties(entry.getProperties());
+	}
+
+	private void copyProperties(ExperimentProperties properties) {
+		getProperties().copyExperimentFieldsFrom(properties);
+		getProperties().field_comment1 = properties.field_comment1;
+		getProperties().field_comment2 = properties.field_comment2;
+	}
+
+	/**
+	 * Associates the catalog entry of this experiment: its properties are used for
+	 * the combos and its time range by {@link #loadMetadataIfNeeded()}.
+	 */
+	public void setCatalogEntry(ExperimentCatalog.Entry entry) {
+		this.catalogEntry = entry;
+		if (entry != null)
+			setCachedProperties(entry.getProperties());
+	}
+
 	public boolean isLoaded() {
 		return isLoaded;
 	}
 
+	public boolean isMetadataLoaded() {
+		return isLoaded || metadataLoaded;
+	}
+
 	public boolean isPropertiesLoaded() {
 		return experimentPropertiesLoaded;
 	}
@@ -144,6 +399,17 @@ public class LazyExperiment extends Experiment {
 		return cachedExperimentProperties;
 	}
 
+	/**
+	 * Sets the properties from an already known source (e.g. the experiment
+	 * catalog), so that MS96_experiment.xml is not parsed to fill the combos.
+	 */
+	public void setCachedProperties(ExperimentProperties properties) {
+		if (properties == null)
+			return;
+		cachedExperimentProperties = properties;
+		experimentPropertiesLoaded = true;
+	}
+
 	/**
 	 * Lightweight metadata class for experiment information. Contains only
 	 * essential information needed for the dropdown and lazy loading.
@@ -5,11 +5,19 @@ import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -25,10 +33,12 @@ import plugins.fmp.l_multiSPOTS96.experiment.sequence.TIntervalsArray;
 import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
 import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotString;
 import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotsArray;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotsMeasuresStore;
 import plugins.fmp.l_multiSPOTS96.series.BuildSeriesOptions;
 import plugins.fmp.l_multiSPOTS96.tools.Comparators;
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.Dialog;
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.exceptions.FileDialogException;
+import plugins.fmp.l_multiSPOTS96.tools.XMLStreamUtil;
 import plugins.fmp.l_multiSPOTS96.tools.ROI2D.Utilities;
 import plugins.kernel.roi.roi2d.ROI2DArea;
 import plugins.kernel.roi.roi2d.ROI2DPolygon;
@@ -37,6 +47,7 @@ import plugins.kernel.roi.roi2d.ROI2DShape;
 public class CagesArray {
 	public ArrayList<Cage> cagesList = new ArrayList<Cage>();
 	private TIntervalsArray cagesListTimeIntervals = null;
+	private final SpotsMeasuresStore spotsMeasuresStore = new SpotsMeasuresStore();
 
 	public int nCagesAlongX = 6;
 	public int nCagesAlongY = 8;
@@ -292,6 +303,141 @@ public class CagesArray {
 		}
 	}
 
+	/**
+	 * Streaming (StAX) equivalent of {@link #xmlReadCagesFromFileNoQuestion}: the
+	 * file is read cage by cage and only the cage being decoded is kept as a DOM
+	 * fragment, so that memory does not grow with the size of the file.
+	 */
+	public boolean xmlReadCagesFromFileStreaming(String tempname) {
+		if (tempname == null || !new File(tempname).exists())
+			return false;
+
+		try (InputStream in = XMLStreamUtil.openInput(tempname)) {
+			XMLStreamReader reader = XMLStreamUtil.createReader(in);
+			try {
+				if (!XMLStreamUtil.moveToRootElement(reader))
+					return false;
+				while (XMLStreamUtil.nextChildElement(reader)) {
+					if (ID_CAGES.equals(reader.getLocalName()))
+						return xmlStreamLoadCages(reader);
+					XMLStreamUtil.skipElement(reader);
+				}
+				System.err.println("ERROR: Could not find Cages element in XML");
+				return false;
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | XMLStreamException e) {
+			System.err.println("ERROR during cages XML streaming: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Streaming (StAX) equivalent of {@link #xmlWriteCagesToFileNoQuestion}: each
+	 * cage is converted to a DOM fragment, written to the stream and released
+	 * before the next one.
+	 */
+	public boolean xmlWriteCagesToFileStreaming(String tempname) {
+		return xmlWriteCagesToFileStreaming(tempname, false);
+	}
+
+	/**
+	 * Streams the cages to a file.
+	 *
+	 * @param onlyIfChanged true to leave the file untouched if it already
+	 *                      describes these cages
+	 */
+	public boolean xmlWriteCagesToFileStreaming(String tempname, boolean onlyIfChanged) {
+		Path target = Paths.get(tempname);
+		Path temp = Paths.get(tempname + ".tmp");
+		try (OutputStream out = XMLStreamUtil.openOutput(temp)) {
+			XMLStreamWriter writer = XMLStreamUtil.createWriter(out);
+			Document doc = XMLUtil.createDocument(true);
+			XMLStreamUtil.writeStartDocument(writer, XMLUtil.getRootElement(doc).getNodeName());
+
+			XMLStreamUtil.writeIndent(writer, 1);
+			writer.writeStartElement(ID_CAGES);
+			writer.writeAttribute(ID_NCAGES, Integer.toString(cagesList.size()));
+			writer.writeAttribute(ID_NCAGESALONGX, Integer.toString(nCagesAlongX));
+			writer.writeAttribute(ID_NCAGESALONGY, Integer.toString(nCagesAlongY));
+			writer.writeAttribute(ID_NCOLUMNSPERCAGE, Integer.toString(nColumnsPerCage));
+			writer.writeAttribute(ID_NROWSPERCAGE, Integer.toString(nRowsPerCage));
+
+			int index = 0;
+			for (Cage cage : cagesList) {
+				if (cage == null) {
+					System.err.println("WARNING: Null cage at index " + index);
+					continue;
+				}
+				Element holder = doc.createElement(ID_CAGES);
+				if (!cage.xmlSaveCage(holder, index))
+					System.err.println("ERROR: Failed to save cage at index " + index);
+				for (Node child = holder.getFirstChild(); child != null; child = child.getNextSibling())
+					XMLStreamUtil.writeNode(writer, child, 2);
+				index++;
+			}
+			XMLStreamUtil.writeIndent(writer, 1);
+			writer.writeEndElement();
+			XMLStreamUtil.writeEndDocument(writer);
+		} catch (IOException | XMLStreamException e) {
+			System.err.println("ERROR during cages XML streaming: " + e.getMessage());
+			return false;
+		}
+		return XMLStreamUtil.moveTempFile(temp, target, onlyIfChanged);
+	}
+
+	private boolean xmlStreamLoadCages(XMLStreamReader reader) throws XMLStreamException {
+		cagesList.clear();
+		int ncages = XMLStreamUtil.getAttributeIntValue(reader, ID_NCAGES, 0);
+		if (ncages <= 0) {
+			System.err.println("ERROR: Invalid number of cages: " + ncages);
+			return false;
+		}
+		nCagesAlongX = XMLStreamUtil.getAttributeIntValue(reader, ID_NCAGESALONGX, nCagesAlongX);
+		nCagesAlongY = XMLStreamUtil.getAttributeIntValue(reader, ID_NCAGESALONGY, nCagesAlongY);
+		nColumnsPerCage = XMLStreamUtil.getAttributeIntValue(reader, ID_NCOLUMNSPERCAGE, nColumnsPerCage);
+		nRowsPerCage = XMLStreamUtil.getAttributeIntValue(reader, ID_NROWSPERCAGE, nRowsPerCage);
+
+		// cages are kept in index order, as when loading through the DOM
+		Cage[] loaded = new Cage[ncages];
+		Document doc = XMLStreamUtil.createScratchDocument();
+		while (XMLStreamUtil.nextChildElement(reader)) {
+			int index = getCageIndexFromElementName(reader.getLocalName());
+			if (index < 0 || index >= ncages || loaded[index] != null) {
+				XMLStreamUtil.skipElement(reader);
+				continue;
+			}
+			Element holder = doc.createElement(ID_CAGES);
+			holder.appendChild(XMLStreamUtil.readElement(reader, doc));
+			try {
+				Cage cage = new Cage();
+				if (cage.xmlLoadCage(holder, index))
+					loaded[index] = cage;
+				else
+					System.err.println("WARNING: Failed to load cage at index " + index);
+			} catch (Exception e) {
+				System.err.println("ERROR loading cage at index " + index + ": " + e.getMessage());
+			}
+		}
+
+		for (Cage cage : loaded) {
+			if (cage != null)
+				cagesList.add(cage);
+		}
+		return cagesList.size() > 0;
+	}
+
+	private static int getCageIndexFromElementName(String name) {
+		if (!name.startsWith("Cage") || name.length() == 4)
+			return -1;
+		try {
+			return Integer.parseInt(name.substring(4));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
 	private boolean xmlSaveCages(Node node) {
 		try {
 			int index = 0;
@@ -915,25 +1061,41 @@ public class CagesArray {
 	public boolean load_SpotsMeasures(String directory) {
 		SpotsArray spotsArray = getSpotsArrayFromAllCages();
 		boolean flag = spotsArray.loadSpotsMeasures(directory);
+		if (flag)
+			spotsMeasuresStore.snapshot(directory, spotsArray);
 		return flag;
 	}
 
 	public boolean load_SpotsAll(String directory) {
-		boolean flag = getSpotsArrayFromAllCages().loadSpotsAll(directory);
+		SpotsArray spotsArray = getSpotsArrayFromAllCages();
+		boolean flag = spotsArray.loadSpotsAll(directory);
+		if (flag)
+			spotsMeasuresStore.snapshot(directory, spotsArray);
 		return flag;
 	}
 
 	public boolean save_SpotsAll(String directory) {
-		boolean flag = getSpotsArrayFromAllCages().saveSpotsAll(directory);
+		SpotsArray spotsArray = getSpotsArrayFromAllCages();
+		boolean flag = spotsArray.saveSpotsAll(directory);
+		if (flag)
+			spotsMeasuresStore.snapshot(directory, spotsArray);
 		return flag;
 	}
 
 	public boolean save_SpotsMeasures(String directory) {
 		if (directory == null)
 			return false;
-		SpotsArray localSpotsArray = getSpotsArrayFromAllCages();
-		localSpotsArray.saveSpotsMeasuresOptimized(directory);
-		return true;
+		return spotsMeasuresStore.save(directory, getSpotsArrayFromAllCages());
+	}
+
+	public boolean compact_SpotsMeasures(String directory) {
+		if (directory == null)
+			return false;
+		return spotsMeasuresStore.compact(directory, getSpotsArrayFromAllCages());
+	}
+
+	public SpotsMeasuresStore getSpotsMeasuresStore() {
+		return spotsMeasuresStore;
 	}
 
 	public SpotsArray getSpotsArrayFromAllCages() {
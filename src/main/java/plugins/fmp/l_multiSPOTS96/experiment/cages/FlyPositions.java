@@ -339,11 +339,10 @@ public class FlyPositions {
 
 	// ------------------------------------------------------------
 
-	public List<Double> getIsAliveAsDoubleArray() {
-		ArrayList<Double> dataArray = new ArrayList<Double>();
-		dataArray.ensureCapacity(flyPositionList.size());
-		for (FlyPosition pos : flyPositionList)
-			dataArray.add(pos.bAlive ? 1.0 : 0.0);
+	public double[] getIsAliveAsDoubleArray() {
+		double[] dataArray = new double[flyPositionList.size()];
+		for (int i = 0; i < dataArray.length; i++)
+			dataArray[i] = flyPositionList.get(i).bAlive ? 1.0 : 0.0;
 		return dataArray;
 	}
 
@@ -424,11 +423,10 @@ public class FlyPositions {
 		}
 	}
 
-	public List<Double> getSleepAsDoubleArray() {
-		ArrayList<Double> dataArray = new ArrayList<Double>();
-		dataArray.ensureCapacity(flyPositionList.size());
-		for (FlyPosition pos : flyPositionList)
-			dataArray.add(pos.bSleep ? 1.0 : 0.0);
+	public double[] getSleepAsDoubleArray() {
+		double[] dataArray = new double[flyPositionList.size()];
+		for (int i = 0; i < dataArray.length; i++)
+			dataArray[i] = flyPositionList.get(i).bSleep ? 1.0 : 0.0;
 		return dataArray;
 	}
 
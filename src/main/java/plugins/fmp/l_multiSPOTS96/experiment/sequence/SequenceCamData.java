@@ -12,6 +12,7 @@ import icy.image.IcyBufferedImage;
 import icy.roi.ROI2D;
 import icy.sequence.Sequence;
 import plugins.fmp.l_multiSPOTS96.experiment.EnumStatus;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEnums;
 
 /**
@@ -524,7 +525,8 @@ public class SequenceCamData implements AutoCloseable {
 	}
 
 	/**
-	 * Closes the sequence and cleans up resources.
+	 * Closes the sequence and cleans up resources, including the working arrays
+	 * of the image transforms of its viewer.
 	 */
 	public void closeSequence() {
 		lock.lock();
@@ -533,6 +535,7 @@ public class SequenceCamData implements AutoCloseable {
 				seq.removeAllROI();
 				seq.close();
 				seq = null;
+				ImageTransformBuffers.release();
 			}
 		} finally {
 			lock.unlock();
@@ -15,6 +15,7 @@ import icy.roi.ROI2D;
 import icy.util.XMLUtil;
 import plugins.fmp.l_multiSPOTS96.tools.ROI2D.ROI2DWithMask;
 import plugins.fmp.l_multiSPOTS96.tools.ROI2D.Utilities;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumBinStatistic;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSColumnHeader;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSExport;
 import plugins.kernel.roi.roi2d.ROI2DPolyLine;
@@ -564,14 +565,33 @@ public class Spot implements Comparable<Spot> {
 	 * @param option      the export option
 	 * @param seriesBinMs the series bin in milliseconds
 	 * @param outputBinMs the output bin in milliseconds
-	 * @return the measures list
+	 * @return the measures, one value per output bin
 	 */
-	public List<Double> getMeasuresForExcelPass1(EnumXLSExport exportType, long seriesBinMs, long outputBinMs) {
+	public double[] getMeasuresForExcelPass1(EnumXLSExport exportType, long seriesBinMs, long outputBinMs) {
 		SpotMeasure measure = getMeasurements(exportType);
 		if (measure == null) {
-			return new ArrayList<>();
+			return new double[0];
 		}
-		return measure.getValuesAsSubsampledList(seriesBinMs, outputBinMs);
+		return measure.getValuesAsSubsampledArray(seriesBinMs, outputBinMs);
+	}
+
+	/**
+	 * Gets spot measures for Excel export, reduced to one statistic per output
+	 * bin.
+	 * 
+	 * @param exportType  the export option
+	 * @param seriesBinMs the series bin in milliseconds
+	 * @param outputBinMs the output bin in milliseconds
+	 * @param statistic   the statistic of each output bin
+	 * @return the measures, one value per output bin
+	 */
+	public double[] getMeasuresForExcelPass1(EnumXLSExport exportType, long seriesBinMs, long outputBinMs,
+			EnumBinStatistic statistic) {
+		SpotMeasure measure = getMeasurements(exportType);
+		if (measure == null) {
+			return new double[0];
+		}
+		return measure.getValuesAsBinnedArray(seriesBinMs, outputBinMs, statistic);
 	}
 
 	/**
@@ -1,10 +1,11 @@
 package plugins.fmp.l_multiSPOTS96.experiment.spots;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Objects;
 
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumBinStatistic;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.XLSBinning;
+
 public class SpotMeasure {
 
 	// === CONSTANTS ===
@@ -264,25 +265,43 @@ public class SpotMeasure {
 
 	// === UTILITY METHODS ===
 
-	public List<Double> getValuesAsSubsampledList(long seriesBinMs, long outputBinMs) {
+	/**
+	 * Samples the values every {@code outputBinMs}, the values being measured
+	 * every {@code seriesBinMs}.
+	 * 
+	 * @return a new array (empty if there are no values)
+	 */
+	public double[] getValuesAsSubsampledArray(long seriesBinMs, long outputBinMs) {
 		if (values == null || values.length == 0) {
-			return new ArrayList<>();
+			return new double[0];
 		}
 		long maxMs = (values.length - 1) * seriesBinMs;
-		long npoints = (maxMs / outputBinMs) + 1;
-		List<Double> result = new ArrayList<>();
-		for (long i = 0; i < npoints; i++) {
+		int npoints = (int) ((maxMs / outputBinMs) + 1);
+		double[] result = new double[npoints];
+		for (int i = 0; i < npoints; i++) {
 			long timeMs = i * outputBinMs;
 			int index = (int) (timeMs / seriesBinMs);
-			if (index < values.length) {
-				result.add(values[index]);
-			} else {
-				result.add(0.0);
-			}
+			result[i] = index < values.length ? values[index] : 0.0;
 		}
 		return result;
 	}
 
+	/**
+	 * Reduces the values, measured every {@code seriesBinMs}, to one statistic per
+	 * bin of {@code outputBinMs} (see {@link XLSBinning}).
+	 * 
+	 * @return a new array (empty if there are no values)
+	 */
+	public double[] getValuesAsBinnedArray(long seriesBinMs, long outputBinMs, EnumBinStatistic statistic) {
+		if (values == null || values.length == 0) {
+			return new double[0];
+		}
+		if (statistic == EnumBinStatistic.SAMPLE) {
+			return getValuesAsSubsampledArray(seriesBinMs, outputBinMs);
+		}
+		return XLSBinning.reduce(values, seriesBinMs, outputBinMs, statistic);
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -40,7 +40,7 @@ public class SpotsArray {
 	private static final String ID_NSPOTS = "N_spots";
 	private static final String ID_LISTOFSPOTS = "List_of_spots";
 	private static final String ID_SPOT_ = "spot_";
-	private static final String CSV_FILENAME = "SpotsMeasures.csv";
+	static final String CSV_FILENAME = "SpotsMeasures.csv";
 	private static final String CSV_SEPARATOR = ";";
 	private static final int DEFAULT_VERSION = 2;
 
@@ -130,7 +130,10 @@ public class SpotsArray {
 		}
 
 		try {
-			return csvLoadSpots(directory, measureType);
+			boolean flag = csvLoadSpots(directory, measureType);
+			if (flag)
+				SpotsMeasuresStore.replaySegments(directory, this);
+			return flag;
 		} catch (Exception e) {
 			System.err.println("Error loading spots: " + e.getMessage());
 			return false;
@@ -172,7 +175,10 @@ public class SpotsArray {
 			writeSpotsDataOptimized(writer);
 			writeMeasuresDataOptimized(writer, EnumSpotMeasures.AREA_SUM);
 			writeMeasuresDataOptimized(writer, EnumSpotMeasures.AREA_SUMCLEAN);
+			writer.close();
 
+			// full rewrite: previous incremental segments are obsolete
+			SpotsMeasuresStore.deleteSegments(directory);
 			return true;
 		} catch (IOException e) {
 			System.err.println("Error in optimized CSV writing: " + e.getMessage());
@@ -661,7 +667,10 @@ public class SpotsArray {
 			if (!csvSaveMeasuresSection(writer, EnumSpotMeasures.AREA_SUMCLEAN)) {
 				return false;
 			}
+			writer.close();
 
+			// full rewrite: previous incremental segments are obsolete
+			SpotsMeasuresStore.deleteSegments(directory);
 			return true;
 		} catch (IOException e) {
 			System.err.println("Error saving spots to CSV: " + e.getMessage());
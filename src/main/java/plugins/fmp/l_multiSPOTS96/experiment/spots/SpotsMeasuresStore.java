@@ -0,0 +1,528 @@
+package plugins.fmp.l_multiSPOTS96.experiment.spots;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Incremental writer for the spots measures file.
+ *
+ * <p>
+ * The full {@code SpotsMeasures.csv} file is kept as the base of the measures.
+ * Subsequent saves only write the measure ranges that changed since the last
+ * load or save into small binary segment files, listed in order in a manifest
+ * ({@code SpotsMeasures.manifest}). Loading the base file replays the
+ * segments on top of it. Compaction rewrites the base file from memory and
+ * removes the segments; it runs on demand or when too many segments have
+ * accumulated.
+ * </p>
+ *
+ * <p>
+ * Changes are detected by comparing the hashes of chunks of
+ * {@value #CHUNK_SIZE} values with the hashes recorded at the last load or
+ * save, so callers do not need to flag modified spots, and the recorded state
+ * takes one long per chunk instead of a copy of the values. Appending frames to
+ * a measure only writes the new frames; editing a few values only rewrites the
+ * affected measure from the first modified chunk. Any change to the spots list
+ * or to spot descriptions falls back to a full rewrite.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class SpotsMeasuresStore {
+
+	// === CONSTANTS ===
+	static final String MANIFEST_FILENAME = "SpotsMeasures.manifest";
+	private static final String SEGMENT_PREFIX = "SpotsMeasures.seg";
+	private static final String SEGMENT_SUFFIX = ".bin";
+	private static final String MANIFEST_SEPARATOR = ";";
+	private static final String ID_BASE = "base";
+	private static final String ID_SEGMENT = "segment";
+	private static final int SEGMENT_MAGIC = 0x4D533936; // "MS96"
+	private static final int SEGMENT_VERSION = 1;
+	private static final int DEFAULT_MAX_SEGMENTS = 32;
+	private static final int CHUNK_SIZE = 256;
+	private static final EnumSpotMeasures[] SAVED_MEASURES = { EnumSpotMeasures.AREA_SUM,
+			EnumSpotMeasures.AREA_SUMCLEAN };
+
+	// === STATE ===
+	private final Map<String, SpotFingerprint> fingerprints = new HashMap<>();
+	private List<String> descriptionRows = new ArrayList<>();
+	private String snapshotDirectory = null;
+	private long baseLength = -1;
+	private long baseLastModified = -1;
+	private int maxSegments = DEFAULT_MAX_SEGMENTS;
+
+	// === CONFIGURATION ===
+
+	public int getMaxSegments() {
+		return maxSegments;
+	}
+
+	/**
+	 * Sets the number of segments after which the next save compacts the
+	 * measures into the base file.
+	 *
+	 * @param maxSegments the maximum number of segments (at least 1)
+	 */
+	public void setMaxSegments(int maxSegments) {
+		this.maxSegments = Math.max(1, maxSegments);
+	}
+
+	// === SAVE / COMPACT ===
+
+	/**
+	 * Saves the measures of the spots, writing only what changed since the last
+	 * load or save when possible.
+	 *
+	 * @param directory  the results directory
+	 * @param spotsArray the spots to save
+	 * @return true if successful
+	 */
+	public synchronized boolean save(String directory, SpotsArray spotsArray) {
+		if (directory == null || spotsArray == null)
+			return false;
+
+		if (!isSnapshotValid(directory) || !isSameSpotsDescription(spotsArray))
+			return compact(directory, spotsArray);
+
+		List<Segment> changes = new ArrayList<>();
+		for (Spot spot : spotsArray.getSpotsList()) {
+			SpotFingerprint fingerprint = fingerprints.get(spot.getName());
+			for (int k = 0; k < SAVED_MEASURES.length; k++) {
+				double[] values = getMeasure(spot, SAVED_MEASURES[k]).getValues();
+				MeasureFingerprint previous = fingerprint.measures[k];
+				if (values == null) {
+					if (previous.length > 0)
+						return compact(directory, spotsArray);
+					continue;
+				}
+				int first = previous.getFirstChangedIndex(values);
+				if (first >= 0)
+					changes.add(new Segment(spot.getName(), SAVED_MEASURES[k], values.length, first,
+							Arrays.copyOfRange(values, first, values.length)));
+			}
+		}
+		if (changes.isEmpty())
+			return true;
+
+		List<String> segmentNames = readManifestSegments(directory);
+		if (segmentNames == null)
+			segmentNames = new ArrayList<>();
+		if (segmentNames.size() >= maxSegments)
+			return compact(directory, spotsArray);
+
+		String segmentName = SEGMENT_PREFIX + String.format("%04d", segmentNames.size() + 1) + SEGMENT_SUFFIX;
+		try {
+			writeSegment(Paths.get(directory, segmentName), changes);
+			appendToManifest(directory, segmentName);
+		} catch (IOException e) {
+			System.err.println("Error writing measures segment, rewriting measures: " + e.getMessage());
+			return compact(directory, spotsArray);
+		}
+
+		for (Segment change : changes) {
+			SpotFingerprint fingerprint = fingerprints.get(change.spotName);
+			Spot spot = spotsArray.findSpotByName(change.spotName);
+			int k = indexOfMeasure(change.measureType);
+			fingerprint.measures[k] = new MeasureFingerprint(getMeasure(spot, change.measureType).getValues());
+		}
+		return true;
+	}
+
+	/**
+	 * Rewrites the whole measures file from memory and removes the segments.
+	 *
+	 * @param directory  the results directory
+	 * @param spotsArray the spots to save
+	 * @return true if successful
+	 */
+	public synchronized boolean compact(String directory, SpotsArray spotsArray) {
+		if (directory == null || spotsArray == null)
+			return false;
+		boolean flag = spotsArray.saveSpotsMeasuresOptimized(directory);
+		if (flag)
+			snapshot(directory, spotsArray);
+		else
+			clear();
+		return flag;
+	}
+
+	/**
+	 * Tells whether segments are pending on top of the base measures file.
+	 *
+	 * @param directory the results directory
+	 * @return true if a manifest lists at least one segment
+	 */
+	public static boolean hasSegments(String directory) {
+		List<String> segmentNames = readManifestSegments(directory);
+		return segmentNames != null && !segmentNames.isEmpty();
+	}
+
+	/**
+	 * Describes the files holding the measures (length and modification time of
+	 * the base file and of the manifest); the description changes whenever the
+	 * measures are saved.
+	 *
+	 * @param directory the results directory
+	 * @return the state of the files, or null if there is no base file
+	 */
+	public static String getMeasuresFilesState(String directory) {
+		if (directory == null)
+			return null;
+		File base = Paths.get(directory, SpotsArray.CSV_FILENAME).toFile();
+		if (!base.exists())
+			return null;
+		File manifest = Paths.get(directory, MANIFEST_FILENAME).toFile();
+		StringBuilder state = new StringBuilder();
+		state.append(base.length()).append(MANIFEST_SEPARATOR).append(base.lastModified());
+		if (manifest.exists())
+			state.append(MANIFEST_SEPARATOR).append(manifest.length()).append(MANIFEST_SEPARATOR)
+					.append(manifest.lastModified());
+		return state.toString();
+	}
+
+	// === SNAPSHOT ===
+
+	/**
+	 * Records the current state of the spots as the state stored on disk. Must be
+	 * called after the measures have been loaded from {@code directory}.
+	 *
+	 * @param directory  the results directory
+	 * @param spotsArray the spots just loaded or saved
+	 */
+	public synchronized void snapshot(String directory, SpotsArray spotsArray) {
+		clear();
+		if (directory == null || spotsArray == null)
+			return;
+		File base = Paths.get(directory, SpotsArray.CSV_FILENAME).toFile();
+		if (!base.exists())
+			return;
+
+		for (Spot spot : spotsArray.getSpotsList()) {
+			SpotFingerprint fingerprint = new SpotFingerprint();
+			for (int k = 0; k < SAVED_MEASURES.length; k++)
+				fingerprint.measures[k] = new MeasureFingerprint(getMeasure(spot, SAVED_MEASURES[k]).getValues());
+			fingerprints.put(spot.getName(), fingerprint);
+		}
+		descriptionRows = getDescriptionRows(spotsArray);
+		snapshotDirectory = directory;
+		baseLength = base.length();
+		baseLastModified = base.lastModified();
+	}
+
+	/**
+	 * @return an estimate of the memory taken by the recorded state, in bytes
+	 */
+	public synchronized long getMemorySize() {
+		long size = 0;
+		for (SpotFingerprint fingerprint : fingerprints.values()) {
+			for (MeasureFingerprint measure : fingerprint.measures)
+				size += 32 + 8L * measure.chunkHashes.length;
+		}
+		return size;
+	}
+
+	public synchronized void clear() {
+		fingerprints.clear();
+		descriptionRows = new ArrayList<>();
+		snapshotDirectory = null;
+		baseLength = -1;
+		baseLastModified = -1;
+	}
+
+	// === REPLAY / CLEANUP (used by SpotsArray) ===
+
+	/**
+	 * Applies the segments listed in the manifest to spots loaded from the base
+	 * file. Segments are ignored if the base file was rewritten after they were
+	 * created.
+	 *
+	 * @param directory  the results directory
+	 * @param spotsArray the spots loaded from the base file
+	 * @return true if no segment had to be skipped
+	 */
+	static boolean replaySegments(String directory, SpotsArray spotsArray) {
+		Path manifestPath = Paths.get(directory, MANIFEST_FILENAME);
+		if (!Files.exists(manifestPath))
+			return true;
+
+		File base = Paths.get(directory, SpotsArray.CSV_FILENAME).toFile();
+		long[] stamp = readManifestBaseStamp(directory);
+		if (stamp == null || stamp[0] != base.length() || stamp[1] != base.lastModified()) {
+			System.err.println("WARNING: measures segments ignored, base file changed: " + manifestPath);
+			return false;
+		}
+
+		boolean flag = true;
+		for (String segmentName : readManifestSegments(directory)) {
+			try {
+				for (Segment segment : readSegment(Paths.get(directory, segmentName)))
+					applySegment(segment, spotsArray);
+			} catch (IOException e) {
+				System.err.println("Error reading measures segment " + segmentName + ": " + e.getMessage());
+				flag = false;
+			}
+		}
+		return flag;
+	}
+
+	/**
+	 * Removes the manifest and the segments it lists. Called whenever the base
+	 * file is rewritten in full.
+	 *
+	 * @param directory the results directory
+	 */
+	static void deleteSegments(String directory) {
+		List<String> segmentNames = readManifestSegments(directory);
+		if (segmentNames == null)
+			return;
+		try {
+			for (String segmentName : segmentNames)
+				Files.deleteIfExists(Paths.get(directory, segmentName));
+			Files.deleteIfExists(Paths.get(directory, MANIFEST_FILENAME));
+		} catch (IOException e) {
+			System.err.println("Error deleting measures segments: " + e.getMessage());
+		}
+	}
+
+	// === PRIVATE HELPER METHODS ===
+
+	private boolean isSnapshotValid(String directory) {
+		if (snapshotDirectory == null || !snapshotDirectory.equals(directory))
+			return false;
+		File base = Paths.get(directory, SpotsArray.CSV_FILENAME).toFile();
+		if (!base.exists())
+			return false;
+		long[] stamp = readManifestBaseStamp(directory);
+		if (stamp == null)
+			stamp = new long[] { baseLength, baseLastModified };
+		return stamp[0] == base.length() && stamp[1] == base.lastModified();
+	}
+
+	private boolean isSameSpotsDescription(SpotsArray spotsArray) {
+		if (spotsArray.getSpotsCount() != fingerprints.size())
+			return false;
+		for (Spot spot : spotsArray.getSpotsList()) {
+			if (!fingerprints.containsKey(spot.getName()))
+				return false;
+		}
+		return descriptionRows.equals(getDescriptionRows(spotsArray));
+	}
+
+	private static List<String> getDescriptionRows(SpotsArray spotsArray) {
+		List<String> rows = new ArrayList<>(spotsArray.getSpotsCount());
+		for (Spot spot : spotsArray.getSpotsList())
+			rows.add(spot.getProperties().exportToCsv(MANIFEST_SEPARATOR));
+		return rows;
+	}
+
+	private static SpotMeasure getMeasure(Spot spot, EnumSpotMeasures measureType) {
+		if (measureType == EnumSpotMeasures.AREA_SUMCLEAN)
+			return spot.getSumClean();
+		return spot.getSum();
+	}
+
+	private static int indexOfMeasure(EnumSpotMeasures measureType) {
+		for (int k = 0; k < SAVED_MEASURES.length; k++) {
+			if (SAVED_MEASURES[k] == measureType)
+				return k;
+		}
+		return -1;
+	}
+
+	private static void applySegment(Segment segment, SpotsArray spotsArray) {
+		Spot spot = spotsArray.findSpotByName(segment.spotName);
+		if (spot == null || indexOfMeasure(segment.measureType) < 0)
+			return;
+		SpotMeasure measure = getMeasure(spot, segment.measureType);
+		double[] values = measure.getValues();
+		if (values == null)
+			values = new double[segment.totalLength];
+		else if (values.length != segment.totalLength)
+			values = Arrays.copyOf(values, segment.totalLength);
+		int count = Math.min(segment.values.length, segment.totalLength - segment.start);
+		if (count > 0)
+			System.arraycopy(segment.values, 0, values, segment.start, count);
+		measure.setValues(values);
+	}
+
+	private void appendToManifest(String directory, String segmentName) throws IOException {
+		Path manifestPath = Paths.get(directory, MANIFEST_FILENAME);
+		boolean exists = Files.exists(manifestPath);
+		try (FileWriter writer = new FileWriter(manifestPath.toFile(), true)) {
+			if (!exists) {
+				writer.write("#" + MANIFEST_SEPARATOR + "MANIFEST" + MANIFEST_SEPARATOR + "multiSPOTS96 measures segments\n");
+				writer.write(ID_BASE + MANIFEST_SEPARATOR + baseLength + MANIFEST_SEPARATOR + baseLastModified + "\n");
+			}
+			writer.write(ID_SEGMENT + MANIFEST_SEPARATOR + segmentName + "\n");
+		}
+	}
+
+	private static long[] readManifestBaseStamp(String directory) {
+		for (String[] data : readManifest(directory)) {
+			if (data.length >= 3 && data[0].equals(ID_BASE)) {
+				try {
+					return new long[] { Long.parseLong(data[1]), Long.parseLong(data[2]) };
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static List<String> readManifestSegments(String directory) {
+		if (directory == null || !Files.exists(Paths.get(directory, MANIFEST_FILENAME)))
+			return null;
+		List<String> segmentNames = new ArrayList<>();
+		for (String[] data : readManifest(directory)) {
+			if (data.length >= 2 && data[0].equals(ID_SEGMENT))
+				segmentNames.add(data[1]);
+		}
+		return segmentNames;
+	}
+
+	private static List<String[]> readManifest(String directory) {
+		List<String[]> lines = new ArrayList<>();
+		Path manifestPath = Paths.get(directory, MANIFEST_FILENAME);
+		if (!Files.exists(manifestPath))
+			return lines;
+		try (BufferedReader reader = new BufferedReader(new FileReader(manifestPath.toFile()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.charAt(0) == '#')
+					continue;
+				lines.add(line.split(MANIFEST_SEPARATOR));
+			}
+		} catch (IOException e) {
+			System.err.println("Error reading measures manifest: " + e.getMessage());
+		}
+		return lines;
+	}
+
+	private static void writeSegment(Path path, List<Segment> segments) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(path.toFile()), 1 << 16))) {
+			out.writeInt(SEGMENT_MAGIC);
+			out.writeInt(SEGMENT_VERSION);
+			out.writeInt(segments.size());
+			for (Segment segment : segments) {
+				out.writeUTF(segment.spotName);
+				out.writeUTF(segment.measureType.toString());
+				out.writeInt(segment.totalLength);
+				out.writeInt(segment.start);
+				out.writeInt(segment.values.length);
+				for (double value : segment.values)
+					out.writeDouble(value);
+			}
+		}
+	}
+
+	private static List<Segment> readSegment(Path path) throws IOException {
+		List<Segment> segments = new ArrayList<>();
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(path.toFile()), 1 << 16))) {
+			if (in.readInt() != SEGMENT_MAGIC || in.readInt() != SEGMENT_VERSION)
+				throw new IOException("unknown segment format");
+			int nsegments = in.readInt();
+			for (int i = 0; i < nsegments; i++) {
+				String spotName = in.readUTF();
+				EnumSpotMeasures measureType = EnumSpotMeasures.findByText(in.readUTF());
+				int totalLength = in.readInt();
+				int start = in.readInt();
+				double[] values = new double[in.readInt()];
+				for (int j = 0; j < values.length; j++)
+					values[j] = in.readDouble();
+				segments.add(new Segment(spotName, measureType, totalLength, start, values));
+			}
+		}
+		return segments;
+	}
+
+	// === INNER CLASSES ===
+
+	private static class Segment {
+		final String spotName;
+		final EnumSpotMeasures measureType;
+		final int totalLength;
+		final int start;
+		final double[] values;
+
+		Segment(String spotName, EnumSpotMeasures measureType, int totalLength, int start, double[] values) {
+			this.spotName = spotName;
+			this.measureType = measureType;
+			this.totalLength = totalLength;
+			this.start = start;
+			this.values = values;
+		}
+	}
+
+	private static class SpotFingerprint {
+		final MeasureFingerprint[] measures = new MeasureFingerprint[SAVED_MEASURES.length];
+	}
+
+	/**
+	 * Hashes of the values of a measure as stored on disk, one per chunk of
+	 * {@value #CHUNK_SIZE} values, used to find the first modified chunk. A
+	 * modified chunk goes unnoticed only if its 64-bit hash collides with the
+	 * recorded one.
+	 */
+	private static class MeasureFingerprint {
+		final int length;
+		final long[] chunkHashes;
+
+		MeasureFingerprint(double[] values) {
+			length = values == null ? 0 : values.length;
+			chunkHashes = new long[(length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+			for (int c = 0; c < chunkHashes.length; c++) {
+				int from = c * CHUNK_SIZE;
+				chunkHashes[c] = hashChunk(values, from, Math.min(length, from + CHUNK_SIZE));
+			}
+		}
+
+		/**
+		 * @return the first index of the first chunk that differs from the
+		 *         recorded state, the recorded length if values were only
+		 *         appended, or -1 if the values are unchanged
+		 */
+		int getFirstChangedIndex(double[] current) {
+			int n = Math.min(length, current.length);
+			for (int c = 0; c < chunkHashes.length; c++) {
+				int from = c * CHUNK_SIZE;
+				int to = Math.min(length, from + CHUNK_SIZE);
+				if (to > current.length || hashChunk(current, from, to) != chunkHashes[c])
+					return from;
+			}
+			return current.length != length ? n : -1;
+		}
+
+		// hashed as stored: NaN equals NaN, 0.0 differs from -0.0; the order of
+		// the values changes the hash
+		private static long hashChunk(double[] values, int from, int to) {
+			long hash = 0x9E3779B97F4A7C15L + (to - from);
+			for (int i = from; i < to; i++) {
+				hash = (hash ^ Double.doubleToLongBits(values[i])) * 0xFF51AFD7ED558CCDL;
+				hash ^= hash >>> 33;
+			}
+			return hash;
+		}
+	}
+}
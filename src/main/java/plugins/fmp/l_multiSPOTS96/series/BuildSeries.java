@@ -20,8 +20,10 @@ import icy.image.IcyBufferedImage;
 import icy.sequence.Sequence;
 import icy.system.thread.Processor;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentPinScope;
 import plugins.fmp.l_multiSPOTS96.tools.ViewerFMP;
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.JComboBoxExperimentLazy;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.kernel.roi.roi2d.ROI2DRectangle;
 
 public abstract class BuildSeries extends SwingWorker<Integer, Integer> {
@@ -52,11 +54,13 @@ public abstract class BuildSeries extends SwingWorker<Integer, Integer> {
 			if (stopFlag)
 				break;
 			long startTimeInNs = System.nanoTime();
-			Experiment exp = expList.getItemAt(index);
 			progress.setMessage("Processing file: " + (index + 1) + "//" + (expList.index1 + 1));
 //			System.out.println("BuildSeries:doInBackground " + (index + 1) + ": " + exp.getResultsDirectory());
 
-			analyzeExperiment(exp);
+			try (ExperimentPinScope pins = new ExperimentPinScope()) {
+				Experiment exp = expList.getItemAt(index, pins);
+				analyzeExperiment(exp);
+			}
 			long endTime2InNs = System.nanoTime();
 			System.out.println("BuildSeries:doInBackground process ended - duration: "
 					+ ((endTime2InNs - startTimeInNs) / 1000000000f) + " s");
@@ -64,6 +68,7 @@ public abstract class BuildSeries extends SwingWorker<Integer, Integer> {
 			System.gc();
 		}
 		progress.close();
+		ImageTransformBuffers.release();
 		threadRunning = false;
 
 		selectList(expList, selectedExperimentIndex);
@@ -1,8 +1,10 @@
 package plugins.fmp.l_multiSPOTS96.series;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 
@@ -24,6 +26,7 @@ import plugins.fmp.l_multiSPOTS96.tools.ROI2D.ROI2DWithMask;
 import plugins.fmp.l_multiSPOTS96.tools.ROI2D.ValidationException;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms.Deriche;
 
 /**
  * Advanced optimized version of BuildSpotsMeasures with streaming processing,
@@ -65,6 +68,7 @@ public class BuildSpotsMeasuresAdvanced extends BuildSeries {
 	private ViewerFMP vData = null;
 	private ImageTransformOptions transformOptions01 = null;
 	ImageTransformInterface transformFunctionSpot = null;
+	private List<Rectangle> spotRegions = null; // Bounds of the spots measured
 	ImageTransformOptions transformOptions02 = null;
 	ImageTransformInterface transformFunctionFly = null;
 
@@ -170,6 +174,36 @@ public class BuildSpotsMeasuresAdvanced extends BuildSeries {
 			transformOptions02.copyResultsToThe3planes = false;
 			transformFunctionFly = options.transform02.getFunction();
 		}
+		spotRegions = getSpotRegions(exp);
+	}
+
+	/**
+	 * @return the bounds of the spots measured, or null if a spot has no ROI
+	 */
+	private List<Rectangle> getSpotRegions(Experiment exp) {
+		List<Rectangle> regions = new ArrayList<Rectangle>();
+		for (Cage cage : exp.cagesArray.cagesList) {
+			for (Spot spot : cage.spotsArray.getSpotsList()) {
+				if (!spot.isReadyForAnalysis())
+					continue;
+				if (spot.getRoi() == null)
+					return null;
+				regions.add(spot.getRoi().getBounds());
+			}
+		}
+		return regions;
+	}
+
+	/**
+	 * Transforms an image to measure the spots: the edges are only computed
+	 * around the spots.
+	 */
+	private IcyBufferedImage transformToMeasureSpots(IcyBufferedImage sourceImage,
+			IcyBufferedImage destinationImage) {
+		if (transformFunctionSpot instanceof Deriche && spotRegions != null)
+			return ((Deriche) transformFunctionSpot).transformRegions(sourceImage, destinationImage,
+					transformOptions01, spotRegions, Deriche.DEFAULT_REGION_MARGIN);
+		return transformFunctionSpot.transform(sourceImage, destinationImage, transformOptions01);
 	}
 
 	private boolean measureSpotsAdvanced(Experiment exp) {
@@ -305,6 +339,8 @@ public class BuildSpotsMeasuresAdvanced extends BuildSeries {
 	}
 
 	private void processSingleFrameAdvanced(Experiment exp, int frameIndex, int iiFirst, IcyBufferedImage sourceImage) {
+		IcyBufferedImage pooledMeasureArea = null;
+		IcyBufferedImage pooledDetectFly = null;
 		IcyBufferedImage transformToMeasureArea = null;
 		IcyBufferedImage transformToDetectFly = null;
 		IcyBufferedImageCursor cursorToDetectFly = null;
@@ -320,31 +356,28 @@ public class BuildSpotsMeasuresAdvanced extends BuildSeries {
 
 			// Get transformed images from pool or create new ones
 			if (transformedImagePool != null && memoryPoolEnabled) {
-				transformToMeasureArea = transformedImagePool.getImage();
-				transformToDetectFly = transformedImagePool.getImage();
-
-				if (transformToMeasureArea != null && transformToDetectFly != null) {
-					// Apply transformations to the pooled images
-					// Note: We need to copy the transformed data to the pooled images
-					IcyBufferedImage tempMeasureArea = transformFunctionSpot.getTransformedImage(sourceImage,
-							transformOptions01);
-					IcyBufferedImage tempDetectFly = transformFunctionFly.getTransformedImage(sourceImage,
+				pooledMeasureArea = transformedImagePool.getImage();
+				pooledDetectFly = transformedImagePool.getImage();
+
+				if (pooledMeasureArea != null && pooledDetectFly != null) {
+					// The transforms write into the pooled images when these have the
+					// format of their results, and return a new image otherwise
+					transformToMeasureArea = transformToMeasureSpots(sourceImage, pooledMeasureArea);
+					transformToDetectFly = transformFunctionFly.transform(sourceImage, pooledDetectFly,
 							transformOptions02);
-
-					// Copy data to pooled images
-					copyImageData(tempMeasureArea, transformToMeasureArea);
-					copyImageData(tempDetectFly, transformToDetectFly);
-
-					totalTransformedImagesCreated += 2;
+					if (transformToMeasureArea != pooledMeasureArea)
+						totalTransformedImagesCreated++;
+					if (transformToDetectFly != pooledDetectFly)
+						totalTransformedImagesCreated++;
 				} else {
 					// Fallback to creating new images if pool is empty
-					transformToMeasureArea = transformFunctionSpot.getTransformedImage(sourceImage, transformOptions01);
+					transformToMeasureArea = transformToMeasureSpots(sourceImage, null);
 					transformToDetectFly = transformFunctionFly.getTransformedImage(sourceImage, transformOptions02);
 					totalTransformedImagesCreated += 2;
 				}
 			} else {
 				// Create new images if memory pool is disabled
-				transformToMeasureArea = transformFunctionSpot.getTransformedImage(sourceImage, transformOptions01);
+				transformToMeasureArea = transformToMeasureSpots(sourceImage, null);
 				transformToDetectFly = transformFunctionFly.getTransformedImage(sourceImage, transformOptions02);
 				totalTransformedImagesCreated += 2;
 			}
@@ -382,11 +415,11 @@ public class BuildSpotsMeasuresAdvanced extends BuildSeries {
 		} finally {
 			// Return transformed images to memory pool for reuse
 			if (transformedImagePool != null && memoryPoolEnabled) {
-				if (transformToMeasureArea != null) {
-					transformedImagePool.returnImage(transformToMeasureArea);
+				if (pooledMeasureArea != null) {
+					transformedImagePool.returnImage(pooledMeasureArea);
 				}
-				if (transformToDetectFly != null) {
-					transformedImagePool.returnImage(transformToDetectFly);
+				if (pooledDetectFly != null) {
+					transformedImagePool.returnImage(pooledDetectFly);
 				}
 			}
 
@@ -772,25 +805,5 @@ public class BuildSpotsMeasuresAdvanced extends BuildSeries {
 		}
 	}
 
-	/**
-	 * Copies image data from source to destination image. Both images must have the
-	 * same dimensions and data type.
-	 * 
-	 * @param source      the source image
-	 * @param destination the destination image
-	 */
-	private void copyImageData(IcyBufferedImage source, IcyBufferedImage destination) {
-		if (source == null || destination == null) {
-			return;
-		}
-
-		try {
-			// Copy pixel data from source to destination
-			destination.setDataXY(0, source.getDataXY(0));
-		} catch (Exception e) {
-			System.err.println("Error copying image data: " + e.getMessage());
-		}
-	}
-
 	// === INNER CLASSES REMOVED - NOW EXTERNAL CLASSES ===
 }
\ No newline at end of file
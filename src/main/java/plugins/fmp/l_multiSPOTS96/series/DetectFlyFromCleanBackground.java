@@ -8,6 +8,7 @@ import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageUtil;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEnums;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEngine;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
@@ -57,7 +58,8 @@ public class DetectFlyFromCleanBackground extends BuildSeries {
 			progressBar.setMessage(title);
 
 			IcyBufferedImage workImage = imageIORead(exp.seqCamData.getFileNameFromImageList(t_from));
-			IcyBufferedImage negativeImage = transformFunction.getTransformedImage(workImage, transformOptions);
+			IcyBufferedImage negativeImage = ImageTransformEngine.getTransformedImage(transformFunction, workImage,
+					transformOptions);
 			try {
 				seqNegative.beginUpdate();
 				seqNegative.setImage(0, 0, negativeImage);
@@ -6,6 +6,7 @@ import java.util.List;
 import icy.gui.frame.progress.ProgressFrame;
 import icy.image.IcyBufferedImage;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEngine;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
@@ -73,7 +74,8 @@ public class DetectFlyUsingSimpleThreshold extends BuildSeries {
 
 			IcyBufferedImage sourceImage = imageIORead(exp.seqCamData.getFileNameFromImageList(t_from));
 			getReferenceImage(exp, t_previous, transformOptions);
-			IcyBufferedImage workImage = transformFunction.getTransformedImage(sourceImage, transformOptions);
+			IcyBufferedImage workImage = ImageTransformEngine.getTransformedImage(transformFunction, sourceImage,
+					transformOptions);
 			try {
 				seqNegative.beginUpdate();
 				seqNegative.setImage(0, 0, workImage);
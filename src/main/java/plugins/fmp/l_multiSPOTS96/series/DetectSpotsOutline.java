@@ -3,6 +3,7 @@ package plugins.fmp.l_multiSPOTS96.series;
 import icy.gui.frame.progress.ProgressFrame;
 import icy.image.IcyBufferedImage;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEngine;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
@@ -37,7 +38,8 @@ public class DetectSpotsOutline extends BuildSeries {
 
 		ProgressFrame progressBar = new ProgressFrame("Detecting spots from " + fileName);
 		IcyBufferedImage sourceImage = imageIORead(fileName);
-		IcyBufferedImage workImage = transformFunction.getTransformedImage(sourceImage, transformOptions);
+		IcyBufferedImage workImage = ImageTransformEngine.getTransformedImage(transformFunction, sourceImage,
+				transformOptions);
 
 		seqNegative.setImage(0, 0, workImage);
 		vNegative.setTitle("frame " + t_from);
@@ -22,6 +22,7 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSColumnHeader;
 public class DescriptorIndex {
 
 	private volatile boolean ready = false;
+	private volatile ExperimentCatalog catalog = null;
 
 	private Map<String, ExperimentProperties> propertiesByResultsDir = new HashMap<String, ExperimentProperties>();
 	private EnumMap<EnumXLSColumnHeader, TreeSet<String>> distinctByField = new EnumMap<EnumXLSColumnHeader, TreeSet<String>>(
@@ -60,9 +61,22 @@ public class DescriptorIndex {
 		return ready;
 	}
 
+	/**
+	 * Sets the catalog used to read (and store) the descriptors of each
+	 * experiment without parsing its cages file.
+	 */
+	public void setCatalog(ExperimentCatalog catalog) {
+		this.catalog = catalog;
+	}
+
+	public ExperimentCatalog getCatalog() {
+		return catalog;
+	}
+
 	public void preloadFromCombo(final JComboBoxExperimentLazy combo, final Runnable onDone) {
 		clear();
 		final int nitems = combo.getItemCount();
+		final ExperimentCatalog catalogLocal = catalog;
 		new SwingWorker<Void, Void>() {
 			@Override
 			protected Void doInBackground() throws Exception {
@@ -78,14 +92,37 @@ public class DescriptorIndex {
 					if (exp == null)
 						continue;
 					String resDir = exp.getResultsDirectory();
+					// Catalogued properties are valid as long as the experiment file did not
+					// change, and descriptors as long as the cages file did not change
+					ExperimentCatalog.Entry entry = catalogLocal != null
+							? catalogLocal.getEntryFromResultsDirectory(resDir)
+							: null;
+					if (entry != null && !entry.isExperimentValid())
+						entry = catalogLocal.updateExperiment(entry.getName(), entry.getCameraDirectory(), resDir);
+					if (entry != null && entry.isDescriptorsValid()) {
+						ExperimentProperties props = entry.getProperties();
+						propsLocal.put(resDir, props);
+						updateDistinctLocal(distinctLocal, props);
+						mergeDistinct(distinctLocal, entry.getDescriptors());
+						continue;
+					}
+
+					EnumMap<EnumXLSColumnHeader, TreeSet<String>> expLocal = new EnumMap<EnumXLSColumnHeader, TreeSet<String>>(
+							EnumXLSColumnHeader.class);
+					for (EnumXLSColumnHeader field : distinctByField.keySet())
+						expLocal.put(field, new TreeSet<String>());
+
 					// Prefer new descriptors file if available
 					Map<EnumXLSColumnHeader, List<String>> preDicts = DescriptorsIO.readDescriptors(resDir);
 					if (preDicts != null && !preDicts.isEmpty()) {
 						for (Map.Entry<EnumXLSColumnHeader, List<String>> e : preDicts.entrySet()) {
-							TreeSet<String> set = distinctLocal.get(e.getKey());
+							TreeSet<String> set = expLocal.get(e.getKey());
 							if (set != null)
 								set.addAll(e.getValue());
 						}
+						mergeDistinct(distinctLocal, expLocal);
+						if (entry != null)
+							catalogLocal.updateDescriptors(entry, expLocal);
 						continue;
 					}
 					ExperimentProperties props = null;
@@ -100,26 +137,26 @@ public class DescriptorIndex {
 					if (props == null || resDir == null)
 						continue;
 					propsLocal.put(resDir, props);
-					updateDistinctLocal(distinctLocal, props);
+					updateDistinctLocal(expLocal, props);
 
 					// Load cage and spot descriptors (no image I/O) and aggregate distincts
 					try {
 						exp.load_MS96_cages();
 						if (exp.cagesArray != null && exp.cagesArray.cagesList != null) {
 							for (Cage cage : exp.cagesArray.cagesList) {
-								addIfNotEmpty(distinctLocal.get(EnumXLSColumnHeader.CAGE_SEX),
+								addIfNotEmpty(expLocal.get(EnumXLSColumnHeader.CAGE_SEX),
 										cage.getField(EnumXLSColumnHeader.CAGE_SEX));
-								addIfNotEmpty(distinctLocal.get(EnumXLSColumnHeader.CAGE_STRAIN),
+								addIfNotEmpty(expLocal.get(EnumXLSColumnHeader.CAGE_STRAIN),
 										cage.getField(EnumXLSColumnHeader.CAGE_STRAIN));
-								addIfNotEmpty(distinctLocal.get(EnumXLSColumnHeader.CAGE_AGE),
+								addIfNotEmpty(expLocal.get(EnumXLSColumnHeader.CAGE_AGE),
 										cage.getField(EnumXLSColumnHeader.CAGE_AGE));
 								if (cage.spotsArray != null && cage.spotsArray.getSpotsList() != null) {
 									for (Spot spot : cage.spotsArray.getSpotsList()) {
-										addIfNotEmpty(distinctLocal.get(EnumXLSColumnHeader.SPOT_STIM),
+										addIfNotEmpty(expLocal.get(EnumXLSColumnHeader.SPOT_STIM),
 												spot.getField(EnumXLSColumnHeader.SPOT_STIM));
-										addIfNotEmpty(distinctLocal.get(EnumXLSColumnHeader.SPOT_CONC),
+										addIfNotEmpty(expLocal.get(EnumXLSColumnHeader.SPOT_CONC),
 												spot.getField(EnumXLSColumnHeader.SPOT_CONC));
-										addIfNotEmpty(distinctLocal.get(EnumXLSColumnHeader.SPOT_VOLUME),
+										addIfNotEmpty(expLocal.get(EnumXLSColumnHeader.SPOT_VOLUME),
 												spot.getField(EnumXLSColumnHeader.SPOT_VOLUME));
 									}
 								}
@@ -128,7 +165,12 @@ public class DescriptorIndex {
 					} catch (Exception ex) {
 						// Ignore malformed per-experiment cage files
 					}
+					mergeDistinct(distinctLocal, expLocal);
+					if (entry != null)
+						catalogLocal.updateDescriptors(entry, expLocal);
 				}
+				if (catalogLocal != null)
+					catalogLocal.save();
 
 				// Publish
 				propertiesByResultsDir.clear();
@@ -171,6 +213,15 @@ public class DescriptorIndex {
 				props.getExperimentField(EnumXLSColumnHeader.EXP_CONC2));
 	}
 
+	private void mergeDistinct(EnumMap<EnumXLSColumnHeader, TreeSet<String>> distinctLocal,
+			Map<EnumXLSColumnHeader, TreeSet<String>> values) {
+		for (Map.Entry<EnumXLSColumnHeader, TreeSet<String>> e : values.entrySet()) {
+			TreeSet<String> set = distinctLocal.get(e.getKey());
+			if (set != null)
+				set.addAll(e.getValue());
+		}
+	}
+
 	private void addIfNotEmpty(Set<String> set, String value) {
 		if (value != null && !value.isEmpty())
 			set.add(value);
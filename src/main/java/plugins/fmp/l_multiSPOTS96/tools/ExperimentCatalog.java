@@ -0,0 +1,739 @@
+package plugins.fmp.l_multiSPOTS96.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.w3c.dom.Element;
+
+import icy.util.XMLUtil;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentProperties;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSColumnHeader;
+
+/**
+ * Persistent catalog of the experiments found under a root directory.
+ *
+ * <p>
+ * For each experiment the catalog keeps the camera and results directories,
+ * the experiment properties, the frame count and time range read from
+ * MS96_experiment.xml, and the distinct cage/spot descriptor values found in
+ * MS96_cages.xml. It also keeps the directory tree under the root: for each
+ * directory its last-modified time, its subdirectories and the names of its
+ * files other than images. Everything is stored in one small binary file
+ * ({@value #CATALOG_FILENAME}) in the root directory selected for the search.
+ * </p>
+ *
+ * <p>
+ * Searching the root again only stamps each directory: a directory whose
+ * last-modified time did not change is not listed again, and only the
+ * directories that changed (files or subdirectories added, removed or
+ * renamed) and the new subtrees are read. Each part of an experiment entry is
+ * validated against the last-modified time and length of the file it was read
+ * from; only stale parts are read again, and the catalog is rewritten only
+ * when something changed.
+ * </p>
+ *
+ * <p>
+ * A catalog opened without a root directory is kept in memory only.
+ * Experiments outside the root directory are catalogued for the session but
+ * are not stored.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class ExperimentCatalog {
+
+	private static final Logger LOGGER = Logger.getLogger(ExperimentCatalog.class.getName());
+
+	// === CONSTANTS ===
+	public static final String CATALOG_FILENAME = "MS96_catalog.dat";
+	private static final int MAGIC = 0x4D534341; // "MSCA"
+	private static final int VERSION = 3;
+	private static final int BUFFER_SIZE = 1 << 16;
+	// a directory changed within this delay of its listing is listed again next
+	// time, as file systems may stamp it with a coarse resolution
+	private static final long MODIFIED_MARGIN_MS = 2000;
+	// image files are neither stored nor searched through the directory tree
+	private static final Set<String> IMAGE_EXTENSIONS = new HashSet<String>(
+			Arrays.asList("jpg", "jpeg", "tif", "tiff", "png", "bmp", "avi"));
+
+	private static final String ID_MS96_experiment_XML = "MS96_experiment.xml";
+	private static final String ID_MS96_cages_XML = "MS96_cages.xml";
+	private static final String ID_MCEXPERIMENT = "MCexperiment";
+	private static final String ID_FRAMEFIRST = "indexFrameFirst";
+	private static final String ID_NFRAMES = "nFrames";
+	private static final String ID_FRAMEDELTA = "indexFrameDelta";
+	private static final String ID_TIMEFIRSTIMAGEMS = "fileTimeImageFirstMs";
+	private static final String ID_TIMELASTIMAGEMS = "fileTimeImageLastMs";
+	private static final String ID_FIRSTKYMOCOLMS = "firstKymoColMs";
+	private static final String ID_LASTKYMOCOLMS = "lastKymoColMs";
+	private static final String ID_BINKYMOCOLMS = "binKymoColMs";
+
+	// descriptors read from MS96_experiment.xml: not stored with the cage ones
+	private static final EnumSet<EnumXLSColumnHeader> EXPERIMENT_FIELDS = EnumSet.of(EnumXLSColumnHeader.EXP_EXPT,
+			EnumXLSColumnHeader.BOX_ID, EnumXLSColumnHeader.EXP_STIM1, EnumXLSColumnHeader.EXP_CONC1,
+			EnumXLSColumnHeader.EXP_STRAIN, EnumXLSColumnHeader.EXP_SEX, EnumXLSColumnHeader.EXP_STIM2,
+			EnumXLSColumnHeader.EXP_CONC2);
+
+	// === FIELDS ===
+	private final Path rootDirectory;
+	private final Map<String, Entry> entriesByName = new LinkedHashMap<String, Entry>();
+	private final Map<String, Entry> entriesByResultsDirectory = new HashMap<String, Entry>();
+	private final Map<String, DirectoryEntry> directories = new HashMap<String, DirectoryEntry>();
+	private boolean dirty = false;
+
+	private ExperimentCatalog(Path rootDirectory) {
+		this.rootDirectory = rootDirectory;
+	}
+
+	/**
+	 * Opens the catalog of a root directory. A missing or unreadable catalog
+	 * file gives an empty catalog, filled as the directories and experiments are
+	 * scanned.
+	 *
+	 * @param rootDirectory the directory where the catalog is stored, or null
+	 *                      for a catalog kept in memory
+	 */
+	public static ExperimentCatalog open(String rootDirectory) {
+		if (rootDirectory == null)
+			return new ExperimentCatalog(null);
+		ExperimentCatalog catalog = new ExperimentCatalog(Paths.get(rootDirectory).toAbsolutePath().normalize());
+		catalog.read();
+		catalog.dirty = false;
+		return catalog;
+	}
+
+	public String getRootDirectory() {
+		return rootDirectory == null ? null : rootDirectory.toString();
+	}
+
+	public String getCatalogFileName() {
+		return rootDirectory == null ? null : rootDirectory.resolve(CATALOG_FILENAME).toString();
+	}
+
+	public synchronized int size() {
+		return entriesByName.size();
+	}
+
+	private boolean isUnderRoot(String name) {
+		return rootDirectory != null && name != null
+				&& Paths.get(name).toAbsolutePath().normalize().startsWith(rootDirectory);
+	}
+
+	// === LOOKUP ===
+
+	/**
+	 * Returns the entry of an experiment if its MS96_experiment.xml did not
+	 * change since it was catalogued, or null.
+	 */
+	public synchronized Entry getValidEntry(String name) {
+		Entry entry = entriesByName.get(name);
+		if (entry == null || !entry.isExperimentValid())
+			return null;
+		return entry;
+	}
+
+	public synchronized Entry getEntryFromResultsDirectory(String resultsDirectory) {
+		if (resultsDirectory == null)
+			return null;
+		return entriesByResultsDirectory.get(resultsDirectory);
+	}
+
+	// === SEARCH ===
+
+	/**
+	 * Returns the files under a directory whose name contains a pattern, like
+	 * walking the whole tree, but listing only the directories that changed
+	 * since they were catalogued. Image files are only found by a pattern naming
+	 * an image extension, which walks the tree without the catalog.
+	 */
+	public List<Path> findFiles(String directory, String pattern) {
+		if (isImagePattern(pattern))
+			return walkFileSystem(directory, pattern);
+		return find(directory, pattern, false);
+	}
+
+	/**
+	 * Returns the directories under a directory (itself included) whose name
+	 * contains a pattern, listing only the directories that changed since they
+	 * were catalogued.
+	 */
+	public List<Path> findDirectories(String directory, String pattern) {
+		return find(directory, pattern, true);
+	}
+
+	private synchronized List<Path> find(String directory, String pattern, boolean matchDirectories) {
+		List<Path> result = new ArrayList<Path>();
+		Set<String> visited = new HashSet<String>();
+		Path start = Paths.get(directory).toAbsolutePath().normalize();
+		Deque<Path> stack = new ArrayDeque<Path>();
+		stack.push(start);
+		while (!stack.isEmpty()) {
+			Path path = stack.pop();
+			visited.add(path.toString());
+			DirectoryEntry entry = getDirectoryEntry(path);
+			if (entry == null)
+				continue;
+			if (matchDirectories) {
+				Path fileName = path.getFileName();
+				if (fileName != null && fileName.toString().contains(pattern))
+					result.add(path);
+			} else {
+				for (String file : entry.files) {
+					if (file.contains(pattern))
+						result.add(path.resolve(file));
+				}
+			}
+			// depth first, in name order
+			for (int i = entry.subdirectories.length - 1; i >= 0; i--)
+				stack.push(path.resolve(entry.subdirectories[i]));
+		}
+		// directories removed since the last search of the root are dropped
+		if (start.equals(rootDirectory) && directories.keySet().retainAll(visited))
+			dirty = true;
+		return result;
+	}
+
+	private DirectoryEntry getDirectoryEntry(Path path) {
+		String key = path.toString();
+		long modified = path.toFile().lastModified();
+		DirectoryEntry entry = directories.get(key);
+		if (modified == 0) {
+			if (directories.remove(key) != null)
+				dirty = true;
+			return null;
+		}
+		if (entry != null && entry.modified == modified)
+			return entry;
+
+		DirectoryEntry listed = listDirectory(path, modified);
+		if (listed == null)
+			return null;
+		directories.put(key, listed);
+		// a new stamp alone (images added, this catalog written) does not need
+		// the catalog to be written again
+		if (entry == null || !listed.hasSameNames(entry))
+			dirty = true;
+		return listed;
+	}
+
+	private static DirectoryEntry listDirectory(Path path, long modified) {
+		List<String> subdirectories = new ArrayList<String>();
+		List<String> files = new ArrayList<String>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+			for (Path child : stream) {
+				String name = child.getFileName().toString();
+				// images are skipped without reading their attributes
+				if (isImageFileName(name) || name.startsWith(CATALOG_FILENAME))
+					continue;
+				if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+					subdirectories.add(name);
+				else if (Files.isRegularFile(child))
+					files.add(name);
+			}
+		} catch (IOException | DirectoryIteratorException e) {
+			LOGGER.warning("Could not list directory " + path + ": " + e.getMessage());
+			return null;
+		}
+		Collections.sort(subdirectories);
+		Collections.sort(files);
+		if (System.currentTimeMillis() - modified < MODIFIED_MARGIN_MS)
+			modified = -1;
+		return new DirectoryEntry(modified, subdirectories.toArray(new String[subdirectories.size()]),
+				files.toArray(new String[files.size()]));
+	}
+
+	private static List<Path> walkFileSystem(String directory, String pattern) {
+		try (Stream<Path> walk = Files.walk(Paths.get(directory))) {
+			return walk.filter(Files::isRegularFile).filter(p -> p.getFileName().toString().contains(pattern))
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			LOGGER.warning("Could not search directory " + directory + ": " + e.getMessage());
+			return new ArrayList<Path>();
+		}
+	}
+
+	private static boolean isImageFileName(String name) {
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+	}
+
+	private static boolean isImagePattern(String pattern) {
+		String lowerCase = pattern.toLowerCase();
+		for (String extension : IMAGE_EXTENSIONS) {
+			if (lowerCase.contains(extension) || ("." + extension).contains(lowerCase))
+				return true;
+		}
+		return false;
+	}
+
+	// === UPDATE ===
+
+	/**
+	 * Reads the experiment description of an experiment (properties, frames,
+	 * time range) and stores it in the catalog. The descriptors read from the
+	 * cages are kept if MS96_cages.xml did not change.
+	 *
+	 * @return the entry, or null if MS96_experiment.xml could not be read
+	 */
+	public Entry updateExperiment(String name, String cameraDirectory, String resultsDirectory) {
+		Entry entry = new Entry(name, cameraDirectory, resultsDirectory);
+		if (!entry.readExperimentFile())
+			return null;
+		synchronized (this) {
+			Entry previous = entriesByName.get(name);
+			if (previous != null && previous.isDescriptorsValid()) {
+				entry.cagesFileTime = previous.cagesFileTime;
+				entry.cagesFileLength = previous.cagesFileLength;
+				entry.descriptors.putAll(previous.descriptors);
+			}
+			putEntry(entry);
+		}
+		return entry;
+	}
+
+	/**
+	 * Stores the distinct cage and spot descriptor values of an experiment,
+	 * stamped with the current state of its MS96_cages.xml. Experiment-level
+	 * values are ignored: they are kept with the properties.
+	 */
+	public synchronized void updateDescriptors(Entry entry, Map<EnumXLSColumnHeader, ? extends Set<String>> values) {
+		entry.descriptors.clear();
+		for (Map.Entry<EnumXLSColumnHeader, ? extends Set<String>> e : values.entrySet()) {
+			if (EXPERIMENT_FIELDS.contains(e.getKey()))
+				continue;
+			if (e.getValue() != null && !e.getValue().isEmpty())
+				entry.descriptors.put(e.getKey(), new TreeSet<String>(e.getValue()));
+		}
+		File cagesFile = new File(entry.resultsDirectory, ID_MS96_cages_XML);
+		entry.cagesFileTime = cagesFile.lastModified();
+		entry.cagesFileLength = cagesFile.length();
+		setDirty(entry);
+	}
+
+	private void putEntry(Entry entry) {
+		Entry previous = entriesByName.put(entry.name, entry);
+		if (previous != null && previous.resultsDirectory != null)
+			entriesByResultsDirectory.remove(previous.resultsDirectory);
+		if (entry.resultsDirectory != null)
+			entriesByResultsDirectory.put(entry.resultsDirectory, entry);
+		setDirty(entry);
+	}
+
+	private void setDirty(Entry entry) {
+		if (isUnderRoot(entry.name))
+			dirty = true;
+	}
+
+	// === FILE I/O ===
+
+	/**
+	 * Writes the catalog file if something changed since it was read. The file
+	 * is written to a temporary file first and then moved over the previous one.
+	 */
+	public synchronized boolean save() {
+		if (rootDirectory == null || !dirty)
+			return true;
+		if (!write())
+			return false;
+		dirty = false;
+		return true;
+	}
+
+	private boolean write() {
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Entry entry : entriesByName.values()) {
+			if (isUnderRoot(entry.name))
+				entries.add(entry);
+		}
+		Map<String, DirectoryEntry> tree = new HashMap<String, DirectoryEntry>();
+		for (Map.Entry<String, DirectoryEntry> e : directories.entrySet()) {
+			if (isUnderRoot(e.getKey()))
+				tree.put(e.getKey(), e.getValue());
+		}
+		Path target = rootDirectory.resolve(CATALOG_FILENAME);
+		Path temp = rootDirectory.resolve(CATALOG_FILENAME + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temp.toFile()), BUFFER_SIZE))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(rootDirectory.toString());
+			out.writeInt(entries.size());
+			for (Entry entry : entries)
+				entry.write(out);
+			out.writeInt(tree.size());
+			for (Map.Entry<String, DirectoryEntry> e : tree.entrySet()) {
+				out.writeUTF(e.getKey());
+				e.getValue().write(out);
+			}
+		} catch (IOException e) {
+			LOGGER.warning("Could not write experiment catalog " + target + ": " + e.getMessage());
+			return false;
+		}
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			LOGGER.warning("Could not replace experiment catalog " + target + ": " + e.getMessage());
+			return false;
+		}
+		return true;
+	}
+
+	private void read() {
+		File file = rootDirectory.resolve(CATALOG_FILENAME).toFile();
+		if (!file.exists())
+			return;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				LOGGER.info("Ignoring experiment catalog with unknown format: " + file);
+				return;
+			}
+			// a catalog copied or moved with its directory does not match its paths
+			if (!rootDirectory.toString().equals(in.readUTF())) {
+				LOGGER.info("Ignoring experiment catalog of another directory: " + file);
+				return;
+			}
+			int nentries = in.readInt();
+			List<Entry> entries = new ArrayList<Entry>(nentries);
+			for (int i = 0; i < nentries; i++)
+				entries.add(Entry.read(in));
+			int ndirectories = in.readInt();
+			Map<String, DirectoryEntry> tree = new HashMap<String, DirectoryEntry>(ndirectories * 2);
+			for (int i = 0; i < ndirectories; i++)
+				tree.put(in.readUTF(), DirectoryEntry.read(in));
+
+			for (Entry entry : entries)
+				putEntry(entry);
+			directories.putAll(tree);
+		} catch (IOException e) {
+			LOGGER.warning("Could not read experiment catalog " + file + ": " + e.getMessage());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null)
+			out.writeUTF(value);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	// === DIRECTORY ===
+
+	/**
+	 * What the catalog knows about one directory: its subdirectories and the
+	 * files other than images, as listed when it had this last-modified time.
+	 */
+	private static class DirectoryEntry {
+		private final long modified;
+		private final String[] subdirectories;
+		private final String[] files;
+
+		DirectoryEntry(long modified, String[] subdirectories, String[] files) {
+			this.modified = modified;
+			this.subdirectories = subdirectories;
+			this.files = files;
+		}
+
+		private boolean hasSameNames(DirectoryEntry other) {
+			return Arrays.equals(subdirectories, other.subdirectories) && Arrays.equals(files, other.files);
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeLong(modified);
+			writeNames(out, subdirectories);
+			writeNames(out, files);
+		}
+
+		private static DirectoryEntry read(DataInputStream in) throws IOException {
+			long modified = in.readLong();
+			String[] subdirectories = readNames(in);
+			return new DirectoryEntry(modified, subdirectories, readNames(in));
+		}
+
+		private static void writeNames(DataOutputStream out, String[] names) throws IOException {
+			out.writeInt(names.length);
+			for (String name : names)
+				out.writeUTF(name);
+		}
+
+		private static String[] readNames(DataInputStream in) throws IOException {
+			String[] names = new String[in.readInt()];
+			for (int i = 0; i < names.length; i++)
+				names[i] = in.readUTF();
+			return names;
+		}
+	}
+
+	// === ENTRY ===
+
+	/**
+	 * What the catalog knows about one experiment.
+	 */
+	public static class Entry {
+		private final String name;
+		private final String cameraDirectory;
+		private final String resultsDirectory;
+
+		private long experimentFileTime = 0;
+		private long experimentFileLength = -1;
+		private long cagesFileTime = 0;
+		private long cagesFileLength = -1;
+
+		private final ExperimentProperties properties = new ExperimentProperties();
+		private long indexFrameFirst = 0;
+		private long nFrames = 0;
+		private long indexFrameDelta = 1;
+		private long firstImageMs = 0;
+		private long lastImageMs = 0;
+		private long binFirstMs = -1;
+		private long binLastMs = -1;
+		private long binDurationMs = -1;
+
+		private final EnumMap<EnumXLSColumnHeader, TreeSet<String>> descriptors = new EnumMap<EnumXLSColumnHeader, TreeSet<String>>(
+				EnumXLSColumnHeader.class);
+
+		Entry(String name, String cameraDirectory, String resultsDirectory) {
+			this.name = name;
+			this.cameraDirectory = cameraDirectory;
+			this.resultsDirectory = resultsDirectory;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getCameraDirectory() {
+			return cameraDirectory;
+		}
+
+		public String getResultsDirectory() {
+			return resultsDirectory;
+		}
+
+		/**
+		 * Returns a copy of the properties, so that editing an experiment does not
+		 * change the catalog.
+		 */
+		public ExperimentProperties getProperties() {
+			ExperimentProperties copy = new ExperimentProperties();
+			copy.copyExperimentFieldsFrom(properties);
+			copy.field_comment1 = properties.field_comment1;
+			copy.field_comment2 = properties.field_comment2;
+			return copy;
+		}
+
+		public long getIndexFrameFirst() {
+			return indexFrameFirst;
+		}
+
+		public long getNFrames() {
+			return nFrames;
+		}
+
+		public long getIndexFrameDelta() {
+			return indexFrameDelta;
+		}
+
+		public long getFirstImageMs() {
+			return firstImageMs;
+		}
+
+		public long getLastImageMs() {
+			return lastImageMs;
+		}
+
+		public long getBinFirstMs() {
+			return binFirstMs;
+		}
+
+		public long getBinLastMs() {
+			return binLastMs;
+		}
+
+		public long getBinDurationMs() {
+			return binDurationMs;
+		}
+
+		public Map<EnumXLSColumnHeader, TreeSet<String>> getDescriptors() {
+			return descriptors;
+		}
+
+		public boolean isExperimentValid() {
+			File file = new File(resultsDirectory, ID_MS96_experiment_XML);
+			return file.lastModified() == experimentFileTime && file.length() == experimentFileLength;
+		}
+
+		/**
+		 * True if the descriptors were collected from the current MS96_cages.xml.
+		 */
+		public boolean isDescriptorsValid() {
+			if (cagesFileLength < 0)
+				return false;
+			File file = new File(resultsDirectory, ID_MS96_cages_XML);
+			return file.lastModified() == cagesFileTime && file.length() == cagesFileLength;
+		}
+
+		private boolean readExperimentFile() {
+			if (resultsDirectory == null)
+				return false;
+			File file = new File(resultsDirectory, ID_MS96_experiment_XML);
+			long fileTime = file.lastModified();
+			long fileLength = file.length();
+			if (fileTime == 0)
+				return false;
+			try {
+				Element node = XMLStreamUtil.readRootChildElement(file.getPath(), ID_MCEXPERIMENT);
+				if (node == null)
+					return false;
+				properties.loadXML_Properties(node);
+				indexFrameFirst = Math.max(0, XMLUtil.getElementLongValue(node, ID_FRAMEFIRST, 0));
+				nFrames = XMLUtil.getElementLongValue(node, ID_NFRAMES, -1);
+				indexFrameDelta = XMLUtil.getElementLongValue(node, ID_FRAMEDELTA, 1);
+				firstImageMs = XMLUtil.getElementLongValue(node, ID_TIMEFIRSTIMAGEMS, 0);
+				lastImageMs = XMLUtil.getElementLongValue(node, ID_TIMELASTIMAGEMS, 0);
+				binFirstMs = XMLUtil.getElementLongValue(node, ID_FIRSTKYMOCOLMS, -1);
+				binLastMs = XMLUtil.getElementLongValue(node, ID_LASTKYMOCOLMS, -1);
+				binDurationMs = XMLUtil.getElementLongValue(node, ID_BINKYMOCOLMS, -1);
+			} catch (Exception e) {
+				LOGGER.warning("Could not catalog " + file + ": " + e.getMessage());
+				return false;
+			}
+			experimentFileTime = fileTime;
+			experimentFileLength = fileLength;
+			return true;
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			writeString(out, name);
+			writeString(out, cameraDirectory);
+			writeString(out, resultsDirectory);
+			out.writeLong(experimentFileTime);
+			out.writeLong(experimentFileLength);
+			out.writeLong(cagesFileTime);
+			out.writeLong(cagesFileLength);
+
+			List<String> fields = getPropertiesFields();
+			out.writeShort(fields.size());
+			for (String field : fields)
+				writeString(out, field);
+			out.writeLong(indexFrameFirst);
+			out.writeLong(nFrames);
+			out.writeLong(indexFrameDelta);
+			out.writeLong(firstImageMs);
+			out.writeLong(lastImageMs);
+			out.writeLong(binFirstMs);
+			out.writeLong(binLastMs);
+			out.writeLong(binDurationMs);
+
+			out.writeShort(descriptors.size());
+			for (Map.Entry<EnumXLSColumnHeader, TreeSet<String>> e : descriptors.entrySet()) {
+				out.writeUTF(e.getKey().name());
+				out.writeInt(e.getValue().size());
+				for (String value : e.getValue())
+					writeString(out, value);
+			}
+		}
+
+		private static Entry read(DataInputStream in) throws IOException {
+			Entry entry = new Entry(readString(in), readString(in), readString(in));
+			entry.experimentFileTime = in.readLong();
+			entry.experimentFileLength = in.readLong();
+			entry.cagesFileTime = in.readLong();
+			entry.cagesFileLength = in.readLong();
+
+			int nfields = in.readShort();
+			List<String> fields = new ArrayList<String>(nfields);
+			for (int i = 0; i < nfields; i++)
+				fields.add(readString(in));
+			entry.setPropertiesFields(fields);
+			entry.indexFrameFirst = in.readLong();
+			entry.nFrames = in.readLong();
+			entry.indexFrameDelta = in.readLong();
+			entry.firstImageMs = in.readLong();
+			entry.lastImageMs = in.readLong();
+			entry.binFirstMs = in.readLong();
+			entry.binLastMs = in.readLong();
+			entry.binDurationMs = in.readLong();
+
+			int ndescriptors = in.readShort();
+			for (int i = 0; i < ndescriptors; i++) {
+				String fieldName = in.readUTF();
+				int nvalues = in.readInt();
+				TreeSet<String> values = new TreeSet<String>();
+				for (int j = 0; j < nvalues; j++)
+					values.add(readString(in));
+				try {
+					entry.descriptors.put(EnumXLSColumnHeader.valueOf(fieldName), values);
+				} catch (IllegalArgumentException e) {
+					// descriptor written by another version: ignore it
+				}
+			}
+			return entry;
+		}
+
+		// same order as ExperimentProperties.csvExportExperimentProperties
+		private List<String> getPropertiesFields() {
+			List<String> fields = new ArrayList<String>(10);
+			fields.add(properties.ffield_boxID);
+			fields.add(properties.ffield_experiment);
+			fields.add(properties.field_stim1);
+			fields.add(properties.field_conc1);
+			fields.add(properties.field_comment1);
+			fields.add(properties.field_comment2);
+			fields.add(properties.field_strain);
+			fields.add(properties.field_sex);
+			fields.add(properties.field_stim2);
+			fields.add(properties.field_conc2);
+			return fields;
+		}
+
+		private void setPropertiesFields(List<String> fields) {
+			if (fields.size() < 10)
+				return;
+			properties.ffield_boxID = fields.get(0);
+			properties.ffield_experiment = fields.get(1);
+			properties.field_stim1 = fields.get(2);
+			properties.field_conc1 = fields.get(3);
+			properties.field_comment1 = fields.get(4);
+			properties.field_comment2 = fields.get(5);
+			properties.field_strain = fields.get(6);
+			properties.field_sex = fields.get(7);
+			properties.field_stim2 = fields.get(8);
+			properties.field_conc2 = fields.get(9);
+		}
+	}
+}
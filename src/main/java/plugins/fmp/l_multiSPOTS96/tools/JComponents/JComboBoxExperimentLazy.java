@@ -3,16 +3,14 @@ package plugins.fmp.l_multiSPOTS96.tools.JComponents;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.logging.Logger;
 
 import javax.swing.JComboBox;
 
-import icy.gui.frame.progress.ProgressFrame;
-import icy.system.SystemUtil;
-import icy.system.thread.Processor;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentCache;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentLoader;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentPinScope;
 import plugins.fmp.l_multiSPOTS96.experiment.LazyExperiment;
 import plugins.fmp.l_multiSPOTS96.experiment.LazyExperiment.ExperimentMetadata;
 import plugins.fmp.l_multiSPOTS96.tools.Comparators;
@@ -54,6 +52,12 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 	// Metadata storage for lazy loading
 	private List<ExperimentMetadata> experimentMetadataList = new ArrayList<>();
 
+	// Parallel loading of the experiments of the list
+	private final ExperimentLoader experimentLoader = new ExperimentLoader();
+
+	// the selected experiment is kept in memory until another one is selected
+	private final ExperimentPinScope selectionPins = new ExperimentPinScope();
+
 	public JComboBoxExperimentLazy() {
 	}
 
@@ -62,6 +66,7 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 		super.removeAllItems();
 		stringExpBinSubDirectory = null;
 		experimentMetadataList.clear();
+		ExperimentCache.getInstance().clear();
 	}
 
 	public int addExperiment(Experiment exp) {
@@ -124,11 +129,37 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 		return new LazyExperiment(metadata);
 	}
 
+	@Override
+	protected void selectedItemChanged() {
+		selectionPins.close();
+		Object selected = dataModel.getSelectedItem();
+		if (selected instanceof Experiment)
+			selectionPins.pin((Experiment) selected);
+		super.selectedItemChanged();
+	}
+
+	/**
+	 * Returns an experiment, loaded. It is only pinned while it is loaded: it may
+	 * be evicted as soon as other experiments are loaded, unless it is selected
+	 * or displayed. A caller which reads its data afterwards should use
+	 * {@link #getItemAt(int, ExperimentPinScope)}.
+	 */
 	@Override
 	public Experiment getItemAt(int index) {
+		try (ExperimentPinScope pins = new ExperimentPinScope()) {
+			return getItemAt(index, pins);
+		}
+	}
+
+	/**
+	 * Returns an experiment, loaded and pinned in the scope given: it is kept in
+	 * memory until the scope is closed.
+	 */
+	public Experiment getItemAt(int index, ExperimentPinScope pins) {
 		Object item = super.getItemAt(index);
 		if (item instanceof Experiment) {
 			Experiment exp = (Experiment) item;
+			pins.pin(exp);
 			if (exp instanceof LazyExperiment) {
 				((LazyExperiment) exp).loadIfNeeded();
 			}
@@ -149,6 +180,10 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 		return null;
 	}
 
+	/**
+	 * Returns the selected experiment, loaded; it stays pinned while it is
+	 * selected.
+	 */
 	@Override
 	public Experiment getSelectedItem() {
 		Object selected = super.getSelectedItem();
@@ -162,9 +197,23 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 		return null;
 	}
 
+	public ExperimentLoader getExperimentLoader() {
+		return experimentLoader;
+	}
+
+	/**
+	 * Loads the description (properties, frames, time range) of all experiments
+	 * on the loader threads, without loading images lists, cages or measures.
+	 */
+	public boolean loadMetadataFromAllExperiments() {
+		return experimentLoader.loadMetadata(getExperimentsAsListNoLoad());
+	}
+
 	public Experiment get_MsTime_of_StartAndEnd_AllExperiments(XLSExportOptions options) {
 		Experiment expAll = new Experiment();
-		Experiment exp0 = getItemAt(0);
+		if (!options.fixedIntervals)
+			loadMetadataFromAllExperiments();
+		Experiment exp0 = getItemAtNoLoad(0);
 		if (options.fixedIntervals) {
 			expAll.seqCamData.getTimeManager().setFirstImageMs(options.startAll_Ms);
 			expAll.seqCamData.setLastImageMs(options.endAll_Ms);
@@ -175,7 +224,7 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 				Experiment expLast = exp0.getLastChainedExperiment(options.collateSeries);
 				expAll.setFileTimeImageLast(expLast.lastImage_FileTime);
 				for (int i = 0; i < getItemCount(); i++) {
-					Experiment exp = getItemAt(i);
+					Experiment exp = getItemAtNoLoad(i);
 					expFirst = exp.getFirstChainedExperiment(options.collateSeries);
 					if (expAll.firstImage_FileTime.compareTo(expFirst.firstImage_FileTime) > 0)
 						expAll.setFileTimeImageFirst(expFirst.firstImage_FileTime);
@@ -193,7 +242,7 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 				long lastOffset_Ms = 0;
 
 				for (int i = 0; i < getItemCount(); i++) {
-					Experiment exp = getItemAt(i);
+					Experiment exp = getItemAtNoLoad(i);
 					Experiment expFirst = exp.getFirstChainedExperiment(options.collateSeries);
 					firstOffset_Ms = expFirst.seqCamData.getTimeManager().getBinFirst_ms()
 							+ expFirst.seqCamData.getFirstImageMs();
@@ -212,7 +261,8 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 					if (diff < 1) {
 						System.out.println("ExperimentCombo:get_MsTime_of_StartAndEnd_AllExperiments() Expt # " + i
 								+ ": FileTime difference between last and first image < 1; set dt between images = 1 ms");
-						diff = exp.seqCamData.getSequence().getSizeT();
+						diff = exp.seqCamData.getSequence() != null ? exp.seqCamData.getSequence().getSizeT()
+								: exp.seqCamData.getImageLoader().getNTotalFrames();
 					}
 					if (expAll.seqCamData.getLastImageMs() < diff)
 						expAll.seqCamData.setLastImageMs(diff);
@@ -223,82 +273,40 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 	}
 
 	public boolean loadListOfMeasuresFromAllExperiments(boolean loadSpots, boolean loadDrosoTrack) {
-		ProgressFrame progress = new ProgressFrame("Load experiment(s) parameters");
-		int nexpts = getItemCount();
-
-		maxSizeOfSpotsArrays = 0;
-		progress.setLength(nexpts);
-		boolean flag = true;
-
-		final Processor processor = new Processor(SystemUtil.getNumberOfCPUs());
-		processor.setThreadName("loadAllExperiments");
-		processor.setPriority(Processor.NORM_PRIORITY);
-		ArrayList<Future<?>> futuresArray = new ArrayList<Future<?>>(nexpts);
-		futuresArray.clear();
-
-		for (int i = 0; i < nexpts; i++) {
-			final int it = i;
-			final Experiment exp = getItemAt(it);
-
-			futuresArray.add(processor.submit(new Runnable() {
-				@Override
-				public void run() {
-					progress.setMessage("Load experiment " + it + " of " + nexpts);
-
-					// Ensure the experiment is loaded if it's a LazyExperiment
-					if (exp instanceof LazyExperiment) {
-						((LazyExperiment) exp).loadIfNeeded();
-					}
-
-					exp.load_MS96_experiment();
-					exp.load_MS96_cages();
-					if (loadSpots)
-						exp.load_MS96_spotsMeasures();
-
-					if (loadDrosoTrack)
-						exp.zopenPositionsMeasures();
-
-					int nCages = exp.cagesArray.cagesList.size();
-					int nSpotsPerCage = exp.cagesArray.nColumnsPerCage * exp.cagesArray.nRowsPerCage;
-					int nMaxSpots = nCages * nSpotsPerCage;
-					if (maxSizeOfSpotsArrays < nMaxSpots) {
-						maxSizeOfSpotsArrays = nMaxSpots;
-						if (maxSizeOfSpotsArrays % 2 != 0)
-							maxSizeOfSpotsArrays += 1;
-					}
-					progress.incPosition();
-				}
-			}));
-		}
-		waitFuturesCompletion(processor, futuresArray, progress);
-
-		progress.close();
-		return flag;
+		return loadListOfMeasuresFromAllExperiments(loadSpots, loadDrosoTrack, null);
 	}
 
-	protected void waitFuturesCompletion(Processor processor, ArrayList<Future<?>> futuresArray,
-			ProgressFrame progressBar) {
-		int frame = 1;
-		int nframes = futuresArray.size();
-		while (!futuresArray.isEmpty()) {
-			final Future<?> f = futuresArray.get(futuresArray.size() - 1);
-			if (progressBar != null)
-				progressBar.setMessage("Analyze experiment: " + (frame) + "//" + nframes);
-			try {
-				f.get();
-			} catch (ExecutionException e) {
-				System.out.println("ExperimentCombo:waitFuturesCompletion() - Warning: " + e);
-			} catch (InterruptedException e) {
-				// ignore
+	/**
+	 * Loads the measures of all the experiments and keeps them loaded until the
+	 * scope is closed: without a scope, the experiments can be evicted as soon as
+	 * they are loaded.
+	 */
+	public boolean loadListOfMeasuresFromAllExperiments(boolean loadSpots, boolean loadDrosoTrack,
+			ExperimentPinScope pins) {
+		// experiments are loaded by the loader threads, not while submitting them
+		List<Experiment> experiments = getExperimentsAsListNoLoad();
+		boolean flag = experimentLoader.loadMeasures(experiments, loadSpots, loadDrosoTrack, pins);
+
+		maxSizeOfSpotsArrays = 0;
+		for (Experiment exp : experiments) {
+			if (exp.cagesArray == null)
+				continue;
+			int nCages = exp.cagesArray.cagesList.size();
+			int nSpotsPerCage = exp.cagesArray.nColumnsPerCage * exp.cagesArray.nRowsPerCage;
+			int nMaxSpots = nCages * nSpotsPerCage;
+			if (maxSizeOfSpotsArrays < nMaxSpots) {
+				maxSizeOfSpotsArrays = nMaxSpots;
+				if (maxSizeOfSpotsArrays % 2 != 0)
+					maxSizeOfSpotsArrays += 1;
 			}
-			futuresArray.remove(f);
-			frame++;
 		}
+		return flag;
 	}
 
 	public void setFirstImageForAllExperiments(boolean collate) {
+		loadMetadataFromAllExperiments();
 		for (int i = 0; i < getItemCount(); i++) {
-			Experiment expi = getItemAt(i);
+			Experiment expi = getItemAtNoLoad(i);
 			Experiment expFirst = expi.getFirstChainedExperiment(collate);
 			expi.chainImageFirst_ms = expFirst.seqCamData.getFirstImageMs()
 					+ expFirst.seqCamData.getTimeManager().getBinFirst_ms();
@@ -311,8 +319,10 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 	}
 
 	public void chainExperimentsUsingKymoIndexes(boolean collate) {
+		if (collate)
+			loadMetadataFromAllExperiments();
 		for (int i = 0; i < getItemCount(); i++) {
-			Experiment expi = getItemAt(i);
+			Experiment expi = getItemAtNoLoad(i);
 			if (!collate) {
 				resetChaining(expi);
 				continue;
@@ -326,7 +336,7 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 			for (int j = 0; j < getItemCount(); j++) {
 				if (i == j)
 					continue;
-				Experiment expj = getItemAt(j);
+				Experiment expj = getItemAtNoLoad(j);
 				if (!expi.getProperties().isSameProperties(expj.getProperties()))
 					continue;
 				if (expj.chainToNextExperiment != null || expj.chainToPreviousExperiment != null)
@@ -393,9 +403,6 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 				}
 			} else if (item instanceof Experiment) {
 				Experiment exp = (Experiment) item;
-				if (exp instanceof LazyExperiment) {
-					((LazyExperiment) exp).loadIfNeeded();
-				}
 				exp.load_MS96_experiment();
 				addIfUniqueStrings(textList, exp.getFieldValues(field));
 			}
@@ -460,8 +467,8 @@ public class JComboBoxExperimentLazy extends JComboBox<Experiment> {
 		long freeMemory = runtime.freeMemory();
 		long usedMemory = totalMemory - freeMemory;
 
-		return String.format("Memory: %dMB used, %dMB total, %d experiments loaded", usedMemory / 1024 / 1024,
-				totalMemory / 1024 / 1024, experimentMetadataList.size());
+		return String.format("Memory: %dMB used, %dMB total, %d experiments loaded; %s", usedMemory / 1024 / 1024,
+				totalMemory / 1024 / 1024, getLoadedExperimentCount(), ExperimentCache.getInstance().getStatistics());
 	}
 
 	public int getLoadedExperimentCount() {
@@ -14,7 +14,15 @@ public abstract class NHDistanceColor implements NHDistance<Color> {
 	 * @see plugins.nherve.toolbox.image.feature.Distance#computeDistance(java.lang.
 	 * Object, java.lang.Object)
 	 */
-	public abstract double computeDistance(Color c1, Color c2);
+	public double computeDistance(Color c1, Color c2) {
+		return computeDistance(c1.getRed(), c1.getGreen(), c1.getBlue(), c2.getRed(), c2.getGreen(), c2.getBlue());
+	}
+
+	/**
+	 * Computes the distance between two colors given by their components, without
+	 * creating Color objects.
+	 */
+	public abstract double computeDistance(int r1, int g1, int b1, int r2, int g2, int b2);
 
 	/**
 	 * Gets the max distance.
@@ -1,7 +1,5 @@
 package plugins.fmp.l_multiSPOTS96.tools.NHDistance;
 
-import java.awt.Color;
-
 /**
  * NHClass L2ColorDistance.
  */
@@ -14,10 +12,10 @@ public class NHDistanceColorL2 extends NHDistanceColor {
 	 * double[])
 	 */
 	@Override
-	public double computeDistance(Color c1, Color c2) {
-		double dr = c1.getRed() - c2.getRed();
-		double dg = c1.getGreen() - c2.getGreen();
-		double db = c1.getBlue() - c2.getBlue();
+	public double computeDistance(int r1, int g1, int b1, int r2, int g2, int b2) {
+		double dr = r1 - r2;
+		double dg = g1 - g2;
+		double db = b1 - b2;
 		return Math.sqrt(dr * dr + dg * dg + db * db);
 	}
 
@@ -0,0 +1,387 @@
+package plugins.fmp.l_multiSPOTS96.tools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * StAX helpers to read and write large XML files record by record.
+ *
+ * <p>
+ * Files are streamed with {@link XMLStreamReader}/{@link XMLStreamWriter};
+ * only the record being processed (one cage, the experiment node...) is
+ * materialized as a small DOM fragment, so that the existing
+ * {@code xmlLoad...}/{@code xmlSave...} methods (and Icy's ROI XML loaders)
+ * can be reused unchanged on it. Memory use is bounded by the size of the
+ * largest record instead of the size of the document.
+ * </p>
+ */
+public class XMLStreamUtil {
+
+	private static final String ENCODING = "UTF-8";
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final XMLInputFactory inputFactory = createInputFactory();
+	private static final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+	private static final DocumentBuilderFactory documentFactory = DocumentBuilderFactory.newInstance();
+
+	private static XMLInputFactory createInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		return factory;
+	}
+
+	// -------------------------------------------
+
+	public static InputStream openInput(String fileName) throws IOException {
+		return new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a buffered stream on a file, creating its parent directories if
+	 * needed.
+	 */
+	public static OutputStream openOutput(Path path) throws IOException {
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null)
+			Files.createDirectories(parent);
+		return new BufferedOutputStream(new FileOutputStream(path.toFile()), BUFFER_SIZE);
+	}
+
+	public static XMLStreamReader createReader(InputStream in) throws XMLStreamException {
+		synchronized (inputFactory) {
+			return inputFactory.createXMLStreamReader(in, ENCODING);
+		}
+	}
+
+	public static XMLStreamWriter createWriter(OutputStream out) throws XMLStreamException {
+		synchronized (outputFactory) {
+			return outputFactory.createXMLStreamWriter(out, ENCODING);
+		}
+	}
+
+	/**
+	 * Creates an empty document used to hold the DOM fragments of the records.
+	 */
+	public static Document createScratchDocument() {
+		try {
+			synchronized (documentFactory) {
+				return documentFactory.newDocumentBuilder().newDocument();
+			}
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// -------------------------------------------
+
+	/**
+	 * Moves the reader to the next start element at the current depth.
+	 *
+	 * @return false when the end of the enclosing element (or of the document)
+	 *         is reached
+	 */
+	public static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				return true;
+			if (event == XMLStreamConstants.END_ELEMENT)
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves the reader to the root element of the document.
+	 */
+	public static boolean moveToRootElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			if (reader.next() == XMLStreamConstants.START_ELEMENT)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Skips the element the reader is positioned on, including its children.
+	 */
+	public static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+				depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth--;
+		}
+	}
+
+	public static int getAttributeIntValue(XMLStreamReader reader, String name, int defaultValue) {
+		String value = reader.getAttributeValue(null, name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Reads the element the reader is positioned on (and its children) into a DOM
+	 * element owned by {@code doc}. On return, the reader is positioned on the
+	 * matching end element.
+	 */
+	public static Element readElement(XMLStreamReader reader, Document doc) throws XMLStreamException {
+		Element root = createElement(reader, doc);
+		Node current = root;
+		int depth = 1;
+		while (depth > 0 && reader.hasNext()) {
+			switch (reader.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				Element child = createElement(reader, doc);
+				current.appendChild(child);
+				current = child;
+				depth++;
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				current = current.getParentNode();
+				depth--;
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.SPACE:
+				current.appendChild(doc.createTextNode(reader.getText()));
+				break;
+			case XMLStreamConstants.CDATA:
+				current.appendChild(doc.createCDATASection(reader.getText()));
+				break;
+			default:
+				break;
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Streams the document until the first child of the root element called
+	 * {@code name} and returns it as a DOM fragment.
+	 *
+	 * @return the element or null if not found
+	 */
+	public static Element readRootChildElement(String fileName, String name) throws IOException, XMLStreamException {
+		try (InputStream in = openInput(fileName)) {
+			XMLStreamReader reader = createReader(in);
+			try {
+				if (!moveToRootElement(reader))
+					return null;
+				while (nextChildElement(reader)) {
+					if (name.equals(reader.getLocalName()))
+						return readElement(reader, createScratchDocument());
+					skipElement(reader);
+				}
+				return null;
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	private static Element createElement(XMLStreamReader reader, Document doc) {
+		Element element = doc.createElement(reader.getLocalName());
+		for (int i = 0; i < reader.getAttributeCount(); i++)
+			element.setAttribute(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+		return element;
+	}
+
+	// -------------------------------------------
+
+	/**
+	 * Writes a DOM node and its children to the stream, indented with tabs.
+	 */
+	public static void writeNode(XMLStreamWriter writer, Node node, int depth) throws XMLStreamException {
+		switch (node.getNodeType()) {
+		case Node.ELEMENT_NODE:
+			writeIndent(writer, depth);
+			writer.writeStartElement(node.getNodeName());
+			NamedNodeMap attributes = node.getAttributes();
+			for (int i = 0; i < attributes.getLength(); i++) {
+				Node attribute = attributes.item(i);
+				writer.writeAttribute(attribute.getNodeName(), attribute.getNodeValue());
+			}
+			NodeList children = node.getChildNodes();
+			boolean indentChildren = hasElementChild(node) && !hasText(node);
+			for (int i = 0; i < children.getLength(); i++) {
+				Node child = children.item(i);
+				if (indentChildren && child.getNodeType() == Node.TEXT_NODE)
+					continue;
+				writeNode(writer, child, indentChildren ? depth + 1 : -1);
+			}
+			if (indentChildren)
+				writeIndent(writer, depth);
+			writer.writeEndElement();
+			break;
+		case Node.TEXT_NODE:
+			writer.writeCharacters(node.getNodeValue());
+			break;
+		case Node.CDATA_SECTION_NODE:
+			writer.writeCData(node.getNodeValue());
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Streams a whole DOM document to a file. The file is written to a temporary
+	 * file first and then moved over the destination.
+	 */
+	public static boolean saveDocument(Document doc, String fileName) {
+		return saveDocument(doc, fileName, false);
+	}
+
+	/**
+	 * Streams a whole DOM document to a file.
+	 *
+	 * @param onlyIfChanged true to leave the file untouched if it already has
+	 *                      the content written
+	 */
+	public static boolean saveDocument(Document doc, String fileName, boolean onlyIfChanged) {
+		return saveElements(doc.getDocumentElement().getNodeName(), doc.getDocumentElement().getChildNodes(),
+				fileName, onlyIfChanged);
+	}
+
+	/**
+	 * Streams a root element with the given children to a file.
+	 */
+	public static boolean saveElements(String rootName, NodeList children, String fileName) {
+		return saveElements(rootName, children, fileName, false);
+	}
+
+	/**
+	 * Streams a root element with the given children to a file.
+	 *
+	 * @param onlyIfChanged true to leave the file untouched if it already has
+	 *                      the content written
+	 */
+	public static boolean saveElements(String rootName, NodeList children, String fileName,
+			boolean onlyIfChanged) {
+		Path target = Paths.get(fileName);
+		Path temp = Paths.get(fileName + ".tmp");
+		try (OutputStream out = openOutput(temp)) {
+			XMLStreamWriter writer = createWriter(out);
+			writeStartDocument(writer, rootName);
+			for (int i = 0; i < children.getLength(); i++) {
+				if (children.item(i).getNodeType() == Node.ELEMENT_NODE)
+					writeNode(writer, children.item(i), 1);
+			}
+			writeEndDocument(writer);
+		} catch (IOException | XMLStreamException e) {
+			System.err.println("ERROR streaming XML to " + fileName + ": " + e.getMessage());
+			return false;
+		}
+		return moveTempFile(temp, target, onlyIfChanged);
+	}
+
+	public static void writeStartDocument(XMLStreamWriter writer, String rootName) throws XMLStreamException {
+		writer.writeStartDocument(ENCODING, "1.0");
+		writeIndent(writer, 0);
+		writer.writeStartElement(rootName);
+	}
+
+	public static void writeEndDocument(XMLStreamWriter writer) throws XMLStreamException {
+		writeIndent(writer, 0);
+		writer.writeEndElement();
+		writer.writeEndDocument();
+		writer.flush();
+		writer.close();
+	}
+
+	public static void writeIndent(XMLStreamWriter writer, int depth) throws XMLStreamException {
+		if (depth < 0)
+			return;
+		StringBuilder sb = new StringBuilder(depth + 1);
+		sb.append('\n');
+		for (int i = 0; i < depth; i++)
+			sb.append('\t');
+		writer.writeCharacters(sb.toString());
+	}
+
+	/**
+	 * Moves a temporary file over the destination, or deletes it if the
+	 * destination has the same content and onlyIfChanged is true; the
+	 * destination, and its modification time, are then left as they are.
+	 */
+	public static boolean moveTempFile(Path temp, Path target, boolean onlyIfChanged) {
+		if (onlyIfChanged) {
+			try {
+				if (Files.isRegularFile(target) && Files.size(target) == Files.size(temp)
+						&& Arrays.equals(Files.readAllBytes(target), Files.readAllBytes(temp))) {
+					Files.delete(temp);
+					return true;
+				}
+			} catch (IOException e) {
+				// replaced below
+			}
+		}
+		return moveTempFile(temp, target);
+	}
+
+	public static boolean moveTempFile(Path temp, Path target) {
+		try {
+			Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		} catch (IOException e) {
+			System.err.println("ERROR replacing " + target + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	private static boolean hasElementChild(Node node) {
+		NodeList children = node.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			if (children.item(i).getNodeType() == Node.ELEMENT_NODE)
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean hasText(Node node) {
+		NodeList children = node.getChildNodes();
+		for (int i = 0; i < children.getLength(); i++) {
+			Node child = children.item(i);
+			short type = child.getNodeType();
+			if (type == Node.CDATA_SECTION_NODE)
+				return true;
+			if (type == Node.TEXT_NODE && !child.getNodeValue().trim().isEmpty())
+				return true;
+		}
+		return false;
+	}
+}
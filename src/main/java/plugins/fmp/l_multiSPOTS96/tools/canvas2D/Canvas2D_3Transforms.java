@@ -8,6 +8,7 @@ import java.util.logging.Logger;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
 
 import icy.canvas.Canvas2D;
 import icy.gui.component.button.IcyButton;
@@ -15,7 +16,10 @@ import icy.gui.viewer.Viewer;
 import icy.image.IcyBufferedImage;
 import icy.resource.icon.IcyIcon;
 import icy.sequence.Sequence;
+import icy.system.thread.Processor;
 import plugins.fmp.l_multiSPOTS96.resource.ResourceUtilFMP;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformCache;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformChain;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEnums;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
@@ -31,6 +35,14 @@ import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
  * </ul>
  * 
  * <p>
+ * Both steps are computed as a chain ({@link ImageTransformChain}), in a single
+ * pass when they are point transforms. The chains are computed in the
+ * background and their results are cached ({@link ImageTransformCache}):
+ * while an image is computed, the last image
+ * transformed stays displayed, and the next frames in the direction of the
+ * scrolling are computed in advance. The display never waits for a transform.
+ * 
+ * <p>
  * Key improvements:
  * <ul>
  * <li>Separated concerns with dedicated action handlers</li>
@@ -48,13 +60,16 @@ public class Canvas2D_3Transforms extends Canvas2D {
 	private static final long serialVersionUID = 8827595503996677250L;
 	private static final Logger logger = Logger.getLogger(Canvas2D_3Transforms.class.getName());
 
+	/** Number of frames transformed in advance in the direction of the scrolling */
+	private static final int PREFETCH_FRAMES = 2;
+
 	// UI Components - properly encapsulated
 	private final JComboBox<ImageTransformEnums> transformsComboStep1;
 	private final JComboBox<ImageTransformEnums> transformsComboStep2;
 
-	// Transform state
-	private ImageTransformInterface transformStep1;
-	private ImageTransformInterface transformStep2;
+	// Transform state, read by the rendering thread
+	private volatile ImageTransformInterface transformStep1;
+	private volatile ImageTransformInterface transformStep2;
 	private final ImageTransformOptions optionsStep1;
 	private final ImageTransformOptions optionsStep2;
 
@@ -64,6 +79,17 @@ public class Canvas2D_3Transforms extends Canvas2D {
 	private final ScalingHandler scalingHandler;
 	private final NavigationHandler navigationHandler;
 
+	// Background rendering
+	private Processor renderProcessor = null;
+	private volatile FrameKey requestedKey = null;
+	private int lastRequestedT = -1;
+	private int scrollDirection = 1;
+	// Last image displayed, with its frame and source image: a computed image is
+	// displayed from there even if the cache could not keep it
+	private IcyBufferedImage lastImage = null;
+	private FrameKey lastImageKey = null;
+	private IcyBufferedImage lastSourceImage = null;
+
 	/**
 	 * Creates a new enhanced Canvas2D with transformation capabilities.
 	 * 
@@ -184,16 +210,30 @@ public class Canvas2D_3Transforms extends Canvas2D {
 				return null;
 			}
 
-			// Apply step 1 transformation
-			if (transformStep1 != null) {
-				IcyBufferedImage step1Result = transformStep1.getTransformedImage(originalImage, optionsStep1);
-				// Apply step 2 transformation if available
-				if (transformStep2 != null) {
-					return transformStep2.getTransformedImage(step1Result, optionsStep2);
-				}
-				return step1Result;
+			ImageTransformChain chain = ImageTransformChain.builder().then(transformStep1, optionsStep1)
+					.then(transformStep2, optionsStep2).build();
+			if (chain.getNumberOfStages() == 0) {
+				return originalImage;
 			}
-			return super.getImage(t, z, c); // Fallback to original image
+
+			// Display the result of step 1 then step 2 if it is cached or was just
+			// computed, otherwise compute it in the background and display the last
+			// image meanwhile
+			FrameKey key = new FrameKey(t, z, c, chain);
+			IcyBufferedImage transformedImage = ImageTransformCache.getShared().getCachedImage(chain, originalImage);
+			if (transformedImage == null && key.equals(lastImageKey) && originalImage == lastSourceImage) {
+				transformedImage = lastImage;
+			}
+			if (transformedImage != null) {
+				setLastImage(transformedImage, key, originalImage);
+				return transformedImage;
+			}
+			requestImage(key);
+			if (lastImage != null && lastImage.getSizeX() == originalImage.getSizeX()
+					&& lastImage.getSizeY() == originalImage.getSizeY()) {
+				return lastImage;
+			}
+			return originalImage;
 
 		} catch (Exception e) {
 			logger.severe(String.format(Canvas2DConstants.ErrorMessages.IMAGE_TRANSFORM_FAILED, e.getMessage()));
@@ -201,6 +241,127 @@ public class Canvas2D_3Transforms extends Canvas2D {
 		}
 	}
 
+	@Override
+	public void shutDown() {
+		synchronized (this) {
+			requestedKey = null;
+			if (renderProcessor != null) {
+				renderProcessor.shutdown();
+				renderProcessor = null;
+			}
+		}
+		super.shutDown();
+	}
+
+	private IcyBufferedImage getOriginalImage(int t, int z, int c) {
+		return super.getImage(t, z, c);
+	}
+
+	private void setLastImage(IcyBufferedImage image, FrameKey key, IcyBufferedImage sourceImage) {
+		lastImage = image;
+		lastImageKey = key;
+		lastSourceImage = sourceImage;
+	}
+
+	/**
+	 * Computes the image of a frame in the background, then refreshes the canvas
+	 * and transforms the next frames in the direction of the scrolling. A frame
+	 * requested while another is computed replaces the previous requests.
+	 */
+	private synchronized void requestImage(final FrameKey key) {
+		if (key.equals(requestedKey)) {
+			return;
+		}
+		if (lastRequestedT >= 0 && key.t != lastRequestedT) {
+			scrollDirection = key.t > lastRequestedT ? 1 : -1;
+		}
+		lastRequestedT = key.t;
+		final int direction = scrollDirection;
+		requestedKey = key;
+
+		if (renderProcessor == null) {
+			renderProcessor = new Processor(1);
+			renderProcessor.setThreadName("canvasTransforms");
+			renderProcessor.setPriority(Processor.NORM_PRIORITY);
+		}
+		renderProcessor.submit(new Runnable() {
+			@Override
+			public void run() {
+				// skip the requests replaced while waiting
+				if (!key.equals(requestedKey)) {
+					return;
+				}
+				try {
+					final IcyBufferedImage sourceImage = getOriginalImage(key.t, key.z, key.c);
+					final IcyBufferedImage image = ImageTransformCache.getShared().getTransformedImage(key.chain,
+							sourceImage);
+					if (image == null) {
+						imageFailed(key);
+						return;
+					}
+					// the image is handed to the display, as the cache may not keep it
+					if (imageComputed(key)) {
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								setLastImage(image, key, sourceImage);
+								refresh();
+							}
+						});
+					}
+					prefetchImages(key, direction);
+				} catch (Exception e) {
+					imageFailed(key);
+					logger.severe(String.format(Canvas2DConstants.ErrorMessages.IMAGE_TRANSFORM_FAILED,
+							e.getMessage()));
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return true if the frame computed is the frame requested last, to be
+	 *         displayed
+	 */
+	private synchronized boolean imageComputed(FrameKey key) {
+		if (!key.equals(requestedKey)) {
+			return false;
+		}
+		requestedKey = null;
+		return true;
+	}
+
+	/**
+	 * Forgets a frame which could not be computed, so that it is requested again
+	 * and the frames requested next are prefetched.
+	 */
+	private synchronized void imageFailed(FrameKey key) {
+		if (key.equals(requestedKey)) {
+			requestedKey = null;
+		}
+	}
+
+	/**
+	 * Transforms the frames following a frame in the direction of the scrolling,
+	 * until another frame is requested.
+	 */
+	private void prefetchImages(FrameKey key, int direction) {
+		Sequence sequence = getSequence();
+		if (sequence == null) {
+			return;
+		}
+		for (int i = 1; i <= PREFETCH_FRAMES; i++) {
+			int t = key.t + i * direction;
+			if (requestedKey != null || t < 0 || t >= sequence.getSizeT()) {
+				return;
+			}
+			IcyBufferedImage originalImage = getOriginalImage(t, key.z, key.c);
+			if (originalImage != null) {
+				ImageTransformCache.getShared().getTransformedImage(key.chain, originalImage);
+			}
+		}
+	}
+
 	/**
 	 * Adds a transform to step 1 combo box if not already present.
 	 * 
@@ -667,6 +828,44 @@ public class Canvas2D_3Transforms extends Canvas2D {
 		}
 	}
 
+	/**
+	 * Identifies an image requested: its frame and the chain of the transforms,
+	 * with a copy of their options.
+	 */
+	private static final class FrameKey {
+		private final int t;
+		private final int z;
+		private final int c;
+		private final ImageTransformChain chain;
+
+		FrameKey(int t, int z, int c, ImageTransformChain chain) {
+			this.t = t;
+			this.z = z;
+			this.c = c;
+			this.chain = chain;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof FrameKey)) {
+				return false;
+			}
+			FrameKey other = (FrameKey) obj;
+			return t == other.t && z == other.z && c == other.c && chain.equals(other.chain);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = t;
+			hash = 31 * hash + z;
+			hash = 31 * hash + c;
+			return 31 * hash + chain.hashCode();
+		}
+	}
+
 	/**
 	 * Handles navigation operations.
 	 */
@@ -4,12 +4,20 @@ import java.awt.Dimension;
 import java.awt.GridLayout;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.awt.event.MouseEvent;
 import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import org.jfree.chart.ChartMouseEvent;
 import org.jfree.chart.ChartMouseListener;
@@ -18,18 +26,21 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.entity.ChartEntity;
 import org.jfree.chart.entity.XYItemEntity;
+import org.jfree.chart.event.AxisChangeEvent;
+import org.jfree.chart.event.AxisChangeListener;
 import org.jfree.chart.plot.PlotRenderingInfo;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.data.Range;
 import org.jfree.data.xy.XYDataset;
-import org.jfree.data.xy.XYSeriesCollection;
 
 import icy.gui.frame.IcyFrame;
 import icy.gui.util.GuiUtil;
 import icy.gui.viewer.Viewer;
 import icy.roi.ROI2D;
+import icy.system.thread.Processor;
 import plugins.fmp.l_multiSPOTS96.L_MultiSPOTS96;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentPinScope;
 import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
 import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.XLSExportOptions;
@@ -106,6 +117,13 @@ public class ChartCageArrayFrame extends IcyFrame {
 	/** Mouse button for left click */
 	private static final int LEFT_MOUSE_BUTTON = MouseEvent.BUTTON1;
 
+	/** Number of points displayed per series for each pixel of plot width */
+	private static final int POINTS_PER_PIXEL = 2;
+
+	/** Number of threads preparing the datasets of the charts */
+	private static final int BUILD_THREADS = Math.max(1,
+			Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
 	/** Main chart panel containing all charts */
 	private JPanel mainChartPanel = null;
 
@@ -136,6 +154,23 @@ public class ChartCageArrayFrame extends IcyFrame {
 	/** Parent MultiSPOTS96 instance */
 	private L_MultiSPOTS96 parent = null;
 
+	/** Export options of the displayed charts */
+	private XLSExportOptions xlsExportOptions = null;
+
+	/** Fingerprints of the data displayed by the charts */
+	private long[][] cageFingerprints = null;
+
+	/** Current build; charts of previous builds are discarded */
+	private final AtomicInteger buildGeneration = new AtomicInteger();
+
+	/** Pool preparing the datasets of the current build */
+	private Processor buildProcessor = null;
+	// the experiment stays loaded while its charts are built and displayed
+	private ExperimentPinScope buildPins = null;
+
+	/** Tasks of the current build */
+	private final List<Future<?>> buildFutures = new ArrayList<Future<?>>();
+
 	/**
 	 * Creates the main chart panel and frame.
 	 * 
@@ -219,8 +254,10 @@ public class ChartCageArrayFrame extends IcyFrame {
 	}
 
 	/**
-	 * Displays spot data for the experiment.
-	 * 
+	 * Displays spot data for the experiment. The frame is displayed at once with
+	 * empty panels; the datasets of the cages are prepared in the background and
+	 * each chart replaces its empty panel as soon as it is ready.
+	 *
 	 * @param exp              the experiment containing the data
 	 * @param xlsExportOptions the export options for data processing
 	 * @throws IllegalArgumentException if exp or xlsExportOptions is null
@@ -233,55 +270,143 @@ public class ChartCageArrayFrame extends IcyFrame {
 			throw new IllegalArgumentException("Export options cannot be null");
 		}
 
+		cancelBuild();
 		this.experiment = exp;
-		createChartPanelArray(xlsExportOptions);
-		arrangePanelsInDisplay(xlsExportOptions);
+		this.xlsExportOptions = xlsExportOptions;
+		closeChartPanels();
+		chartPanelArray = new ChartCagePair[nPanelsAlongY][nPanelsAlongX];
+		cageFingerprints = new long[nPanelsAlongY][nPanelsAlongX];
+		arrangePlaceholdersInDisplay();
 		displayChartFrame();
+		startBuild(false);
 
 //		LOGGER.info("Displayed spot charts for experiment");
 	}
 
 	/**
-	 * Creates chart panels for all cages in the experiment.
-	 * 
-	 * @param xlsExportOptions the export options
+	 * Updates the charts after the measures of the experiment have been changed
+	 * or reloaded: only the charts of the cages whose data differ from the
+	 * displayed data are rebuilt.
+	 *
+	 * @param exp the experiment containing the data
+	 * @throws IllegalArgumentException if exp is null
+	 */
+	public void refreshData(Experiment exp) {
+		if (exp == null) {
+			throw new IllegalArgumentException("Experiment cannot be null");
+		}
+		if (exp != experiment || chartPanelArray == null) {
+			displayData(exp, xlsExportOptions);
+			return;
+		}
+		cancelBuild();
+		startBuild(true);
+	}
+
+	/**
+	 * Cancels the preparation of the charts still in progress, and lets the
+	 * experiment be evicted again. Charts prepared by a cancelled build are not
+	 * displayed.
+	 */
+	public void cancelBuild() {
+		buildGeneration.incrementAndGet();
+		for (Future<?> future : buildFutures)
+			future.cancel(false);
+		buildFutures.clear();
+		if (buildProcessor != null) {
+			buildProcessor.shutdown();
+			buildProcessor = null;
+		}
+		if (buildPins != null) {
+			buildPins.close();
+			buildPins = null;
+		}
+	}
+
+	/**
+	 * Prepares the datasets of the cages on a background pool and publishes each
+	 * chart on the event dispatch thread.
+	 *
+	 * @param onlyChanged true to skip the cages whose chart displays the same
+	 *                    data
 	 */
-	private void createChartPanelArray(XLSExportOptions xlsExportOptions) {
+	private void startBuild(final boolean onlyChanged) {
+		final int generation = buildGeneration.get();
+		final XLSExportOptions options = xlsExportOptions;
+		buildPins = new ExperimentPinScope();
+		buildPins.pin(experiment);
+		if (experiment.seqCamData.getTimeManager().getCamImagesTime_Ms() == null)
+			experiment.seqCamData.build_MsTimesArray_From_FileNamesList();
+		final double[] xValues = experiment.seqCamData.getTimeManager().getCamImagesTime_Minutes().clone();
+		boolean singleCage = (options.cageIndexFirst == options.cageIndexLast);
+
+		buildProcessor = new Processor(BUILD_THREADS);
+		buildProcessor.setThreadName("chartCageBuild");
+		buildProcessor.setPriority(Processor.NORM_PRIORITY);
+
 		int indexCage = 0;
 		for (int row = 0; row < experiment.cagesArray.nCagesAlongY; row++) {
 			for (int col = 0; col < experiment.cagesArray.nCagesAlongX; col++, indexCage++) {
-				if (indexCage < xlsExportOptions.cageIndexFirst || indexCage > xlsExportOptions.cageIndexLast)
+				if (indexCage < options.cageIndexFirst || indexCage > options.cageIndexLast)
 					continue;
 
-				Cage cage = experiment.cagesArray.getCageFromRowColCoordinates(row, col);
+				final Cage cage = experiment.cagesArray.getCageFromRowColCoordinates(row, col);
 				if (cage == null) {
 					LOGGER.warning("No cage found at row " + row + ", col " + col);
 					continue;
 				}
 
-				ChartPanel chartPanel = createChartPanelForCage(cage, row, col, xlsExportOptions);
-				chartPanelArray[row][col] = new ChartCagePair(chartPanel, cage);
+				final int cageRow = row;
+				final int cageCol = col;
+				final int slotRow = singleCage ? 0 : row;
+				final int slotCol = singleCage ? 0 : col;
+				final boolean displayed = onlyChanged && chartPanelArray[slotRow][slotCol] != null;
+				final long displayedFingerprint = cageFingerprints[slotRow][slotCol];
+
+				buildFutures.add(buildProcessor.submit(new Runnable() {
+					@Override
+					public void run() {
+						if (generation != buildGeneration.get())
+							return;
+						final long fingerprint = ChartCageBuild.getSpotDataFingerprint(cage, options);
+						if (displayed && fingerprint == displayedFingerprint)
+							return;
+						final SpotMeasuresXYDataset dataset = cage.spotsArray.getSpotsCount() < 1 ? null
+								: ChartCageBuild.getSpotDataDirectlyFromOneCage(cage, xValues, options);
+
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								if (generation != buildGeneration.get())
+									return;
+								ChartCagePanel chartPanel = createChartPanelForCage(cage, dataset, cageRow, cageCol,
+										slotRow, slotCol, options);
+								installChartPanel(chartPanel, cage, slotRow, slotCol, fingerprint);
+							}
+						});
+					}
+				}));
 			}
 		}
-
-//		LOGGER.info("Created " + createdCharts + " in " + indexCage + " chart panels");
+		buildProcessor.shutdown();
 	}
 
 	/**
 	 * Creates a chart panel for a specific cage.
-	 * 
-	 * @param chartCage        the chart builder
+	 *
 	 * @param cage             the cage to create chart for
-	 * @param xlsResultsArray  the primary data array
-	 * @param xlsResultsArray2 the secondary data array
-	 * @param row              the row index
-	 * @param col              the column index
+	 * @param dataset          the data of the cage, null if it has no spots
+	 * @param row              the row index of the cage
+	 * @param col              the column index of the cage
+	 * @param slotRow          the row index of the chart in the display
+	 * @param slotCol          the column index of the chart in the display
 	 * @param xlsExportOptions the export options
 	 * @return configured ChartPanel
 	 */
-	private ChartCagePanel createChartPanelForCage(Cage cage, int row, int col, XLSExportOptions xlsExportOptions) {
+	private ChartCagePanel createChartPanelForCage(Cage cage, SpotMeasuresXYDataset dataset, int row, int col,
+			int slotRow, int slotCol, XLSExportOptions xlsExportOptions) {
 
-		if (cage.spotsArray.getSpotsCount() < 1) {
+		if (dataset == null) {
 //			LOGGER.fine("Skipping cage " + cage.getProperties().getCageID() + " - no spots");
 			ChartCagePanel chartPanel = new ChartCagePanel(null, // jfreechart
 					DEFAULT_CHART_WIDTH, DEFAULT_CHART_HEIGHT, // preferred width, height of the panel
@@ -297,20 +422,16 @@ public class ChartCageArrayFrame extends IcyFrame {
 			return chartPanel;
 		}
 
-		ChartCageBuild.initMaxMin();
-		XYSeriesCollection xyDataSetList = ChartCageBuild.getSpotDataDirectlyFromOneCage(experiment, cage,
-				xlsExportOptions);
-
 		NumberAxis xAxis = setXaxis("", xlsExportOptions);
 		NumberAxis yAxis = setYaxis(cage.getRoi().getName(), row, col, xlsExportOptions);
-		XYPlot xyPlot = ChartCageBuild.buildXYPlot(xyDataSetList, xAxis, yAxis);
+		XYPlot xyPlot = ChartCageBuild.buildXYPlot(dataset, xAxis, yAxis);
 
 		JFreeChart chart = new JFreeChart(null, // title - the chart title (null permitted).
 				null, // titleFont - the font for displaying the chart title (null permitted)
 				xyPlot, // plot - controller of the visual representation of the data
 				false); // createLegend - legend not created for the chart
 
-		chart.setID("row:" + row + ":icol:" + col + ":cageID:" + cage.getProperties().getCagePosition());
+		chart.setID("row:" + slotRow + ":icol:" + slotCol + ":cageID:" + cage.getProperties().getCagePosition());
 
 		ChartCagePanel chartCagePanel = new ChartCagePanel(chart, // jfreechart
 				DEFAULT_CHART_WIDTH, DEFAULT_CHART_HEIGHT, // preferred width, height of the panel
@@ -325,49 +446,90 @@ public class ChartCageArrayFrame extends IcyFrame {
 
 		chartCagePanel.addChartMouseListener(new SpotChartMouseListener(experiment, xlsExportOptions));
 		chartCagePanel.subscribeToCagePropertiesUpdates(cage);
+
+		LevelOfDetailListener levelOfDetailListener = new LevelOfDetailListener(chartCagePanel, xAxis, dataset);
+		xAxis.addChangeListener(levelOfDetailListener);
+		chartCagePanel.addComponentListener(levelOfDetailListener);
+		levelOfDetailListener.update();
 		return chartCagePanel;
 	}
 
 	/**
-	 * Arranges panels in the display based on export options.
-	 * 
-	 * @param xlsExportOptions the export options
+	 * Replaces the panel displayed at a position of the grid by a chart. Axis
+	 * ranges set by the user on the previous chart are kept.
+	 *
+	 * @param chartPanel  the new chart panel
+	 * @param cage        the cage of the chart
+	 * @param slotRow     the row index of the chart in the display
+	 * @param slotCol     the column index of the chart in the display
+	 * @param fingerprint the fingerprint of the data of the chart
 	 */
-	private void arrangePanelsInDisplay(XLSExportOptions xlsExportOptions) {
-		if (xlsExportOptions.cageIndexFirst == xlsExportOptions.cageIndexLast) {
-			int indexCage = xlsExportOptions.cageIndexFirst;
-			int row = indexCage / experiment.cagesArray.nCagesAlongX;
-			int col = indexCage % experiment.cagesArray.nCagesAlongX;
-
-			if (row >= 0 && row < chartPanelArray.length && col >= 0 && col < chartPanelArray[0].length) {
-				ChartCagePair pair = chartPanelArray[row][col];
-				if (pair != null && pair.getChartPanel() != null) {
-					mainChartPanel.add(pair.getChartPanel());
-				} else {
-					mainChartPanel.add(new JPanel());
-				}
-			}
-		} else {
-			for (int row = 0; row < nPanelsAlongY; row++) {
-				for (int col = 0; col < nPanelsAlongX; col++) {
-					ChartPanel chartPanel = null;
-					if (row < chartPanelArray.length && col < chartPanelArray[0].length) {
-						ChartCagePair pair = chartPanelArray[row][col];
-						if (pair != null) {
-							chartPanel = pair.getChartPanel();
-						}
-					}
+	private void installChartPanel(ChartCagePanel chartPanel, Cage cage, int slotRow, int slotCol,
+			long fingerprint) {
+		ChartCagePair previous = chartPanelArray[slotRow][slotCol];
+		if (previous != null) {
+			keepFixedAxisRanges(previous.getChartPanel(), chartPanel);
+			closeChartPanel(previous.getChartPanel());
+		}
+		chartPanelArray[slotRow][slotCol] = new ChartCagePair(chartPanel, cage);
+		cageFingerprints[slotRow][slotCol] = fingerprint;
+
+		int index = slotRow * nPanelsAlongX + slotCol;
+		mainChartPanel.remove(index);
+		mainChartPanel.add(chartPanel, index);
+		mainChartPanel.revalidate();
+		mainChartPanel.repaint();
+	}
 
-					if (chartPanel == null) {
-						mainChartPanel.add(new JPanel());
-					} else {
-						mainChartPanel.add(chartPanel);
-					}
-				}
+	private void keepFixedAxisRanges(ChartPanel previousPanel, ChartPanel chartPanel) {
+		if (previousPanel == null || previousPanel.getChart() == null || chartPanel.getChart() == null)
+			return;
+		XYPlot previousPlot = previousPanel.getChart().getXYPlot();
+		XYPlot xyPlot = chartPanel.getChart().getXYPlot();
+		if (!previousPlot.getDomainAxis().isAutoRange()) {
+			xyPlot.getDomainAxis().setAutoRange(false);
+			xyPlot.getDomainAxis().setRange(previousPlot.getDomainAxis().getRange());
+		}
+		if (!previousPlot.getRangeAxis().isAutoRange()) {
+			xyPlot.getRangeAxis().setAutoRange(false);
+			xyPlot.getRangeAxis().setRange(previousPlot.getRangeAxis().getRange());
+		}
+	}
+
+	private void closeChartPanel(ChartPanel chartPanel) {
+		if (!(chartPanel instanceof ChartCagePanel))
+			return;
+		try {
+			((ChartCagePanel) chartPanel).close();
+		} catch (Exception e) {
+			LOGGER.warning("Could not close chart panel: " + e.getMessage());
+		}
+	}
+
+	private void closeChartPanels() {
+		if (chartPanelArray == null)
+			return;
+		for (ChartCagePair[] pairs : chartPanelArray) {
+			for (ChartCagePair pair : pairs) {
+				if (pair != null)
+					closeChartPanel(pair.getChartPanel());
 			}
 		}
 	}
 
+	/**
+	 * Fills the display with empty panels, replaced by the charts as they are
+	 * built.
+	 */
+	private void arrangePlaceholdersInDisplay() {
+		mainChartPanel.removeAll();
+		for (int i = 0; i < nPanelsAlongY * nPanelsAlongX; i++) {
+			JPanel placeholder = new JPanel();
+			placeholder.setPreferredSize(new Dimension(DEFAULT_CHART_WIDTH, DEFAULT_CHART_HEIGHT));
+			mainChartPanel.add(placeholder);
+		}
+	}
+
 	/**
 	 * Displays the chart frame.
 	 */
@@ -519,7 +681,11 @@ public class ChartCageArrayFrame extends IcyFrame {
 			return null;
 		}
 
-		spotFound.setSpotCamDataT(xyItemEntity.getItem());
+		int item = xyItemEntity.getItem();
+		if (xyDataset instanceof SpotMeasuresXYDataset) {
+			item = ((SpotMeasuresXYDataset) xyDataset).getSourceIndex(seriesIndex, item);
+		}
+		spotFound.setSpotCamDataT(item);
 		return spotFound;
 	}
 
@@ -662,6 +828,24 @@ public class ChartCageArrayFrame extends IcyFrame {
 		return nPanelsAlongY;
 	}
 
+	/**
+	 * Gets the experiment of the displayed charts.
+	 * 
+	 * @return the experiment
+	 */
+	public Experiment getExperiment() {
+		return experiment;
+	}
+
+	/**
+	 * Gets the export options of the displayed charts.
+	 * 
+	 * @return the export options
+	 */
+	public XLSExportOptions getXlsExportOptions() {
+		return xlsExportOptions;
+	}
+
 	public Range getXRange() {
 		return xRange;
 	}
@@ -678,6 +862,40 @@ public class ChartCageArrayFrame extends IcyFrame {
 		yRange = range;
 	}
 
+	/**
+	 * Inner class selecting the points displayed by a chart from the visible X
+	 * range and the width of the panel, when the chart is zoomed or resized.
+	 */
+	private static class LevelOfDetailListener extends ComponentAdapter implements AxisChangeListener {
+		private final ChartPanel chartPanel;
+		private final NumberAxis xAxis;
+		private final SpotMeasuresXYDataset dataset;
+
+		LevelOfDetailListener(ChartPanel chartPanel, NumberAxis xAxis, SpotMeasuresXYDataset dataset) {
+			this.chartPanel = chartPanel;
+			this.xAxis = xAxis;
+			this.dataset = dataset;
+		}
+
+		void update() {
+			Rectangle2D dataArea = chartPanel.getScreenDataArea();
+			int width = (dataArea != null && dataArea.getWidth() > 0) ? (int) dataArea.getWidth()
+					: chartPanel.getPreferredSize().width;
+			Range range = xAxis.getRange();
+			dataset.setLevelOfDetail(range.getLowerBound(), range.getUpperBound(), POINTS_PER_PIXEL * width);
+		}
+
+		@Override
+		public void axisChanged(AxisChangeEvent event) {
+			update();
+		}
+
+		@Override
+		public void componentResized(ComponentEvent e) {
+			update();
+		}
+	}
+
 	/**
 	 * Inner class for handling chart mouse events.
 	 */
@@ -3,14 +3,13 @@ package plugins.fmp.l_multiSPOTS96.tools.chart;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Stroke;
+import java.util.Arrays;
 import java.util.logging.Logger;
 
 import org.jfree.chart.ChartColor;
 import org.jfree.chart.axis.NumberAxis;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
-import org.jfree.data.xy.XYSeries;
-import org.jfree.data.xy.XYSeriesCollection;
 
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
 import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
@@ -26,27 +25,25 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.XLSExportOptions;
  * plot configuration, and rendering setup.
  * 
  * <p>
- * ChartCage handles the conversion of cage data into chart-ready formats,
- * manages global min/max values for axis scaling, and configures plot
- * appearance based on data characteristics.
+ * ChartCage handles the conversion of cage data into chart-ready formats and
+ * configures plot appearance based on data characteristics. The data of a cage
+ * is a {@link SpotMeasuresXYDataset} reading the measures of the spots in
+ * place, which also holds the min/max values of the chart.
  * </p>
  * 
  * <p>
  * Usage example:
  * 
  * <pre>
- * ChartCageSpots chartBuilder = new ChartCageSpots();
- * chartBuilder.initMaxMin();
- * 
- * XYSeriesCollection data = chartBuilder.combineResults(cage, resultsArray1, resultsArray2);
+ * SpotMeasuresXYDataset data = ChartCageBuild.getSpotDataDirectlyFromOneCage(exp, cage, options);
  * NumberAxis xAxis = new NumberAxis("Time");
  * NumberAxis yAxis = new NumberAxis("Value");
- * XYPlot plot = chartBuilder.buildXYPlot(data, xAxis, yAxis);
+ * XYPlot plot = ChartCageBuild.buildXYPlot(data, xAxis, yAxis);
  * </pre>
  * 
  * @author MultiSPOTS96
  * @see org.jfree.chart.plot.XYPlot
- * @see org.jfree.data.xy.XYSeriesCollection
+ * @see plugins.fmp.l_multiSPOTS96.tools.chart.SpotMeasuresXYDataset
  * @see plugins.fmp.l_multiSPOTS96.experiment.cages.Cage
  */
 public class ChartCageBuild {
@@ -81,43 +78,6 @@ public class ChartCageBuild {
 	/** Delimiter used in series descriptions */
 	private static final String DESCRIPTION_DELIMITER = ":";
 
-	/** Flag indicating if global min/max values have been set */
-	private static boolean flagMaxMinSet = false;
-
-	/** Global maximum Y value across all series */
-	private static double globalYMax = 0;
-
-	/** Global minimum Y value across all series */
-	private static double globalYMin = 0;
-
-	/** Global maximum X value across all series */
-	private static double globalXMax = 0;
-
-	/** Current maximum Y value for the current series */
-	private static double ymax = 0;
-
-	/** Current minimum Y value for the current series */
-	private static double ymin = 0;
-
-	/** Current maximum X value for the current series */
-	private static double xmax = 0;
-
-	/**
-	 * Initializes the global min/max tracking variables. This method should be
-	 * called before processing new data to reset the global extrema tracking.
-	 */
-	static public void initMaxMin() {
-		ymax = 0;
-		ymin = 0;
-		xmax = 0;
-		flagMaxMinSet = false;
-		globalYMax = 0;
-		globalYMin = 0;
-		globalXMax = 0;
-
-		// LOGGER.fine("Initialized max/min tracking variables");
-	}
-
 	/**
 	 * Builds an XY plot from the given dataset and axes.
 	 * 
@@ -127,9 +87,9 @@ public class ChartCageBuild {
 	 * @return configured XYPlot ready for chart creation
 	 * @throws IllegalArgumentException if any parameter is null
 	 */
-	static public XYPlot buildXYPlot(XYSeriesCollection xySeriesCollection, NumberAxis xAxis, NumberAxis yAxis) {
+	static public XYPlot buildXYPlot(SpotMeasuresXYDataset xySeriesCollection, NumberAxis xAxis, NumberAxis yAxis) {
 		if (xySeriesCollection == null) {
-			throw new IllegalArgumentException("XYSeriesCollection cannot be null");
+			throw new IllegalArgumentException("Dataset cannot be null");
 		}
 		if (xAxis == null) {
 			throw new IllegalArgumentException("X-axis cannot be null");
@@ -154,12 +114,12 @@ public class ChartCageBuild {
 	 * @param xySeriesCollection the dataset to analyze
 	 * @param xyPlot             the plot to update
 	 */
-	private static void updatePlotBackgroundAccordingToNFlies(XYSeriesCollection xySeriesCollection, XYPlot xyPlot) {
+	private static void updatePlotBackgroundAccordingToNFlies(SpotMeasuresXYDataset xySeriesCollection, XYPlot xyPlot) {
 		int nFlies = getNFliesFromxySeriesCollectionDescription(xySeriesCollection);
 		setXYPlotBackGroundAccordingToNFlies(xyPlot, nFlies);
 	}
 
-	private static int getNFliesFromxySeriesCollectionDescription(XYSeriesCollection xySeriesCollection) {
+	private static int getNFliesFromxySeriesCollectionDescription(SpotMeasuresXYDataset xySeriesCollection) {
 		int nFlies = -1;
 		if (xySeriesCollection == null || xySeriesCollection.getSeriesCount() == 0) {
 			LOGGER.warning("Cannot update plot background: dataset is null or empty");
@@ -167,7 +127,7 @@ public class ChartCageBuild {
 		}
 
 		try {
-			String[] description = xySeriesCollection.getSeries(0).getDescription().split(DESCRIPTION_DELIMITER);
+			String[] description = xySeriesCollection.getDescription(0).split(DESCRIPTION_DELIMITER);
 			if (description.length < 6) {
 				LOGGER.warning("Invalid series description format, using default background");
 				return nFlies;
@@ -199,28 +159,44 @@ public class ChartCageBuild {
 	 * @param experiment the stack of images and assoc items
 	 * @param cage       the cage to get data for
 	 * @param options    list of options
-	 * @return XYSeriesCollection containing the cage's data
+	 * @return dataset containing the cage's data
 	 */
-	static XYSeriesCollection getSpotDataDirectlyFromOneCage(Experiment exp, Cage cage,
+	static SpotMeasuresXYDataset getSpotDataDirectlyFromOneCage(Experiment exp, Cage cage,
 			XLSExportOptions xlsExportOptions) {
 		if (cage == null || cage.spotsArray == null || cage.spotsArray.getSpotsCount() < 1) {
 			LOGGER.warning("Cannot get spot data: spot array is empty or cage is null");
-			return new XYSeriesCollection();
+			return new SpotMeasuresXYDataset(null);
 		}
 
-		XYSeriesCollection xySeriesCollection = null;
+		if (exp.seqCamData.getTimeManager().getCamImagesTime_Ms() == null)
+			exp.seqCamData.build_MsTimesArray_From_FileNamesList();
+		double[] camImages_time_min = exp.seqCamData.getTimeManager().getCamImagesTime_Minutes();
+		return getSpotDataDirectlyFromOneCage(cage, camImages_time_min, xlsExportOptions);
+	}
 
-		for (Spot spot : cage.spotsArray.getSpotsList()) {
-			if (xySeriesCollection == null) {
-				xySeriesCollection = new XYSeriesCollection();
-			}
+	/**
+	 * Extracts spot data from one cage, with given times. Does not access the
+	 * experiment and can be called from a background thread.
+	 * 
+	 * @param cage             the cage to get data for
+	 * @param camImagesTimeMin the times of the images, in minutes
+	 * @param xlsExportOptions list of options
+	 * @return dataset containing the cage's data
+	 */
+	static SpotMeasuresXYDataset getSpotDataDirectlyFromOneCage(Cage cage, double[] camImagesTimeMin,
+			XLSExportOptions xlsExportOptions) {
+		SpotMeasuresXYDataset xySeriesCollection = new SpotMeasuresXYDataset(camImagesTimeMin);
 
-			XYSeries seriesXY = createXYSeriesFromSpotMeasure(exp, spot, xlsExportOptions);
-			if (seriesXY != null) {
-				seriesXY.setDescription(buildSeriesDescriptionFromCageAndSpot(cage, spot));
-				xySeriesCollection.addSeries(seriesXY);
-				updateGlobalMaxMin();
+		for (Spot spot : cage.spotsArray.getSpotsList()) {
+			SpotMeasure spotMeasure = spot.getMeasurements(xlsExportOptions.exportType);
+			if (spotMeasure == null)
+				continue;
+			double divider = 1.;
+			if (xlsExportOptions.relativeToT0 && xlsExportOptions.exportType != EnumXLSExport.AREA_FLYPRESENT) {
+				divider = spotMeasure.getMaximumValue();
 			}
+			xySeriesCollection.addSeries(spot.getName(), buildSeriesDescriptionFromCageAndSpot(cage, spot),
+					spotMeasure.getValues(), divider);
 		}
 
 		// LOGGER.fine("Extracted " + seriesCount + " series for cage ID: " +
@@ -228,6 +204,27 @@ public class ChartCageBuild {
 		return xySeriesCollection;
 	}
 
+	/**
+	 * Computes a fingerprint of the data displayed for one cage: the
+	 * descriptions of its series and the values of their measures. Two equal
+	 * fingerprints mean that the chart does not need to be rebuilt.
+	 * 
+	 * @param cage             the cage
+	 * @param xlsExportOptions list of options
+	 * @return the fingerprint
+	 */
+	static long getSpotDataFingerprint(Cage cage, XLSExportOptions xlsExportOptions) {
+		long fingerprint = xlsExportOptions.exportType.hashCode();
+		fingerprint = 31 * fingerprint + (xlsExportOptions.relativeToT0 ? 1 : 0);
+		for (Spot spot : cage.spotsArray.getSpotsList()) {
+			fingerprint = 31 * fingerprint + spot.getName().hashCode();
+			fingerprint = 31 * fingerprint + buildSeriesDescriptionFromCageAndSpot(cage, spot).hashCode();
+			SpotMeasure spotMeasure = spot.getMeasurements(xlsExportOptions.exportType);
+			fingerprint = 31 * fingerprint + (spotMeasure != null ? Arrays.hashCode(spotMeasure.getValues()) : 0);
+		}
+		return fingerprint;
+	}
+
 	/**
 	 * Builds a description string for a series.
 	 * 
@@ -243,77 +240,13 @@ public class ChartCageBuild {
 				+ color.getBlue();
 	}
 
-	private static XYSeries createXYSeriesFromSpotMeasure(Experiment exp, Spot spot,
-			XLSExportOptions xlsExportOptions) {
-		XYSeries seriesXY = new XYSeries(spot.getName(), false);
-
-		if (exp.seqCamData.getTimeManager().getCamImagesTime_Ms() == null)
-			exp.seqCamData.build_MsTimesArray_From_FileNamesList();
-		double[] camImages_time_min = exp.seqCamData.getTimeManager().getCamImagesTime_Minutes();
-		SpotMeasure spotMeasure = spot.getMeasurements(xlsExportOptions.exportType);
-		double divider = 1.;
-		if (xlsExportOptions.relativeToT0 && xlsExportOptions.exportType != EnumXLSExport.AREA_FLYPRESENT) {
-			divider = spotMeasure.getMaximumValue();
-		}
-
-		int npoints = spotMeasure.getCount();
-
-		for (int j = 0; j < npoints; j++) {
-			double x = camImages_time_min[j];
-			double y = spotMeasure.getValueAt(j) / divider;
-			seriesXY.add(x, y);
-
-			if (ymax < y) {
-				ymax = y;
-			}
-			if (ymin > y) {
-				ymin = y;
-			}
-			x++;
-		}
-		return seriesXY;
-	}
-
-	/**
-	 * Updates the global min/max values based on current series extrema.
-	 */
-	private static void updateGlobalMaxMin() {
-		if (!flagMaxMinSet) {
-			globalYMax = ymax;
-			globalYMin = ymin;
-			globalXMax = xmax;
-			flagMaxMinSet = true;
-			// LOGGER.fine(
-//					"Set initial global extrema: Y[" + globalYMin + ", " + globalYMax + "], X[0, " + globalXMax + "]");
-		} else {
-//			boolean updated = false;
-			if (globalYMax < ymax) {
-				globalYMax = ymax;
-//				updated = true;
-			}
-			if (globalYMin > ymin) {
-				globalYMin = ymin;
-//				updated = true;
-			}
-			if (globalXMax < xmax) {
-				globalXMax = xmax;
-//				updated = true;
-			}
-
-//			if (updated) {
-//				LOGGER.fine(
-//						"Updated global extrema: Y[" + globalYMin + ", " + globalYMax + "], X[0, " + globalXMax + "]");
-//			}
-		}
-	}
-
 	/**
 	 * Creates a renderer for the XY plot with appropriate styling.
 	 * 
 	 * @param xySeriesCollection the dataset to render
 	 * @return configured XYLineAndShapeRenderer
 	 */
-	private static XYLineAndShapeRenderer getSubPlotRenderer(XYSeriesCollection xySeriesCollection) {
+	private static XYLineAndShapeRenderer getSubPlotRenderer(SpotMeasuresXYDataset xySeriesCollection) {
 		if (xySeriesCollection == null) {
 			LOGGER.warning("Cannot create renderer: dataset is null");
 			return null;
@@ -325,7 +258,7 @@ public class ChartCageBuild {
 
 		for (int i = 0; i < xySeriesCollection.getSeriesCount(); i++) {
 			try {
-				String[] description = xySeriesCollection.getSeries(i).getDescription().split(DESCRIPTION_DELIMITER);
+				String[] description = xySeriesCollection.getDescription(i).split(DESCRIPTION_DELIMITER);
 				if (description.length >= 12) {
 					int r = Integer.parseInt(description[7]);
 					int g = Integer.parseInt(description[9]);
@@ -350,41 +283,4 @@ public class ChartCageBuild {
 		// series");
 		return subPlotRenderer;
 	}
-
-	/**
-	 * Gets the global maximum Y value.
-	 * 
-	 * @return the global Y maximum
-	 */
-	public double getGlobalYMax() {
-		return globalYMax;
-	}
-
-	/**
-	 * Gets the global minimum Y value.
-	 * 
-	 * @return the global Y minimum
-	 */
-	public double getGlobalYMin() {
-		return globalYMin;
-	}
-
-	/**
-	 * Gets the global maximum X value.
-	 * 
-	 * @return the global X maximum
-	 */
-	public double getGlobalXMax() {
-		return globalXMax;
-	}
-
-	/**
-	 * Checks if global min/max values have been set.
-	 * 
-	 * @return true if global extrema are set, false otherwise
-	 */
-	public boolean isGlobalMaxMinSet() {
-		return flagMaxMinSet;
-	}
-
 }
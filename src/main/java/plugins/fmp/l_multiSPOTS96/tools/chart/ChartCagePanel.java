@@ -57,7 +57,8 @@ public class ChartCagePanel extends ChartPanel implements PropertyChangeListener
 
 	@Override
 	public void close() throws Exception {
-		this.cageListened.getProperties().removePropertyChangeListener(this);
+		if (this.cageListened != null)
+			this.cageListened.getProperties().removePropertyChangeListener(this);
 		this.cageListened = null;
 	}
 
@@ -0,0 +1,332 @@
+package plugins.fmp.l_multiSPOTS96.tools.chart;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jfree.data.DomainInfo;
+import org.jfree.data.Range;
+import org.jfree.data.RangeInfo;
+import org.jfree.data.xy.AbstractXYDataset;
+
+/**
+ * XY dataset reading the measures of the spots of a cage directly from their
+ * arrays.
+ *
+ * <p>
+ * All series share the same X values (the times of the images) and each series
+ * keeps a reference to the values of one spot measure, optionally divided by a
+ * constant; no object is created per point. The bounds of the X and Y values
+ * are computed once, when a series is added, and are returned to the axes
+ * through {@link DomainInfo} and {@link RangeInfo} so that auto ranging does
+ * not iterate over the points again.
+ * </p>
+ *
+ * <p>
+ * Series can be displayed at a lower level of detail (see
+ * {@link #setLevelOfDetail}): only the minimum and maximum of each bucket of
+ * points within the visible X range are then returned, which keeps the shape of
+ * the curves (peaks included) at the resolution of the screen. The full arrays
+ * are kept, so the points are selected again from them at each zoom. Item
+ * indices then differ from the indices of the measures; see
+ * {@link #getSourceIndex}.
+ * </p>
+ *
+ * <p>
+ * The dataset does not copy the arrays: a change of the measures is only
+ * displayed after {@link #fireDatasetChanged()}, and the bounds are those of
+ * the values when the series was added.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @see plugins.fmp.l_multiSPOTS96.tools.chart.ChartCageBuild
+ */
+public class SpotMeasuresXYDataset extends AbstractXYDataset implements DomainInfo, RangeInfo {
+
+	private static final long serialVersionUID = 1L;
+
+	/** X values shared by all series */
+	private final double[] xValues;
+
+	/** Series of the dataset */
+	private final List<Series> seriesList = new ArrayList<Series>();
+
+	/** Bounds of the Y values of all series, NaN when empty */
+	private double yMin = Double.NaN;
+	private double yMax = Double.NaN;
+
+	/** Number of X values used by the longest series */
+	private int maxItemCount = 0;
+
+	/** Current level of detail: visible X range and maximum number of points */
+	private double lodLower = Double.NaN;
+	private double lodUpper = Double.NaN;
+	private int lodMaxPoints = 0;
+
+	private static class Series {
+		final Comparable<?> key;
+		final String description;
+		final double[] values;
+		final double divider;
+		final int itemCount;
+		/** Indices of the displayed values, null to display them all */
+		int[] items = null;
+
+		Series(Comparable<?> key, String description, double[] values, double divider, int itemCount) {
+			this.key = key;
+			this.description = description;
+			this.values = values;
+			this.divider = divider;
+			this.itemCount = itemCount;
+		}
+	}
+
+	/**
+	 * Creates an empty dataset.
+	 *
+	 * @param xValues the X values shared by all series (not copied)
+	 */
+	public SpotMeasuresXYDataset(double[] xValues) {
+		this.xValues = xValues != null ? xValues : new double[0];
+	}
+
+	/**
+	 * Adds a series; Y values are {@code values[i] / divider}.
+	 *
+	 * @param key         the key of the series (the name of the spot)
+	 * @param description the description of the series
+	 * @param values      the values of the series (not copied)
+	 * @param divider     the divider of the values
+	 */
+	public void addSeries(Comparable<?> key, String description, double[] values, double divider) {
+		if (key == null) {
+			throw new IllegalArgumentException("Series key cannot be null");
+		}
+		int itemCount = values != null ? Math.min(values.length, xValues.length) : 0;
+		Series series = new Series(key, description, values, divider, itemCount);
+		seriesList.add(series);
+		updateBounds(series);
+		if (lodMaxPoints > 0)
+			series.items = selectItems(series, lodLower, lodUpper, lodMaxPoints);
+	}
+
+	private void updateBounds(Series series) {
+		for (int i = 0; i < series.itemCount; i++) {
+			double y = series.values[i] / series.divider;
+			if (Double.isNaN(y))
+				continue;
+			if (Double.isNaN(yMin) || y < yMin)
+				yMin = y;
+			if (Double.isNaN(yMax) || y > yMax)
+				yMax = y;
+		}
+		if (series.itemCount > maxItemCount)
+			maxItemCount = series.itemCount;
+	}
+
+	/**
+	 * Gets the description of a series.
+	 *
+	 * @param series the series index
+	 * @return the description given when the series was added
+	 */
+	public String getDescription(int series) {
+		return seriesList.get(series).description;
+	}
+
+	public double getYMin() {
+		return yMin;
+	}
+
+	public double getYMax() {
+		return yMax;
+	}
+
+	// === LEVEL OF DETAIL ===
+
+	/**
+	 * Selects the points displayed for an X range. A series with more than
+	 * {@code maxPoints} points in the range is reduced to the minimum and the
+	 * maximum of {@code maxPoints / 2} buckets, plus the points just outside of
+	 * the range so that the lines reach the borders of the plot.
+	 *
+	 * @param lower     the lower bound of the visible X range
+	 * @param upper     the upper bound of the visible X range
+	 * @param maxPoints the maximum number of points per series (about twice
+	 *                  the width of the plot in pixels), 0 to display all
+	 *                  points
+	 * @return true if the selection changed (the dataset listeners have then
+	 *         been notified)
+	 */
+	public boolean setLevelOfDetail(double lower, double upper, int maxPoints) {
+		if (maxPoints < 0)
+			maxPoints = 0;
+		if (maxPoints == lodMaxPoints && Double.compare(lower, lodLower) == 0
+				&& Double.compare(upper, lodUpper) == 0)
+			return false;
+
+		lodLower = lower;
+		lodUpper = upper;
+		lodMaxPoints = maxPoints;
+		for (Series series : seriesList)
+			series.items = maxPoints > 0 ? selectItems(series, lower, upper, maxPoints) : null;
+		fireDatasetChanged();
+		return true;
+	}
+
+	/**
+	 * Gets the index in the measures of a displayed item.
+	 *
+	 * @param series the series index
+	 * @param item   the item index
+	 * @return the index of the value in the array of the series
+	 */
+	public int getSourceIndex(int series, int item) {
+		int[] items = seriesList.get(series).items;
+		return items != null ? items[item] : item;
+	}
+
+	private int[] selectItems(Series series, double lower, double upper, int maxPoints) {
+		int n = series.itemCount;
+		if (n <= maxPoints)
+			return null;
+
+		// X values are the times of the images, in increasing order
+		int first = Math.max(0, lowerIndex(lower, n) - 1);
+		int last = Math.min(n - 1, lowerIndex(upper, n));
+		int nInRange = last - first + 1;
+		if (nInRange <= maxPoints) {
+			if (nInRange == n)
+				return null;
+			int[] items = new int[nInRange];
+			for (int i = 0; i < nInRange; i++)
+				items[i] = first + i;
+			return items;
+		}
+
+		int nBuckets = Math.max(1, (maxPoints - 2) / 2);
+		int[] items = new int[2 * nBuckets + 2];
+		int count = 0;
+		items[count++] = first;
+		int inner = nInRange - 2;
+		for (int b = 0; b < nBuckets; b++) {
+			int start = first + 1 + (int) ((long) b * inner / nBuckets);
+			int end = first + 1 + (int) ((long) (b + 1) * inner / nBuckets);
+			if (start >= end)
+				continue;
+			int iMin = -1;
+			int iMax = -1;
+			for (int i = start; i < end; i++) {
+				double value = series.values[i];
+				if (Double.isNaN(value))
+					continue;
+				if (iMin < 0 || value < series.values[iMin])
+					iMin = i;
+				if (iMax < 0 || value > series.values[iMax])
+					iMax = i;
+			}
+			if (iMin < 0) {
+				// a bucket without values keeps the gap in the curve
+				items[count++] = start;
+			} else if (iMin == iMax) {
+				items[count++] = iMin;
+			} else {
+				items[count++] = Math.min(iMin, iMax);
+				items[count++] = Math.max(iMin, iMax);
+			}
+		}
+		items[count++] = last;
+		return count == items.length ? items : Arrays.copyOf(items, count);
+	}
+
+	/**
+	 * @return the index of the first X value not lower than x, or n if none
+	 */
+	private int lowerIndex(double x, int n) {
+		int low = 0;
+		int high = n;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (xValues[middle] < x)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	// === XYDataset ===
+
+	@Override
+	public int getSeriesCount() {
+		return seriesList.size();
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Comparable getSeriesKey(int series) {
+		return seriesList.get(series).key;
+	}
+
+	@Override
+	public int getItemCount(int series) {
+		Series s = seriesList.get(series);
+		return s.items != null ? s.items.length : s.itemCount;
+	}
+
+	@Override
+	public double getXValue(int series, int item) {
+		int[] items = seriesList.get(series).items;
+		return xValues[items != null ? items[item] : item];
+	}
+
+	@Override
+	public double getYValue(int series, int item) {
+		Series s = seriesList.get(series);
+		return s.values[s.items != null ? s.items[item] : item] / s.divider;
+	}
+
+	@Override
+	public Number getX(int series, int item) {
+		return getXValue(series, item);
+	}
+
+	@Override
+	public Number getY(int series, int item) {
+		return getYValue(series, item);
+	}
+
+	// === DomainInfo ===
+
+	@Override
+	public double getDomainLowerBound(boolean includeInterval) {
+		return maxItemCount > 0 ? xValues[0] : Double.NaN;
+	}
+
+	@Override
+	public double getDomainUpperBound(boolean includeInterval) {
+		return maxItemCount > 0 ? xValues[maxItemCount - 1] : Double.NaN;
+	}
+
+	@Override
+	public Range getDomainBounds(boolean includeInterval) {
+		return maxItemCount > 0 ? new Range(xValues[0], xValues[maxItemCount - 1]) : null;
+	}
+
+	// === RangeInfo ===
+
+	@Override
+	public double getRangeLowerBound(boolean includeInterval) {
+		return yMin;
+	}
+
+	@Override
+	public double getRangeUpperBound(boolean includeInterval) {
+		return yMax;
+	}
+
+	@Override
+	public Range getRangeBounds(boolean includeInterval) {
+		return Double.isNaN(yMin) ? null : new Range(yMin, yMax);
+	}
+}
@@ -0,0 +1,45 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
+
+import icy.image.IcyBufferedImage;
+
+/**
+ * Transform computed by bands of rows; applied to a whole image, it is
+ * computed as one band on the calling thread.
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public abstract class ImageTransformBandAbstract extends ImageTransformFunctionAbstract
+		implements ImageTransformBandInterface {
+
+	@Override
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		IcyBufferedImage img2 = getDestination(sourceImage, destinationImage, options);
+		if (img2 == null)
+			return null;
+		transformBand(sourceImage, img2, options, 0, sourceImage.getSizeY());
+		ImageTransformBuffers.dataChanged(img2);
+		return img2;
+	}
+
+	@Override
+	public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		return 0;
+	}
+
+	/**
+	 * @return the first row of the source read to compute a band
+	 */
+	protected static int getFirstRowWithHalo(int yFirst, int halo) {
+		return Math.max(0, yFirst - halo);
+	}
+
+	/**
+	 * @return the row following the last row of the source read to compute a
+	 *         band
+	 */
+	protected static int getLastRowWithHalo(IcyBufferedImage sourceImage, int yLast, int halo) {
+		return Math.min(sourceImage.getSizeY(), yLast + halo);
+	}
+}
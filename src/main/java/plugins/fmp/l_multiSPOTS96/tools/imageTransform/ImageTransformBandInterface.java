@@ -0,0 +1,49 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
+
+import icy.image.IcyBufferedImage;
+
+/**
+ * Transform computing its result by bands of rows, which can be computed
+ * concurrently by {@link ImageTransformEngine}.
+ *
+ * <p>
+ * The rows of a band of the result depend on the same rows of the source and,
+ * for a neighbourhood transform, on a number of rows above and below them: its
+ * halo. A band reads these rows only, and writes all the channels of its rows
+ * of the destination, so that bands computed separately give the same result
+ * as the whole image.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public interface ImageTransformBandInterface extends ImageTransformInterface {
+
+	/** Halo of a transform depending on the whole image */
+	public static final int HALO_WHOLE_IMAGE = -1;
+
+	/**
+	 * @return the number of rows of the source above and below a band used to
+	 *         compute it, 0 for a transform of rows, or {@link #HALO_WHOLE_IMAGE}
+	 *         if the image cannot be divided into bands
+	 */
+	public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions options);
+
+	/**
+	 * Gets the image receiving the result, before computing the bands.
+	 *
+	 * @return the destination image if it is compatible with the result (see
+	 *         {@link ImageTransformBuffers#getDestination}), a new image
+	 *         otherwise, or null if the transform cannot be applied
+	 */
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options);
+
+	/**
+	 * Computes the rows yFirst to yLast - 1 of all channels of the destination.
+	 * Bands can be computed concurrently: a band only writes its rows, and the
+	 * change of the destination is not notified.
+	 */
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options, int yFirst, int yLast);
+}
@@ -28,11 +28,9 @@ public abstract class ImageTransformBase implements ImageTransformInterface {
     
     private static final Logger logger = Logger.getLogger(ImageTransformBase.class.getName());
     
-    // Static cache for array operations to improve performance
-    private static final ArrayOperationCache arrayCache = new ArrayOperationCache();
-    
     @Override
-    public final IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+    public final IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+                                            ImageTransformOptions options) {
         String transformName = getClass().getSimpleName();
         
         try {
@@ -40,7 +38,7 @@ public abstract class ImageTransformBase implements ImageTransformInterface {
             validateInputs(sourceImage, options, transformName);
             
             // Execute the transformation with error handling
-            return executeTransformSafely(sourceImage, options, transformName);
+            return executeTransformSafely(sourceImage, destinationImage, options, transformName);
             
         } catch (ImageTransformException e) {
             logger.severe("Transform failed: " + e.getMessage());
@@ -57,12 +55,18 @@ public abstract class ImageTransformBase implements ImageTransformInterface {
      * Executes the specific transformation algorithm.
      * This method must be implemented by concrete transform classes.
      * 
+     * The result is written into the destination image when it is compatible
+     * (see {@link ImageTransformBuffers#getDestination}).
+     * 
      * @param sourceImage The source image to transform
+     * @param destinationImage The image receiving the result, may be null
      * @param options The transformation options
      * @return The transformed image
      * @throws ImageTransformException If the transformation fails
      */
-    protected abstract IcyBufferedImage executeTransform(IcyBufferedImage sourceImage, ImageTransformOptions options) 
+    protected abstract IcyBufferedImage executeTransform(IcyBufferedImage sourceImage, 
+                                                         IcyBufferedImage destinationImage,
+                                                         ImageTransformOptions options) 
             throws ImageTransformException;
     
     /**
@@ -137,6 +141,7 @@ public abstract class ImageTransformBase implements ImageTransformInterface {
      * Safely executes the transformation with comprehensive error handling.
      */
     private IcyBufferedImage executeTransformSafely(IcyBufferedImage sourceImage, 
+                                                   IcyBufferedImage destinationImage,
                                                    ImageTransformOptions options, 
                                                    String transformName) throws ImageTransformException {
         
@@ -145,7 +150,7 @@ public abstract class ImageTransformBase implements ImageTransformInterface {
             preprocessImage(sourceImage, options);
             
             // Execute the actual transformation
-            IcyBufferedImage result = executeTransform(sourceImage, options);
+            IcyBufferedImage result = executeTransform(sourceImage, destinationImage, options);
             
             // Post-processing hook
             result = postprocessImage(result, options);
@@ -191,14 +196,14 @@ public abstract class ImageTransformBase implements ImageTransformInterface {
     }
     
     /**
-     * Gets RGB arrays from source image with optimization and caching.
+     * Gets RGB arrays from source image, cached by {@link ImageTransformCache}.
      * This method eliminates the code duplication present in 20+ transform classes.
      * 
      * @param sourceImage The source image
-     * @return Array containing R, G, B double arrays
+     * @return Array containing R, G, B double arrays, shared: not to be modified
      */
     protected double[][] getRGBArraysOptimized(IcyBufferedImage sourceImage) {
-        return arrayCache.getRGBArrays(sourceImage);
+        return ImageTransformCache.getShared().getRGBArrays(sourceImage);
     }
     
     /**
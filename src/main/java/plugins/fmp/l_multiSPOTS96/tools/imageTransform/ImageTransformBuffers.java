@@ -0,0 +1,409 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import icy.image.IcyBufferedImage;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+
+/**
+ * Working arrays of the image transforms, kept per thread and reused from one
+ * call to the next, and access to rows of the images.
+ *
+ * <p>
+ * A transform applied to each image of a series converts the channels of the
+ * source to int, float or double arrays and computes its result in another
+ * array. These arrays are taken from numbered slots of the calling thread
+ * instead of being allocated at each call; an array is only reallocated when
+ * a larger one is needed, so it may be longer than requested. The content of a
+ * slot is only valid until the next call using the same slot on the same
+ * thread: the slots must not be kept or returned by a transform.
+ * </p>
+ *
+ * <p>
+ * The threads of the transforms are kept by their pool, and so are their
+ * slots, which hold arrays of the size of the largest images transformed.
+ * {@link #release()} drops the arrays of all the threads once the series or
+ * the viewers using them are closed.
+ * </p>
+ *
+ * <p>
+ * Rows are read and written by bands (see
+ * {@link ImageTransformBandInterface}): the values of the rows yFirst to
+ * yLast - 1 of a channel are stored from index 0 of the arrays.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public final class ImageTransformBuffers {
+
+	// === CONSTANTS ===
+
+	/** Number of slots of each type of array */
+	public static final int N_SLOTS = 8;
+
+	/** Number of sets of channel arrays of the point transforms */
+	public static final int N_POINT_SETS = 2;
+
+	private static final Map<Thread, ImageTransformBuffers> ALL_BUFFERS = Collections
+			.synchronizedMap(new WeakHashMap<Thread, ImageTransformBuffers>());
+
+	private static final AtomicInteger GENERATION = new AtomicInteger();
+
+	private static final ThreadLocal<ImageTransformBuffers> BUFFERS = new ThreadLocal<ImageTransformBuffers>() {
+		@Override
+		protected ImageTransformBuffers initialValue() {
+			ImageTransformBuffers buffers = new ImageTransformBuffers();
+			ALL_BUFFERS.put(Thread.currentThread(), buffers);
+			return buffers;
+		}
+	};
+
+	// === FIELDS ===
+
+	private final int[][] intArrays = new int[N_SLOTS][];
+	private final float[][] floatArrays = new float[N_SLOTS][];
+	private final double[][] doubleArrays = new double[N_SLOTS][];
+	private final Object[] typedArrays = new Object[N_SLOTS];
+	private final DataType[] typedArrayTypes = new DataType[N_SLOTS];
+	private final double[][][] pointArrays = new double[N_POINT_SETS][][];
+	private int generation = GENERATION.get();
+
+	private ImageTransformBuffers() {
+	}
+
+	// === RELEASE ===
+
+	/**
+	 * Drops the arrays of the slots of all threads. A thread transforming an
+	 * image meanwhile keeps the arrays it has got, and allocates new ones at its
+	 * next call.
+	 */
+	public static void release() {
+		GENERATION.incrementAndGet();
+		List<ImageTransformBuffers> allBuffers;
+		synchronized (ALL_BUFFERS) {
+			allBuffers = new ArrayList<ImageTransformBuffers>(ALL_BUFFERS.values());
+		}
+		for (ImageTransformBuffers buffers : allBuffers)
+			buffers.clear();
+	}
+
+	/**
+	 * @return the slots of the calling thread, emptied if they have been
+	 *         released since its last call
+	 */
+	private static ImageTransformBuffers getBuffers() {
+		ImageTransformBuffers buffers = BUFFERS.get();
+		int current = GENERATION.get();
+		if (buffers.generation != current) {
+			buffers.clear();
+			buffers.generation = current;
+		}
+		return buffers;
+	}
+
+	private void clear() {
+		Arrays.fill(intArrays, null);
+		Arrays.fill(floatArrays, null);
+		Arrays.fill(doubleArrays, null);
+		Arrays.fill(typedArrays, null);
+		Arrays.fill(typedArrayTypes, null);
+		Arrays.fill(pointArrays, null);
+	}
+
+	// === DESTINATION IMAGES ===
+
+	/**
+	 * Gets the image receiving the result of a transform.
+	 *
+	 * @param sourceImage      the image transformed
+	 * @param destinationImage the image proposed by the caller, may be null
+	 * @param sizeC            the number of channels of the result
+	 * @param dataType         the data type of the result
+	 * @return the destination image if it has the size, number of channels and
+	 *         data type of the result and is not the source image, a new image
+	 *         otherwise
+	 */
+	public static IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			int sizeC, DataType dataType) {
+		if (!isCompatible(sourceImage, destinationImage, sizeC, dataType))
+			return new IcyBufferedImage(sourceImage.getSizeX(), sourceImage.getSizeY(), sizeC, dataType);
+		return destinationImage;
+	}
+
+	/**
+	 * @return true if the destination image can receive the result of a
+	 *         transform of the source image
+	 */
+	public static boolean isCompatible(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage, int sizeC,
+			DataType dataType) {
+		return destinationImage != null && destinationImage != sourceImage
+				&& destinationImage.getSizeX() == sourceImage.getSizeX()
+				&& destinationImage.getSizeY() == sourceImage.getSizeY() && destinationImage.getSizeC() == sizeC
+				&& destinationImage.getDataType_() == dataType;
+	}
+
+	/**
+	 * Notifies the change of the data of all channels of an image, once its rows
+	 * have been written.
+	 */
+	public static void dataChanged(IcyBufferedImage image) {
+		for (int c = 0; c < image.getSizeC(); c++)
+			image.setDataXY(c, image.getDataXY(c));
+	}
+
+	// === ROWS ===
+
+	/**
+	 * Converts rows of a channel of an image into the int array of a slot.
+	 *
+	 * @return the array of the slot
+	 */
+	public static int[] getRowsAsInt(IcyBufferedImage image, int c, int yFirst, int yLast, int slot) {
+		int sizeX = image.getSizeX();
+		int length = (yLast - yFirst) * sizeX;
+		int[] values = getIntArray(slot, length, false);
+		Array1DUtil.arrayToIntArray(image.getDataXY(c), yFirst * sizeX, values, 0, length, image.isSignedDataType());
+		return values;
+	}
+
+	/**
+	 * Converts rows of a channel of an image into the float array of a slot.
+	 *
+	 * @return the array of the slot
+	 */
+	public static float[] getRowsAsFloat(IcyBufferedImage image, int c, int yFirst, int yLast, int slot) {
+		int sizeX = image.getSizeX();
+		int length = (yLast - yFirst) * sizeX;
+		float[] values = getFloatArray(slot, length, false);
+		Array1DUtil.arrayToFloatArray(image.getDataXY(c), yFirst * sizeX, values, 0, length,
+				image.isSignedDataType());
+		return values;
+	}
+
+	/**
+	 * Converts rows of a channel of an image into the double array of a slot.
+	 *
+	 * @return the array of the slot
+	 */
+	public static double[] getRowsAsDouble(IcyBufferedImage image, int c, int yFirst, int yLast, int slot) {
+		double[] values = getDoubleArray(slot, (yLast - yFirst) * image.getSizeX(), false);
+		getRows(image, c, yFirst, yLast, values);
+		return values;
+	}
+
+	/**
+	 * Converts rows of a channel of an image into a double array.
+	 */
+	public static void getRows(IcyBufferedImage image, int c, int yFirst, int yLast, double[] values) {
+		int sizeX = image.getSizeX();
+		Array1DUtil.arrayToDoubleArray(image.getDataXY(c), yFirst * sizeX, values, 0, (yLast - yFirst) * sizeX,
+				image.isSignedDataType());
+	}
+
+	/**
+	 * Writes int values into rows of a channel of an image, clamped to its data
+	 * type, without notifying the change.
+	 */
+	public static void setRows(int[] values, IcyBufferedImage image, int c, int yFirst, int yLast,
+			boolean srcSigned, boolean dstSigned) {
+		int sizeX = image.getSizeX();
+		Array1DUtil.intArrayToSafeArray(values, 0, image.getDataXY(c), yFirst * sizeX, (yLast - yFirst) * sizeX,
+				srcSigned, dstSigned);
+	}
+
+	/**
+	 * Writes float values into rows of a channel of an image, clamped to its data
+	 * type, without notifying the change.
+	 */
+	public static void setRows(float[] values, IcyBufferedImage image, int c, int yFirst, int yLast,
+			boolean dstSigned) {
+		int sizeX = image.getSizeX();
+		Array1DUtil.floatArrayToSafeArray(values, 0, image.getDataXY(c), yFirst * sizeX, (yLast - yFirst) * sizeX,
+				dstSigned);
+	}
+
+	/**
+	 * Writes double values into rows of a channel of an image, clamped to its
+	 * data type, without notifying the change.
+	 */
+	public static void setRows(double[] values, IcyBufferedImage image, int c, int yFirst, int yLast,
+			boolean dstSigned) {
+		int sizeX = image.getSizeX();
+		Array1DUtil.doubleArrayToSafeArray(values, 0, image.getDataXY(c), yFirst * sizeX, (yLast - yFirst) * sizeX,
+				dstSigned);
+	}
+
+	/**
+	 * Copies rows of a channel of an image to another channel of this image.
+	 */
+	public static void copyRows(IcyBufferedImage image, int cFrom, int cTo, int yFirst, int yLast) {
+		int sizeX = image.getSizeX();
+		System.arraycopy(image.getDataXY(cFrom), yFirst * sizeX, image.getDataXY(cTo), yFirst * sizeX,
+				(yLast - yFirst) * sizeX);
+	}
+
+	/**
+	 * Fills rows of a channel of an image with 0, without notifying the change.
+	 */
+	public static void clearRows(IcyBufferedImage image, int c, int yFirst, int yLast) {
+		int sizeX = image.getSizeX();
+		int from = yFirst * sizeX;
+		int to = yLast * sizeX;
+		Object data = image.getDataXY(c);
+		if (data instanceof byte[])
+			Arrays.fill((byte[]) data, from, to, (byte) 0);
+		else if (data instanceof short[])
+			Arrays.fill((short[]) data, from, to, (short) 0);
+		else if (data instanceof int[])
+			Arrays.fill((int[]) data, from, to, 0);
+		else if (data instanceof long[])
+			Arrays.fill((long[]) data, from, to, 0L);
+		else if (data instanceof float[])
+			Arrays.fill((float[]) data, from, to, 0f);
+		else if (data instanceof double[])
+			Arrays.fill((double[]) data, from, to, 0.);
+	}
+
+	/**
+	 * Writes the result computed in the first channel of rows to the other
+	 * channels of a 3 channels image, or fills them with 0.
+	 */
+	public static void completeRows(IcyBufferedImage image, int yFirst, int yLast, boolean copyResultTo3Planes) {
+		for (int c = 1; c < 3; c++) {
+			if (copyResultTo3Planes)
+				copyRows(image, 0, c, yFirst, yLast);
+			else
+				clearRows(image, c, yFirst, yLast);
+		}
+	}
+
+	/**
+	 * Copies the results computed in the first channel of points to the other
+	 * channels of a 3 channels result, or fills them with 0.
+	 */
+	public static void completePoints(double[][] results, int npixels, boolean copyResultTo3Planes) {
+		for (int c = 1; c < 3; c++) {
+			if (copyResultTo3Planes)
+				System.arraycopy(results[0], 0, results[c], 0, npixels);
+			else
+				Arrays.fill(results[c], 0, npixels, 0.);
+		}
+	}
+
+	/**
+	 * Copies the results computed in the first channel of points of unsigned
+	 * bytes to the other channels of a 3 channels result, or fills them with 0.
+	 */
+	public static void completeBytes(byte[][] results, int offset, int npixels, boolean copyResultTo3Planes) {
+		for (int c = 1; c < 3; c++) {
+			if (copyResultTo3Planes)
+				System.arraycopy(results[0], offset, results[c], offset, npixels);
+			else
+				Arrays.fill(results[c], offset, offset + npixels, (byte) 0);
+		}
+	}
+
+	// === SLOTS ===
+
+	/**
+	 * @param slot   the slot, from 0 to {@link #N_SLOTS} - 1
+	 * @param length the number of values needed
+	 * @param clear  true to fill the first length values with 0, false to keep
+	 *               the values left by the previous call
+	 * @return the int array of the slot of the calling thread, of at least
+	 *         length values
+	 */
+	public static int[] getIntArray(int slot, int length, boolean clear) {
+		ImageTransformBuffers buffers = getBuffers();
+		int[] array = buffers.intArrays[slot];
+		if (array == null || array.length < length) {
+			array = new int[length];
+			buffers.intArrays[slot] = array;
+		} else if (clear)
+			Arrays.fill(array, 0, length, 0);
+		return array;
+	}
+
+	/**
+	 * @see #getIntArray(int, int, boolean)
+	 */
+	public static float[] getFloatArray(int slot, int length, boolean clear) {
+		ImageTransformBuffers buffers = getBuffers();
+		float[] array = buffers.floatArrays[slot];
+		if (array == null || array.length < length) {
+			array = new float[length];
+			buffers.floatArrays[slot] = array;
+		} else if (clear)
+			Arrays.fill(array, 0, length, 0f);
+		return array;
+	}
+
+	/**
+	 * @see #getIntArray(int, int, boolean)
+	 */
+	public static double[] getDoubleArray(int slot, int length, boolean clear) {
+		ImageTransformBuffers buffers = getBuffers();
+		double[] array = buffers.doubleArrays[slot];
+		if (array == null || array.length < length) {
+			array = new double[length];
+			buffers.doubleArrays[slot] = array;
+		} else if (clear)
+			Arrays.fill(array, 0, length, 0.);
+		return array;
+	}
+
+	/**
+	 * Gets a set of double arrays holding the values of the channels of points
+	 * (see {@link ImageTransformPointInterface}).
+	 *
+	 * @param set       the set, from 0 to {@link #N_POINT_SETS} - 1
+	 * @param nchannels the number of channels needed
+	 * @param length    the number of values needed per channel
+	 * @return the arrays of the set of the calling thread, at least nchannels
+	 *         arrays of at least length values
+	 */
+	public static double[][] getPointArrays(int set, int nchannels, int length) {
+		ImageTransformBuffers buffers = getBuffers();
+		double[][] arrays = buffers.pointArrays[set];
+		if (arrays == null || arrays.length < nchannels) {
+			double[][] newArrays = new double[nchannels][];
+			if (arrays != null)
+				System.arraycopy(arrays, 0, newArrays, 0, arrays.length);
+			arrays = newArrays;
+			buffers.pointArrays[set] = arrays;
+		}
+		for (int c = 0; c < nchannels; c++) {
+			if (arrays[c] == null || arrays[c].length < length)
+				arrays[c] = new double[length];
+		}
+		return arrays;
+	}
+
+	/**
+	 * Gets an array of the primitive type of a data type, as returned by
+	 * {@link IcyBufferedImage#getDataXY(int)}. Its values are those left by the
+	 * previous call.
+	 *
+	 * @see #getIntArray(int, int, boolean)
+	 */
+	public static Object getTypedArray(int slot, DataType dataType, int length) {
+		ImageTransformBuffers buffers = getBuffers();
+		Object array = buffers.typedArrays[slot];
+		if (array == null || buffers.typedArrayTypes[slot] != dataType || Array.getLength(array) < length) {
+			array = Array1DUtil.createArray(dataType, length);
+			buffers.typedArrays[slot] = array;
+			buffers.typedArrayTypes[slot] = dataType;
+		}
+		return array;
+	}
+}
@@ -0,0 +1,377 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import icy.image.IcyBufferedImage;
+import icy.type.collection.array.Array1DUtil;
+
+/**
+ * Cache of the products of transforms (transformed images, channel arrays)
+ * computed from frames, bounded by the number of bytes of the products.
+ *
+ * <p>
+ * A product is identified by its frame, the transform computing it and its
+ * parameters ({@link ImageTransformOptions#getParameters()}).
+ * The frame is the source image itself, compared by identity and not retained
+ * by the cache, or any key given by the caller such as a frame index. The
+ * least recently used products are evicted when the cache is full. The result
+ * of a chain ({@link ImageTransformChain}) is a single product, identified by
+ * the transforms and parameters of the chain: the transforms of a chain are
+ * computed together, without caching the intermediate images.
+ * </p>
+ *
+ * <p>
+ * The products are shared: the callers must not modify them, and must
+ * {@link #invalidate} a frame whose data is modified. The shared cache
+ * ({@link #getShared()}) is used by the overlays and the canvas, so that
+ * switching between transforms of the same frame reuses the results already
+ * computed.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public final class ImageTransformCache {
+
+	// === CONSTANTS ===
+
+	/** Product of {@link #getRGBArrays}: the first 3 channels as doubles */
+	private static final Object RGB_ARRAYS = new Object();
+
+	/** Product of a chain of transforms, the chain being its parameters */
+	private static final Object CHAIN_RESULT = new Object();
+
+	private static final ImageTransformCache SHARED = new ImageTransformCache(
+			ImageTransformConstants.Performance.TRANSFORM_CACHE_MAX_BYTES);
+
+	// === FIELDS ===
+
+	private final long maxBytes;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	private long bytes = 0;
+
+	// metrics
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Creates a cache holding products of at most maxBytes bytes.
+	 */
+	public ImageTransformCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the cache shared by the overlays, the canvas and the series
+	 */
+	public static ImageTransformCache getShared() {
+		return SHARED;
+	}
+
+	// === TRANSFORMS ===
+
+	/**
+	 * Transforms an image, or gets the result of this transform with the same
+	 * parameters computed before from the same image.
+	 *
+	 * @return the transformed image, shared, or null if the transform failed
+	 */
+	public IcyBufferedImage getTransformedImage(ImageTransformInterface transform, IcyBufferedImage sourceImage,
+			ImageTransformOptions options) {
+		return getTransformedImage(new ImageFrame(sourceImage), transform, sourceImage, options);
+	}
+
+	/**
+	 * Transforms the image of a frame, or gets the result of this transform with
+	 * the same parameters computed before from the frame.
+	 *
+	 * @param frame the key of the frame, compared with equals
+	 * @return the transformed image, shared, or null if the transform failed
+	 */
+	public IcyBufferedImage getTransformedImage(Object frame, ImageTransformInterface transform,
+			IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		if (sourceImage == null)
+			return null;
+		Key key = new Key(frame, transform, options.getParameters());
+		Object product = get(key);
+		if (product != null)
+			return (IcyBufferedImage) product;
+
+		IcyBufferedImage result = ImageTransformEngine.getTransformedImage(transform, sourceImage, options);
+		if (result != null)
+			put(key, result, getBytes(result));
+		return result;
+	}
+
+	/**
+	 * Transforms an image by a chain of transforms, or gets the result of an
+	 * equal chain computed before from the same image.
+	 *
+	 * @return the transformed image, shared, the source image if the chain is
+	 *         empty, or null if a transform failed
+	 */
+	public IcyBufferedImage getTransformedImage(ImageTransformChain chain, IcyBufferedImage sourceImage) {
+		if (sourceImage == null || chain.getNumberOfStages() == 0)
+			return sourceImage;
+		Key key = new Key(new ImageFrame(sourceImage), CHAIN_RESULT, chain);
+		Object product = get(key);
+		if (product != null)
+			return (IcyBufferedImage) product;
+
+		IcyBufferedImage result = chain.transform(sourceImage, null, null);
+		if (result != null)
+			put(key, result, getBytes(result));
+		return result;
+	}
+
+	/**
+	 * Gets the result of a chain of transforms of an image if it is in the cache,
+	 * without computing it.
+	 *
+	 * @return the transformed image, shared, the source image if the chain is
+	 *         empty, or null if it is not in the cache
+	 */
+	public IcyBufferedImage getCachedImage(ImageTransformChain chain, IcyBufferedImage sourceImage) {
+		if (sourceImage == null || chain.getNumberOfStages() == 0)
+			return sourceImage;
+		Key key = new Key(new ImageFrame(sourceImage), CHAIN_RESULT, chain);
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry == null)
+				return null;
+			hits++;
+			return (IcyBufferedImage) entry.product;
+		}
+	}
+
+	/**
+	 * Gets the first 3 channels of an image as double arrays, missing channels
+	 * being filled with 0.
+	 *
+	 * @return the arrays [R, G, B], shared
+	 */
+	public double[][] getRGBArrays(IcyBufferedImage sourceImage) {
+		if (sourceImage == null)
+			return null;
+		Key key = new Key(new ImageFrame(sourceImage), RGB_ARRAYS, null);
+		Object product = get(key);
+		if (product != null)
+			return (double[][]) product;
+
+		int npixels = sourceImage.getSizeX() * sourceImage.getSizeY();
+		int channels = Math.min(3, sourceImage.getSizeC());
+		double[][] arrays = new double[3][];
+		for (int c = 0; c < channels; c++)
+			arrays[c] = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(c), sourceImage.isSignedDataType());
+		for (int c = channels; c < 3; c++)
+			arrays[c] = new double[npixels];
+		put(key, arrays, 3L * npixels * Double.BYTES);
+		return arrays;
+	}
+
+	// === ENTRIES ===
+
+	/**
+	 * Removes the products of a frame, a source image or a frame key.
+	 */
+	public synchronized void invalidate(Object frame) {
+		Object frameKey = frame instanceof IcyBufferedImage ? new ImageFrame((IcyBufferedImage) frame) : frame;
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, Entry> entry = iterator.next();
+			if (entry.getKey().frame.equals(frameKey)) {
+				bytes -= entry.getValue().bytes;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all the products.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	private synchronized Object get(Key key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.product;
+	}
+
+	private synchronized void put(Key key, Object product, long productBytes) {
+		// a product larger than half the cache would evict all the others
+		if (productBytes > maxBytes / 2)
+			return;
+		Entry previous = entries.put(key, new Entry(product, productBytes));
+		if (previous != null)
+			bytes -= previous.bytes;
+		bytes += productBytes;
+
+		// the products of the images no longer used are removed first
+		Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key, Entry> entry = iterator.next();
+			if (entry.getKey().isCleared()) {
+				bytes -= entry.getValue().bytes;
+				iterator.remove();
+			}
+		}
+
+		iterator = entries.entrySet().iterator();
+		while (bytes > maxBytes && iterator.hasNext()) {
+			Map.Entry<Key, Entry> entry = iterator.next();
+			bytes -= entry.getValue().bytes;
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	private static long getBytes(IcyBufferedImage image) {
+		return (long) image.getSizeX() * image.getSizeY() * image.getSizeC() * image.getDataType_().getSize();
+	}
+
+	// === METRICS ===
+
+	/**
+	 * @return the number of products found in the cache
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of products computed because they were not in the cache
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of products evicted to bound the size of the cache
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the ratio of the products found in the cache, 0 if none was asked
+	 */
+	public synchronized double getHitRate() {
+		long requests = hits + misses;
+		return requests == 0 ? 0 : (double) hits / requests;
+	}
+
+	/**
+	 * @return the number of bytes of the products in the cache
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the number of products in the cache
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("ImageTransformCache: %d products, %d/%d MB, hit rate %.1f%% (%d hits, %d misses),"
+				+ " %d evictions", entries.size(), bytes >> 20, maxBytes >> 20, 100 * getHitRate(), hits, misses,
+				evictions);
+	}
+
+	// === KEYS ===
+
+	/**
+	 * Source image compared by identity, not retained by the cache.
+	 */
+	private static final class ImageFrame {
+		private final WeakReference<IcyBufferedImage> image;
+		private final int hash;
+
+		ImageFrame(IcyBufferedImage image) {
+			this.image = new WeakReference<IcyBufferedImage>(image);
+			this.hash = System.identityHashCode(image);
+		}
+
+		boolean isCleared() {
+			return image.get() == null;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ImageFrame))
+				return false;
+			IcyBufferedImage referent = image.get();
+			return referent != null && referent == ((ImageFrame) obj).image.get();
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class Key {
+		private final Object frame;
+		private final Object product;
+		private final Object parameters;
+
+		Key(Object frame, Object product, Object parameters) {
+			this.frame = frame;
+			this.product = product;
+			this.parameters = parameters;
+		}
+
+		boolean isCleared() {
+			return frame instanceof ImageFrame && ((ImageFrame) frame).isCleared();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			Key other = (Key) obj;
+			// the transforms are compared by identity, their parameters by value
+			return product == other.product && frame.equals(other.frame)
+					&& (parameters == null ? other.parameters == null : parameters.equals(other.parameters));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = frame.hashCode();
+			hash = 31 * hash + System.identityHashCode(product);
+			return 31 * hash + (parameters == null ? 0 : parameters.hashCode());
+		}
+	}
+
+	private static final class Entry {
+		private final Object product;
+		private final long bytes;
+
+		Entry(Object product, long bytes) {
+			this.product = product;
+			this.bytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,316 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import icy.image.IcyBufferedImage;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms.None;
+
+/**
+ * Transforms applied one after the other, each with its own options.
+ *
+ * <p>
+ * Consecutive point transforms (see {@link ImageTransformPointInterface}) are
+ * computed in a single pass over the image: the values of each band of rows go
+ * through all the transforms before being written to the result, and no
+ * intermediate image is created. An intermediate image is only created before
+ * a transform which is not a point transform, such as a neighbourhood
+ * transform. The result is the same as when the transforms are applied one
+ * after the other.
+ * </p>
+ *
+ * <p>
+ * The options are copied when the chain is built, so that a chain keeps
+ * computing the same transforms when the options are changed. Two chains of
+ * the same transforms with the same parameters are equal: the result of a
+ * chain is cached as a whole by {@link ImageTransformCache}.
+ * </p>
+ *
+ * <pre>
+ * ImageTransformChain chain = ImageTransformChain.builder()
+ * 		.then(ImageTransformEnums.R_RGB.getFunction(), transformOptions)
+ * 		.then(ImageTransformEnums.THRESHOLD_SINGLE.getFunction(), thresholdOptions).build();
+ * IcyBufferedImage mask = chain.getTransformedImage(sourceImage, null);
+ * </pre>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public final class ImageTransformChain implements ImageTransformInterface {
+
+	private static final ImageTransformInterface NONE = new None();
+
+	private final List<Stage> stages;
+
+	private ImageTransformChain(Builder builder) {
+		this.stages = Collections.unmodifiableList(new ArrayList<Stage>(builder.stages));
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the number of transforms of the chain
+	 */
+	public int getNumberOfStages() {
+		return stages.size();
+	}
+
+	/**
+	 * Applies the transforms to an image. The options are those of each
+	 * transform; the options passed are only used by an empty chain.
+	 */
+	@Override
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		if (sourceImage == null)
+			return null;
+		if (stages.isEmpty())
+			return NONE.transform(sourceImage, destinationImage, options);
+
+		IcyBufferedImage image = sourceImage;
+		int first = 0;
+		while (first < stages.size()) {
+			int last = getLastPointStage(first, image.getSizeC(), image.getDataType_());
+			ImageTransformInterface transform;
+			ImageTransformOptions transformOptions;
+			if (last - first > 1) {
+				transform = new PointStages(stages.subList(first, last), image.getSizeC(), image.getDataType_());
+				transformOptions = null;
+			} else {
+				last = first + 1;
+				transform = stages.get(first).transform;
+				transformOptions = stages.get(first).options;
+			}
+
+			// only the last image is written to the destination
+			IcyBufferedImage stageDestination = last == stages.size() ? destinationImage : null;
+			image = ImageTransformEngine.transform(transform, image, stageDestination, transformOptions);
+			if (image == null)
+				return null;
+			first = last;
+		}
+		return image;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ImageTransformChain))
+			return false;
+		return stages.equals(((ImageTransformChain) obj).stages);
+	}
+
+	@Override
+	public int hashCode() {
+		return stages.hashCode();
+	}
+
+	/**
+	 * @return the index following the last of the point transforms starting at
+	 *         index first, which can be computed in a single pass
+	 */
+	private int getLastPointStage(int first, int sizeC, DataType dataType) {
+		int last = first;
+		while (last < stages.size()) {
+			Stage stage = stages.get(last);
+			if (!(stage.transform instanceof ImageTransformPointInterface))
+				break;
+			ImageTransformPointInterface transform = (ImageTransformPointInterface) stage.transform;
+			if (!transform.canTransformPoints(sizeC, dataType, stage.options))
+				break;
+			DataType nextDataType = transform.getPointsDataType(dataType);
+			sizeC = transform.getPointsSizeC(sizeC);
+			dataType = nextDataType;
+			last++;
+		}
+		return last;
+	}
+
+	private static class Stage {
+		private final ImageTransformInterface transform;
+		private final ImageTransformOptions options;
+		private final ImageTransformOptions.Parameters parameters;
+
+		Stage(ImageTransformInterface transform, ImageTransformOptions options) {
+			this.transform = transform;
+			this.options = options == null ? null : options.copy();
+			this.parameters = options == null ? null : options.getParameters();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Stage))
+				return false;
+			Stage other = (Stage) obj;
+			// the transforms are compared by identity, their parameters by value
+			return transform == other.transform
+					&& (parameters == null ? other.parameters == null : parameters.equals(other.parameters));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(transform) + (parameters == null ? 0 : parameters.hashCode());
+		}
+	}
+
+	/**
+	 * Point transforms computed in a single pass, for a source of a given number
+	 * of channels and data type.
+	 */
+	private static class PointStages implements ImageTransformBandInterface {
+		private final ImageTransformPointInterface[] transforms;
+		private final ImageTransformOptions[] options;
+		private final int[] sizeC;
+		private final DataType[] dataTypes;
+
+		PointStages(List<Stage> stages, int sourceSizeC, DataType sourceDataType) {
+			int n = stages.size();
+			transforms = new ImageTransformPointInterface[n];
+			options = new ImageTransformOptions[n];
+			// number of channels and data type of the source of each transform and
+			// of the result
+			sizeC = new int[n + 1];
+			dataTypes = new DataType[n + 1];
+			sizeC[0] = sourceSizeC;
+			dataTypes[0] = sourceDataType;
+			for (int k = 0; k < n; k++) {
+				transforms[k] = (ImageTransformPointInterface) stages.get(k).transform;
+				options[k] = stages.get(k).options;
+				sizeC[k + 1] = transforms[k].getPointsSizeC(sizeC[k]);
+				dataTypes[k + 1] = transforms[k].getPointsDataType(dataTypes[k]);
+			}
+		}
+
+		@Override
+		public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+				ImageTransformOptions transformOptions) {
+			IcyBufferedImage img2 = getDestination(sourceImage, destinationImage, transformOptions);
+			transformBand(sourceImage, img2, transformOptions, 0, sourceImage.getSizeY());
+			ImageTransformBuffers.dataChanged(img2);
+			return img2;
+		}
+
+		@Override
+		public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions transformOptions) {
+			return 0;
+		}
+
+		@Override
+		public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+				ImageTransformOptions transformOptions) {
+			int n = transforms.length;
+			return ImageTransformBuffers.getDestination(sourceImage, destinationImage, sizeC[n], dataTypes[n]);
+		}
+
+		@Override
+		public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+				ImageTransformOptions transformOptions, int yFirst, int yLast) {
+			int npixels = (yLast - yFirst) * sourceImage.getSizeX();
+			int last = transforms.length - 1;
+			double[][] values = ImageTransformBuffers.getPointArrays(0, ImageTransformPointInterface.POINT_CHANNELS,
+					npixels);
+
+			// the first transforms from and to unsigned bytes are computed on bytes
+			int k = transformBytes(sourceImage, destinationImage, npixels, yFirst, values);
+			if (k > last)
+				return;
+			if (k == 0) {
+				int nvalues = Math.min(sizeC[0], ImageTransformPointInterface.POINT_CHANNELS);
+				for (int c = 0; c < nvalues; c++)
+					ImageTransformBuffers.getRows(sourceImage, c, yFirst, yLast, values[c]);
+			}
+
+			for (; k <= last; k++) {
+				double[][] results = ImageTransformBuffers.getPointArrays(1, sizeC[k + 1], npixels);
+				transforms[k].transformPoints(values, sizeC[k], results, npixels, options[k], yFirst, yLast);
+				DataType dataType = dataTypes[k + 1];
+				boolean signed = transforms[k].isPointsSigned(dataType);
+
+				if (k == last) {
+					for (int c = 0; c < sizeC[k + 1]; c++)
+						ImageTransformBuffers.setRows(results[c], destinationImage, c, yFirst, yLast, signed);
+					break;
+				}
+
+				// the results are converted to the data type of the intermediate
+				// image, and read back as they would be from this image
+				int nvalues = Math.min(sizeC[k + 1], ImageTransformPointInterface.POINT_CHANNELS);
+				Object data = ImageTransformBuffers.getTypedArray(0, dataType, npixels);
+				for (int c = 0; c < nvalues; c++) {
+					Array1DUtil.doubleArrayToSafeArray(results[c], 0, data, 0, npixels, signed);
+					Array1DUtil.arrayToDoubleArray(data, 0, values[c], 0, npixels, dataType.isSigned());
+				}
+			}
+		}
+
+		/**
+		 * Computes on bytes the first transforms from and to unsigned bytes, as
+		 * long as they can; if the transforms are not all computed, the values of
+		 * the last intermediate result are converted into values.
+		 *
+		 * @return the index of the first transform not computed
+		 */
+		private int transformBytes(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage, int npixels,
+				int yFirst, double[][] values) {
+			if (dataTypes[0] != DataType.UBYTE)
+				return 0;
+			int last = transforms.length - 1;
+			byte[][] bytes = sourceImage.getDataXYCAsByte();
+			int offset = yFirst * sourceImage.getSizeX();
+			int k = 0;
+			while (k <= last && dataTypes[k + 1] == DataType.UBYTE) {
+				byte[][] results;
+				int resultOffset;
+				if (k == last) {
+					results = destinationImage.getDataXYCAsByte();
+					resultOffset = offset;
+				} else {
+					// the intermediate results alternate between 2 sets of slots
+					if (sizeC[k + 1] > ImageTransformPointInterface.POINT_CHANNELS)
+						break;
+					results = new byte[sizeC[k + 1]][];
+					for (int c = 0; c < results.length; c++)
+						results[c] = (byte[]) ImageTransformBuffers.getTypedArray(
+								1 + (k % 2) * ImageTransformPointInterface.POINT_CHANNELS + c, DataType.UBYTE, npixels);
+					resultOffset = 0;
+				}
+				if (!transforms[k].transformBytes(bytes, sizeC[k], offset, results, resultOffset, npixels, options[k]))
+					break;
+				bytes = results;
+				offset = resultOffset;
+				k++;
+			}
+
+			if (k > 0 && k <= last) {
+				int nvalues = Math.min(sizeC[k], ImageTransformPointInterface.POINT_CHANNELS);
+				for (int c = 0; c < nvalues; c++)
+					Array1DUtil.arrayToDoubleArray(bytes[c], offset, values[c], 0, npixels, false);
+			}
+			return k;
+		}
+	}
+
+	public static class Builder {
+		private final List<Stage> stages = new ArrayList<Stage>();
+
+		/**
+		 * Adds a transform applied to the result of the previous ones, with a copy
+		 * of its options; a transform leaving the image unchanged is skipped.
+		 */
+		public Builder then(ImageTransformInterface transform, ImageTransformOptions options) {
+			if (transform != null && !(transform instanceof None))
+				stages.add(new Stage(transform, options));
+			return this;
+		}
+
+		public ImageTransformChain build() {
+			return new ImageTransformChain(this);
+		}
+	}
+}
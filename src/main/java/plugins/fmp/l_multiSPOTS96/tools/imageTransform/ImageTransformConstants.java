@@ -121,15 +121,12 @@ public final class ImageTransformConstants {
     
     // Performance and memory management constants
     public static final class Performance {
-        /** Cache size for array operations */
-        public static final int ARRAY_CACHE_SIZE = 100;
+        /** Maximum number of bytes of the products of {@link ImageTransformCache} */
+        public static final long TRANSFORM_CACHE_MAX_BYTES = 256L * 1024 * 1024;
         
         /** Threshold for using optimized operations */
         public static final int OPTIMIZATION_THRESHOLD = 1000;
         
-        /** Maximum image size for caching (in pixels) */
-        public static final int MAX_CACHEABLE_IMAGE_SIZE = 1920 * 1080;
-        
         private Performance() {
             // Prevent instantiation
         }
@@ -0,0 +1,201 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+import icy.image.IcyBufferedImage;
+
+/**
+ * Applies image transforms on all cores, by bands of rows.
+ *
+ * <p>
+ * A transform implementing {@link ImageTransformBandInterface} is divided into
+ * bands of rows computed on a pool shared by all callers; each band reads the
+ * halo declared by the transform so that the seams between bands are exact.
+ * Other transforms, transforms depending on the whole image and small images
+ * are computed on the calling thread.
+ * </p>
+ *
+ * <p>
+ * Callers already processing several images in parallel should apply the
+ * transforms directly rather than through the engine.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public final class ImageTransformEngine {
+
+	// === CONSTANTS ===
+
+	/** Minimum number of rows of a band */
+	public static final int MIN_BAND_ROWS = 32;
+
+	/** Number of bands per thread of the pool, to balance their load */
+	private static final int BANDS_PER_THREAD = 2;
+
+	/** Minimum ratio between the rows of a band and its halo */
+	private static final int ROWS_PER_HALO_ROW = 4;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+			new ForkJoinWorkerThreadFactory() {
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+					thread.setName("imageTransform-" + thread.getPoolIndex());
+					return thread;
+				}
+			}, null, false);
+
+	private ImageTransformEngine() {
+	}
+
+	/**
+	 * Computation of a range of independent lines (rows or columns) of an image.
+	 */
+	public interface LineRangeFunction {
+		/**
+		 * Computes the lines first to last - 1.
+		 */
+		public void compute(int first, int last);
+	}
+
+	/**
+	 * @return the pool computing the bands
+	 */
+	public static ForkJoinPool getPool() {
+		return POOL;
+	}
+
+	/**
+	 * Transforms an image into a new image.
+	 *
+	 * @see #transform(ImageTransformInterface, IcyBufferedImage, IcyBufferedImage,
+	 *      ImageTransformOptions)
+	 */
+	public static IcyBufferedImage getTransformedImage(ImageTransformInterface transform,
+			IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		return transform(transform, sourceImage, null, options);
+	}
+
+	/**
+	 * Transforms an image into a destination image, by bands of rows computed in
+	 * parallel when the transform allows it.
+	 *
+	 * @return the image containing the result, as returned by
+	 *         {@link ImageTransformInterface#transform}
+	 */
+	public static IcyBufferedImage transform(ImageTransformInterface transform, IcyBufferedImage sourceImage,
+			IcyBufferedImage destinationImage, ImageTransformOptions options) {
+		if (!(transform instanceof ImageTransformBandInterface) || sourceImage == null)
+			return transform.transform(sourceImage, destinationImage, options);
+
+		ImageTransformBandInterface bandTransform = (ImageTransformBandInterface) transform;
+		int sizeY = sourceImage.getSizeY();
+		int halo = bandTransform.getHaloRows(sourceImage, options);
+		int bandRows = getBandRows(sizeY, halo, POOL.getParallelism());
+		if (bandRows >= sizeY)
+			return transform.transform(sourceImage, destinationImage, options);
+
+		IcyBufferedImage img2 = bandTransform.getDestination(sourceImage, destinationImage, options);
+		if (img2 == null)
+			return null;
+		POOL.invoke(new BandTask(bandTransform, sourceImage, img2, options, 0, sizeY, bandRows));
+		ImageTransformBuffers.dataChanged(img2);
+		return img2;
+	}
+
+	/**
+	 * Computes independent lines of an image by ranges of at least minLines lines
+	 * on the pool, or on the calling thread if there are too few lines or if the
+	 * calling thread already belongs to the pool.
+	 */
+	public static void computeLines(int nlines, int minLines, LineRangeFunction function) {
+		int nRanges = POOL.getParallelism() * BANDS_PER_THREAD;
+		int rangeLines = Math.max(minLines, (nlines + nRanges - 1) / nRanges);
+		if (rangeLines >= nlines || POOL.getParallelism() < 2 || ForkJoinTask.getPool() == POOL) {
+			function.compute(0, nlines);
+			return;
+		}
+		POOL.invoke(new LinesTask(function, 0, nlines, rangeLines));
+	}
+
+	/**
+	 * @return the number of rows of the bands of an image, sizeY or more if the
+	 *         image is not divided
+	 */
+	static int getBandRows(int sizeY, int halo, int parallelism) {
+		if (halo == ImageTransformBandInterface.HALO_WHOLE_IMAGE || parallelism < 2)
+			return sizeY;
+		int nBands = parallelism * BANDS_PER_THREAD;
+		int bandRows = (sizeY + nBands - 1) / nBands;
+		return Math.max(bandRows, Math.max(MIN_BAND_ROWS, ROWS_PER_HALO_ROW * halo));
+	}
+
+	private static class LinesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final LineRangeFunction function;
+		private final int first;
+		private final int last;
+		private final int rangeLines;
+
+		LinesTask(LineRangeFunction function, int first, int last, int rangeLines) {
+			this.function = function;
+			this.first = first;
+			this.last = last;
+			this.rangeLines = rangeLines;
+		}
+
+		@Override
+		protected void compute() {
+			int nRanges = (last - first + rangeLines - 1) / rangeLines;
+			if (nRanges < 2) {
+				function.compute(first, last);
+				return;
+			}
+			int middle = first + (nRanges / 2) * rangeLines;
+			invokeAll(new LinesTask(function, first, middle, rangeLines),
+					new LinesTask(function, middle, last, rangeLines));
+		}
+	}
+
+	private static class BandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final ImageTransformBandInterface transform;
+		private final IcyBufferedImage sourceImage;
+		private final IcyBufferedImage destinationImage;
+		private final ImageTransformOptions options;
+		private final int yFirst;
+		private final int yLast;
+		private final int bandRows;
+
+		BandTask(ImageTransformBandInterface transform, IcyBufferedImage sourceImage,
+				IcyBufferedImage destinationImage, ImageTransformOptions options, int yFirst, int yLast,
+				int bandRows) {
+			this.transform = transform;
+			this.sourceImage = sourceImage;
+			this.destinationImage = destinationImage;
+			this.options = options;
+			this.yFirst = yFirst;
+			this.yLast = yLast;
+			this.bandRows = bandRows;
+		}
+
+		@Override
+		protected void compute() {
+			int nBands = (yLast - yFirst + bandRows - 1) / bandRows;
+			if (nBands < 2) {
+				transform.transformBand(sourceImage, destinationImage, options, yFirst, yLast);
+				return;
+			}
+			int yMiddle = yFirst + (nBands / 2) * bandRows;
+			invokeAll(new BandTask(transform, sourceImage, destinationImage, options, yFirst, yMiddle, bandRows),
+					new BandTask(transform, sourceImage, destinationImage, options, yMiddle, yLast, bandRows));
+		}
+	}
+}
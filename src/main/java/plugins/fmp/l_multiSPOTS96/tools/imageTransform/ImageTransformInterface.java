@@ -3,5 +3,30 @@ package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
 import icy.image.IcyBufferedImage;
 
 public interface ImageTransformInterface {
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options);
+	/**
+	 * Transforms an image into a new image.
+	 *
+	 * @return the transformed image, null if the transform failed
+	 */
+	public default IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		return transform(sourceImage, null, options);
+	}
+
+	/**
+	 * Transforms an image into a destination image, so that a transform applied
+	 * to each image of a series can write its results into the same image. The
+	 * destination is used if it has the size, number of channels and data type of
+	 * the result; otherwise (or if it is null or the source image) a new image is
+	 * created. The working arrays of the transforms are reused per thread (see
+	 * {@link ImageTransformBuffers}).
+	 *
+	 * @param sourceImage      the image to transform
+	 * @param destinationImage the image receiving the result, may be null
+	 * @param options          the options of the transform
+	 * @return the image containing the result (the destination image, a new
+	 *         image, or the source image if the transform does not change it),
+	 *         null if the transform failed
+	 */
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options);
 }
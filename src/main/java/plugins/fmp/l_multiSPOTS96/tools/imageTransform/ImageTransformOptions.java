@@ -2,6 +2,7 @@ package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import icy.image.IcyBufferedImage;
 
@@ -46,4 +47,100 @@ public class ImageTransformOptions {
 		this.colorthreshold = colorthreshold;
 		this.colorarray = colorarray;
 	}
+
+	/**
+	 * @return a copy of these options, with a copy of the color array; the images
+	 *         are shared
+	 */
+	public ImageTransformOptions copy() {
+		ImageTransformOptions options = new ImageTransformOptions();
+		options.transformOption = transformOption;
+		options.backgroundImage = backgroundImage;
+		options.secondImage = secondImage;
+		options.npixels_changed = npixels_changed;
+		options.copyResultsToThe3planes = copyResultsToThe3planes;
+		options.xfirst = xfirst;
+		options.xlast = xlast;
+		options.yfirst = yfirst;
+		options.ylast = ylast;
+		options.channel0 = channel0;
+		options.channel1 = channel1;
+		options.channel2 = channel2;
+		options.w0 = w0;
+		options.w1 = w1;
+		options.w2 = w2;
+		options.spanDiff = spanDiff;
+		options.simplethreshold = simplethreshold;
+		options.background_delta = background_delta;
+		options.background_jitter = background_jitter;
+		options.colorthreshold = colorthreshold;
+		options.colordistanceType = colordistanceType;
+		options.ifGreater = ifGreater;
+		options.colorarray = colorarray == null ? null : new ArrayList<Color>(colorarray);
+		return options;
+	}
+
+	/**
+	 * @return the current parameters of the transforms, to identify their results
+	 *         in {@link ImageTransformCache}
+	 */
+	public Parameters getParameters() {
+		return new Parameters(this);
+	}
+
+	/**
+	 * Immutable copy of the parameters of the transforms, equal to the parameters
+	 * of the same values: the images are compared by identity, and
+	 * npixels_changed, computed by the transforms, is not compared.
+	 */
+	public static final class Parameters {
+		private final ImageTransformEnums transformOption;
+		private final IcyBufferedImage backgroundImage;
+		private final IcyBufferedImage secondImage;
+		private final boolean copyResultsToThe3planes;
+		private final boolean ifGreater;
+		private final int[] values;
+		private final ArrayList<Color> colorarray;
+		private final int hash;
+
+		private Parameters(ImageTransformOptions options) {
+			transformOption = options.transformOption;
+			backgroundImage = options.backgroundImage;
+			secondImage = options.secondImage;
+			copyResultsToThe3planes = options.copyResultsToThe3planes;
+			ifGreater = options.ifGreater;
+			values = new int[] { options.xfirst, options.xlast, options.yfirst, options.ylast, options.channel0,
+					options.channel1, options.channel2, options.w0, options.w1, options.w2, options.spanDiff,
+					options.simplethreshold, options.background_delta, options.background_jitter,
+					options.colorthreshold, options.colordistanceType };
+			colorarray = options.colorarray == null ? null : new ArrayList<Color>(options.colorarray);
+
+			int h = transformOption == null ? 0 : transformOption.ordinal() + 1;
+			h = 31 * h + System.identityHashCode(backgroundImage);
+			h = 31 * h + System.identityHashCode(secondImage);
+			h = 31 * h + (copyResultsToThe3planes ? 1 : 0);
+			h = 31 * h + (ifGreater ? 1 : 0);
+			h = 31 * h + Arrays.hashCode(values);
+			hash = 31 * h + (colorarray == null ? 0 : colorarray.hashCode());
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Parameters))
+				return false;
+			Parameters other = (Parameters) obj;
+			return hash == other.hash && transformOption == other.transformOption
+					&& backgroundImage == other.backgroundImage && secondImage == other.secondImage
+					&& copyResultsToThe3planes == other.copyResultsToThe3planes && ifGreater == other.ifGreater
+					&& Arrays.equals(values, other.values)
+					&& (colorarray == null ? other.colorarray == null : colorarray.equals(other.colorarray));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
 }
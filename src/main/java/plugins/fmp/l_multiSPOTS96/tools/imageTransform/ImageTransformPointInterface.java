@@ -0,0 +1,132 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform;
+
+import icy.image.IcyBufferedImage;
+import icy.type.DataType;
+
+/**
+ * Transform computing each point of the result from the same point of the
+ * source only: a point transform.
+ *
+ * <p>
+ * The values of the points are passed as double arrays, so that consecutive
+ * point transforms can be computed in a single pass by
+ * {@link ImageTransformChain}, without creating the intermediate images. The
+ * results are converted to the data type of the result as when they are
+ * written to an image, so that chained transforms give the same result as the
+ * transforms applied one after the other.
+ * </p>
+ *
+ * <p>
+ * A transform may also compute the points directly on the channels of an image
+ * of unsigned bytes (see {@link #transformBytes}): these loops on bytes and
+ * ints are simple enough to be compiled to SIMD instructions by the JIT
+ * compiler, which is not the case of the loops converting the values.
+ * </p>
+ *
+ * <p>
+ * An implementation must not use the point arrays of
+ * {@link ImageTransformBuffers}, which hold its values and results.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public interface ImageTransformPointInterface extends ImageTransformBandInterface {
+
+	/** Maximum number of channels of the source passed to the transform */
+	public static final int POINT_CHANNELS = 3;
+
+	/**
+	 * @param sizeC    the number of channels of the source
+	 * @param dataType the data type of the source
+	 * @return true if the transform can be applied to the source
+	 */
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options);
+
+	/**
+	 * @return the number of channels of the result for a source of sizeC
+	 *         channels
+	 */
+	public int getPointsSizeC(int sizeC);
+
+	/**
+	 * @return the data type of the result for a source of this data type
+	 */
+	public DataType getPointsDataType(DataType dataType);
+
+	/**
+	 * @param dataType the data type of the result
+	 * @return true if the results are converted to the data type as signed
+	 *         values
+	 */
+	public boolean isPointsSigned(DataType dataType);
+
+	/**
+	 * Computes the points of the rows yFirst to yLast - 1.
+	 *
+	 * @param values  the values of the first channels of the source, at most
+	 *                {@link #POINT_CHANNELS}
+	 * @param sizeC   the number of channels of the source
+	 * @param results receives the values of the channels of the result
+	 * @param npixels the number of points
+	 */
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast);
+
+	/**
+	 * Computes points from the channels of an image of unsigned bytes into
+	 * unsigned bytes, when the data type of the result is
+	 * {@link DataType#UBYTE}. The results must be those of
+	 * {@link #transformPoints} converted to unsigned bytes.
+	 *
+	 * @param values       the channels of the source
+	 * @param sizeC        the number of channels of the source
+	 * @param offset       the index of the first point in the channels of the
+	 *                     source
+	 * @param results      receives the channels of the result
+	 * @param resultOffset the index of the first point in the channels of the
+	 *                     result
+	 * @param npixels      the number of points
+	 * @return false if the transform has no computation on bytes for these
+	 *         options, in which case the results are not modified
+	 */
+	public default boolean transformBytes(byte[][] values, int sizeC, int offset, byte[][] results, int resultOffset,
+			int npixels, ImageTransformOptions options) {
+		return false;
+	}
+
+	@Override
+	public default IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		if (sourceImage == null
+				|| !canTransformPoints(sourceImage.getSizeC(), sourceImage.getDataType_(), options))
+			return null;
+		return ImageTransformBuffers.getDestination(sourceImage, destinationImage,
+				getPointsSizeC(sourceImage.getSizeC()), getPointsDataType(sourceImage.getDataType_()));
+	}
+
+	@Override
+	public default void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		int sizeC = sourceImage.getSizeC();
+		int npixels = (yLast - yFirst) * sourceImage.getSizeX();
+		int offset = yFirst * sourceImage.getSizeX();
+		if (sourceImage.getDataType_() == DataType.UBYTE && destinationImage.getDataType_() == DataType.UBYTE
+				&& transformBytes(sourceImage.getDataXYCAsByte(), sizeC, offset,
+						destinationImage.getDataXYCAsByte(), offset, npixels, options))
+			return;
+
+		int nvalues = Math.min(sizeC, POINT_CHANNELS);
+		double[][] values = ImageTransformBuffers.getPointArrays(0, nvalues, npixels);
+		for (int c = 0; c < nvalues; c++)
+			ImageTransformBuffers.getRows(sourceImage, c, yFirst, yLast, values[c]);
+
+		int nresults = destinationImage.getSizeC();
+		double[][] results = ImageTransformBuffers.getPointArrays(1, nresults, npixels);
+		transformPoints(values, sizeC, results, npixels, options, yFirst, yLast);
+
+		boolean signed = isPointsSigned(destinationImage.getDataType_());
+		for (int c = 0; c < nresults; c++)
+			ImageTransformBuffers.setRows(results[c], destinationImage, c, yFirst, yLast, signed);
+	}
+}
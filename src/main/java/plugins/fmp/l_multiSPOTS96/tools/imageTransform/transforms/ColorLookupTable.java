@@ -0,0 +1,111 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
+
+import java.awt.Color;
+import java.util.List;
+
+import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColor;
+import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColorL1;
+import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColorL2;
+
+/**
+ * Table of the 2^24 RGB colors telling whether a color is within a distance
+ * threshold of one color of a list.
+ *
+ * <p>
+ * The table is a bitset of 2 MB built once for a list of colors, a type of
+ * distance and a threshold; a pixel is then classified with one lookup instead
+ * of computing its distance to each color of the list. Both the L1 and the L2
+ * distances are greater than the largest difference of the components, so
+ * only the colors of the cube of half-side threshold around each color of the
+ * list are tested, with the distance used by {@link ThresholdColors}: the
+ * table gives exactly the same classification.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public final class ColorLookupTable {
+
+	// === CONSTANTS ===
+
+	private static final int N_COLORS = 1 << 24;
+
+	// === FIELDS ===
+
+	private final int distanceType;
+	private final int threshold;
+	private final int[] colorsRGB;
+	private final long[] bits = new long[N_COLORS >>> 6];
+
+	private ColorLookupTable(int distanceType, int threshold, List<Color> colors) {
+		this.distanceType = distanceType;
+		this.threshold = threshold;
+		this.colorsRGB = new int[colors.size()];
+		for (int k = 0; k < colorsRGB.length; k++)
+			colorsRGB[k] = colors.get(k).getRGB() & 0xFFFFFF;
+	}
+
+	/**
+	 * Builds the table of the colors within the threshold of a list of colors.
+	 *
+	 * @param distanceType 1 for the L1 distance, any other value for the L2
+	 *                     distance, as in {@link ThresholdColors}
+	 */
+	public static ColorLookupTable build(int distanceType, int threshold, List<Color> colors) {
+		ColorLookupTable table = new ColorLookupTable(distanceType, threshold, colors);
+		NHDistanceColor distance = createDistance(distanceType);
+		for (int rgb : table.colorsRGB)
+			table.addColorsAround((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, distance);
+		return table;
+	}
+
+	static NHDistanceColor createDistance(int distanceType) {
+		if (distanceType == 1)
+			return new NHDistanceColorL1();
+		return new NHDistanceColorL2();
+	}
+
+	private void addColorsAround(int r0, int g0, int b0, NHDistanceColor distance) {
+		if (threshold < 0)
+			return;
+		int rmin = Math.max(0, r0 - threshold);
+		int rmax = Math.min(255, r0 + threshold);
+		int gmin = Math.max(0, g0 - threshold);
+		int gmax = Math.min(255, g0 + threshold);
+		int bmin = Math.max(0, b0 - threshold);
+		int bmax = Math.min(255, b0 + threshold);
+		for (int r = rmin; r <= rmax; r++) {
+			for (int g = gmin; g <= gmax; g++) {
+				int rg = (r << 16) | (g << 8);
+				for (int b = bmin; b <= bmax; b++) {
+					int rgb = rg | b;
+					if ((bits[rgb >>> 6] & (1L << rgb)) != 0)
+						continue;
+					if (distance.computeDistance(r, g, b, r0, g0, b0) <= threshold)
+						bits[rgb >>> 6] |= 1L << rgb;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the table was built for these parameters
+	 */
+	public boolean matches(int distanceType, int threshold, List<Color> colors) {
+		if (distanceType != this.distanceType || threshold != this.threshold || colors.size() != colorsRGB.length)
+			return false;
+		for (int k = 0; k < colorsRGB.length; k++) {
+			if ((colors.get(k).getRGB() & 0xFFFFFF) != colorsRGB[k])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the color is within the threshold of a color of the list
+	 */
+	public boolean contains(int r, int g, int b) {
+		int rgb = (r << 16) | (g << 8) | b;
+		return (bits[rgb >>> 6] & (1L << rgb)) != 0;
+	}
+}
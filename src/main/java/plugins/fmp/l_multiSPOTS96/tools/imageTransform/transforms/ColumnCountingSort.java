@@ -0,0 +1,70 @@
+package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
+
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
+
+/**
+ * Stable counting sort of the rows of a column of an 8-bit image, in
+ * descending order of an integer key, used by the transforms sorting columns.
+ *
+ * <p>
+ * The rows with equal keys keep their order, as with the stable sort of the
+ * generic path of these transforms, so that both give the same image. The
+ * arrays returned belong to the calling thread
+ * ({@link ImageTransformBuffers}): they are valid until its next call.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+final class ColumnCountingSort {
+
+	/** Minimum number of columns or rows computed by a task */
+	static final int MIN_TASK_LINES = 16;
+
+	private static final int SLOT_KEYS = 4;
+	private static final int SLOT_ORDER = 5;
+	private static final int SLOT_COUNTS = 6;
+
+	private ColumnCountingSort() {
+	}
+
+	/**
+	 * @return the array of the calling thread receiving the keys of the rows
+	 */
+	static int[] getKeys(int height) {
+		return ImageTransformBuffers.getIntArray(SLOT_KEYS, height, false);
+	}
+
+	/**
+	 * Sorts rows by descending keys, the keys being between minKey and maxKey.
+	 *
+	 * @return the index of the row placed at each position
+	 */
+	static int[] sortDescending(int[] keys, int height, int minKey, int maxKey) {
+		// counts[rank + 1] then start of each rank, rank 0 being the largest key
+		int ranks = maxKey - minKey + 1;
+		int[] counts = ImageTransformBuffers.getIntArray(SLOT_COUNTS, ranks + 1, true);
+		for (int y = 0; y < height; y++)
+			counts[maxKey - keys[y] + 1]++;
+		for (int rank = 1; rank <= ranks; rank++)
+			counts[rank] += counts[rank - 1];
+
+		int[] order = ImageTransformBuffers.getIntArray(SLOT_ORDER, height, false);
+		for (int y = 0; y < height; y++)
+			order[counts[maxKey - keys[y]]++] = y;
+		return order;
+	}
+
+	/**
+	 * Copies the pixels of the first 3 channels of a column in the order of the
+	 * rows sorted.
+	 */
+	static void copyColumn(byte[][] source, byte[][] destination, int width, int height, int x, int[] order) {
+		for (int chan = 0; chan < 3; chan++) {
+			byte[] sourceValues = source[chan];
+			byte[] destinationValues = destination[chan];
+			for (int y = 0, offset = x; y < height; y++, offset += width)
+				destinationValues[offset] = sourceValues[order[y] * width + x];
+		}
+	}
+}
@@ -1,12 +1,60 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
+import java.awt.Rectangle;
+import java.util.List;
+
 import icy.image.IcyBufferedImage;
+import icy.type.DataType;
 import icy.type.collection.array.Array1DUtil;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEngine;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
+/**
+ * Deriche's edge detector: recursive derivative filters along the rows and the
+ * columns, gradient norm and non maxima suppression.
+ *
+ * <p>
+ * Each pass of the filters is computed on independent rows or columns, in
+ * parallel on the pool of {@link ImageTransformEngine}; the scratch arrays are
+ * the float arrays of the threads ({@link ImageTransformBuffers}), and are
+ * reused from one image to the next.
+ * </p>
+ *
+ * <p>
+ * {@link #transformRegions} computes the edges only around regions of the
+ * image, such as the spots.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
 public class Deriche extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+
+	// === CONSTANTS ===
+
+	/**
+	 * Default margin of the regions: the filters decay by exp(-alpha) per pixel,
+	 * so that the image beyond this margin has no visible effect on the edges
+	 */
+	public static final int DEFAULT_REGION_MARGIN = 16;
+
+	/** Minimum number of lines computed by a task */
+	private static final int MIN_TASK_LINES = 16;
+
+	/** Float slots of the thread computing an image */
+	private static final int SLOT_GRX = 0;
+	private static final int SLOT_GRY = 1;
+	private static final int SLOT_A2 = 2;
+
+	/** Slots of the threads computing ranges of lines */
+	private static final int SLOT_LINES = 3;
+	private static final int SLOT_ROW = 1;
+
+	// === FIELDS ===
+
 	double alpha = 0;
 	boolean transformToGrey = false;
 
@@ -16,27 +64,77 @@ public class Deriche extends ImageTransformFunctionAbstract implements ImageTran
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage img2 = doDeriche(sourceImage, this.alpha);
-		if (transformToGrey)
-			img2 = transformToGrey(img2, options.copyResultsToThe3planes);
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		// the recursive filters run along whole rows and columns: the image is not
+		// divided into bands
+		IcyBufferedImage img2 = getDestination3Planes(sourceImage, destinationImage);
+		Rectangle image = new Rectangle(0, 0, sourceImage.getSizeX(), sourceImage.getSizeY());
+		doDeriche(sourceImage, this.alpha, img2, image, image, options.copyResultsToThe3planes);
+		if (!transformToGrey) {
+			for (int ch = Math.min(sourceImage.getSizeC(), img2.getSizeC()); ch < img2.getSizeC(); ch++)
+				ImageTransformBuffers.clearRows(img2, ch, 0, image.height);
+		}
+		ImageTransformBuffers.dataChanged(img2);
 		return img2;
 	}
 
-	private IcyBufferedImage doDeriche(IcyBufferedImage img, double alpha) {
-		IcyBufferedImage img2 = new IcyBufferedImage(img.getWidth(), img.getHeight(), 3, img.getDataType_());
-		final int lignes = img.getHeight();
-		final int colonnes = img.getWidth();
+	/**
+	 * Computes the edges of the image only in regions, each region being computed
+	 * separately with a margin around it. The rest of the result is 0.
+	 *
+	 * <p>
+	 * With a margin of 0, the edges of a region are those of the image cropped to
+	 * this region; the edges of overlapping regions are those of the last region.
+	 * </p>
+	 *
+	 * @param regions the regions of the image, clipped to it
+	 * @param margin  the number of pixels read around each region
+	 * @return the image containing the result, as returned by {@link #transform}
+	 */
+	public IcyBufferedImage transformRegions(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options, List<Rectangle> regions, int margin) {
+		IcyBufferedImage img2 = getDestination3Planes(sourceImage, destinationImage);
+		Rectangle image = new Rectangle(0, 0, sourceImage.getSizeX(), sourceImage.getSizeY());
+		for (int ch = 0; ch < img2.getSizeC(); ch++)
+			ImageTransformBuffers.clearRows(img2, ch, 0, image.height);
+
+		for (Rectangle region : regions) {
+			Rectangle result = region.intersection(image);
+			if (result.isEmpty())
+				continue;
+			Rectangle frame = new Rectangle(result);
+			frame.grow(margin, margin);
+			frame = frame.intersection(image);
+			// the filters need 3 pixels along each line
+			if (frame.width < 3 || frame.height < 3)
+				continue;
+			doDeriche(sourceImage, this.alpha, img2, frame, result, options.copyResultsToThe3planes);
+		}
 
-		/* alloc temporary buffers */
-		final int nmem = lignes * colonnes;
-		float[] nf_grx = new float[nmem];
-		float[] nf_gry = new float[nmem];
+		ImageTransformBuffers.dataChanged(img2);
+		return img2;
+	}
 
-		short[] a1 = new short[nmem];
-		float[] a2 = new float[nmem];
-		float[] a3 = new float[nmem];
-		float[] a4 = new float[nmem];
+	/**
+	 * Computes the edges of each channel of img in a frame into the channels of
+	 * img2 or, if transformToGrey, their average into the first channel of img2
+	 * (copied to the 3 planes if copyResultTo3Planes). Only the pixels of result,
+	 * inside the frame, are written. The channels are converted to the data type
+	 * of the images before being averaged. The change of img2 is not notified.
+	 */
+	private void doDeriche(IcyBufferedImage img, double alpha, IcyBufferedImage img2, Rectangle frame,
+			Rectangle result, boolean copyResultTo3Planes) {
+		final int lignes = frame.height;
+		final int colonnes = frame.width;
+
+		/* temporary buffers of the thread */
+		final int nmem = lignes * colonnes;
+		final float[] nf_grx = ImageTransformBuffers.getFloatArray(SLOT_GRX, nmem, false);
+		final float[] nf_gry = ImageTransformBuffers.getFloatArray(SLOT_GRY, nmem, false);
+		final float[] a2 = ImageTransformBuffers.getFloatArray(SLOT_A2, nmem, false);
+		final short[] a1 = (short[]) ImageTransformBuffers.getTypedArray(0, DataType.SHORT, nmem);
+		final int[] greySum = transformToGrey ? ImageTransformBuffers.getIntArray(0, nmem, true) : null;
 
 		final float ad1 = (float) -Math.exp(-alpha);
 		final float ad2 = 0;
@@ -46,181 +144,120 @@ public class Deriche extends ImageTransformFunctionAbstract implements ImageTran
 		final float an4 = 0;
 		final float an11 = 1;
 
-		for (int ch = 0; ch < img.getSizeC(); ch++) {
-			double[] tabInDouble = Array1DUtil.arrayToDoubleArray(img.getDataXY(ch), img.isSignedDataType());
-			doDeriche_step0(lignes, colonnes, ad1, ad2, an1, an2, an3, an4, an11, a1, a2, a3, tabInDouble);
+		final int firstRow = result.y - frame.y;
+		final int lastRow = firstRow + result.height;
+		int nchannels = Math.min(img.getSizeC(), img2.getSizeC());
+		for (int ch = 0; ch < nchannels; ch++) {
+			final int c = ch;
+			ImageTransformEngine.computeLines(lignes, MIN_TASK_LINES, (first, last) -> {
+				readRows(img, c, frame, a1, first, last);
+				doDeriche_step0(first, last, colonnes, ad1, ad2, an1, an2, an3, an4, a1, a2);
+			});
 
 			/* FIRST STEP Y-GRADIENT : y-derivative */
-			doDeriche_step1(lignes, colonnes, ad1, ad2, an11, a2, a3, a4, nf_gry);
+			ImageTransformEngine.computeLines(colonnes, MIN_TASK_LINES,
+					(first, last) -> doDeriche_step1(lignes, colonnes, first, last, ad1, ad2, an11, a2, nf_gry));
 
 			/* SECOND STEP X-GRADIENT */
-			doDeriche_step2(lignes, colonnes, ad1, ad2, an1, an2, an3, an4, an11, a1, a2, a3, a4, nf_grx);
+			ImageTransformEngine.computeLines(lignes, MIN_TASK_LINES,
+					(first, last) -> doDeriche_step2_rows(first, last, colonnes, ad1, ad2, an11, a1, a2));
+			ImageTransformEngine.computeLines(colonnes, MIN_TASK_LINES, (first,
+					last) -> doDeriche_step2_columns(lignes, colonnes, first, last, ad1, ad2, an1, an2, an3, an4, a2,
+							nf_grx));
 
 			/* THIRD STEP : NORM */
-			doDeriche_step3(lignes, colonnes, a2, a3, nf_gry);
-
-			/* FOURTH STEP : NON MAXIMA SUPPRESSION */
-			for (int i = 0; i < lignes; i++)
-				for (int j = 0; j < colonnes; j++)
-					a4[i * colonnes + j] = nf_grx[i * colonnes + j];
-
-			for (int i = 0; i < lignes; i++)
-				for (int j = 0; j < colonnes; j++)
-					a3[i * colonnes + j] = nf_gry[i * colonnes + j];
-
-			/* Nom maxima suppression with linear interpolation */
-			int lig_2 = lignes - 2;
-			for (int i = 1; i <= lig_2; ++i) {
-				int icoll = i * colonnes;
-				int col_2 = colonnes - 2;
-				for (int j = 1; j <= col_2; ++j) {
-					int jp1 = j + 1;
-					int jm1 = j - 1;
-					int ip1 = i + 1;
-					int im1 = i - 1;
-					if (a3[icoll + j] > 0.) {
-						float wd = a4[icoll + j] / a3[icoll + j];
-						a3[icoll + j] = 0;
-						if (wd >= 1) {
-							float gun = a2[icoll + jp1] + (a2[ip1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
-							if (a2[icoll + j] <= gun)
-								continue;
-							float gzr = a2[icoll + jm1] + (a2[im1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
-							if (a2[icoll + j] < gzr)
-								continue;
-							a3[icoll + j] = a2[icoll + j];
-							continue;
-						}
-						if (wd >= 0) {
-							float gun = a2[ip1 * colonnes + j]
-									+ (a2[ip1 * colonnes + jp1] - a2[ip1 * colonnes + j]) * wd;
-							if (a2[icoll + j] <= gun)
-								continue;
-							float gzr = a2[im1 * colonnes + j]
-									+ (a2[im1 * colonnes + jm1] - a2[im1 * colonnes + j]) * wd;
-							if (a2[icoll + j] < gzr)
-								continue;
-							a3[icoll + j] = a2[icoll + j];
-							continue;
-						}
-						if (wd >= -1) {
-							int icolonnes = ip1 * colonnes;
-							float gun = a2[icolonnes + j] - (a2[icolonnes + jm1] - a2[icolonnes + j]) * wd;
-							if (a2[icoll + j] <= gun)
-								continue;
-							icolonnes = im1 * colonnes;
-							float gzr = a2[icolonnes + j] - (a2[icolonnes + jp1] - a2[icolonnes + j]) * wd;
-							if (a2[icoll + j] < gzr)
-								continue;
-							a3[icoll + j] = a2[icoll + j];
-							continue;
-						}
-
-						float gun = a2[icoll + jm1] - (a2[ip1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
-						if (a2[icoll + j] <= gun)
-							continue;
-						float gzr = a2[icoll + jp1] - (a2[im1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
-						if (a2[icoll + j] < gzr)
-							continue;
-						a3[icoll + j] = a2[icoll + j];
-						continue;
-					}
-					if ((a3[icoll + j]) == 0.) {
-						if (a4[icoll + j] == 0)
-							continue;
-						if (a4[icoll + j] < 0) {
-							float gzr = a2[icoll + jp1];
-							if (a2[icoll + j] < gzr)
-								continue;
-							float gun = a2[icoll + jm1];
-							if (a2[icoll + j] <= gun)
-								continue;
-							a3[icoll + j] = a2[icoll + j];
-							continue;
-						}
-						float gzr = a2[icoll + jm1];
-						if (a2[icoll + j] < gzr)
-							continue;
-						float gun = a2[icoll + jp1];
-						if (a2[icoll + j] <= gun)
-							continue;
-						a3[icoll + j] = a2[icoll + j];
-						continue;
-					}
-
-					float wd = a4[icoll + j] / a3[icoll + j];
-					a3[icoll + j] = 0;
-					if (wd >= 1) {
-						float gzr = a2[icoll + jp1] + (a2[ip1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
-						if (a2[icoll + j] < gzr)
-							continue;
-						float gun = a2[icoll + jm1] + (a2[im1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
-						if (a2[icoll + j] <= gun)
-							continue;
-						a3[icoll + j] = a2[icoll + j];
-						continue;
-					}
-					if (wd >= 0) {
-						float gzr = a2[ip1 * colonnes + j] + (a2[ip1 * colonnes + jp1] - a2[ip1 * colonnes + j]) * wd;
-						if (a2[icoll + j] < gzr)
-							continue;
-						float gun = a2[im1 * colonnes + j] + (a2[im1 * colonnes + jm1] - a2[im1 * colonnes + j]) * wd;
-						if (a2[icoll + j] <= gun)
-							continue;
-						a3[icoll + j] = a2[icoll + j];
-						continue;
-					}
-					if (wd >= -1) {
-						int icolonnes = ip1 * colonnes;
-						float gzr = a2[icolonnes + j] - (a2[icolonnes + jm1] - a2[icolonnes + j]) * wd;
-						if (a2[icoll + j] < gzr)
-							continue;
-						icolonnes = im1 * colonnes;
-						float gun = a2[icolonnes + j] - (a2[icolonnes + jp1] - a2[icolonnes + j]) * wd;
-						if (a2[icoll + j] <= gun)
-							continue;
-						a3[icoll + j] = a2[icoll + j];
-						continue;
-					}
-					float gzr = a2[icoll + jm1] - (a2[ip1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
-					if (a2[icoll + j] < gzr)
-						continue;
-					float gun = a2[icoll + jp1] - (a2[im1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
-					if (a2[icoll + j] <= gun)
-						continue;
-					a3[icoll + j] = a2[icoll + j];
-				}
-			}
+			ImageTransformEngine.computeLines(lignes, MIN_TASK_LINES,
+					(first, last) -> doDeriche_step3(first, last, colonnes, a2, nf_gry, nf_grx));
 
-			for (int i = 0; i < lignes; ++i)
-				a3[i * colonnes] = 0;
-			for (int i = 0; i < lignes; ++i)
-				a3[i * colonnes + colonnes - 1] = 0;
-			for (int i = 0; i < colonnes; ++i)
-				a3[i] = 0;
-			int lig_1 = lignes - 1;
-			for (int i = 0; i < colonnes; ++i)
-				a3[colonnes * lig_1 + i] = 0;
+			/* FOURTH STEP : NON MAXIMA SUPPRESSION, into nf_gry */
+			ImageTransformEngine.computeLines(lignes, MIN_TASK_LINES, (first, last) -> {
+				for (int i = first; i < last; i++)
+					suppressNonMaxima(i, lignes, colonnes, a2, nf_gry, nf_grx);
+			});
 
 			/* TODO ? transfert au format int */
 
-			img2.setDataXY(ch, Array1DUtil.floatArrayToArray(a3, img2.getDataXY(ch)));
+			ImageTransformEngine.computeLines(lastRow - firstRow, MIN_TASK_LINES,
+					(first, last) -> writeRows(nf_gry, img2, c, frame, result, greySum, firstRow + first,
+							firstRow + last));
+		}
+
+		if (transformToGrey) {
+			int sizeX = img2.getSizeX();
+			Object data = img2.getDataXY(0);
+			int firstColumn = result.x - frame.x;
+			for (int i = firstRow; i < lastRow; i++) {
+				int offset = i * colonnes + firstColumn;
+				for (int j = 0; j < result.width; j++)
+					greySum[offset + j] /= 3;
+				Array1DUtil.intArrayToSafeArray(greySum, offset, data, (frame.y + i) * sizeX + result.x,
+						result.width, false, false);
+			}
+			ImageTransformBuffers.completeRows(img2, result.y, result.y + result.height, copyResultTo3Planes);
+		}
+	}
+
+	/**
+	 * Reads rows of a channel of the frame into a1.
+	 */
+	private void readRows(IcyBufferedImage img, int ch, Rectangle frame, short[] a1, int first, int last) {
+		final int colonnes = frame.width;
+		double[] tabInDouble = ImageTransformBuffers.getDoubleArray(0, colonnes, false);
+		Object data = img.getDataXY(ch);
+		int sizeX = img.getSizeX();
+		for (int y = first; y < last; ++y) {
+			Array1DUtil.arrayToDoubleArray(data, (frame.y + y) * sizeX + frame.x, tabInDouble, 0, colonnes,
+					img.isSignedDataType());
+			int icolonnes = y * colonnes;
+			for (int x = 0; x < colonnes; ++x)
+				a1[icolonnes + x] = (short) tabInDouble[x];
+		}
+	}
+
+	/**
+	 * Writes the result rows of the edges of a channel into img2 or, if
+	 * transformToGrey, adds them to greySum once converted to the data type of
+	 * img2.
+	 */
+	private void writeRows(float[] a3, IcyBufferedImage img2, int ch, Rectangle frame, Rectangle result,
+			int[] greySum, int first, int last) {
+		final int colonnes = frame.width;
+		final int firstColumn = result.x - frame.x;
+		final int width = result.width;
+		int sizeX = img2.getSizeX();
+		if (!transformToGrey) {
+			Object data = img2.getDataXY(ch);
+			for (int i = first; i < last; i++)
+				Array1DUtil.floatArrayToArray(a3, i * colonnes + firstColumn, data, (frame.y + i) * sizeX + result.x,
+						width);
+			return;
+		}
+
+		Object channelValues = ImageTransformBuffers.getTypedArray(SLOT_ROW, img2.getDataType_(), width);
+		int[] greyValues = ImageTransformBuffers.getIntArray(SLOT_ROW, width, false);
+		for (int i = first; i < last; i++) {
+			int offset = i * colonnes + firstColumn;
+			Array1DUtil.floatArrayToArray(a3, offset, channelValues, 0, width);
+			Array1DUtil.arrayToIntArray(channelValues, 0, greyValues, 0, width, img2.isSignedDataType());
+			for (int j = 0; j < width; j++)
+				greySum[offset + j] += greyValues[j];
 		}
-		return img2;
 	}
 
 	private float Modul(float a, float b) {
 		return ((float) Math.sqrt(Math.pow(a, 2) + Math.pow(b, 2)));
 	}
 
-	private void doDeriche_step0(int lignes, int colonnes, float ad1, float ad2, float an1, float an2, float an3,
-			float an4, float an11, short[] a1, float[] a2, float[] a3, double[] tabInDouble) {
-		// Copy mina1 to a1
-		for (int y = 0; y < lignes; ++y)
-			for (int x = 0; x < colonnes; ++x)
-				a1[y * colonnes + x] = (short) tabInDouble[y * colonnes + x];
-
-		for (int i = 0; i < lignes; ++i) {
+	/**
+	 * Smoothes the rows first to last - 1 of a1 into a2.
+	 */
+	private void doDeriche_step0(int first, int last, int colonnes, float ad1, float ad2, float an1, float an2,
+			float an3, float an4, short[] a1, float[] a2) {
+		float[] a3 = ImageTransformBuffers.getFloatArray(SLOT_LINES, colonnes, false);
+		int col_1 = colonnes - 1;
+		int col_2 = colonnes - 2;
+		int col_3 = colonnes - 3;
+		for (int i = first; i < last; ++i) {
 			int icolonnes = i * colonnes;
 			int icol_1 = icolonnes - 1;
 			int icol_2 = icolonnes - 2;
@@ -229,62 +266,73 @@ public class Deriche extends ImageTransformFunctionAbstract implements ImageTran
 			for (int j = 2; j < colonnes; ++j)
 				a2[icolonnes + j] = an1 * a1[icolonnes + j] + an2 * a1[icol_1 + j] - ad1 * a2[icol_1 + j]
 						- ad2 * a2[icol_2 + j];
-		}
 
-		int col_1 = colonnes - 1;
-		int col_2 = colonnes - 2;
-		int col_3 = colonnes - 3;
-		for (int i = 0; i < lignes; ++i) {
-			int icolonnes = i * colonnes;
-			int icol_1 = icolonnes + 1;
-			int icol_2 = icolonnes + 2;
-			a3[icolonnes + col_1] = 0;
-			a3[icolonnes + col_2] = an3 * a1[icolonnes + col_1];
+			icol_1 = icolonnes + 1;
+			icol_2 = icolonnes + 2;
+			a3[col_1] = 0;
+			a3[col_2] = an3 * a1[icolonnes + col_1];
 			for (int j = col_3; j >= 0; --j)
-				a3[icolonnes + j] = an3 * a1[icol_1 + j] + an4 * a1[icol_2 + j] - ad1 * a3[icol_1 + j]
-						- ad2 * a3[icol_2 + j];
-		}
+				a3[j] = an3 * a1[icol_1 + j] + an4 * a1[icol_2 + j] - ad1 * a3[j + 1] - ad2 * a3[j + 2];
 
-		int icol_1 = lignes * colonnes;
-		for (int i = 0; i < icol_1; ++i)
-			a2[i] += a3[i];
+			for (int j = 0; j < colonnes; ++j)
+				a2[icolonnes + j] += a3[j];
+		}
 	}
 
-	private void doDeriche_step1(int lignes, int colonnes, float ad1, float ad2, float an11, float[] a2, float[] a3,
-			float[] a4, float[] nf_gry) {
+	/**
+	 * Computes the y-derivative of the columns first to last - 1 of a2 into
+	 * nf_gry. The columns are computed together, row by row; the anticausal
+	 * filter is computed in the lines array of the thread.
+	 */
+	private void doDeriche_step1(int lignes, int colonnes, int first, int last, float ad1, float ad2, float an11,
+			float[] a2, float[] nf_gry) {
 		/* columns top - down */
-		for (int j = 0; j < colonnes; ++j) {
-			a3[j] = 0;
-			a3[colonnes + j] = an11 * a2[j] - ad1 * a3[j];
-			for (int i = 2; i < lignes; ++i)
-				a3[i * colonnes + j] = an11 * a2[(i - 1) * colonnes + j] - ad1 * a3[(i - 1) * colonnes + j]
-						- ad2 * a3[(i - 2) * colonnes + j];
+		for (int j = first; j < last; ++j) {
+			nf_gry[j] = 0;
+			nf_gry[colonnes + j] = an11 * a2[j] - ad1 * nf_gry[j];
+		}
+		for (int i = 2; i < lignes; ++i) {
+			int icolonnes = i * colonnes;
+			for (int j = first; j < last; ++j)
+				nf_gry[icolonnes + j] = an11 * a2[icolonnes - colonnes + j] - ad1 * nf_gry[icolonnes - colonnes + j]
+						- ad2 * nf_gry[icolonnes - 2 * colonnes + j];
 		}
 
-		/* columns down top */
+		/* columns down top, in a4 indexed by (row, column - first) */
+		int width = last - first;
+		float[] a4 = ImageTransformBuffers.getFloatArray(SLOT_LINES, lignes * width, false);
 		int lig_1 = lignes - 1;
 		int lig_2 = lignes - 2;
-		int lig_3 = lignes - 3;
-		for (int j = 0; j < colonnes; ++j) {
-			a4[lig_1 * colonnes + j] = 0;
-			a4[(lig_2 * colonnes) + j] = -an11 * a2[lig_1 * colonnes + j] - ad1 * a4[lig_1 * colonnes + j];
-			for (int i = lig_3; i >= 0; --i)
-				a4[i * colonnes + j] = -an11 * a2[(i + 1) * colonnes + j] - ad1 * a4[(i + 1) * colonnes + j]
-						- ad2 * a4[(i + 2) * colonnes + j];
+		for (int j = first; j < last; ++j) {
+			a4[lig_1 * width + j - first] = 0;
+			a4[lig_2 * width + j - first] = -an11 * a2[lig_1 * colonnes + j] - ad1 * a4[lig_1 * width + j - first];
+		}
+		for (int i = lignes - 3; i >= 0; --i) {
+			int iwidth = i * width - first;
+			int icolonnes = i * colonnes;
+			for (int j = first; j < last; ++j)
+				a4[iwidth + j] = -an11 * a2[icolonnes + colonnes + j] - ad1 * a4[iwidth + width + j]
+						- ad2 * a4[iwidth + 2 * width + j];
 		}
 
-		int icol_1 = colonnes * lignes;
-		for (int i = 0; i < icol_1; ++i)
-			a3[i] += a4[i]; /**** a2 ??? *****/
-
-		for (int i = 0; i < lignes; i++)
-			for (int j = 0; j < colonnes; j++)
-				nf_gry[i * colonnes + j] = a3[i * colonnes + j];
+		for (int i = 0; i < lignes; ++i) {
+			int iwidth = i * width - first;
+			int icolonnes = i * colonnes;
+			for (int j = first; j < last; ++j)
+				nf_gry[icolonnes + j] += a4[iwidth + j];
+		}
 	}
 
-	private void doDeriche_step2(int lignes, int colonnes, float ad1, float ad2, float an1, float an2, float an3,
-			float an4, float an11, short[] a1, float[] a2, float[] a3, float[] a4, float[] nf_grx) {
-		for (int i = 0; i < lignes; ++i) {
+	/**
+	 * Computes the x-derivative of the rows first to last - 1 of a1 into a2.
+	 */
+	private void doDeriche_step2_rows(int first, int last, int colonnes, float ad1, float ad2, float an11,
+			short[] a1, float[] a2) {
+		float[] a3 = ImageTransformBuffers.getFloatArray(SLOT_LINES, colonnes, false);
+		int col_1 = colonnes - 1;
+		int col_2 = colonnes - 2;
+		int col_3 = colonnes - 3;
+		for (int i = first; i < last; ++i) {
 			int icolonnes = i * colonnes;
 			int icol_1 = icolonnes - 1;
 			int icol_2 = icolonnes - 2;
@@ -292,64 +340,205 @@ public class Deriche extends ImageTransformFunctionAbstract implements ImageTran
 			a2[icolonnes + 1] = an11 * a1[icolonnes];
 			for (int j = 2; j < colonnes; ++j)
 				a2[icolonnes + j] = an11 * a1[icol_1 + j] - ad1 * a2[icol_1 + j] - ad2 * a2[icol_2 + j];
-		}
 
-		int col_1 = colonnes - 1;
-		int col_2 = colonnes - 2;
-		int col_3 = colonnes - 3;
-		for (int i = 0; i < lignes; ++i) {
-			int icolonnes = i * colonnes;
-			int icol_1 = icolonnes + 1;
-			int icol_2 = icolonnes + 2;
-			a3[icolonnes + col_1] = 0;
-			a3[icolonnes + col_2] = -an11 * a1[icolonnes + col_1];
+			icol_1 = icolonnes + 1;
+			a3[col_1] = 0;
+			a3[col_2] = -an11 * a1[icolonnes + col_1];
 			for (int j = col_3; j >= 0; --j)
-				a3[icolonnes + j] = -an11 * a1[icol_1 + j] - ad1 * a3[icol_1 + j] - ad2 * a3[icol_2 + j];
+				a3[j] = -an11 * a1[icol_1 + j] - ad1 * a3[j + 1] - ad2 * a3[j + 2];
+
+			for (int j = 0; j < colonnes; ++j)
+				a2[icolonnes + j] += a3[j];
 		}
-		int icol_1 = lignes * colonnes;
-		for (int i = 0; i < icol_1; ++i)
-			a2[i] += a3[i];
+	}
 
-		/* on the columns */
+	/**
+	 * Smoothes the columns first to last - 1 of a2 into nf_grx. The columns are
+	 * computed together, row by row; the anticausal filter is computed in the
+	 * lines array of the thread.
+	 */
+	private void doDeriche_step2_columns(int lignes, int colonnes, int first, int last, float ad1, float ad2,
+			float an1, float an2, float an3, float an4, float[] a2, float[] nf_grx) {
 		/* columns top down */
-		for (int j = 0; j < colonnes; ++j) {
-			a3[j] = an1 * a2[j];
-			a3[colonnes + j] = an1 * a2[colonnes + j] + an2 * a2[j] - ad1 * a3[j];
-			for (int i = 2; i < lignes; ++i)
-				a3[i * colonnes + j] = an1 * a2[i * colonnes + j] + an2 * a2[(i - 1) * colonnes + j]
-						- ad1 * a3[(i - 1) * colonnes + j] - ad2 * a3[(i - 2) * colonnes + j];
+		for (int j = first; j < last; ++j) {
+			nf_grx[j] = an1 * a2[j];
+			nf_grx[colonnes + j] = an1 * a2[colonnes + j] + an2 * a2[j] - ad1 * nf_grx[j];
+		}
+		for (int i = 2; i < lignes; ++i) {
+			int icolonnes = i * colonnes;
+			for (int j = first; j < last; ++j)
+				nf_grx[icolonnes + j] = an1 * a2[icolonnes + j] + an2 * a2[icolonnes - colonnes + j]
+						- ad1 * nf_grx[icolonnes - colonnes + j] - ad2 * nf_grx[icolonnes - 2 * colonnes + j];
 		}
 
-		/* columns down top */
+		/* columns down top, in a4 indexed by (row, column - first) */
+		int width = last - first;
+		float[] a4 = ImageTransformBuffers.getFloatArray(SLOT_LINES, lignes * width, false);
 		int lig_1 = lignes - 1;
 		int lig_2 = lignes - 2;
-		int lig_3 = lignes - 3;
-
-		for (int j = 0; j < colonnes; ++j) {
-			a4[lig_1 * colonnes + j] = 0;
-			a4[lig_2 * colonnes + j] = an3 * a2[lig_1 * colonnes + j] - ad1 * a4[lig_1 * colonnes + j];
-			for (int i = lig_3; i >= 0; --i)
-				a4[i * colonnes + j] = an3 * a2[(i + 1) * colonnes + j] + an4 * a2[(i + 2) * colonnes + j]
-						- ad1 * a4[(i + 1) * colonnes + j] - ad2 * a4[(i + 2) * colonnes + j];
+		for (int j = first; j < last; ++j) {
+			a4[lig_1 * width + j - first] = 0;
+			a4[lig_2 * width + j - first] = an3 * a2[lig_1 * colonnes + j] - ad1 * a4[lig_1 * width + j - first];
+		}
+		for (int i = lignes - 3; i >= 0; --i) {
+			int iwidth = i * width - first;
+			int icolonnes = i * colonnes;
+			for (int j = first; j < last; ++j)
+				a4[iwidth + j] = an3 * a2[icolonnes + colonnes + j] + an4 * a2[icolonnes + 2 * colonnes + j]
+						- ad1 * a4[iwidth + width + j] - ad2 * a4[iwidth + 2 * width + j];
 		}
 
-		icol_1 = colonnes * lignes;
-		for (int i = 0; i < icol_1; ++i)
-			a3[i] += a4[i];
-
-		for (int i = 0; i < lignes; i++)
-			for (int j = 0; j < colonnes; j++)
-				nf_grx[i * colonnes + j] = a3[i * colonnes + j];
+		for (int i = 0; i < lignes; ++i) {
+			int iwidth = i * width - first;
+			int icolonnes = i * colonnes;
+			for (int j = first; j < last; ++j)
+				nf_grx[icolonnes + j] += a4[iwidth + j];
+		}
 	}
 
-	private void doDeriche_step3(int lignes, int colonnes, float[] a2, float[] a3, float[] nf_gry) {
+	/**
+	 * Computes the norm of the gradient of the rows first to last - 1 into a2.
+	 */
+	private void doDeriche_step3(int first, int last, int colonnes, float[] a2, float[] nf_gry, float[] nf_grx) {
 		/* the magnitude computation */
-		for (int i = 0; i < lignes; i++)
-			for (int j = 0; j < colonnes; j++)
-				a2[i * colonnes + j] = nf_gry[i * colonnes + j];
-		int icol_1 = colonnes * lignes;
-		for (int i = 0; i < icol_1; ++i)
-			a2[i] = Modul(a2[i], a3[i]);
+		int icol_1 = last * colonnes;
+		for (int i = first * colonnes; i < icol_1; ++i)
+			a2[i] = Modul(nf_gry[i], nf_grx[i]);
+	}
+
+	/**
+	 * Suppresses the non maxima of the norm a2 of row i, with linear
+	 * interpolation along the gradient (a4, a3): row i of a3 receives the norm of
+	 * the maxima and 0 elsewhere, the borders of the image being set to 0. Only
+	 * row i of a3 is read and written.
+	 */
+	private void suppressNonMaxima(int i, int lignes, int colonnes, float[] a2, float[] a3, float[] a4) {
+		int icoll = i * colonnes;
+		if (i == 0 || i == lignes - 1) {
+			for (int j = 0; j < colonnes; ++j)
+				a3[icoll + j] = 0;
+			return;
+		}
+
+		int col_2 = colonnes - 2;
+		for (int j = 1; j <= col_2; ++j) {
+			int jp1 = j + 1;
+			int jm1 = j - 1;
+			int ip1 = i + 1;
+			int im1 = i - 1;
+			if (a3[icoll + j] > 0.) {
+				float wd = a4[icoll + j] / a3[icoll + j];
+				a3[icoll + j] = 0;
+				if (wd >= 1) {
+					float gun = a2[icoll + jp1] + (a2[ip1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
+					if (a2[icoll + j] <= gun)
+						continue;
+					float gzr = a2[icoll + jm1] + (a2[im1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
+					if (a2[icoll + j] < gzr)
+						continue;
+					a3[icoll + j] = a2[icoll + j];
+					continue;
+				}
+				if (wd >= 0) {
+					float gun = a2[ip1 * colonnes + j] + (a2[ip1 * colonnes + jp1] - a2[ip1 * colonnes + j]) * wd;
+					if (a2[icoll + j] <= gun)
+						continue;
+					float gzr = a2[im1 * colonnes + j] + (a2[im1 * colonnes + jm1] - a2[im1 * colonnes + j]) * wd;
+					if (a2[icoll + j] < gzr)
+						continue;
+					a3[icoll + j] = a2[icoll + j];
+					continue;
+				}
+				if (wd >= -1) {
+					int icolonnes = ip1 * colonnes;
+					float gun = a2[icolonnes + j] - (a2[icolonnes + jm1] - a2[icolonnes + j]) * wd;
+					if (a2[icoll + j] <= gun)
+						continue;
+					icolonnes = im1 * colonnes;
+					float gzr = a2[icolonnes + j] - (a2[icolonnes + jp1] - a2[icolonnes + j]) * wd;
+					if (a2[icoll + j] < gzr)
+						continue;
+					a3[icoll + j] = a2[icoll + j];
+					continue;
+				}
+
+				float gun = a2[icoll + jm1] - (a2[ip1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
+				if (a2[icoll + j] <= gun)
+					continue;
+				float gzr = a2[icoll + jp1] - (a2[im1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
+				if (a2[icoll + j] < gzr)
+					continue;
+				a3[icoll + j] = a2[icoll + j];
+				continue;
+			}
+			if ((a3[icoll + j]) == 0.) {
+				if (a4[icoll + j] == 0)
+					continue;
+				if (a4[icoll + j] < 0) {
+					float gzr = a2[icoll + jp1];
+					if (a2[icoll + j] < gzr)
+						continue;
+					float gun = a2[icoll + jm1];
+					if (a2[icoll + j] <= gun)
+						continue;
+					a3[icoll + j] = a2[icoll + j];
+					continue;
+				}
+				float gzr = a2[icoll + jm1];
+				if (a2[icoll + j] < gzr)
+					continue;
+				float gun = a2[icoll + jp1];
+				if (a2[icoll + j] <= gun)
+					continue;
+				a3[icoll + j] = a2[icoll + j];
+				continue;
+			}
+
+			float wd = a4[icoll + j] / a3[icoll + j];
+			a3[icoll + j] = 0;
+			if (wd >= 1) {
+				float gzr = a2[icoll + jp1] + (a2[ip1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
+				if (a2[icoll + j] < gzr)
+					continue;
+				float gun = a2[icoll + jm1] + (a2[im1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
+				if (a2[icoll + j] <= gun)
+					continue;
+				a3[icoll + j] = a2[icoll + j];
+				continue;
+			}
+			if (wd >= 0) {
+				float gzr = a2[ip1 * colonnes + j] + (a2[ip1 * colonnes + jp1] - a2[ip1 * colonnes + j]) * wd;
+				if (a2[icoll + j] < gzr)
+					continue;
+				float gun = a2[im1 * colonnes + j] + (a2[im1 * colonnes + jm1] - a2[im1 * colonnes + j]) * wd;
+				if (a2[icoll + j] <= gun)
+					continue;
+				a3[icoll + j] = a2[icoll + j];
+				continue;
+			}
+			if (wd >= -1) {
+				int icolonnes = ip1 * colonnes;
+				float gzr = a2[icolonnes + j] - (a2[icolonnes + jm1] - a2[icolonnes + j]) * wd;
+				if (a2[icoll + j] < gzr)
+					continue;
+				icolonnes = im1 * colonnes;
+				float gun = a2[icolonnes + j] - (a2[icolonnes + jp1] - a2[icolonnes + j]) * wd;
+				if (a2[icoll + j] <= gun)
+					continue;
+				a3[icoll + j] = a2[icoll + j];
+				continue;
+			}
+			float gzr = a2[icoll + jm1] - (a2[ip1 * colonnes + jm1] - a2[icoll + jm1]) / wd;
+			if (a2[icoll + j] < gzr)
+				continue;
+			float gun = a2[icoll + jp1] - (a2[im1 * colonnes + jp1] - a2[icoll + jp1]) / wd;
+			if (a2[icoll + j] <= gun)
+				continue;
+			a3[icoll + j] = a2[icoll + j];
+		}
+
+		a3[icoll] = 0;
+		a3[icoll + colonnes - 1] = 0;
 	}
 
 }
@@ -1,29 +1,46 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
-import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
 
-public class H1H2H3 extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class H1H2H3 extends ImageTransformBandAbstract implements ImageTransformPointInterface {
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		return sizeC >= 3;
+	}
+
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return 3;
+	}
+
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return dataType;
+	}
+
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return false; // img2.isSignedDataType();
+	}
 
-		double[] tabValuesR = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-		double[] tabValuesG = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(1), sourceImage.isSignedDataType());
-		double[] tabValuesB = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(2), sourceImage.isSignedDataType());
+	@Override
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		double[] tabValuesR = values[0];
+		double[] tabValuesG = values[1];
+		double[] tabValuesB = values[2];
 
-		double[] outValues0 = Array1DUtil.arrayToDoubleArray(img2.getDataXY(0), img2.isSignedDataType());
-		double[] outValues1 = Array1DUtil.arrayToDoubleArray(img2.getDataXY(1), img2.isSignedDataType());
-		double[] outValues2 = Array1DUtil.arrayToDoubleArray(img2.getDataXY(2), img2.isSignedDataType());
+		double[] outValues0 = results[0];
+		double[] outValues1 = results[1];
+		double[] outValues2 = results[2];
 
 		// compute values
 		final double VMAX = 255.0;
-		for (int ky = 0; ky < tabValuesR.length; ky++) {
+		for (int ky = 0; ky < npixels; ky++) {
 			int r = (int) tabValuesR[ky];
 			int g = (int) tabValuesG[ky];
 			int b = (int) tabValuesB[ky];
@@ -32,17 +49,6 @@ public class H1H2H3 extends ImageTransformFunctionAbstract implements ImageTrans
 			outValues1[ky] = (VMAX + r - g) / 2.0;
 			outValues2[ky] = (VMAX + b - (r + g) / 2.0) / 2.0;
 		}
-
-		int c = 0;
-		Array1DUtil.doubleArrayToSafeArray(outValues0, img2.getDataXY(c), false); // img2.isSignedDataType());
-		img2.setDataXY(c, img2.getDataXY(c));
-		c++;
-		Array1DUtil.doubleArrayToSafeArray(outValues1, img2.getDataXY(c), false); // img2.isSignedDataType());
-		img2.setDataXY(c, img2.getDataXY(c));
-		c++;
-		Array1DUtil.doubleArrayToSafeArray(outValues2, img2.getDataXY(c), false); // img2.isSignedDataType());
-		img2.setDataXY(c, img2.getDataXY(c));
-		return img2;
 	}
 
 }
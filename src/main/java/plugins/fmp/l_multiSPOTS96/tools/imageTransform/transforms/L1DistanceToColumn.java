@@ -1,13 +1,11 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
-import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
-public class L1DistanceToColumn extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class L1DistanceToColumn extends ImageTransformBandAbstract {
 	int column = 0;
 
 	public L1DistanceToColumn(int column) {
@@ -15,18 +13,21 @@ public class L1DistanceToColumn extends ImageTransformFunctionAbstract implement
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		int imageSizeX = sourceImage.getSizeX();
-		int imageSizeY = sourceImage.getSizeY();
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		return getDestination3Planes(sourceImage, destinationImage);
+	}
 
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
-		int[] R = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-		int[] G = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(1), sourceImage.isSignedDataType());
-		int[] B = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(2), sourceImage.isSignedDataType());
-		int[] ExG = (int[]) Array1DUtil.createArray(DataType.INT, R.length);
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage img2, ImageTransformOptions options,
+			int yFirst, int yLast) {
+		int imageSizeX = sourceImage.getSizeX();
+		int[] R = ImageTransformBuffers.getRowsAsInt(sourceImage, 0, yFirst, yLast, 0);
+		int[] G = ImageTransformBuffers.getRowsAsInt(sourceImage, 1, yFirst, yLast, 1);
+		int[] B = ImageTransformBuffers.getRowsAsInt(sourceImage, 2, yFirst, yLast, 2);
+		int[] ExG = ImageTransformBuffers.getIntArray(3, (yLast - yFirst) * imageSizeX, false);
 
-		for (int iy = 0; iy < imageSizeY; iy++) {
+		for (int iy = 0; iy < yLast - yFirst; iy++) {
 			int deltay = iy * imageSizeX;
 			int kx0 = column + deltay;
 
@@ -36,7 +37,7 @@ public class L1DistanceToColumn extends ImageTransformFunctionAbstract implement
 			}
 		}
 
-		copyExGIntToIcyBufferedImage(ExG, img2, options.copyResultsToThe3planes);
-		return img2;
+		ImageTransformBuffers.setRows(ExG, img2, 0, yFirst, yLast, false, false);
+		ImageTransformBuffers.completeRows(img2, yFirst, yLast, options.copyResultsToThe3planes);
 	}
 }
@@ -3,12 +3,14 @@ package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 import java.util.logging.Logger;
 
 import icy.image.IcyBufferedImage;
+import icy.type.DataType;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.AlgorithmException;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ArrayOperationCache;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBase;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformConstants;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformException;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.InvalidParameterException;
 
 /**
@@ -40,13 +42,18 @@ import plugins.fmp.l_multiSPOTS96.tools.imageTransform.InvalidParameterException
  * @author MultiSPOTS96 Team
  * @version 2.0
  */
-public class LinearCombination extends ImageTransformBase {
+public class LinearCombination extends ImageTransformBase implements ImageTransformPointInterface {
     
     private static final Logger logger = Logger.getLogger(LinearCombination.class.getName());
-    private static final ArrayOperationCache arrayCache = new ArrayOperationCache();
+    
+    /** Largest integer weight applied to bytes with int arithmetic */
+    private static final int MAX_INT_WEIGHT = 1 << 16;
     
     private final double[] weights;
     
+    /** The weights as ints, or null if they are not all small integers */
+    private final int[] intWeights;
+    
     /**
      * Creates a linear combination transform with specified weights.
      * 
@@ -56,6 +63,7 @@ public class LinearCombination extends ImageTransformBase {
      */
     public LinearCombination(double wR, double wG, double wB) {
         this.weights = new double[]{wR, wG, wB};
+        this.intWeights = toIntWeights(weights);
     }
     
     /**
@@ -69,6 +77,18 @@ public class LinearCombination extends ImageTransformBase {
             throw new IllegalArgumentException("Weights array must contain exactly 3 values");
         }
         this.weights = weights.clone();
+        this.intWeights = toIntWeights(this.weights);
+    }
+    
+    private static int[] toIntWeights(double[] weights) {
+        int[] intWeights = new int[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] != Math.rint(weights[i]) || Math.abs(weights[i]) > MAX_INT_WEIGHT) {
+                return null;
+            }
+            intWeights[i] = (int) weights[i];
+        }
+        return intWeights;
     }
     
     /**
@@ -101,15 +121,7 @@ public class LinearCombination extends ImageTransformBase {
         }
         
         // Validate weights are reasonable (not all zero)
-        boolean allZero = true;
-        for (double weight : weights) {
-            if (weight != 0.0) {
-                allZero = false;
-                break;
-            }
-        }
-        
-        if (allZero) {
+        if (areWeightsZero()) {
             throw new InvalidParameterException("weights", weights,
                 "At least one weight must be non-zero", transformName);
         }
@@ -122,23 +134,16 @@ public class LinearCombination extends ImageTransformBase {
     }
     
     @Override
-    protected IcyBufferedImage executeTransform(IcyBufferedImage sourceImage, ImageTransformOptions options) 
-            throws ImageTransformException {
+    protected IcyBufferedImage executeTransform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+                                                ImageTransformOptions options) throws ImageTransformException {
         
         try {
-            // Create result image using base class utility
-            IcyBufferedImage resultImage = createResultImage(sourceImage, 
-                ImageTransformConstants.ColorSpace.RGB_CHANNELS);
-            
-            // Get optimized RGB arrays using cached operations
-            double[][] rgbArrays = getRGBArraysOptimized(sourceImage);
-            
-            // Perform optimized linear combination using cached operations
-            double[] resultArray = arrayCache.linearCombination(rgbArrays, weights);
-            
-            // Copy result to image using base class utility
-            copyArrayToImage(resultArray, resultImage, options.copyResultsToThe3planes);
-            
+            // Reuse the destination image when possible; the inputs have been
+            // validated by the base class
+            IcyBufferedImage resultImage = ImageTransformBuffers.getDestination(sourceImage, destinationImage,
+                ImageTransformConstants.ColorSpace.RGB_CHANNELS, sourceImage.getDataType_());
+            transformBand(sourceImage, resultImage, options, 0, sourceImage.getSizeY());
+            ImageTransformBuffers.dataChanged(resultImage);
             return resultImage;
             
         } catch (Exception e) {
@@ -146,6 +151,106 @@ public class LinearCombination extends ImageTransformBase {
         }
     }
     
+    @Override
+    public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+        return 0;
+    }
+    
+    /**
+     * Gets the image receiving the result after validating the source image.
+     * 
+     * @return The destination image or a new image, or null if the source image
+     *         is not valid
+     */
+    @Override
+    public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+                                           ImageTransformOptions options) {
+        try {
+            validateInputs(sourceImage, options, getClass().getSimpleName());
+        } catch (ImageTransformException e) {
+            logger.severe("Transform failed: " + e.getMessage());
+            return null;
+        }
+        return ImageTransformBuffers.getDestination(sourceImage, destinationImage,
+            ImageTransformConstants.ColorSpace.RGB_CHANNELS, sourceImage.getDataType_());
+    }
+    
+    @Override
+    public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+        return sizeC >= ImageTransformConstants.ColorSpace.RGB_CHANNELS && !areWeightsZero();
+    }
+    
+    @Override
+    public int getPointsSizeC(int sizeC) {
+        return ImageTransformConstants.ColorSpace.RGB_CHANNELS;
+    }
+    
+    @Override
+    public DataType getPointsDataType(DataType dataType) {
+        return dataType;
+    }
+    
+    @Override
+    public boolean isPointsSigned(DataType dataType) {
+        return false;
+    }
+    
+    @Override
+    public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+                                ImageTransformOptions options, int yFirst, int yLast) {
+        double[] r = values[0];
+        double[] g = values[1];
+        double[] b = values[2];
+        double[] resultArray = results[0];
+        
+        double wR = weights[0];
+        double wG = weights[1];
+        double wB = weights[2];
+        for (int i = 0; i < npixels; i++) {
+            resultArray[i] = r[i] * wR + g[i] * wG + b[i] * wB;
+        }
+        
+        // Channels 1 and 2 are left to 0 when the result is not copied to them
+        ImageTransformBuffers.completePoints(results, npixels, options.copyResultsToThe3planes);
+    }
+    
+    /**
+     * Computes the combination on bytes with int arithmetic when the weights are
+     * integers, as for the usual combinations of channels: the sums are then
+     * exact and only need to be clamped to bytes.
+     */
+    @Override
+    public boolean transformBytes(byte[][] values, int sizeC, int offset, byte[][] results, int resultOffset,
+                                  int npixels, ImageTransformOptions options) {
+        if (intWeights == null) {
+            return false;
+        }
+        byte[] r = values[0];
+        byte[] g = values[1];
+        byte[] b = values[2];
+        byte[] resultArray = results[0];
+        
+        int wR = intWeights[0];
+        int wG = intWeights[1];
+        int wB = intWeights[2];
+        for (int i = 0; i < npixels; i++) {
+            int value = (r[offset + i] & 0xFF) * wR + (g[offset + i] & 0xFF) * wG + (b[offset + i] & 0xFF) * wB;
+            resultArray[resultOffset + i] = (byte) Math.min(255, Math.max(0, value));
+        }
+        
+        ImageTransformBuffers.completeBytes(results, resultOffset, npixels, options.copyResultsToThe3planes);
+        return true;
+    }
+    
+    private boolean areWeightsZero() {
+        for (double weight : weights) {
+            if (weight != 0.0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * Gets the weights used by this linear combination.
      * 
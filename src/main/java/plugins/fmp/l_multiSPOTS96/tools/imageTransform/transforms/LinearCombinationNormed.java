@@ -1,13 +1,12 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
-import icy.image.IcyBufferedImage;
 import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
 
-public class LinearCombinationNormed extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class LinearCombinationNormed extends ImageTransformBandAbstract implements ImageTransformPointInterface {
 	double w0 = 1;
 	double w1 = 1;
 	double w2 = 1;
@@ -19,24 +18,37 @@ public class LinearCombinationNormed extends ImageTransformFunctionAbstract impl
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		return functionRGBtoLinearCombination(sourceImage, options.copyResultsToThe3planes);
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		return sizeC >= 3;
 	}
 
-	protected IcyBufferedImage functionRGBtoLinearCombination(IcyBufferedImage sourceImage,
-			boolean copyResultsToThe3planes) {
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
-		double[] Rn = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-		double[] Gn = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(1), sourceImage.isSignedDataType());
-		double[] Bn = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(2), sourceImage.isSignedDataType());
-		double[] ExG = (double[]) Array1DUtil.createArray(DataType.DOUBLE, Rn.length);
-		for (int i = 0; i < Rn.length; i++) {
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return 3;
+	}
+
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return dataType;
+	}
+
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return false;
+	}
+
+	@Override
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		double[] Rn = values[0];
+		double[] Gn = values[1];
+		double[] Bn = values[2];
+		double[] ExG = results[0];
+		for (int i = 0; i < npixels; i++) {
 			double sum = (Rn[i] / 255) + (Gn[i] / 255) + (Bn[i] / 255);
 			ExG[i] = ((Rn[i] * w0 / 255 / sum) + (Gn[i] * w1 / 255 / sum) + (Bn[i] * w2 / 255 / sum)) * 255;
 		}
 
-		copyExGDoubleToIcyBufferedImage(ExG, img2, copyResultsToThe3planes);
-		return img2;
+		ImageTransformBuffers.completePoints(results, npixels, options.copyResultsToThe3planes);
 	}
 }
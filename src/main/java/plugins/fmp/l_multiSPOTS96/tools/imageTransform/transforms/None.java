@@ -1,14 +1,23 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
 public class None extends ImageTransformFunctionAbstract implements ImageTransformInterface {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		return sourceImage;
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		if (!ImageTransformBuffers.isCompatible(sourceImage, destinationImage, sourceImage.getSizeC(),
+				sourceImage.getDataType_()))
+			return sourceImage;
+		for (int c = 0; c < sourceImage.getSizeC(); c++) {
+			destinationImage.copyData(sourceImage, c, c);
+			destinationImage.setDataXY(c, destinationImage.getDataXY(c));
+		}
+		return destinationImage;
 	}
 
 }
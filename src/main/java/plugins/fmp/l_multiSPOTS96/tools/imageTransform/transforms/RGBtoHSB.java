@@ -2,13 +2,12 @@ package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import java.awt.Color;
 
-import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
 
-public class RGBtoHSB extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class RGBtoHSB extends ImageTransformBandAbstract implements ImageTransformPointInterface {
 	int channelOut = 0;
 
 	public RGBtoHSB(int channelOut) {
@@ -16,45 +15,51 @@ public class RGBtoHSB extends ImageTransformFunctionAbstract implements ImageTra
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage img = functionRGBtoHSB(sourceImage);
-		if (channelOut >= 0)
-			img = functionRGB_keepOneChan(img, channelOut);
-		return img;
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		return sizeC >= 3;
 	}
 
-	protected IcyBufferedImage functionRGBtoHSB(IcyBufferedImage sourceImage) {
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return 3;
+	}
+
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return dataType;
+	}
 
-		float[] tabValuesR = Array1DUtil.arrayToFloatArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-		float[] tabValuesG = Array1DUtil.arrayToFloatArray(sourceImage.getDataXY(1), sourceImage.isSignedDataType());
-		float[] tabValuesB = Array1DUtil.arrayToFloatArray(sourceImage.getDataXY(2), sourceImage.isSignedDataType());
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return false; // img2.isSignedDataType();
+	}
 
-		float[] outValues0 = Array1DUtil.arrayToFloatArray(img2.getDataXY(0), img2.isSignedDataType());
-		float[] outValues1 = Array1DUtil.arrayToFloatArray(img2.getDataXY(1), img2.isSignedDataType());
-		float[] outValues2 = Array1DUtil.arrayToFloatArray(img2.getDataXY(2), img2.isSignedDataType());
+	@Override
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		double[] tabValuesR = values[0];
+		double[] tabValuesG = values[1];
+		double[] tabValuesB = values[2];
 
-		// compute values
-		for (int ky = 0; ky < tabValuesR.length; ky++) {
-			int R = (int) tabValuesR[ky];
-			int G = (int) tabValuesG[ky];
-			int B = (int) tabValuesB[ky];
+		// compute values; the source is read as float values
+		float[] hsb = new float[3];
+		for (int ky = 0; ky < npixels; ky++) {
+			int R = (int) (float) tabValuesR[ky];
+			int G = (int) (float) tabValuesG[ky];
+			int B = (int) (float) tabValuesB[ky];
 
-			float[] hsb = Color.RGBtoHSB(R, G, B, null);
-			outValues0[ky] = hsb[0] * 100;
-			outValues1[ky] = hsb[1] * 100;
-			outValues2[ky] = hsb[2] * 100;
+			Color.RGBtoHSB(R, G, B, hsb);
+			if (channelOut < 0) {
+				results[0][ky] = hsb[0] * 100;
+				results[1][ky] = hsb[1] * 100;
+				results[2][ky] = hsb[2] * 100;
+			} else {
+				// only the channel kept is computed, copied to the 3 planes
+				float outValue = hsb[channelOut] * 100;
+				results[0][ky] = outValue;
+				results[1][ky] = outValue;
+				results[2][ky] = outValue;
+			}
 		}
-		int c = 0;
-		Array1DUtil.floatArrayToSafeArray(outValues0, img2.getDataXY(c), false); // img2.isSignedDataType());
-		img2.setDataXY(c, img2.getDataXY(c));
-		c++;
-		Array1DUtil.floatArrayToSafeArray(outValues1, img2.getDataXY(c), false); // img2.isSignedDataType());
-		img2.setDataXY(c, img2.getDataXY(c));
-		c++;
-		Array1DUtil.floatArrayToSafeArray(outValues2, img2.getDataXY(c), false); // img2.isSignedDataType());
-		img2.setDataXY(c, img2.getDataXY(c));
-		return img2;
 	}
 }
@@ -1,56 +1,60 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
-import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
 
-public class RGBtoHSV extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class RGBtoHSV extends ImageTransformBandAbstract implements ImageTransformPointInterface {
 	int channelOut = 0;
-	double h, s, v;
 
 	public RGBtoHSV(int channelOut) {
 		this.channelOut = channelOut;
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage img = functionRGBtoHSB(sourceImage);
-		if (channelOut >= 0)
-			img = functionRGB_keepOneChan(img, channelOut);
-		return img;
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		return sizeC >= 3;
 	}
 
-	protected IcyBufferedImage functionRGBtoHSB(IcyBufferedImage sourceImage) {
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return 3;
+	}
 
-		double[] tabValuesR = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-		double[] tabValuesG = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(1), sourceImage.isSignedDataType());
-		double[] tabValuesB = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(2), sourceImage.isSignedDataType());
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return dataType;
+	}
 
-		double[] outValuesH = Array1DUtil.arrayToDoubleArray(img2.getDataXY(0), img2.isSignedDataType());
-		double[] outValuesS = Array1DUtil.arrayToDoubleArray(img2.getDataXY(1), img2.isSignedDataType());
-		double[] outValuesV = Array1DUtil.arrayToDoubleArray(img2.getDataXY(2), img2.isSignedDataType());
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return false; // img2.isSignedDataType();
+	}
+
+	@Override
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		double[] tabValuesR = values[0];
+		double[] tabValuesG = values[1];
+		double[] tabValuesB = values[2];
 
 		// compute values
-		for (int ky = 0; ky < tabValuesR.length; ky++) {
-			NH_RGB_to_HSV(tabValuesR[ky], tabValuesG[ky], tabValuesB[ky]);
-			outValuesH[ky] = h * 100;
-			outValuesS[ky] = s * 100;
-			outValuesV[ky] = v * 100;
+		double[] hsv = new double[3];
+		for (int ky = 0; ky < npixels; ky++) {
+			NH_RGB_to_HSV(tabValuesR[ky], tabValuesG[ky], tabValuesB[ky], hsv);
+			if (channelOut < 0) {
+				results[0][ky] = hsv[0] * 100;
+				results[1][ky] = hsv[1] * 100;
+				results[2][ky] = hsv[2] * 100;
+			} else {
+				// only the channel kept is computed, copied to the 3 planes
+				double outValue = hsv[channelOut] * 100;
+				results[0][ky] = outValue;
+				results[1][ky] = outValue;
+				results[2][ky] = outValue;
+			}
 		}
-
-		Array1DUtil.doubleArrayToSafeArray(outValuesH, img2.getDataXY(0), false); // img2.isSignedDataType());
-		img2.setDataXY(0, img2.getDataXY(0));
-
-		Array1DUtil.doubleArrayToSafeArray(outValuesS, img2.getDataXY(1), false); // img2.isSignedDataType());
-		img2.setDataXY(1, img2.getDataXY(1));
-
-		Array1DUtil.doubleArrayToSafeArray(outValuesV, img2.getDataXY(2), false); // img2.isSignedDataType());
-		img2.setDataXY(2, img2.getDataXY(2));
-		return img2;
 	}
 
 	// From:
@@ -92,15 +96,14 @@ public class RGBtoHSV extends ImageTransformFunctionAbstract implements ImageTra
 	 * @param r the r
 	 * @param g the g
 	 * @param b the b
-	 * @param h the h
-	 * @param s the s
-	 * @param v the v
+	 * @param hsv receives h, s and v
 	 */
 
-	void NH_RGB_to_HSV(double r, double g, double b) {
+	void NH_RGB_to_HSV(double r, double g, double b, double[] hsv) {
 		double max;
 		double min;
 		double delta;
+		double h = 0, s, v;
 
 		max = Math.max(b, Math.max(r, g));
 		min = Math.min(b, Math.min(r, g));
@@ -131,6 +134,9 @@ public class RGBtoHSV extends ImageTransformFunctionAbstract implements ImageTra
 			if (h < 0.0)
 				h += 360.0; /* Make sure hue is nonnegative */
 		} /* Chromatic case */
+		hsv[0] = h;
+		hsv[1] = s;
+		hsv[2] = v;
 	}
 
 }
@@ -1,23 +1,26 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
-public class RemoveHorizontalAverage extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class RemoveHorizontalAverage extends ImageTransformBandAbstract {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		return getDestination3Planes(sourceImage, destinationImage);
+	}
+
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage img2, ImageTransformOptions options,
+			int yFirst, int yLast) {
 		int imgSizeX = sourceImage.getSizeX();
-		int imgSizeY = sourceImage.getSizeY();
 
-		int nchannels = sourceImage.getSizeC();
+		int nchannels = Math.min(sourceImage.getSizeC(), img2.getSizeC());
 		for (int c = 0; c < nchannels; c++) {
-			double[] Rn = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(c), sourceImage.isSignedDataType());
-			for (int iy = 0; iy < imgSizeY; iy++) {
+			double[] Rn = ImageTransformBuffers.getRowsAsDouble(sourceImage, c, yFirst, yLast, 0);
+			for (int iy = 0; iy < yLast - yFirst; iy++) {
 				int iydelta = iy * imgSizeX;
 				double sum = 0;
 				for (int ix = 0; ix < imgSizeX; ix++) {
@@ -29,9 +32,9 @@ public class RemoveHorizontalAverage extends ImageTransformFunctionAbstract impl
 					Rn[iydelta + ix] -= average;
 				}
 			}
-			Array1DUtil.doubleArrayToSafeArray(Rn, img2.getDataXY(c), true);
-			img2.setDataXY(c, img2.getDataXY(c));
+			ImageTransformBuffers.setRows(Rn, img2, c, yFirst, yLast, true);
 		}
-		return img2;
+		for (int c = nchannels; c < img2.getSizeC(); c++)
+			ImageTransformBuffers.clearRows(img2, c, yFirst, yLast);
 	}
 }
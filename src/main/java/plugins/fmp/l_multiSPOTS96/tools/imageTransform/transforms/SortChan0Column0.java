@@ -4,15 +4,22 @@ import java.util.Arrays;
 
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageCursor;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEngine;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
 public class SortChan0Column0 extends ImageTransformFunctionAbstract implements ImageTransformInterface {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage destinationImage = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		destinationImage = getDestination3Planes(sourceImage, destinationImage);
+		if (sourceImage.getDataType_() == DataType.UBYTE && sourceImage.getSizeC() >= 3) {
+			sortRowsBytes(sourceImage, destinationImage);
+			return destinationImage;
+		}
 		IcyBufferedImageCursor sourceCursor = new IcyBufferedImageCursor(sourceImage);
 		IcyBufferedImageCursor destinationCursor = new IcyBufferedImageCursor(destinationImage);
 		int columnIndex = 0; // column 0
@@ -32,6 +39,28 @@ public class SortChan0Column0 extends ImageTransformFunctionAbstract implements
 		return destinationImage;
 	}
 
+	/**
+	 * Sorts the rows of an 8-bit image by counting the values of column 0, then
+	 * copies the rows in parallel.
+	 */
+	private void sortRowsBytes(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage) {
+		final int width = sourceImage.getSizeX();
+		final int height = sourceImage.getSizeY();
+		final byte[][] source = sourceImage.getDataXYCAsByte();
+		final byte[][] destination = destinationImage.getDataXYCAsByte();
+		byte[] sourceValues = source[0]; // RED, column 0
+		int[] keys = ColumnCountingSort.getKeys(height);
+		for (int y = 0; y < height; y++)
+			keys[y] = sourceValues[y * width] & 0xFF;
+		final int[] order = ColumnCountingSort.sortDescending(keys, height, 0, 255);
+		ImageTransformEngine.computeLines(height, ColumnCountingSort.MIN_TASK_LINES, (first, last) -> {
+			for (int chan = 0; chan < 3; chan++)
+				for (int y = first; y < last; y++)
+					System.arraycopy(source[chan], order[y] * width, destination[chan], y * width, width);
+		});
+		ImageTransformBuffers.dataChanged(destinationImage);
+	}
+
 	private int[][] getSortOrderForColumn(IcyBufferedImage sourceImage, int columnIndex, int channel) {
 		int[][] sorted = getImageColumnValues(sourceImage, columnIndex, channel);
 		Arrays.sort(sorted, (a, b) -> b[1] - a[1]);
@@ -4,15 +4,22 @@ import java.util.Arrays;
 
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageCursor;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEngine;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
 public class SortChan0Columns extends ImageTransformFunctionAbstract implements ImageTransformInterface {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage destinationImage = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		destinationImage = getDestination3Planes(sourceImage, destinationImage);
+		if (sourceImage.getDataType_() == DataType.UBYTE && sourceImage.getSizeC() >= 3) {
+			sortColumnsBytes(sourceImage, destinationImage);
+			return destinationImage;
+		}
 		IcyBufferedImageCursor sourceCursor = new IcyBufferedImageCursor(sourceImage);
 		IcyBufferedImageCursor destinationCursor = new IcyBufferedImageCursor(destinationImage);
 
@@ -34,6 +41,27 @@ public class SortChan0Columns extends ImageTransformFunctionAbstract implements
 		return destinationImage;
 	}
 
+	/**
+	 * Sorts the columns of an 8-bit image by counting, columns in parallel.
+	 */
+	private void sortColumnsBytes(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage) {
+		final int width = sourceImage.getSizeX();
+		final int height = sourceImage.getSizeY();
+		final byte[][] source = sourceImage.getDataXYCAsByte();
+		final byte[][] destination = destinationImage.getDataXYCAsByte();
+		final byte[] sourceValues = source[0]; // RED
+		ImageTransformEngine.computeLines(width, ColumnCountingSort.MIN_TASK_LINES, (first, last) -> {
+			int[] keys = ColumnCountingSort.getKeys(height);
+			for (int x = first; x < last; x++) {
+				for (int y = 0, offset = x; y < height; y++, offset += width)
+					keys[y] = sourceValues[offset] & 0xFF;
+				int[] order = ColumnCountingSort.sortDescending(keys, height, 0, 255);
+				ColumnCountingSort.copyColumn(source, destination, width, height, x, order);
+			}
+		});
+		ImageTransformBuffers.dataChanged(destinationImage);
+	}
+
 	private void getSortOrderForColumn(IcyBufferedImage sourceImage, int columnIndex, int channel, int[][] sorted) {
 		getImageColumnValues(sourceImage, columnIndex, channel, sorted);
 		Arrays.sort(sorted, (a, b) -> Integer.compare(b[1], a[1]));
@@ -4,15 +4,22 @@ import java.util.Arrays;
 
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageCursor;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEngine;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
 public class SortSumDiffColumns extends ImageTransformFunctionAbstract implements ImageTransformInterface {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage destinationImage = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
+	public IcyBufferedImage transform(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		destinationImage = getDestination3Planes(sourceImage, destinationImage);
+		if (sourceImage.getDataType_() == DataType.UBYTE && sourceImage.getSizeC() >= 3) {
+			sortColumnsBytes(sourceImage, destinationImage);
+			return destinationImage;
+		}
 		IcyBufferedImageCursor sourceCursor = new IcyBufferedImageCursor(sourceImage);
 		IcyBufferedImageCursor destinationCursor = new IcyBufferedImageCursor(destinationImage);
 
@@ -33,6 +40,30 @@ public class SortSumDiffColumns extends ImageTransformFunctionAbstract implement
 		return destinationImage;
 	}
 
+	/**
+	 * Sorts the columns of an 8-bit image by counting, columns in parallel. The
+	 * key (R - B) + (R - G) + (B - G) equals 2 * (R - G): the rows are sorted by
+	 * R - G, in the same order.
+	 */
+	private void sortColumnsBytes(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage) {
+		final int width = sourceImage.getSizeX();
+		final int height = sourceImage.getSizeY();
+		final byte[][] source = sourceImage.getDataXYCAsByte();
+		final byte[][] destination = destinationImage.getDataXYCAsByte();
+		final byte[] red = source[0];
+		final byte[] green = source[1];
+		ImageTransformEngine.computeLines(width, ColumnCountingSort.MIN_TASK_LINES, (first, last) -> {
+			int[] keys = ColumnCountingSort.getKeys(height);
+			for (int x = first; x < last; x++) {
+				for (int y = 0, offset = x; y < height; y++, offset += width)
+					keys[y] = (red[offset] & 0xFF) - (green[offset] & 0xFF);
+				int[] order = ColumnCountingSort.sortDescending(keys, height, -255, 255);
+				ColumnCountingSort.copyColumn(source, destination, width, height, x, order);
+			}
+		});
+		ImageTransformBuffers.dataChanged(destinationImage);
+	}
+
 	private void getSortOrderForColumn(IcyBufferedImage sourceImage, int columnIndex, int[][] sorted) {
 		getImageColumnValues(sourceImage, columnIndex, sorted);
 		Arrays.sort(sorted, (a, b) -> Integer.compare(b[1], a[1]));
@@ -1,12 +1,11 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
-public class SubtractColumn extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class SubtractColumn extends ImageTransformBandAbstract {
 	int column = 0;
 
 	public SubtractColumn(int column) {
@@ -14,15 +13,21 @@ public class SubtractColumn extends ImageTransformFunctionAbstract implements Im
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		return ImageTransformBuffers.getDestination(sourceImage, destinationImage, sourceImage.getSizeC(),
+				sourceImage.getDataType_());
+	}
+
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage img2, ImageTransformOptions options,
+			int yFirst, int yLast) {
 		int nchannels = sourceImage.getSizeC();
 		int imageSizeX = sourceImage.getSizeX();
-		int imageSizeY = sourceImage.getSizeY();
-		IcyBufferedImage img2 = new IcyBufferedImage(imageSizeX, imageSizeY, nchannels, sourceImage.getDataType_());
 		for (int c = 0; c < nchannels; c++) {
-			int[] tabValues = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(c), sourceImage.isSignedDataType());
-			int[] outValues = Array1DUtil.arrayToIntArray(img2.getDataXY(c), img2.isSignedDataType());
-			for (int iy = 0; iy < imageSizeY; iy++) {
+			int[] tabValues = ImageTransformBuffers.getRowsAsInt(sourceImage, c, yFirst, yLast, 0);
+			int[] outValues = ImageTransformBuffers.getIntArray(1, (yLast - yFirst) * imageSizeX, false);
+			for (int iy = 0; iy < yLast - yFirst; iy++) {
 				int deltay = iy * imageSizeX;
 				int kx = column + deltay;
 				int refVal = tabValues[kx];
@@ -32,10 +37,8 @@ public class SubtractColumn extends ImageTransformFunctionAbstract implements Im
 					outValues[kx] = (int) Math.abs(outVal);
 				}
 			}
-			Array1DUtil.intArrayToSafeArray(outValues, img2.getDataXY(c), sourceImage.isSignedDataType(),
+			ImageTransformBuffers.setRows(outValues, img2, c, yFirst, yLast, sourceImage.isSignedDataType(),
 					img2.isSignedDataType());
-			img2.setDataXY(c, img2.getDataXY(c));
 		}
-		return img2;
 	}
 }
@@ -1,34 +1,48 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
-import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
+
+public class SubtractReferenceImage extends ImageTransformBandAbstract implements ImageTransformPointInterface {
+
+	@Override
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		return options.backgroundImage != null;
+	}
+
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return sizeC;
+	}
+
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return dataType;
+	}
+
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return dataType.isSigned();
+	}
 
-public class SubtractReferenceImage extends ImageTransformFunctionAbstract implements ImageTransformInterface {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		if (options.backgroundImage == null)
-			return null;
-
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getSizeX(), sourceImage.getSizeY(),
-				sourceImage.getSizeC(), sourceImage.getDataType_());
-		for (int c = 0; c < sourceImage.getSizeC(); c++) {
-			int[] imgSourceInt = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-			int[] img2Int = Array1DUtil.arrayToIntArray(img2.getDataXY(0), img2.isSignedDataType());
-			int[] imgReferenceInt = Array1DUtil.arrayToIntArray(options.backgroundImage.getDataXY(0),
-					options.backgroundImage.isSignedDataType());
-			for (int i = 0; i < imgSourceInt.length; i++) {
-				int val = imgSourceInt[i] - imgReferenceInt[i];
-				if (val < 0)
-					val = -val;
-				img2Int[i] = 0xFF - val;
-			}
-			Array1DUtil.intArrayToSafeArray(img2Int, img2.getDataXY(c), true, img2.isSignedDataType());
-			img2.setDataXY(c, img2.getDataXY(c));
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		// the difference is computed on the first channel and copied to all channels
+		double[] imgSource = values[0];
+		int[] imgReferenceInt = ImageTransformBuffers.getRowsAsInt(options.backgroundImage, 0, yFirst, yLast, 1);
+		double[] img2 = results[0];
+		for (int i = 0; i < npixels; i++) {
+			int val = (int) imgSource[i] - imgReferenceInt[i];
+			if (val < 0)
+				val = -val;
+			img2[i] = 0xFF - val;
 		}
-		return img2;
+		for (int c = 1; c < sizeC; c++)
+			System.arraycopy(img2, 0, results[c], 0, npixels);
 	}
 
 }
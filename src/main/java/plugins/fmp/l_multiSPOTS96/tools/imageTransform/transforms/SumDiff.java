@@ -1,38 +1,72 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
-import icy.image.IcyBufferedImage;
 import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
 
-public class SumDiff extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class SumDiff extends ImageTransformBandAbstract implements ImageTransformPointInterface {
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		if (sourceImage == null || sourceImage.getSizeC() < 3)
-			return null;
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
-		int c = 0;
-		int Rlayer = c;
-		int[] Rn = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(Rlayer), sourceImage.isSignedDataType());
-		int Glayer = c + 1;
-		int[] Gn = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(Glayer), sourceImage.isSignedDataType());
-		int Blayer = c + 2;
-		int[] Bn = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(Blayer), sourceImage.isSignedDataType());
-		int[] ExG = (int[]) Array1DUtil.createArray(DataType.INT, Rn.length);
-
-		for (int i = 0; i < Rn.length; i++) {
-			int diff1 = Math.abs(Rn[i] - Bn[i]);
-			int diff2 = Math.abs(Rn[i] - Gn[i]);
-			int diff3 = Math.abs(Bn[i] - Gn[i]);
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		return sizeC >= 3;
+	}
+
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return 3;
+	}
+
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return dataType;
+	}
+
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return false;
+	}
+
+	@Override
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		double[] Rn = values[0];
+		double[] Gn = values[1];
+		double[] Bn = values[2];
+		double[] ExG = results[0];
+
+		for (int i = 0; i < npixels; i++) {
+			int r = (int) Rn[i];
+			int g = (int) Gn[i];
+			int b = (int) Bn[i];
+			int diff1 = Math.abs(r - b);
+			int diff2 = Math.abs(r - g);
+			int diff3 = Math.abs(b - g);
 			ExG[i] = diff1 + diff2 + diff3; // Math.max(diff3, Math.max(diff1, diff2));
 		}
 
-		copyExGIntToIcyBufferedImage(ExG, img2, options.copyResultsToThe3planes);
-		return img2;
+		ImageTransformBuffers.completePoints(results, npixels, options.copyResultsToThe3planes);
+	}
+
+	@Override
+	public boolean transformBytes(byte[][] values, int sizeC, int offset, byte[][] results, int resultOffset,
+			int npixels, ImageTransformOptions options) {
+		byte[] Rn = values[0];
+		byte[] Gn = values[1];
+		byte[] Bn = values[2];
+		byte[] ExG = results[0];
+
+		for (int i = 0; i < npixels; i++) {
+			int r = Rn[offset + i] & 0xFF;
+			int g = Gn[offset + i] & 0xFF;
+			int b = Bn[offset + i] & 0xFF;
+			int sum = Math.abs(r - b) + Math.abs(r - g) + Math.abs(b - g);
+			ExG[resultOffset + i] = (byte) Math.min(255, sum);
+		}
+
+		ImageTransformBuffers.completeBytes(results, resultOffset, npixels, options.copyResultsToThe3planes);
+		return true;
 	}
 
 }
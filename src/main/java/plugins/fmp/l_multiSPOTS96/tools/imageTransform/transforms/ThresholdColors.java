@@ -1,20 +1,29 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
-import java.awt.Color;
-
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageUtil;
 import icy.type.DataType;
-import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColor;
-import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColorL1;
-import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColorL2;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
+
+public class ThresholdColors extends ImageTransformBandAbstract implements ImageTransformPointInterface {
+
+	/** Table of the colors of the last options, shared by the threads */
+	private volatile ColorLookupTable colorTable = null;
 
-public class ThresholdColors extends ImageTransformFunctionAbstract implements ImageTransformInterface {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+	public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		// a double image is converted as a whole
+		if (sourceImage.getDataType_() == DataType.DOUBLE)
+			return HALO_WHOLE_IMAGE;
+		return 0;
+	}
+
+	@Override
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
 		if (options.colorarray.size() == 0)
 			return null;
 
@@ -25,36 +34,74 @@ public class ThresholdColors extends ImageTransformFunctionAbstract implements I
 					.print("Failed operation: attempt to compute threshold from image with less than 3 color channels");
 			return null;
 		}
+		return ImageTransformBuffers.getDestination(sourceImage, destinationImage, 1, DataType.UBYTE);
+	}
 
-		NHDistanceColor distance;
-		if (options.colordistanceType == 1)
-			distance = new NHDistanceColorL1();
-		else
-			distance = new NHDistanceColorL2();
-
-		IcyBufferedImage binaryResultBuffer = new IcyBufferedImage(sourceImage.getSizeX(), sourceImage.getSizeY(), 1,
-				DataType.UBYTE);
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage binaryResultBuffer,
+			ImageTransformOptions options, int yFirst, int yLast) {
 		IcyBufferedImage dummy = sourceImage;
 		if (sourceImage.getDataType_() == DataType.DOUBLE) {
 			dummy = IcyBufferedImageUtil.convertToType(sourceImage, DataType.BYTE, false);
 		}
-		byte[][] sourceBuffer = dummy.getDataXYCAsByte();
-		byte[] binaryResultArray = binaryResultBuffer.getDataXYAsByte(0);
-		int npixels = binaryResultArray.length;
-		Color pixel = new Color(0, 0, 0);
+		ImageTransformPointInterface.super.transformBand(dummy, binaryResultBuffer, options, yFirst, yLast);
+	}
+
+	@Override
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		// the values of a double image are converted to bytes as a whole
+		return options.colorarray.size() > 0 && sizeC >= 3 && dataType != DataType.DOUBLE;
+	}
+
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return 1;
+	}
+
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return DataType.UBYTE;
+	}
+
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return false;
+	}
+
+	@Override
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		ColorLookupTable table = getColorTable(options);
+
+		// the channels are compared as bytes
+		double[] binaryResultArray = results[0];
+		int valTRUE = options.byteTRUE & 0xFF;
+		int valFALSE = options.byteFALSE & 0xFF;
 		for (int ipixel = 0; ipixel < npixels; ipixel++) {
-			byte val = options.byteFALSE;
-			pixel = new Color(sourceBuffer[0][ipixel] & 0xFF, sourceBuffer[1][ipixel] & 0xFF,
-					sourceBuffer[2][ipixel] & 0xFF);
-			for (int k = 0; k < options.colorarray.size(); k++) {
-				Color color = options.colorarray.get(k);
-				if (distance.computeDistance(pixel, color) <= options.colorthreshold) {
-					val = options.byteTRUE;
-					break;
-				}
+			int r = (int) values[0][ipixel] & 0xFF;
+			int g = (int) values[1][ipixel] & 0xFF;
+			int b = (int) values[2][ipixel] & 0xFF;
+			binaryResultArray[ipixel] = table.contains(r, g, b) ? valTRUE : valFALSE;
+		}
+	}
+
+	/**
+	 * Gets the table of the colors of the options, built when the colors, the
+	 * distance or the threshold change.
+	 */
+	private ColorLookupTable getColorTable(ImageTransformOptions options) {
+		ColorLookupTable table = colorTable;
+		if (table != null && table.matches(options.colordistanceType, options.colorthreshold, options.colorarray))
+			return table;
+		synchronized (this) {
+			table = colorTable;
+			if (table == null
+					|| !table.matches(options.colordistanceType, options.colorthreshold, options.colorarray)) {
+				table = ColorLookupTable.build(options.colordistanceType, options.colorthreshold,
+						options.colorarray);
+				colorTable = table;
 			}
-			binaryResultArray[ipixel] = val;
+			return table;
 		}
-		return binaryResultBuffer;
 	}
 }
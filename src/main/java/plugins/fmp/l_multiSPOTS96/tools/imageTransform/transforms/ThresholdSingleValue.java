@@ -1,46 +1,73 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
-import icy.image.IcyBufferedImage;
 import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformPointInterface;
+
+public class ThresholdSingleValue extends ImageTransformBandAbstract implements ImageTransformPointInterface {
 
-public class ThresholdSingleValue extends ImageTransformFunctionAbstract implements ImageTransformInterface {
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		if (sourceImage == null)
-			return null;
-
-		IcyBufferedImage binaryMap = new IcyBufferedImage(sourceImage.getSizeX(), sourceImage.getSizeY(), 1,
-				DataType.UBYTE);
-		byte[] binaryMapDataBuffer = binaryMap.getDataXYAsByte(0);
-		int[] imageSourceDataBuffer = null;
-		DataType datatype = sourceImage.getDataType_();
-		if (datatype != DataType.INT) {
-			Object sourceArray = sourceImage.getDataXY(0);
-			imageSourceDataBuffer = Array1DUtil.arrayToIntArray(sourceArray, sourceImage.isSignedDataType());
-		} else {
-			imageSourceDataBuffer = sourceImage.getDataXYAsInt(0);
-		}
+	public boolean canTransformPoints(int sizeC, DataType dataType, ImageTransformOptions options) {
+		return true;
+	}
 
-		byte on = options.byteTRUE;
-		byte off = options.byteFALSE;
+	@Override
+	public int getPointsSizeC(int sizeC) {
+		return 1;
+	}
+
+	@Override
+	public DataType getPointsDataType(DataType dataType) {
+		return DataType.UBYTE;
+	}
+
+	@Override
+	public boolean isPointsSigned(DataType dataType) {
+		return false;
+	}
+
+	@Override
+	public void transformPoints(double[][] values, int sizeC, double[][] results, int npixels,
+			ImageTransformOptions options, int yFirst, int yLast) {
+		double[] imageSourceDataBuffer = values[0];
+		double[] binaryMapDataBuffer = results[0];
+
+		int on = options.byteTRUE & 0xFF;
+		int off = options.byteFALSE & 0xFF;
 		if (!options.ifGreater) {
-			off = options.byteTRUE;
-			on = options.byteFALSE;
+			off = options.byteTRUE & 0xFF;
+			on = options.byteFALSE & 0xFF;
 		}
 
-		for (int x = 0; x < binaryMapDataBuffer.length; x++) {
-			int val = imageSourceDataBuffer[x] & 0xFF;
+		for (int x = 0; x < npixels; x++) {
+			int val = (int) imageSourceDataBuffer[x] & 0xFF;
 			if (val > options.simplethreshold)
 				binaryMapDataBuffer[x] = off;
 			else
 				binaryMapDataBuffer[x] = on;
 		}
+	}
+
+	@Override
+	public boolean transformBytes(byte[][] values, int sizeC, int offset, byte[][] results, int resultOffset,
+			int npixels, ImageTransformOptions options) {
+		byte[] imageSourceDataBuffer = values[0];
+		byte[] binaryMapDataBuffer = results[0];
+
+		byte on = options.byteTRUE;
+		byte off = options.byteFALSE;
+		if (!options.ifGreater) {
+			off = options.byteTRUE;
+			on = options.byteFALSE;
+		}
 
-		return binaryMap;
+		int threshold = options.simplethreshold;
+		for (int x = 0; x < npixels; x++) {
+			int val = imageSourceDataBuffer[offset + x] & 0xFF;
+			binaryMapDataBuffer[resultOffset + x] = val > threshold ? off : on;
+		}
+		return true;
 	}
 
 }
@@ -1,12 +1,11 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
-public class XDiffn extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class XDiffn extends ImageTransformBandAbstract {
 	int spanDiff = 5;
 
 	public XDiffn(int spanDiff) {
@@ -14,16 +13,21 @@ public class XDiffn extends ImageTransformFunctionAbstract implements ImageTrans
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		return getDestination3Planes(sourceImage, destinationImage);
+	}
+
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage img2, ImageTransformOptions options,
+			int yFirst, int yLast) {
 		int chan0 = 0;
-		int chan1 = sourceImage.getSizeC();
 		int imageSizeX = sourceImage.getSizeX();
-		int imageSizeY = sourceImage.getSizeY();
-		IcyBufferedImage img2 = new IcyBufferedImage(imageSizeX, imageSizeY, 3, sourceImage.getDataType_());
+		int chan1 = Math.min(sourceImage.getSizeC(), img2.getSizeC());
 		for (int c = chan0; c < chan1; c++) {
-			int[] tabValues = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(c), sourceImage.isSignedDataType());
-			int[] outValues = Array1DUtil.arrayToIntArray(img2.getDataXY(c), img2.isSignedDataType());
-			for (int iy = 0; iy < imageSizeY; iy++) {
+			int[] tabValues = ImageTransformBuffers.getRowsAsInt(sourceImage, c, yFirst, yLast, 0);
+			int[] outValues = ImageTransformBuffers.getIntArray(1, (yLast - yFirst) * imageSizeX, false);
+			for (int iy = 0; iy < yLast - yFirst; iy++) {
 				// erase border values
 				for (int ix = 0; ix < spanDiff; ix++)
 					outValues[ix + iy * imageSizeX] = 0;
@@ -43,10 +47,10 @@ public class XDiffn extends ImageTransformFunctionAbstract implements ImageTrans
 				for (int ix = imageSizeX - spanDiff; ix < imageSizeX; ix++)
 					outValues[ix + iy * imageSizeX] = 0;
 			}
-			Array1DUtil.intArrayToSafeArray(outValues, img2.getDataXY(c), true, img2.isSignedDataType());
-			img2.setDataXY(c, img2.getDataXY(c));
+			ImageTransformBuffers.setRows(outValues, img2, c, yFirst, yLast, true, img2.isSignedDataType());
 		}
-		return img2;
+		for (int c = chan1; c < img2.getSizeC(); c++)
+			ImageTransformBuffers.clearRows(img2, c, yFirst, yLast);
 	}
 
 }
@@ -1,13 +1,11 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
-import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
-public class YDifferenceL extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class YDifferenceL extends ImageTransformBandAbstract {
 	int spanx = 0;
 	int deltax = 0;
 	int spany = 4;
@@ -23,22 +21,39 @@ public class YDifferenceL extends ImageTransformFunctionAbstract implements Imag
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
-		IcyBufferedImage img2 = new IcyBufferedImage(sourceImage.getWidth(), sourceImage.getHeight(), 3,
-				sourceImage.getDataType_());
-		double[] Rn = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-		double[] Gn = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(1), sourceImage.isSignedDataType());
-		double[] Bn = Array1DUtil.arrayToDoubleArray(sourceImage.getDataXY(2), sourceImage.isSignedDataType());
-		double[] outValues = (double[]) Array1DUtil.createArray(DataType.DOUBLE, Rn.length);
+	public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		return Math.abs(spany) + Math.abs(deltay);
+	}
+
+	@Override
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		return getDestination3Planes(sourceImage, destinationImage);
+	}
+
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage img2, ImageTransformOptions options,
+			int yFirst, int yLast) {
+		int halo = getHaloRows(sourceImage, options);
+		int yFirstRead = getFirstRowWithHalo(yFirst, halo);
+		int yLastRead = getLastRowWithHalo(sourceImage, yLast, halo);
+		double[] Rn = ImageTransformBuffers.getRowsAsDouble(sourceImage, 0, yFirstRead, yLastRead, 0);
+		double[] Gn = ImageTransformBuffers.getRowsAsDouble(sourceImage, 1, yFirstRead, yLastRead, 1);
+		double[] Bn = ImageTransformBuffers.getRowsAsDouble(sourceImage, 2, yFirstRead, yLastRead, 2);
 		int imageSizeX = sourceImage.getSizeX();
 		int imageSizeY = sourceImage.getSizeY();
+		double[] outValues = ImageTransformBuffers.getDoubleArray(3, (yLast - yFirst) * imageSizeX, true);
+		RGBasDouble d1 = new RGBasDouble();
+		RGBasDouble d2 = new RGBasDouble();
+		int iyFirst = Math.max(yFirst, spany);
+		int iyLast = Math.min(yLast, imageSizeY - spany);
 
 		for (int ix = 0; ix < imageSizeX; ix++) {
-			for (int iy = spany; iy < imageSizeY - spany; iy++) {
-				RGBasDouble d1 = getSpanSumRGB(Rn, Gn, Bn, ix, iy, spanx, 0, -spany, -deltay, imageSizeX, imageSizeY);
-				RGBasDouble d2 = getSpanSumRGB(Rn, Gn, Bn, ix, iy, spanx, 0, spany, deltay, imageSizeX, imageSizeY);
+			for (int iy = iyFirst; iy < iyLast; iy++) {
+				getSpanSumRGB(d1, Rn, Gn, Bn, ix, iy, spanx, 0, -spany, -deltay, imageSizeX, imageSizeY, yFirstRead);
+				getSpanSumRGB(d2, Rn, Gn, Bn, ix, iy, spanx, 0, spany, deltay, imageSizeX, imageSizeY, yFirstRead);
 
-				int kx = ix + iy * imageSizeX;
+				int kx = ix + (iy - yFirst) * imageSizeX;
 				double dr = (d1.R / d1.n - d2.R / d2.n);
 				double dg = (d1.G / d1.n - d2.G / d2.n);
 				double db = (d1.B / d1.n - d2.B / d2.n);
@@ -49,8 +64,8 @@ public class YDifferenceL extends ImageTransformFunctionAbstract implements Imag
 			}
 		}
 
-		copyExGDoubleToIcyBufferedImage(outValues, img2, options.copyResultsToThe3planes);
-		return img2;
+		ImageTransformBuffers.setRows(outValues, img2, 0, yFirst, yLast, false);
+		ImageTransformBuffers.completeRows(img2, yFirst, yLast, options.copyResultsToThe3planes);
 	}
 
 	private class RGBasDouble {
@@ -68,9 +83,12 @@ public class YDifferenceL extends ImageTransformFunctionAbstract implements Imag
 		return a <= b ? a : b;
 	}
 
-	private RGBasDouble getSpanSumRGB(double[] Rn, double[] Gn, double[] Bn, int ix, int iy, int spanx, int deltax,
-			int spany, int deltay, int imageSizeX, int imageSizeY) {
-		RGBasDouble d = new RGBasDouble();
+	private void getSpanSumRGB(RGBasDouble d, double[] Rn, double[] Gn, double[] Bn, int ix, int iy, int spanx,
+			int deltax, int spany, int deltay, int imageSizeX, int imageSizeY, int yFirstRead) {
+		d.R = 0.;
+		d.G = 0.;
+		d.B = 0.;
+		d.n = 0;
 		int iymax = Max(iy + deltay, iy + spany + deltay);
 		int iymin = Min(iy + deltay, iy + spany + deltay);
 
@@ -80,7 +98,7 @@ public class YDifferenceL extends ImageTransformFunctionAbstract implements Imag
 		for (int iiy = iymin; iiy <= iymax; iiy++) {
 			if (iiy < 0 || iiy >= imageSizeY)
 				continue;
-			int iiydelta = iiy * imageSizeX;
+			int iiydelta = (iiy - yFirstRead) * imageSizeX;
 
 			for (int iix = ixmin; iix <= ixmax; iix++) {
 				if (iix < 0 || iix >= imageSizeX)
@@ -92,6 +110,5 @@ public class YDifferenceL extends ImageTransformFunctionAbstract implements Imag
 				d.n++;
 			}
 		}
-		return d;
 	}
 }
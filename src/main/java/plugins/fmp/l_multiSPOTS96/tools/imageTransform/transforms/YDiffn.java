@@ -1,12 +1,11 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
-public class YDiffn extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class YDiffn extends ImageTransformBandAbstract {
 	int spanDiff = 5;
 
 	public YDiffn(int spanDiff) {
@@ -14,31 +13,48 @@ public class YDiffn extends ImageTransformFunctionAbstract implements ImageTrans
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+	public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		return Math.max(0, spanDiff - 1);
+	}
+
+	@Override
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		return getDestination3Planes(sourceImage, destinationImage);
+	}
+
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage img2, ImageTransformOptions options,
+			int yFirst, int yLast) {
 		int chan0 = 0;
-		int chan1 = sourceImage.getSizeC();
 		int imageSizeX = sourceImage.getSizeX();
 		int imageSizeY = sourceImage.getSizeY();
-		IcyBufferedImage img2 = new IcyBufferedImage(imageSizeX, imageSizeY, 3, sourceImage.getDataType_());
+		int chan1 = Math.min(sourceImage.getSizeC(), img2.getSizeC());
+		int halo = getHaloRows(sourceImage, options);
+		int yFirstRead = getFirstRowWithHalo(yFirst, halo);
+		int yLastRead = getLastRowWithHalo(sourceImage, yLast, halo);
+		int iyFirst = Math.max(yFirst, spanDiff);
+		int iyLast = Math.min(yLast, imageSizeY - spanDiff);
 
 		for (int c = chan0; c < chan1; c++) {
-			int[] tabValues = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(c), sourceImage.isSignedDataType());
-			int[] outValues = Array1DUtil.arrayToIntArray(img2.getDataXY(c), img2.isSignedDataType());
+			int[] tabValues = ImageTransformBuffers.getRowsAsInt(sourceImage, c, yFirstRead, yLastRead, 0);
+			// only the pixels away from the borders are computed
+			int[] outValues = ImageTransformBuffers.getIntArray(1, (yLast - yFirst) * imageSizeX, true);
 			for (int ix = spanDiff; ix < imageSizeX - spanDiff; ix++) {
-				for (int iy = spanDiff; iy < imageSizeY - spanDiff; iy++) {
-					int kx = ix + iy * imageSizeX;
+				for (int iy = iyFirst; iy < iyLast; iy++) {
+					int kx = ix + (iy - yFirstRead) * imageSizeX;
 					int deltax = 0;
 					double outVal = 0;
 					for (int ispan = 1; ispan < spanDiff; ispan++) {
 						deltax += imageSizeX;
 						outVal += tabValues[kx + deltax] - tabValues[kx - deltax];
 					}
-					outValues[kx] = (int) Math.abs(outVal);
+					outValues[ix + (iy - yFirst) * imageSizeX] = (int) Math.abs(outVal);
 				}
 			}
-			Array1DUtil.intArrayToSafeArray(outValues, img2.getDataXY(c), true, img2.isSignedDataType());
-			img2.setDataXY(c, img2.getDataXY(c));
+			ImageTransformBuffers.setRows(outValues, img2, c, yFirst, yLast, true, img2.isSignedDataType());
 		}
-		return img2;
+		for (int c = chan1; c < img2.getSizeC(); c++)
+			ImageTransformBuffers.clearRows(img2, c, yFirst, yLast);
 	}
 }
@@ -1,13 +1,11 @@
 package plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms;
 
 import icy.image.IcyBufferedImage;
-import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformFunctionAbstract;
-import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBandAbstract;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformBuffers;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
 
-public class YDiffn1D extends ImageTransformFunctionAbstract implements ImageTransformInterface {
+public class YDiffn1D extends ImageTransformBandAbstract {
 	int spanDiff = 5;
 
 	public YDiffn1D(int spanDiff) {
@@ -15,20 +13,36 @@ public class YDiffn1D extends ImageTransformFunctionAbstract implements ImageTra
 	}
 
 	@Override
-	public IcyBufferedImage getTransformedImage(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+	public int getHaloRows(IcyBufferedImage sourceImage, ImageTransformOptions options) {
+		return Math.max(0, spanDiff - 1);
+	}
+
+	@Override
+	public IcyBufferedImage getDestination(IcyBufferedImage sourceImage, IcyBufferedImage destinationImage,
+			ImageTransformOptions options) {
+		return getDestination3Planes(sourceImage, destinationImage);
+	}
+
+	@Override
+	public void transformBand(IcyBufferedImage sourceImage, IcyBufferedImage img2, ImageTransformOptions options,
+			int yFirst, int yLast) {
 		int imageSizeX = sourceImage.getSizeX();
 		int imageSizeY = sourceImage.getSizeY();
-		IcyBufferedImage img2 = new IcyBufferedImage(imageSizeX, imageSizeY, 3, sourceImage.getDataType_());
+		int halo = getHaloRows(sourceImage, options);
+		int yFirstRead = getFirstRowWithHalo(yFirst, halo);
+		int yLastRead = getLastRowWithHalo(sourceImage, yLast, halo);
+		int iyFirst = Math.max(yFirst, spanDiff);
+		int iyLast = Math.min(yLast, imageSizeY - spanDiff);
 
-		int[] Rn = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(0), sourceImage.isSignedDataType());
-		int[] Gn = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(1), sourceImage.isSignedDataType());
-		int[] Bn = Array1DUtil.arrayToIntArray(sourceImage.getDataXY(2), sourceImage.isSignedDataType());
-		double[] outValues = (double[]) Array1DUtil.createArray(DataType.DOUBLE, Rn.length);
+		int[] Rn = ImageTransformBuffers.getRowsAsInt(sourceImage, 0, yFirstRead, yLastRead, 0);
+		int[] Gn = ImageTransformBuffers.getRowsAsInt(sourceImage, 1, yFirstRead, yLastRead, 1);
+		int[] Bn = ImageTransformBuffers.getRowsAsInt(sourceImage, 2, yFirstRead, yLastRead, 2);
+		double[] outValues = ImageTransformBuffers.getDoubleArray(3, (yLast - yFirst) * imageSizeX, true);
 
 		// for (int ix = span; ix < imageSizeX - span; ix++)
 		for (int ix = 0; ix < imageSizeX; ix++) {
-			for (int iy = spanDiff; iy < imageSizeY - spanDiff; iy++) {
-				int kx = ix + iy * imageSizeX;
+			for (int iy = iyFirst; iy < iyLast; iy++) {
+				int kx = ix + (iy - yFirstRead) * imageSizeX;
 				int deltax = 0;
 				double outVal = 0;
 				for (int ispan = 1; ispan < spanDiff; ispan++) {
@@ -36,10 +50,10 @@ public class YDiffn1D extends ImageTransformFunctionAbstract implements ImageTra
 					outVal += (Rn[kx + deltax] - Rn[kx - deltax])
 							- (Gn[kx + deltax] - Gn[kx - deltax] + Bn[kx + deltax] - Bn[kx - deltax]) / 2.;
 				}
-				outValues[kx] = (int) Math.abs(outVal);
+				outValues[ix + (iy - yFirst) * imageSizeX] = (int) Math.abs(outVal);
 			}
 		}
-		copyExGDoubleToIcyBufferedImage(outValues, img2, options.copyResultsToThe3planes);
-		return img2;
+		ImageTransformBuffers.setRows(outValues, img2, 0, yFirst, yLast, false);
+		ImageTransformBuffers.completeRows(img2, yFirst, yLast, options.copyResultsToThe3planes);
 	}
 }
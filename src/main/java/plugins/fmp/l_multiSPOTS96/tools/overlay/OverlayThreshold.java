@@ -4,8 +4,15 @@ import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,6 +25,10 @@ import icy.sequence.Sequence;
 import icy.sequence.SequenceEvent;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import icy.sequence.SequenceEvent.SequenceEventType;
+import icy.system.thread.Processor;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformCache;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformChain;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformEnums;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
 import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
@@ -37,6 +48,10 @@ import icy.sequence.SequenceListener;
  * <p>The overlay automatically updates when the sequence changes and provides
  * real-time visualization of threshold results.</p>
  * 
+ * <p>The masks are computed in the background and cached per time point and
+ * parameters: while a mask is computed, the last mask painted stays visible,
+ * and a pan or a zoom only draws the visible part of the cached mask.</p>
+ * 
  * @author MultiSPOTS96
  */
 public class OverlayThreshold extends Overlay implements SequenceListener {
@@ -56,6 +71,15 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
     /** Default color map name */
     private static final String DEFAULT_COLOR_MAP_NAME = "overlaymask";
     
+    /** Value of the pixels of a thresholded image in the mask */
+    private static final int MASK_INDEX = 0xFF;
+    
+    /** Number of masks kept in the cache */
+    private static final int MASK_CACHE_SIZE = 8;
+    
+    /** Color model of the masks of unsigned bytes, transparent outside the mask */
+    private static final IndexColorModel MASK_COLOR_MODEL = createMaskColorModel(DEFAULT_MASK_COLOR);
+    
     /** Current opacity of the overlay */
     private float opacity = DEFAULT_OPACITY;
     
@@ -73,6 +97,25 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
     
     /** Reference to the sequence being processed */
     private Sequence localSequence;
+    
+    /** Masks computed, by time point and parameters, least recently used first */
+    private final Map<MaskKey, BufferedImage> masks = new LinkedHashMap<MaskKey, BufferedImage>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<MaskKey, BufferedImage> eldest) {
+            return size() > MASK_CACHE_SIZE;
+        }
+    };
+    
+    /** Last mask painted, painted while the mask requested is computed */
+    private BufferedImage lastMask = null;
+    
+    /** Mask computed or to be computed in the background */
+    private volatile MaskKey requestedKey = null;
+    
+    /** Thread computing the masks */
+    private Processor maskProcessor = null;
 
     /**
      * Creates a new threshold overlay with default settings.
@@ -114,6 +157,7 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
         if (localSequence != null) {
             localSequence.removeListener(this);
         }
+        clearMasks();
         
         this.localSequence = sequence;
         sequence.addListener(this);
@@ -219,6 +263,17 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
      * @return the transformed image or null if sequence is not set or processing fails
      */
     public IcyBufferedImage getTransformedImage(int timePoint) {
+        return getTransformedImage(timePoint, getTransformChain());
+    }
+
+    /**
+     * Gets the image of a time point transformed by a chain built before.
+     * 
+     * @param timePoint the time point to process
+     * @param chain the transform and the threshold, with a copy of their options
+     * @return the transformed image or null if sequence is not set or processing fails
+     */
+    private IcyBufferedImage getTransformedImage(int timePoint, ImageTransformChain chain) {
         if (localSequence == null) {
             LOGGER.warning("Cannot get transformed image: sequence is not set");
             return null;
@@ -231,7 +286,7 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
                 return null;
             }
             
-            return getTransformedImage(image);
+            return getTransformedImage(image, chain);
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error getting transformed image for time point " + timePoint, e);
             return null;
@@ -246,24 +301,40 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
      * @throws IllegalArgumentException if inputImage is null
      */
     public IcyBufferedImage getTransformedImage(IcyBufferedImage inputImage) {
+        return getTransformedImage(inputImage, getTransformChain());
+    }
+
+    private IcyBufferedImage getTransformedImage(IcyBufferedImage inputImage, ImageTransformChain chain) {
         if (inputImage == null) {
             throw new IllegalArgumentException("Input image cannot be null");
         }
         
         try {
-            IcyBufferedImage transformedImage = imageTransformFunction.getTransformedImage(inputImage, imageTransformOptions);
-            if (transformedImage == null) {
+            // the transform and the threshold are computed in a single pass, and
+            // the result is cached, so that coming back to a frame reuses it
+            IcyBufferedImage thresholdedImage = ImageTransformCache.getShared()
+                    .getTransformedImage(chain, inputImage);
+            if (thresholdedImage == null) {
                 LOGGER.warning("Transform function returned null image");
-                return null;
             }
-            
-            return imageThresholdFunction.getTransformedImage(transformedImage, imageTransformOptions);
+            return thresholdedImage;
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error applying image transformation", e);
             return null;
         }
     }
 
+    /**
+     * @return the chain of the transform and the threshold, with a copy of their
+     *         current options
+     */
+    private ImageTransformChain getTransformChain() {
+        return ImageTransformChain.builder()
+                .then(imageTransformFunction, imageTransformOptions)
+                .then(imageThresholdFunction, imageTransformOptions)
+                .build();
+    }
+
     @Override
     public void paint(Graphics2D graphics, Sequence sequence, IcyCanvas canvas) {
         if (graphics == null || sequence == null || canvas == null) {
@@ -275,11 +346,17 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
         }
         
         try {
-            int timePosition = canvas.getPositionT();
-            IcyBufferedImage thresholdedImage = getTransformedImage(timePosition);
+            MaskKey key = new MaskKey(canvas.getPositionT(), getTransformChain());
+            BufferedImage mask = getMask(key);
+            if (mask == null) {
+                requestMask(key);
+                mask = lastMask;
+            } else {
+                lastMask = mask;
+            }
             
-            if (thresholdedImage != null) {
-                renderOverlay(graphics, thresholdedImage);
+            if (mask != null) {
+                renderOverlay(graphics, mask);
             }
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error painting overlay", e);
@@ -287,27 +364,143 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
     }
 
     /**
-     * Renders the overlay image with the current color map and opacity.
+     * Renders the visible part of a mask with the current opacity.
+     * 
+     * @param graphics the graphics context, in the coordinates of the image
+     * @param mask the mask to render
+     */
+    private void renderOverlay(Graphics2D graphics, BufferedImage mask) {
+        Rectangle visible = new Rectangle(0, 0, mask.getWidth(), mask.getHeight());
+        Rectangle clip = graphics.getClipBounds();
+        if (clip != null) {
+            visible = visible.intersection(clip);
+        }
+        if (visible.isEmpty()) {
+            return;
+        }
+        
+        Composite originalComposite = graphics.getComposite();
+        graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        int x2 = visible.x + visible.width;
+        int y2 = visible.y + visible.height;
+        graphics.drawImage(mask, visible.x, visible.y, x2, y2, visible.x, visible.y, x2, y2, null);
+        graphics.setComposite(originalComposite);
+    }
+
+    private synchronized BufferedImage getMask(MaskKey key) {
+        return masks.get(key);
+    }
+
+    /**
+     * Stores a mask computed.
      * 
-     * @param graphics the graphics context
-     * @param thresholdedImage the thresholded image to render
+     * @return true if it is the mask requested last, to be painted
      */
-    private void renderOverlay(Graphics2D graphics, IcyBufferedImage thresholdedImage) {
+    private synchronized boolean putMask(MaskKey key, BufferedImage mask) {
+        masks.put(key, mask);
+        if (!key.equals(requestedKey)) {
+            return false;
+        }
+        requestedKey = null;
+        return true;
+    }
+
+    /**
+     * Forgets a mask which could not be computed, so that it is requested again.
+     */
+    private synchronized void maskFailed(MaskKey key) {
+        if (key.equals(requestedKey)) {
+            requestedKey = null;
+        }
+    }
+
+    /**
+     * Removes the masks computed, when the sequence or its images change.
+     */
+    private synchronized void clearMasks() {
+        masks.clear();
+        lastMask = null;
+        requestedKey = null;
+    }
+
+    /**
+     * Computes a mask in the background, then repaints the overlay. A mask
+     * requested while another is computed replaces the previous requests.
+     */
+    private synchronized void requestMask(final MaskKey key) {
+        if (key.equals(requestedKey)) {
+            return;
+        }
+        requestedKey = key;
+        if (maskProcessor == null) {
+            maskProcessor = new Processor(1);
+            maskProcessor.setThreadName("overlayThreshold");
+            maskProcessor.setPriority(Processor.NORM_PRIORITY);
+        }
+        maskProcessor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // skip the requests replaced while waiting
+                if (!key.equals(requestedKey)) {
+                    return;
+                }
+                // the mask is computed with the parameters of the request, which the
+                // user may change meanwhile
+                BufferedImage mask = createMask(getTransformedImage(key.timePoint, key.chain));
+                if (mask == null) {
+                    maskFailed(key);
+                    return;
+                }
+                if (putMask(key, mask)) {
+                    painterChanged();
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the mask of a thresholded image: the mask of an image of unsigned
+     * bytes shares its data, other images are converted with the color map.
+     * 
+     * @return the mask or null if the image is null or cannot be converted
+     */
+    private BufferedImage createMask(IcyBufferedImage thresholdedImage) {
+        if (thresholdedImage == null) {
+            return null;
+        }
+        
+        int width = thresholdedImage.getSizeX();
+        int height = thresholdedImage.getSizeY();
+        if (thresholdedImage.getDataType_() == DataType.UBYTE) {
+            DataBufferByte buffer = new DataBufferByte(thresholdedImage.getDataXYAsByte(0), width * height);
+            WritableRaster raster = Raster.createInterleavedRaster(buffer, width, height, width, 1, new int[] { 0 },
+                    null);
+            return new BufferedImage(MASK_COLOR_MODEL, raster, false, null);
+        }
+        
         try {
-            thresholdedImage.setColorMap(0, colorMap);
-            BufferedImage bufferedImage = IcyBufferedImageUtil.getARGBImage(thresholdedImage);
-            
-            Composite originalComposite = graphics.getComposite();
-            graphics.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-            graphics.drawImage(bufferedImage, 0, 0, null);
-            graphics.setComposite(originalComposite);
-            
+            IcyBufferedImage copy = IcyBufferedImageUtil.getCopy(thresholdedImage);
+            copy.setColorMap(0, colorMap);
+            return IcyBufferedImageUtil.getARGBImage(copy);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             LOGGER.log(Level.WARNING, "Overlay rendering was interrupted", e);
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "Error rendering overlay", e);
         }
+        return null;
+    }
+
+    private static IndexColorModel createMaskColorModel(Color maskColor) {
+        byte[] red = new byte[256];
+        byte[] green = new byte[256];
+        byte[] blue = new byte[256];
+        byte[] alpha = new byte[256];
+        red[MASK_INDEX] = (byte) maskColor.getRed();
+        green[MASK_INDEX] = (byte) maskColor.getGreen();
+        blue[MASK_INDEX] = (byte) maskColor.getBlue();
+        alpha[MASK_INDEX] = (byte) 0xFF;
+        return new IndexColorModel(8, 256, red, green, blue, alpha);
     }
 
     @Override
@@ -316,6 +509,14 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
             return;
         }
         
+        if (sequenceEvent.getSourceType() == SequenceEventSourceType.SEQUENCE_DATA) {
+            if (sequenceEvent.getSource() instanceof IcyBufferedImage) {
+                ImageTransformCache.getShared().invalidate(sequenceEvent.getSource());
+            }
+            clearMasks();
+            return;
+        }
+        
         if (sequenceEvent.getSourceType() != SequenceEventSourceType.SEQUENCE_OVERLAY) {
             return;
         }
@@ -341,6 +542,45 @@ public class OverlayThreshold extends Overlay implements SequenceListener {
         if (sequence != null) {
             sequence.removeListener(this);
         }
+        synchronized (this) {
+            if (maskProcessor != null) {
+                maskProcessor.shutdown();
+                maskProcessor = null;
+            }
+        }
+        clearMasks();
         remove();
     }
+
+    /**
+     * Identifies a mask: its time point and the chain of the transform and the
+     * threshold, with a copy of their parameters (threshold, direction, colors,
+     * reference image).
+     */
+    private static final class MaskKey {
+        private final int timePoint;
+        private final ImageTransformChain chain;
+
+        MaskKey(int timePoint, ImageTransformChain chain) {
+            this.timePoint = timePoint;
+            this.chain = chain;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof MaskKey)) {
+                return false;
+            }
+            MaskKey other = (MaskKey) obj;
+            return timePoint == other.timePoint && chain.equals(other.chain);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * timePoint + chain.hashCode();
+        }
+    }
 }
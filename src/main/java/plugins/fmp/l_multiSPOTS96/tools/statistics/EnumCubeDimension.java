@@ -0,0 +1,40 @@
+package plugins.fmp.l_multiSPOTS96.tools.statistics;
+
+public enum EnumCubeDimension {
+	EXP_BOXID("box", "box ID of the experiment"), //
+	EXP_EXPT("expt", "experiment"), //
+	EXP_STRAIN("strain", "strain of the experiment"), //
+	EXP_SEX("sex", "sex of the experiment"), //
+	EXP_STIM1("stim1", "first stimulus of the experiment"), //
+	EXP_CONC1("conc1", "first concentration of the experiment"), //
+	EXP_STIM2("stim2", "second stimulus of the experiment"), //
+	EXP_CONC2("conc2", "second concentration of the experiment"), //
+	CAGE("cage", "cage ID"), //
+	CAGE_NFLIES("nflies", "number of flies in the cage"), //
+	STIMULUS("stimulus", "stimulus of the spot"), //
+	CONCENTRATION("concentration", "concentration of the spot");
+
+	private String label;
+	private String title;
+
+	EnumCubeDimension(String label, String title) {
+		this.label = label;
+		this.title = title;
+	}
+
+	public String toString() {
+		return label;
+	}
+
+	public String toTitle() {
+		return title;
+	}
+
+	public static EnumCubeDimension findByText(String abbr) {
+		for (EnumCubeDimension v : values()) {
+			if (v.toString().equals(abbr))
+				return v;
+		}
+		return null;
+	}
+}
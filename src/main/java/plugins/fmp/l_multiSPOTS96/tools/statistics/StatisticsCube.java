@@ -0,0 +1,470 @@
+package plugins.fmp.l_multiSPOTS96.tools.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentProperties;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.CagesArray;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotMeasure;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotsMeasuresStore;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSExport;
+
+/**
+ * Sums, counts and sums of squares of the spot measures, per descriptors and
+ * per time bin.
+ *
+ * <p>
+ * A cell of the cube holds the statistics of one measure for one set of
+ * coordinates (one value per {@link EnumCubeDimension}: descriptors of the
+ * experiment, cage, stimulus and concentration of the spots), in bins of
+ * {@link #getBinMs()} from the start of the experiment. The spots of a cage
+ * with the same stimulus and concentration share a cell. Values are the raw
+ * measures; NaN values are ignored.
+ * </p>
+ *
+ * <p>
+ * The cube of an experiment is built once from its measures and saved in its
+ * results directory, with a key describing the measures files and the
+ * descriptors it was built from. Cubes of several experiments are merged by
+ * adding their cells, and a {@link #query} then groups and filters cells
+ * without going back to the measures.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class StatisticsCube {
+
+	private static final Logger LOGGER = Logger.getLogger(StatisticsCube.class.getName());
+
+	// === CONSTANTS ===
+	public static final long DEFAULT_BIN_MS = 60 * 1000;
+	public static final EnumXLSExport[] MEASURES = { EnumXLSExport.AREA_SUM, EnumXLSExport.AREA_SUMCLEAN,
+			EnumXLSExport.AREA_FLYPRESENT };
+
+	private static final String CUBE_FILENAME = "MS96_statisticsCube.bin";
+	private static final int CUBE_MAGIC = 0x4D533943; // "MS9C"
+	private static final int CUBE_VERSION = 1;
+	private static final char KEY_SEPARATOR = '\u0000';
+	private static final int N_DIMENSIONS = EnumCubeDimension.values().length;
+
+	// === FIELDS ===
+	private final long binMs;
+	private final Map<String, Cell> cells = new LinkedHashMap<String, Cell>();
+
+	/**
+	 * Statistics of one measure at one set of coordinates, per time bin.
+	 */
+	public static class Cell {
+		private final EnumXLSExport measure;
+		private final String[] coordinates;
+		private double[] sum;
+		private double[] sumOfSquares;
+		private long[] count;
+
+		Cell(EnumXLSExport measure, String[] coordinates, int nBins) {
+			this.measure = measure;
+			this.coordinates = coordinates;
+			this.sum = new double[nBins];
+			this.sumOfSquares = new double[nBins];
+			this.count = new long[nBins];
+		}
+
+		public EnumXLSExport getMeasure() {
+			return measure;
+		}
+
+		/**
+		 * @return the value of a dimension, or null if the cell is an aggregate
+		 *         over that dimension
+		 */
+		public String getCoordinate(EnumCubeDimension dimension) {
+			return coordinates[dimension.ordinal()];
+		}
+
+		public int getNBins() {
+			return count.length;
+		}
+
+		public double getSum(int bin) {
+			return sum[bin];
+		}
+
+		public double getSumOfSquares(int bin) {
+			return sumOfSquares[bin];
+		}
+
+		public long getCount(int bin) {
+			return count[bin];
+		}
+
+		public double getMean(int bin) {
+			return count[bin] == 0 ? Double.NaN : sum[bin] / count[bin];
+		}
+
+		/**
+		 * @return the sample standard deviation, NaN with less than 2 values
+		 */
+		public double getStandardDeviation(int bin) {
+			long n = count[bin];
+			if (n < 2)
+				return Double.NaN;
+			double variance = (sumOfSquares[bin] - sum[bin] * sum[bin] / n) / (n - 1);
+			return Math.sqrt(Math.max(0., variance));
+		}
+
+		public double[] getMeans() {
+			double[] means = new double[getNBins()];
+			for (int bin = 0; bin < means.length; bin++)
+				means[bin] = getMean(bin);
+			return means;
+		}
+
+		void add(int bin, double value) {
+			ensureBins(bin + 1);
+			sum[bin] += value;
+			sumOfSquares[bin] += value * value;
+			count[bin]++;
+		}
+
+		/**
+		 * Adds the statistics of another cell, bin {@code i} of the other cell
+		 * going to bin {@code i / binFactor}.
+		 */
+		void merge(Cell other, int binFactor) {
+			ensureBins((other.getNBins() + binFactor - 1) / binFactor);
+			for (int i = 0; i < other.getNBins(); i++) {
+				int bin = i / binFactor;
+				sum[bin] += other.sum[i];
+				sumOfSquares[bin] += other.sumOfSquares[i];
+				count[bin] += other.count[i];
+			}
+		}
+
+		private void ensureBins(int nBins) {
+			if (nBins <= count.length)
+				return;
+			sum = Arrays.copyOf(sum, nBins);
+			sumOfSquares = Arrays.copyOf(sumOfSquares, nBins);
+			count = Arrays.copyOf(count, nBins);
+		}
+	}
+
+	public StatisticsCube(long binMs) {
+		if (binMs <= 0)
+			throw new IllegalArgumentException("Bin must be positive: " + binMs + " ms");
+		this.binMs = binMs;
+	}
+
+	public long getBinMs() {
+		return binMs;
+	}
+
+	public Collection<Cell> getCells() {
+		return cells.values();
+	}
+
+	public int size() {
+		return cells.size();
+	}
+
+	// === BUILD ===
+
+	/**
+	 * Builds the cube of an experiment from cages whose spots measures are
+	 * loaded; they need not be those of the experiment.
+	 */
+	public static StatisticsCube build(Experiment exp, CagesArray cagesArray, long binMs) {
+		StatisticsCube cube = new StatisticsCube(binMs);
+		long dataStepMs = exp.seqCamData.getTimeManager().getBinDurationMs();
+		if (dataStepMs <= 0) {
+			LOGGER.warning("No time interval between images for " + exp.getResultsDirectory());
+			return cube;
+		}
+
+		for (EnumXLSExport measure : MEASURES) {
+			for (Cage cage : cagesArray.cagesList) {
+				for (Spot spot : cage.spotsArray.getSpotsList()) {
+					SpotMeasure spotMeasure = spot.getMeasurements(measure);
+					double[] values = spotMeasure != null ? spotMeasure.getValues() : null;
+					if (values == null || values.length == 0)
+						continue;
+
+					int nBins = (int) (((values.length - 1) * dataStepMs) / binMs) + 1;
+					Cell cell = cube.getOrCreateCell(measure, getCoordinates(exp, cage, spot), nBins);
+					for (int i = 0; i < values.length; i++) {
+						if (!Double.isNaN(values[i]))
+							cell.add((int) ((i * dataStepMs) / binMs), values[i]);
+					}
+				}
+			}
+		}
+		return cube;
+	}
+
+	/**
+	 * Adds a value measured at a time from the start of the experiment.
+	 *
+	 * @param coordinates The value of each dimension; the dimensions missing are
+	 *                    null
+	 */
+	public void addValue(EnumXLSExport measure, Map<EnumCubeDimension, String> coordinates, long timeMs,
+			double value) {
+		if (Double.isNaN(value))
+			return;
+		String[] cellCoordinates = new String[N_DIMENSIONS];
+		for (Map.Entry<EnumCubeDimension, String> coordinate : coordinates.entrySet())
+			cellCoordinates[coordinate.getKey().ordinal()] = coordinate.getValue();
+		int bin = (int) (timeMs / binMs);
+		getOrCreateCell(measure, cellCoordinates, bin + 1).add(bin, value);
+	}
+
+	private static String[] getCoordinates(Experiment exp, Cage cage, Spot spot) {
+		ExperimentProperties properties = exp.getProperties();
+		String[] coordinates = new String[N_DIMENSIONS];
+		coordinates[EnumCubeDimension.EXP_BOXID.ordinal()] = properties.getFfield_boxID();
+		coordinates[EnumCubeDimension.EXP_EXPT.ordinal()] = properties.getFfield_experiment();
+		coordinates[EnumCubeDimension.EXP_STRAIN.ordinal()] = properties.getField_strain();
+		coordinates[EnumCubeDimension.EXP_SEX.ordinal()] = properties.getField_sex();
+		coordinates[EnumCubeDimension.EXP_STIM1.ordinal()] = properties.getField_stim1();
+		coordinates[EnumCubeDimension.EXP_CONC1.ordinal()] = properties.getField_conc1();
+		coordinates[EnumCubeDimension.EXP_STIM2.ordinal()] = properties.getField_stim2();
+		coordinates[EnumCubeDimension.EXP_CONC2.ordinal()] = properties.getField_conc2();
+		coordinates[EnumCubeDimension.CAGE.ordinal()] = Integer.toString(cage.getProperties().getCageID());
+		coordinates[EnumCubeDimension.CAGE_NFLIES.ordinal()] = Integer
+				.toString(cage.getProperties().getCageNFlies());
+		coordinates[EnumCubeDimension.STIMULUS.ordinal()] = spot.getProperties().getStimulus();
+		coordinates[EnumCubeDimension.CONCENTRATION.ordinal()] = spot.getProperties().getConcentration();
+		return coordinates;
+	}
+
+	private static String getCellKey(EnumXLSExport measure, String[] coordinates) {
+		StringBuilder key = new StringBuilder(64);
+		key.append(measure);
+		for (String coordinate : coordinates)
+			key.append(KEY_SEPARATOR).append(coordinate);
+		return key.toString();
+	}
+
+	private Cell getOrCreateCell(EnumXLSExport measure, String[] coordinates, int nBins) {
+		String key = getCellKey(measure, coordinates);
+		Cell cell = cells.get(key);
+		if (cell == null) {
+			cell = new Cell(measure, coordinates, nBins);
+			cells.put(key, cell);
+		}
+		return cell;
+	}
+
+	// === MERGE AND QUERY ===
+
+	/**
+	 * Adds the cells of another cube with the same bins.
+	 */
+	public void merge(StatisticsCube other) {
+		if (other.binMs != binMs)
+			throw new IllegalArgumentException("Cannot merge cubes with bins of " + binMs + " and " + other.binMs + " ms");
+		for (Cell cell : other.cells.values())
+			getOrCreateCell(cell.measure, cell.coordinates, cell.getNBins()).merge(cell, 1);
+	}
+
+	/**
+	 * @return a cube with the cells of this cube whose value of a dimension is
+	 *         not the one given, e.g. without the cages with no fly
+	 */
+	public StatisticsCube without(EnumCubeDimension dimension, String value) {
+		StatisticsCube cube = new StatisticsCube(binMs);
+		for (Map.Entry<String, Cell> entry : cells.entrySet()) {
+			String coordinate = entry.getValue().coordinates[dimension.ordinal()];
+			if (value == null ? coordinate != null : !value.equals(coordinate))
+				cube.cells.put(entry.getKey(), entry.getValue());
+		}
+		return cube;
+	}
+
+	/**
+	 * Aggregates the cells of a measure.
+	 *
+	 * @param measure     The measure
+	 * @param groupBy     The dimensions kept in the result; the cells are added
+	 *                    over the other dimensions
+	 * @param filters     Values required for some dimensions (may be null)
+	 * @param outputBinMs The bin of the result, a multiple of the bin of the
+	 *                    cube
+	 * @return one cell per combination of the values of the grouped dimensions,
+	 *         in the order in which they are found
+	 */
+	public List<Cell> query(EnumXLSExport measure, Set<EnumCubeDimension> groupBy,
+			Map<EnumCubeDimension, String> filters, long outputBinMs) {
+		if (outputBinMs < binMs || outputBinMs % binMs != 0)
+			throw new IllegalArgumentException(
+					"Output bin (" + outputBinMs + " ms) must be a multiple of the cube bin (" + binMs + " ms)");
+		int binFactor = (int) (outputBinMs / binMs);
+
+		Map<String, Cell> groups = new LinkedHashMap<String, Cell>();
+		for (Cell cell : cells.values()) {
+			if (cell.measure != measure || !matches(cell, filters))
+				continue;
+			String[] coordinates = new String[N_DIMENSIONS];
+			for (EnumCubeDimension dimension : groupBy)
+				coordinates[dimension.ordinal()] = cell.coordinates[dimension.ordinal()];
+
+			String key = getCellKey(measure, coordinates);
+			Cell group = groups.get(key);
+			if (group == null) {
+				group = new Cell(measure, coordinates, 0);
+				groups.put(key, group);
+			}
+			group.merge(cell, binFactor);
+		}
+		return new ArrayList<Cell>(groups.values());
+	}
+
+	private static boolean matches(Cell cell, Map<EnumCubeDimension, String> filters) {
+		if (filters == null)
+			return true;
+		for (Map.Entry<EnumCubeDimension, String> filter : filters.entrySet()) {
+			String value = cell.coordinates[filter.getKey().ordinal()];
+			if (filter.getValue() == null ? value != null : !filter.getValue().equals(value))
+				return false;
+		}
+		return true;
+	}
+
+	// === KEY ===
+
+	/**
+	 * Describes what the cube of an experiment depends on: its measures files,
+	 * its time bins and the descriptors of the experiment, cages and spots.
+	 *
+	 * @return the key, or null if the measures have never been saved
+	 */
+	public static String buildKey(Experiment exp, long binMs) {
+		String measuresState = SpotsMeasuresStore.getMeasuresFilesState(exp.getResultsDirectory());
+		if (measuresState == null)
+			return null;
+		StringBuilder key = new StringBuilder(1024);
+		key.append(measuresState).append(KEY_SEPARATOR).append(binMs).append(KEY_SEPARATOR)
+				.append(exp.seqCamData.getTimeManager().getBinDurationMs());
+		for (Cage cage : exp.cagesArray.cagesList) {
+			for (Spot spot : cage.spotsArray.getSpotsList())
+				key.append(KEY_SEPARATOR).append(getCellKey(EnumXLSExport.AREA_SUM, getCoordinates(exp, cage, spot)));
+		}
+		return key.toString();
+	}
+
+	// === FILE ===
+
+	/**
+	 * Reads the cube saved in a results directory.
+	 *
+	 * @return the cube, or null if there is none or if it was built with a
+	 *         different key
+	 */
+	public static StatisticsCube load(String directory, String key) {
+		if (directory == null || key == null)
+			return null;
+		Path path = Paths.get(directory, CUBE_FILENAME);
+		if (!Files.exists(path))
+			return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+			if (in.readInt() != CUBE_MAGIC || in.readInt() != CUBE_VERSION)
+				return null;
+			byte[] keyBytes = new byte[in.readInt()];
+			in.readFully(keyBytes);
+			if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8)))
+				return null;
+
+			StatisticsCube cube = new StatisticsCube(in.readLong());
+			int nCells = in.readInt();
+			for (int c = 0; c < nCells; c++) {
+				EnumXLSExport measure = EnumXLSExport.valueOf(in.readUTF());
+				String[] coordinates = new String[N_DIMENSIONS];
+				for (int d = 0; d < N_DIMENSIONS; d++)
+					coordinates[d] = in.readBoolean() ? in.readUTF() : null;
+				int nBins = in.readInt();
+				Cell cell = cube.getOrCreateCell(measure, coordinates, nBins);
+				for (int bin = 0; bin < nBins; bin++) {
+					cell.sum[bin] = in.readDouble();
+					cell.sumOfSquares[bin] = in.readDouble();
+					cell.count[bin] = in.readLong();
+				}
+			}
+			return cube;
+		} catch (IOException | IllegalArgumentException e) {
+			LOGGER.warning("Cannot read statistics cube " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the cube to a results directory, replacing the previous one.
+	 *
+	 * @return true if successful
+	 */
+	public boolean save(String directory, String key) {
+		if (directory == null || key == null)
+			return false;
+		Path path = Paths.get(directory, CUBE_FILENAME);
+		Path tempPath = Paths.get(path.toString() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempPath.toFile())))) {
+				out.writeInt(CUBE_MAGIC);
+				out.writeInt(CUBE_VERSION);
+				byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(keyBytes.length);
+				out.write(keyBytes);
+
+				out.writeLong(binMs);
+				out.writeInt(cells.size());
+				for (Cell cell : cells.values()) {
+					out.writeUTF(cell.measure.name());
+					for (String coordinate : cell.coordinates) {
+						out.writeBoolean(coordinate != null);
+						if (coordinate != null)
+							out.writeUTF(coordinate);
+					}
+					out.writeInt(cell.getNBins());
+					for (int bin = 0; bin < cell.getNBins(); bin++) {
+						out.writeDouble(cell.sum[bin]);
+						out.writeDouble(cell.sumOfSquares[bin]);
+						out.writeLong(cell.count[bin]);
+					}
+				}
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write statistics cube " + path + ": " + e.getMessage());
+			try {
+				Files.deleteIfExists(tempPath);
+			} catch (IOException e1) {
+				// nothing left to do
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package plugins.fmp.l_multiSPOTS96.tools.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import icy.system.thread.Processor;
+import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentLoader;
+import plugins.fmp.l_multiSPOTS96.experiment.LazyExperiment;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.CagesArray;
+
+/**
+ * Gets the statistics cubes of experiments, reading them from their results
+ * directories or building and saving them when they are missing or out of
+ * date, and merges them.
+ *
+ * <p>
+ * The cubes of several experiments are obtained in parallel; the measures of an
+ * experiment are only loaded when its cube has to be built, into a copy of its
+ * cages released once the cube is built: the experiment does not keep them.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class StatisticsCubeLoader {
+
+	private static final Logger LOGGER = Logger.getLogger(StatisticsCubeLoader.class.getName());
+
+	private long binMs = StatisticsCube.DEFAULT_BIN_MS;
+	private int nThreads = ExperimentLoader.DEFAULT_IO_THREADS;
+
+	public StatisticsCubeLoader() {
+	}
+
+	public StatisticsCubeLoader(long binMs) {
+		this.binMs = binMs;
+	}
+
+	public long getBinMs() {
+		return binMs;
+	}
+
+	public void setNumberOfThreads(int nThreads) {
+		this.nThreads = Math.max(1, nThreads);
+	}
+
+	/**
+	 * @return the cube of an experiment, read from its results directory or
+	 *         built from its measures
+	 */
+	public StatisticsCube getCube(Experiment exp) {
+		LazyExperiment lazyExp = exp instanceof LazyExperiment ? (LazyExperiment) exp : null;
+		if (lazyExp != null) {
+			lazyExp.pin();
+			lazyExp.loadIfNeeded();
+		}
+		try {
+			if (exp.cagesArray.cagesList.isEmpty())
+				exp.load_MS96_cages();
+			String directory = exp.getResultsDirectory();
+			String key = StatisticsCube.buildKey(exp, binMs);
+			StatisticsCube cube = StatisticsCube.load(directory, key);
+			if (cube != null)
+				return cube;
+
+			// the measures are read into a copy of the cages, dropped with it
+			CagesArray cagesArray = new CagesArray();
+			cagesArray.copyCagesInfos(exp.cagesArray.cagesList);
+			cagesArray.getSpotsArrayFromAllCages().loadSpotsMeasures(directory);
+			cube = StatisticsCube.build(exp, cagesArray, binMs);
+			// the key changes when the measures are saved for the first time
+			if (key == null)
+				key = StatisticsCube.buildKey(exp, binMs);
+			cube.save(directory, key);
+			return cube;
+		} finally {
+			if (lazyExp != null)
+				lazyExp.unpin();
+		}
+	}
+
+	/**
+	 * @return the cubes of the experiments merged into one
+	 */
+	public StatisticsCube getMergedCube(List<Experiment> experiments) {
+		StatisticsCube merged = new StatisticsCube(binMs);
+		if (experiments == null || experiments.isEmpty())
+			return merged;
+
+		int nWorkers = Math.max(1, Math.min(nThreads, experiments.size()));
+		Processor processor = new Processor(nWorkers);
+		processor.setThreadName("statisticsCube");
+		processor.setPriority(Processor.NORM_PRIORITY);
+
+		List<Future<StatisticsCube>> futures = new ArrayList<Future<StatisticsCube>>(experiments.size());
+		try {
+			for (Experiment exp : experiments)
+				futures.add(processor.submit(createCubeTask(exp)));
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					merged.merge(futures.get(i).get());
+				} catch (ExecutionException e) {
+					LOGGER.warning("Cannot get the statistics cube of experiment " + i + ": "
+							+ e.getCause().getMessage());
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warning("Statistics cubes interrupted");
+		} finally {
+			for (Future<StatisticsCube> future : futures)
+				future.cancel(false);
+			processor.shutdown();
+		}
+		return merged;
+	}
+
+	private Callable<StatisticsCube> createCubeTask(final Experiment exp) {
+		return new Callable<StatisticsCube>() {
+			@Override
+			public StatisticsCube call() throws Exception {
+				return getCube(exp);
+			}
+		};
+	}
+}
@@ -0,0 +1,221 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Buffered writer of delimited text, encoding directly to bytes.
+ *
+ * <p>
+ * Numbers are formatted without going through {@link String}: integers digit
+ * by digit, doubles as a fixed number of decimals with trailing zeros removed
+ * (values too large for that are written with {@link Double#toString}). NaN
+ * and infinite values are written as empty fields, which R and pandas read as
+ * missing values. Text fields are quoted only when they contain the
+ * separator, a quote or a line break.
+ * </p>
+ *
+ * <p>
+ * Not thread-safe: one writer per file.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class CSVByteWriter implements Closeable {
+
+	// === CONSTANTS ===
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+	public static final int DEFAULT_DECIMALS = 6;
+
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+			100000000L, 1000000000L };
+	// above this, the scaled value no longer fits a long with margin
+	private static final double MAX_FIXED_VALUE = 9.0e17;
+
+	// === FIELDS ===
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int position = 0;
+	private final byte separator;
+	private final int decimals;
+	private final long scale;
+	private final byte[] digits = new byte[20];
+
+	public CSVByteWriter(OutputStream out, char separator) {
+		this(out, separator, DEFAULT_DECIMALS, DEFAULT_BUFFER_SIZE);
+	}
+
+	public CSVByteWriter(OutputStream out, char separator, int decimals, int bufferSize) {
+		if (decimals < 0 || decimals >= POWERS_OF_TEN.length)
+			throw new IllegalArgumentException("Decimals must be between 0 and " + (POWERS_OF_TEN.length - 1));
+		this.out = out;
+		this.buffer = new byte[Math.max(64, bufferSize)];
+		this.separator = (byte) separator;
+		this.decimals = decimals;
+		this.scale = POWERS_OF_TEN[decimals];
+	}
+
+	// === FIELDS AND RECORDS ===
+
+	public CSVByteWriter separator() throws IOException {
+		ensure(1);
+		buffer[position++] = separator;
+		return this;
+	}
+
+	public CSVByteWriter endRecord() throws IOException {
+		ensure(1);
+		buffer[position++] = '\n';
+		return this;
+	}
+
+	/**
+	 * Writes a text field, quoted if needed.
+	 */
+	public CSVByteWriter text(String value) throws IOException {
+		if (value == null || value.isEmpty())
+			return this;
+		if (!needsQuotes(value)) {
+			ascii(value);
+			return this;
+		}
+		ensure(1);
+		buffer[position++] = '"';
+		ascii(value.replace("\"", "\"\""));
+		ensure(1);
+		buffer[position++] = '"';
+		return this;
+	}
+
+	/**
+	 * Writes an already-encoded field (e.g. a constant repeated on each record).
+	 */
+	public CSVByteWriter bytes(byte[] value) throws IOException {
+		if (value.length > buffer.length) {
+			flush();
+			out.write(value);
+			return this;
+		}
+		ensure(value.length);
+		System.arraycopy(value, 0, buffer, position, value.length);
+		position += value.length;
+		return this;
+	}
+
+	public CSVByteWriter number(long value) throws IOException {
+		ensure(21);
+		if (value < 0) {
+			if (value == Long.MIN_VALUE) {
+				ascii(Long.toString(value));
+				return this;
+			}
+			buffer[position++] = '-';
+			value = -value;
+		}
+		writeDigits(value, 0);
+		return this;
+	}
+
+	public CSVByteWriter number(double value) throws IOException {
+		if (Double.isNaN(value) || Double.isInfinite(value))
+			return this;
+		double abs = Math.abs(value);
+		if (abs * scale >= MAX_FIXED_VALUE) {
+			ascii(Double.toString(value));
+			return this;
+		}
+		long scaled = Math.round(abs * scale);
+		if (scaled == 0) {
+			ensure(1);
+			buffer[position++] = '0';
+			return this;
+		}
+		ensure(24);
+		if (value < 0)
+			buffer[position++] = '-';
+		long integerPart = scaled / scale;
+		long fraction = scaled % scale;
+		writeDigits(integerPart, 0);
+		if (fraction != 0) {
+			int nDecimals = decimals;
+			while (fraction % 10 == 0) {
+				fraction /= 10;
+				nDecimals--;
+			}
+			buffer[position++] = '.';
+			writeDigits(fraction, nDecimals);
+		}
+		return this;
+	}
+
+	// === ENCODING ===
+
+	/**
+	 * Encodes a string directly when it is ASCII, through UTF-8 otherwise.
+	 */
+	private void ascii(String value) throws IOException {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			if (value.charAt(i) >= 0x80) {
+				bytes(value.getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+		}
+		int i = 0;
+		while (i < length) {
+			if (position == buffer.length)
+				flush();
+			int n = Math.min(length - i, buffer.length - position);
+			for (int j = 0; j < n; j++)
+				buffer[position++] = (byte) value.charAt(i++);
+		}
+	}
+
+	private boolean needsQuotes(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == separator || c == '"' || c == '\n' || c == '\r')
+				return true;
+		}
+		return false;
+	}
+
+	// writes a positive value, left-padded with zeros to minDigits
+	private void writeDigits(long value, int minDigits) {
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while (value != 0);
+		while (n < minDigits)
+			digits[n++] = '0';
+		while (n > 0)
+			buffer[position++] = digits[--n];
+	}
+
+	private void ensure(int n) throws IOException {
+		if (position + n > buffer.length)
+			flush();
+	}
+
+	// === STREAM ===
+
+	public void flush() throws IOException {
+		if (position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.tools.statistics.EnumCubeDimension;
+import plugins.fmp.l_multiSPOTS96.tools.statistics.StatisticsCube;
+import plugins.fmp.l_multiSPOTS96.tools.statistics.StatisticsCubeLoader;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelExportException;
+
+/**
+ * Exports a summary of the spot measures per stimulus and concentration: the
+ * number of values, mean and standard deviation of each measure per time bin,
+ * over the spots of all the experiments selected.
+ *
+ * <p>
+ * Columns are {@code stimulus, concentration, measure, time, n, mean, sd}. The
+ * summary is computed from the {@link StatisticsCube} of each experiment,
+ * built from its measures the first time and then read from its results
+ * directory; the measures are not loaded again until they change. Values are
+ * the raw measures: unlike the Excel export, they are not made relative to t0
+ * nor converted to physical units. The time is that of the start of the bin,
+ * in the unit selected for the Excel export. Empty bins, and the measures
+ * which are not selected in the options, are not written.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class CSVExportSummary {
+
+	// === CONSTANTS ===
+	public static final String[] HEADER = { "stimulus", "concentration", "measure", "time", "n", "mean", "sd" };
+
+	// === FIELDS ===
+	private char separator = ',';
+	private final Set<EnumCubeDimension> groupBy = EnumSet.of(EnumCubeDimension.STIMULUS,
+			EnumCubeDimension.CONCENTRATION);
+
+	// === CONFIGURATION ===
+
+	public char getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * @param separator ',' for CSV, '\t' for TSV
+	 */
+	public void setSeparator(char separator) {
+		this.separator = separator;
+	}
+
+	// === EXPORT ===
+
+	/**
+	 * Exports the summary of the experiments selected in the options.
+	 *
+	 * @param filename The output file
+	 * @param options  The export options (experiments, measures, bins, units,
+	 *                 cages with no fly discarded or not)
+	 * @throws ExcelExportException If export fails
+	 */
+	public void exportToFile(String filename, XLSExportOptions options) throws ExcelExportException {
+		List<Experiment> experiments = CSVExportTidy.getExperiments(options);
+		long outputBinMs = options.buildExcelStepMs > 0 ? options.buildExcelStepMs : StatisticsCube.DEFAULT_BIN_MS;
+		long cubeBinMs = outputBinMs % StatisticsCube.DEFAULT_BIN_MS == 0 ? StatisticsCube.DEFAULT_BIN_MS
+				: outputBinMs;
+		double unitMs = options.buildExcelUnitMs > 0 ? options.buildExcelUnitMs : 1.;
+
+		StatisticsCube cube = new StatisticsCubeLoader(cubeBinMs).getMergedCube(experiments);
+		if (options.onlyalive)
+			cube = cube.without(EnumCubeDimension.CAGE_NFLIES, "0");
+
+		try (CSVByteWriter writer = new CSVByteWriter(
+				new BufferedOutputStream(new FileOutputStream(filename), CSVByteWriter.DEFAULT_BUFFER_SIZE),
+				separator)) {
+			writeHeader(writer);
+			for (EnumXLSExport measure : options.getSpotMeasures())
+				writeMeasure(writer, cube.query(measure, groupBy, null, outputBinMs), outputBinMs, unitMs);
+		} catch (IOException e) {
+			throw new ExcelExportException("Cannot write " + filename, "export_summary", "write_file", e);
+		}
+	}
+
+	private void writeMeasure(CSVByteWriter writer, List<StatisticsCube.Cell> cells, long outputBinMs,
+			double unitMs) throws IOException {
+		for (StatisticsCube.Cell cell : cells) {
+			for (int bin = 0; bin < cell.getNBins(); bin++) {
+				if (cell.getCount(bin) == 0)
+					continue;
+				writer.text(cell.getCoordinate(EnumCubeDimension.STIMULUS)).separator();
+				writer.text(cell.getCoordinate(EnumCubeDimension.CONCENTRATION)).separator();
+				writer.text(cell.getMeasure().toString()).separator();
+				writer.number((bin * outputBinMs) / unitMs).separator();
+				writer.number(cell.getCount(bin)).separator();
+				writer.number(cell.getMean(bin)).separator();
+				writer.number(cell.getStandardDeviation(bin)).endRecord();
+			}
+		}
+	}
+
+	private void writeHeader(CSVByteWriter writer) throws IOException {
+		for (int i = 0; i < HEADER.length; i++) {
+			if (i > 0)
+				writer.separator();
+			writer.text(HEADER[i]);
+		}
+		writer.endRecord();
+	}
+}
@@ -0,0 +1,336 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import icy.gui.frame.progress.ProgressFrame;
+import icy.system.thread.Processor;
+import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentLoader;
+import plugins.fmp.l_multiSPOTS96.experiment.LazyExperiment;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+import plugins.fmp.l_multiSPOTS96.tools.JComponents.JComboBoxExperimentLazy;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelDataException;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelExportException;
+
+/**
+ * Exports the spot measures as a "tidy" table: one record per experiment, cage,
+ * spot, measure and time bin.
+ *
+ * <p>
+ * Columns are {@code experiment, cage, spot, stimulus, concentration, time,
+ * measure, value}. The values are those of the Excel export (same measures,
+ * bins, bin statistic, relative-to-t0 option and physical units); the time is
+ * that of the start of the bin, relative to the start of the experiment and
+ * expressed in the unit selected for the Excel export. Empty bins are not
+ * written.
+ * </p>
+ *
+ * <p>
+ * Records are encoded directly to bytes by a {@link CSVByteWriter}, without an
+ * intermediate workbook, so that the memory used does not depend on the size
+ * of the export. The output can be gzip-compressed, and split into one file
+ * per experiment; the files are then written in parallel.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class CSVExportTidy {
+
+	private static final Logger LOGGER = Logger.getLogger(CSVExportTidy.class.getName());
+
+	// === CONSTANTS ===
+	public static final String[] HEADER = { "experiment", "cage", "spot", "stimulus", "concentration", "time",
+			"measure", "value" };
+	public static final String GZIP_EXTENSION = ".gz";
+
+	// === FIELDS ===
+	private char separator = ',';
+	private boolean compressed = false;
+	private boolean splitByExperiment = false;
+	private int nThreads = ExperimentLoader.DEFAULT_IO_THREADS;
+	private int decimals = CSVByteWriter.DEFAULT_DECIMALS;
+
+	// === CONFIGURATION ===
+
+	public char getSeparator() {
+		return separator;
+	}
+
+	/**
+	 * @param separator ',' for CSV, '\t' for TSV
+	 */
+	public void setSeparator(char separator) {
+		this.separator = separator;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	public void setCompressed(boolean compressed) {
+		this.compressed = compressed;
+	}
+
+	public boolean isSplitByExperiment() {
+		return splitByExperiment;
+	}
+
+	public void setSplitByExperiment(boolean splitByExperiment) {
+		this.splitByExperiment = splitByExperiment;
+	}
+
+	public int getNumberOfThreads() {
+		return nThreads;
+	}
+
+	public void setNumberOfThreads(int nThreads) {
+		this.nThreads = Math.max(1, nThreads);
+	}
+
+	public int getDecimals() {
+		return decimals;
+	}
+
+	public void setDecimals(int decimals) {
+		this.decimals = decimals;
+	}
+
+	// === EXPORT ===
+
+	/**
+	 * Exports the experiments selected in the options.
+	 *
+	 * @param filename The output file; when split by experiment, the index of
+	 *                 the experiment is inserted before its extension
+	 * @param options  The export options (experiments, bins, units)
+	 * @return The files written
+	 * @throws ExcelExportException If export fails
+	 */
+	public List<String> exportToFile(String filename, XLSExportOptions options) throws ExcelExportException {
+		List<Experiment> experiments = getExperiments(options);
+		List<String> files = new ArrayList<String>();
+		if (experiments.isEmpty())
+			return files;
+
+		ProgressFrame progress = new ProgressFrame("Export tidy table");
+		progress.setLength(experiments.size());
+		try {
+			if (splitByExperiment)
+				exportSplit(filename, experiments, options, progress, files);
+			else
+				exportSingleFile(filename, experiments, options, progress, files);
+		} finally {
+			progress.close();
+		}
+		return files;
+	}
+
+	static List<Experiment> getExperiments(XLSExportOptions options) throws ExcelExportException {
+		JComboBoxExperimentLazy expList = options.expList;
+		if (expList == null)
+			throw new ExcelDataException("Experiment list cannot be null", "validate_parameters", "expList_validation");
+		if (options.experimentIndexFirst < 0 || options.experimentIndexFirst > options.experimentIndexLast)
+			throw new ExcelDataException("Invalid experiment range: " + options.experimentIndexFirst + " to "
+					+ options.experimentIndexLast, "validate_parameters", "experiment_range");
+
+		List<Experiment> experiments = new ArrayList<Experiment>();
+		int last = Math.min(options.experimentIndexLast, expList.getItemCount() - 1);
+		for (int index = options.experimentIndexFirst; index <= last; index++) {
+			Experiment exp = expList.getItemAtNoLoad(index);
+			if (exp != null)
+				experiments.add(exp);
+		}
+		return experiments;
+	}
+
+	private void exportSingleFile(String filename, List<Experiment> experiments, XLSExportOptions options,
+			ProgressFrame progress, List<String> files) throws ExcelExportException {
+		String path = getOutputPath(filename);
+		try (CSVByteWriter writer = openWriter(path)) {
+			writeHeader(writer);
+			for (int i = 0; i < experiments.size(); i++) {
+				progress.setMessage("Export experiment " + (i + 1) + " of " + experiments.size());
+				exportExperiment(writer, experiments.get(i), options);
+				progress.incPosition();
+			}
+		} catch (IOException e) {
+			throw new ExcelExportException("Cannot write " + path, "export_tidy", "write_file", e);
+		}
+		files.add(path);
+	}
+
+	private void exportSplit(String filename, List<Experiment> experiments, XLSExportOptions options,
+			ProgressFrame progress, List<String> files) throws ExcelExportException {
+		int nWorkers = Math.max(1, Math.min(nThreads, experiments.size()));
+		Processor processor = new Processor(nWorkers);
+		processor.setThreadName("exportTidy");
+		processor.setPriority(Processor.NORM_PRIORITY);
+
+		List<Future<String>> futures = new ArrayList<Future<String>>(experiments.size());
+		try {
+			for (int i = 0; i < experiments.size(); i++) {
+				String path = getOutputPath(getExperimentFilename(filename, i, experiments.size()));
+				futures.add(processor.submit(createExperimentTask(path, experiments.get(i), options)));
+			}
+			for (int i = 0; i < futures.size(); i++) {
+				files.add(futures.get(i).get());
+				progress.setMessage("Exported experiment " + (i + 1) + " of " + experiments.size());
+				progress.incPosition();
+			}
+		} catch (ExecutionException e) {
+			throw new ExcelExportException("Experiment export failed", "export_tidy", "write_experiment",
+					e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExcelExportException("Export interrupted", "export_tidy", "write_experiment", e);
+		} finally {
+			for (Future<String> future : futures)
+				future.cancel(false);
+			processor.shutdown();
+		}
+	}
+
+	private Callable<String> createExperimentTask(final String path, final Experiment exp,
+			final XLSExportOptions options) {
+		return new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				try (CSVByteWriter writer = openWriter(path)) {
+					writeHeader(writer);
+					exportExperiment(writer, exp, options);
+				}
+				return path;
+			}
+		};
+	}
+
+	/**
+	 * Loads the measures of an experiment and writes its records; the
+	 * experiment is kept in memory only while it is written.
+	 */
+	private void exportExperiment(CSVByteWriter writer, Experiment exp, XLSExportOptions options)
+			throws IOException {
+		LazyExperiment lazyExp = exp instanceof LazyExperiment ? (LazyExperiment) exp : null;
+		if (lazyExp != null) {
+			lazyExp.pin();
+			lazyExp.loadIfNeeded();
+		}
+		try {
+			if (exp.cagesArray.cagesList.isEmpty())
+				exp.load_MS96_cages();
+			exp.load_MS96_spotsMeasures();
+			writeExperiment(writer, exp, options);
+		} finally {
+			if (lazyExp != null)
+				lazyExp.unpin();
+		}
+	}
+
+	/**
+	 * Writes the records of an experiment whose measures are loaded.
+	 */
+	public void writeExperiment(CSVByteWriter writer, Experiment exp, XLSExportOptions options)
+			throws IOException {
+		long binDataMs = exp.seqCamData.getTimeManager().getBinDurationMs();
+		if (binDataMs <= 0) {
+			LOGGER.warning("No time interval between images for " + exp.getResultsDirectory() + ": not exported");
+			return;
+		}
+		long stepMs = options.buildExcelStepMs > 0 ? options.buildExcelStepMs : binDataMs;
+		double unitMs = options.buildExcelUnitMs > 0 ? options.buildExcelUnitMs : 1.;
+		String experimentName = exp.getResultsDirectory();
+
+		for (EnumXLSExport measure : options.getSpotMeasures()) {
+			XLSExportOptions typeOptions = new XLSExportOptions();
+			typeOptions.copy(options);
+			typeOptions.exportType = measure;
+			byte[] measureField = encode(measure.toString());
+
+			for (Cage cage : exp.cagesArray.cagesList) {
+				if (options.onlyalive && cage.getProperties().getCageNFlies() <= 0)
+					continue;
+				double scalingFactorToPhysicalUnits = cage.spotsArray.getScalingFactorToPhysicalUnits(measure);
+
+				for (Spot spot : cage.spotsArray.getSpotsList()) {
+					XLSResults results = new XLSResults(cage.getProperties(), spot.getProperties(), 0);
+					results.getDataFromSpot(spot, binDataMs, stepMs, typeOptions);
+					double[] values = results.getDataValues();
+					if (values == null || values.length == 0)
+						continue;
+
+					// the fields before the time are the same for all the records of the spot
+					byte[] spotFields = encode(experimentName, Integer.toString(cage.getProperties().getCageID()),
+							spot.getProperties().getName(), spot.getProperties().getStimulus(),
+							spot.getProperties().getConcentration());
+					for (int k = 0; k < values.length; k++) {
+						if (Double.isNaN(values[k]))
+							continue;
+						writer.bytes(spotFields);
+						writer.number((k * stepMs) / unitMs).separator();
+						writer.bytes(measureField);
+						writer.number(values[k] * scalingFactorToPhysicalUnits).endRecord();
+					}
+				}
+			}
+		}
+	}
+
+	// === OUTPUT ===
+
+	private void writeHeader(CSVByteWriter writer) throws IOException {
+		for (int i = 0; i < HEADER.length; i++) {
+			if (i > 0)
+				writer.separator();
+			writer.text(HEADER[i]);
+		}
+		writer.endRecord();
+	}
+
+	private CSVByteWriter openWriter(String path) throws IOException {
+		OutputStream out = new FileOutputStream(path);
+		if (compressed)
+			out = new GZIPOutputStream(out, CSVByteWriter.DEFAULT_BUFFER_SIZE);
+		else
+			out = new BufferedOutputStream(out, CSVByteWriter.DEFAULT_BUFFER_SIZE);
+		return new CSVByteWriter(out, separator, decimals, CSVByteWriter.DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Encodes fields once, each followed by the separator, with the quoting
+	 * rules of the writer.
+	 */
+	private byte[] encode(String... fields) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		CSVByteWriter fieldWriter = new CSVByteWriter(bytes, separator, decimals, 256);
+		for (String field : fields)
+			fieldWriter.text(field).separator();
+		fieldWriter.flush();
+		return bytes.toByteArray();
+	}
+
+	private String getOutputPath(String filename) {
+		return compressed && !filename.endsWith(GZIP_EXTENSION) ? filename + GZIP_EXTENSION : filename;
+	}
+
+	static String getExperimentFilename(String filename, int index, int nExperiments) {
+		String number = String.format("%0" + Integer.toString(Math.max(1, nExperiments - 1)).length() + "d", index);
+		int dot = filename.lastIndexOf('.');
+		int slash = Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\'));
+		if (dot <= slash)
+			return filename + "_" + number;
+		return filename.substring(0, dot) + "_" + number + filename.substring(dot);
+	}
+}
@@ -0,0 +1,34 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+public enum EnumBinStatistic {
+	SAMPLE("sample", "first value of the bin"), //
+	MEAN("mean", "mean of the bin"), //
+	MIN("min", "minimum of the bin"), //
+	MAX("max", "maximum of the bin"), //
+	SUM("sum", "sum of the bin"), //
+	COUNT("count", "number of values in the bin");
+
+	private String label;
+	private String title;
+
+	EnumBinStatistic(String label, String title) {
+		this.label = label;
+		this.title = title;
+	}
+
+	public String toString() {
+		return label;
+	}
+
+	public String toTitle() {
+		return title;
+	}
+
+	public static EnumBinStatistic findByText(String abbr) {
+		for (EnumBinStatistic v : values()) {
+			if (v.toString().equals(abbr))
+				return v;
+		}
+		return null;
+	}
+}
@@ -122,12 +122,14 @@ public final class ExcelExportConstants {
 		public static final boolean ABSOLUTE_TIME = false;
 		public static final boolean COLLATE_SERIES = false;
 		public static final boolean PAD_INTERVALS = true;
+		public static final boolean USE_EXPORT_CACHE = true;
 		public static final boolean TRIM_ALIVE = false;
 		public static final boolean COMPENSATE_EVAPORATION = false;
 
 		// Default numeric values
 		public static final int BUILD_EXCEL_STEP_MS = 1;
 		public static final int BUILD_EXCEL_UNIT_MS = 1;
+		public static final EnumBinStatistic BIN_STATISTIC = EnumBinStatistic.SAMPLE;
 		public static final int N_BINS_CORRELATION = 40;
 		public static final long START_ALL_MS = 0;
 		public static final long END_ALL_MS = 999999;
@@ -0,0 +1,314 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.util.Arrays;
+
+/**
+ * Reduces a series measured every {@code dataStepMs} to bins of
+ * {@code outputStepMs}.
+ *
+ * <p>
+ * Value {@code i} is at time {@code i * dataStepMs} and belongs to bin
+ * {@code k} if {@code k * outputStepMs <= i * dataStepMs < (k + 1) * outputStepMs}.
+ * The number of bins is the same as when sampling the series every
+ * {@code outputStepMs}. NaN values are ignored; an empty bin has a NaN mean,
+ * minimum and maximum, a zero sum and a zero count. When the output step is
+ * finer than the data step, each bin holds the value that covers it.
+ * </p>
+ *
+ * <p>
+ * {@link #compute} reduces a series in a single pass and gives all the
+ * statistics at once; {@link PrefixSums} is meant for a series that is binned
+ * several times (different steps or windows): each window sum is then O(1).
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class XLSBinning {
+
+	/**
+	 * Statistics of the bins of a series.
+	 */
+	public static class Bins {
+		private final int nBins;
+		private final double[] sum;
+		private final double[] min;
+		private final double[] max;
+		private final int[] count;
+
+		Bins(int nBins) {
+			this.nBins = nBins;
+			this.sum = new double[nBins];
+			this.min = new double[nBins];
+			this.max = new double[nBins];
+			this.count = new int[nBins];
+			Arrays.fill(min, Double.NaN);
+			Arrays.fill(max, Double.NaN);
+		}
+
+		public int getNBins() {
+			return nBins;
+		}
+
+		public double getSum(int bin) {
+			return sum[bin];
+		}
+
+		public double getMin(int bin) {
+			return min[bin];
+		}
+
+		public double getMax(int bin) {
+			return max[bin];
+		}
+
+		public int getCount(int bin) {
+			return count[bin];
+		}
+
+		public double getMean(int bin) {
+			return count[bin] == 0 ? Double.NaN : sum[bin] / count[bin];
+		}
+
+		/**
+		 * @return a new array with one value per bin
+		 */
+		public double[] toArray(EnumBinStatistic statistic) {
+			double[] result = new double[nBins];
+			switch (statistic) {
+			case MIN:
+				System.arraycopy(min, 0, result, 0, nBins);
+				break;
+			case MAX:
+				System.arraycopy(max, 0, result, 0, nBins);
+				break;
+			case SUM:
+				System.arraycopy(sum, 0, result, 0, nBins);
+				break;
+			case COUNT:
+				for (int k = 0; k < nBins; k++)
+					result[k] = count[k];
+				break;
+			default:
+				for (int k = 0; k < nBins; k++)
+					result[k] = getMean(k);
+				break;
+			}
+			return result;
+		}
+
+		private void add(int bin, double value) {
+			if (Double.isNaN(value))
+				return;
+			if (count[bin] == 0) {
+				min[bin] = value;
+				max[bin] = value;
+			} else {
+				if (value < min[bin])
+					min[bin] = value;
+				if (value > max[bin])
+					max[bin] = value;
+			}
+			sum[bin] += value;
+			count[bin]++;
+		}
+	}
+
+	/**
+	 * Cumulated sums and counts of the non-NaN values of a series.
+	 */
+	public static class PrefixSums {
+		private final double[] sum;
+		private final int[] count;
+
+		public PrefixSums(double[] values) {
+			sum = new double[values.length + 1];
+			count = new int[values.length + 1];
+			for (int i = 0; i < values.length; i++) {
+				double value = values[i];
+				boolean valid = !Double.isNaN(value);
+				sum[i + 1] = sum[i] + (valid ? value : 0.);
+				count[i + 1] = count[i] + (valid ? 1 : 0);
+			}
+		}
+
+		public int size() {
+			return sum.length - 1;
+		}
+
+		/**
+		 * @return the sum of the values from index {@code from} (included) to
+		 *         {@code to} (excluded)
+		 */
+		public double getSum(int from, int to) {
+			return sum[to] - sum[from];
+		}
+
+		public int getCount(int from, int to) {
+			return count[to] - count[from];
+		}
+
+		public double getMean(int from, int to) {
+			int n = getCount(from, to);
+			return n == 0 ? Double.NaN : getSum(from, to) / n;
+		}
+
+		/**
+		 * Sum, mean or count of each bin; minimum and maximum need
+		 * {@link XLSBinning#compute}.
+		 */
+		public double[] reduce(long dataStepMs, long outputStepMs, EnumBinStatistic statistic) {
+			checkSteps(dataStepMs, outputStepMs);
+			int nBins = getNBins(size(), dataStepMs, outputStepMs);
+			double[] result = new double[nBins];
+			boolean finer = outputStepMs <= dataStepMs;
+			int from = 0;
+			for (int k = 0; k < nBins; k++) {
+				int to;
+				if (finer) {
+					// value covering the bin
+					from = (int) (k * outputStepMs / dataStepMs);
+					to = from + 1;
+				} else {
+					to = getFirstIndexOfBin(k + 1, dataStepMs, outputStepMs, size());
+				}
+				switch (statistic) {
+				case SUM:
+					result[k] = getSum(from, to);
+					break;
+				case COUNT:
+					result[k] = getCount(from, to);
+					break;
+				case MEAN:
+					result[k] = getMean(from, to);
+					break;
+				default:
+					throw new IllegalArgumentException("Statistic not available from prefix sums: " + statistic);
+				}
+				from = to;
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Bins the values of a series given one at a time, in order, for series that
+	 * are computed on the fly rather than stored in an array.
+	 */
+	public static class Accumulator {
+		private final Bins bins;
+		private final long dataStepMs;
+		private final long outputStepMs;
+		private final boolean finer;
+		private int index = 0;
+		private int bin = 0;
+		private long binEndMs;
+
+		public Accumulator(int nValues, long dataStepMs, long outputStepMs) {
+			checkSteps(dataStepMs, outputStepMs);
+			this.bins = new Bins(getNBins(nValues, dataStepMs, outputStepMs));
+			this.dataStepMs = dataStepMs;
+			this.outputStepMs = outputStepMs;
+			this.finer = outputStepMs <= dataStepMs;
+			this.binEndMs = outputStepMs;
+		}
+
+		/**
+		 * Adds the next value of the series.
+		 */
+		public void add(double value) {
+			if (finer) {
+				// the value covers all the bins starting during its interval
+				while (bin < bins.nBins && bin * outputStepMs / dataStepMs == index) {
+					bins.add(bin, value);
+					bin++;
+				}
+			} else {
+				long timeMs = index * dataStepMs;
+				while (timeMs >= binEndMs) {
+					bin++;
+					binEndMs += outputStepMs;
+				}
+				if (bin < bins.nBins)
+					bins.add(bin, value);
+			}
+			index++;
+		}
+
+		public Bins getBins() {
+			return bins;
+		}
+	}
+
+	// -------------------------------------------
+
+	/**
+	 * Number of bins of {@code outputStepMs} covering {@code nValues} values
+	 * measured every {@code dataStepMs}.
+	 */
+	public static int getNBins(int nValues, long dataStepMs, long outputStepMs) {
+		if (nValues == 0)
+			return 0;
+		long maxMs = (nValues - 1) * dataStepMs;
+		return (int) ((maxMs / outputStepMs) + 1);
+	}
+
+	/**
+	 * Computes the statistics of all the bins in a single pass over the values.
+	 */
+	public static Bins compute(double[] values, long dataStepMs, long outputStepMs) {
+		checkSteps(dataStepMs, outputStepMs);
+		Bins bins = new Bins(getNBins(values.length, dataStepMs, outputStepMs));
+		if (outputStepMs <= dataStepMs) {
+			for (int k = 0; k < bins.nBins; k++)
+				bins.add(k, values[(int) (k * outputStepMs / dataStepMs)]);
+			return bins;
+		}
+
+		int bin = 0;
+		long binEndMs = outputStepMs;
+		long timeMs = 0;
+		for (int i = 0; i < values.length; i++, timeMs += dataStepMs) {
+			while (timeMs >= binEndMs) {
+				bin++;
+				binEndMs += outputStepMs;
+			}
+			bins.add(bin, values[i]);
+		}
+		return bins;
+	}
+
+	/**
+	 * Reduces the values to one statistic per bin. {@link EnumBinStatistic#SAMPLE}
+	 * takes the value at the start of each bin.
+	 *
+	 * @return a new array of {@link #getNBins} values
+	 */
+	public static double[] reduce(double[] values, long dataStepMs, long outputStepMs, EnumBinStatistic statistic) {
+		checkSteps(dataStepMs, outputStepMs);
+		int nBins = getNBins(values.length, dataStepMs, outputStepMs);
+		if (statistic == EnumBinStatistic.SAMPLE) {
+			double[] result = new double[nBins];
+			for (int k = 0; k < nBins; k++)
+				result[k] = values[(int) (k * outputStepMs / dataStepMs)];
+			return result;
+		}
+		// same step: each bin holds one value
+		if (outputStepMs == dataStepMs && (statistic == EnumBinStatistic.MEAN || statistic == EnumBinStatistic.MIN
+				|| statistic == EnumBinStatistic.MAX))
+			return Arrays.copyOf(values, nBins);
+		return compute(values, dataStepMs, outputStepMs).toArray(statistic);
+	}
+
+	private static int getFirstIndexOfBin(int bin, long dataStepMs, long outputStepMs, int nValues) {
+		// smallest i such that i * dataStepMs >= bin * outputStepMs
+		long index = (bin * outputStepMs + dataStepMs - 1) / dataStepMs;
+		return (int) Math.min(index, nValues);
+	}
+
+	private static void checkSteps(long dataStepMs, long outputStepMs) {
+		if (dataStepMs <= 0 || outputStepMs <= 0)
+			throw new IllegalArgumentException(
+					"Steps must be positive: data " + dataStepMs + " ms, output " + outputStepMs + " ms");
+	}
+}
@@ -12,6 +12,7 @@ import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import icy.gui.frame.progress.ProgressFrame;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentPinScope;
 import plugins.fmp.l_multiSPOTS96.experiment.ExperimentProperties;
 import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
 import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
@@ -27,6 +28,10 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelResourceExceptio
  * <p>
  * This class defines the overall algorithm for Excel export while allowing
  * subclasses to customize specific steps through protected methods.
+ * 
+ * <p>
+ * The experiments are exported serially by {@link #exportExperimentData};
+ * {@link XLSExportByBlocks} prepares them in parallel.
  */
 public abstract class XLSExport {
 
@@ -36,6 +41,8 @@ public abstract class XLSExport {
 
 	// Resource management
 	protected ExcelResourceManager resourceManager = null;
+	// experiments kept loaded until the export is finished
+	protected ExperimentPinScope pinnedExperiments = null;
 
 	// Style references
 	protected CellStyle redCellStyle = null;
@@ -55,8 +62,10 @@ public abstract class XLSExport {
 		this.options = options;
 		this.expList = options.expList;
 
-		try (ExcelResourceManager resourceManager = new ExcelResourceManager(filename)) {
+		try (ExcelResourceManager resourceManager = new ExcelResourceManager(filename);
+				ExperimentPinScope pins = new ExperimentPinScope()) {
 			this.resourceManager = resourceManager;
+			this.pinnedExperiments = pins;
 			this.redCellStyle = resourceManager.getRedCellStyle();
 			this.blueCellStyle = resourceManager.getBlueCellStyle();
 
@@ -73,6 +82,7 @@ public abstract class XLSExport {
 		} catch (Exception e) {
 			throw new ExcelExportException("Unexpected error during export", "export_to_file", filename, e);
 		} finally {
+			pinnedExperiments = null;
 			cleanup();
 		}
 
@@ -86,7 +96,8 @@ public abstract class XLSExport {
 	 */
 	protected void prepareExperiments() throws ExcelDataException {
 		try {
-			expList.loadListOfMeasuresFromAllExperiments(true, options.onlyalive);
+			expList.loadListOfMeasuresFromAllExperiments(!loadsMeasuresPerExperiment(), options.onlyalive,
+					pinnedExperiments);
 			expList.chainExperimentsUsingKymoIndexes(options.collateSeries);
 			expList.setFirstImageForAllExperiments(options.collateSeries);
 			expAll = expList.get_MsTime_of_StartAndEnd_AllExperiments(options);
@@ -136,7 +147,7 @@ public abstract class XLSExport {
 			int iSeries = 0;
 
 			for (int index = options.experimentIndexFirst; index <= options.experimentIndexLast; index++) {
-				Experiment exp = expList.getItemAt(index);
+				Experiment exp = expList.getItemAt(index, pinnedExperiments);
 				exp.load_MS96_spotsMeasures();
 				if (shouldSkipExperiment(exp)) {
 					continue;
@@ -162,6 +173,17 @@ public abstract class XLSExport {
 		}
 	}
 
+	/**
+	 * Determines whether the measures of each experiment are loaded while it is
+	 * exported, instead of for all the experiments before the export. Default
+	 * implementation returns false.
+	 * 
+	 * @return true if the export loads the measures it needs
+	 */
+	protected boolean loadsMeasuresPerExperiment() {
+		return false;
+	}
+
 	/**
 	 * Determines whether to skip an experiment during export. Default
 	 * implementation skips chained experiments.
@@ -442,24 +464,13 @@ public abstract class XLSExport {
 			return;
 		}
 
-		for (long coltime = expAll.seqCamData.getFirstImageMs(); coltime < expAll.seqCamData
-				.getLastImageMs(); coltime += options.buildExcelStepMs, pt.y++) {
+		// one row per output bin between the first and the last image of all
+		// experiments, limited to the values available
+		long durationMs = expAll.seqCamData.getLastImageMs() - expAll.seqCamData.getFirstImageMs();
+		long nBins = durationMs <= 0 ? 0 : (durationMs + options.buildExcelStepMs - 1) / options.buildExcelStepMs;
+		int nValues = (int) Math.min(nBins, xlsResult.getValuesOutLength());
 
-			int i_from = (int) ((coltime - expAll.seqCamData.getFirstImageMs()) / options.buildExcelStepMs);
-
-			if (i_from >= xlsResult.getValuesOutLength()) {
-				break;
-			}
-
-			double value = xlsResult.getValuesOut()[i_from];
-
-			if (!Double.isNaN(value)) {
-				XLSUtils.setValue(sheet, pt, transpose, value);
-
-//				if (i_from < xlsResult.padded_out.length && xlsResult.padded_out[i_from]) {
-//					XLSUtils.getCell(sheet, pt, transpose).setCellStyle(redCellStyle);
-//				}
-			}
-		}
+		XLSUtils.setValues(sheet, pt.x, pt.y, transpose, xlsResult.getValuesOut(), 0, nValues);
+		pt.y += nValues;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,98 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+
+/**
+ * Columns of one experiment, ready to be written to the workbook.
+ *
+ * <p>
+ * A block is prepared by a worker thread (measures loaded, resampled and
+ * scaled to physical units) and then handed to the single thread that writes
+ * the workbook; it holds one column per spot and per export type, in the order
+ * in which they are written.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class XLSExportBlock {
+
+	private final Experiment exp;
+	private final String charSeries;
+	private final Map<EnumXLSExport, List<Column>> columns = new EnumMap<EnumXLSExport, List<Column>>(
+			EnumXLSExport.class);
+
+	/**
+	 * One column of the sheet: the descriptors of a spot and its values.
+	 */
+	public static class Column {
+		private final Cage cage;
+		private final Spot spot;
+		private final XLSResults results;
+
+		Column(Cage cage, Spot spot, XLSResults results) {
+			this.cage = cage;
+			this.spot = spot;
+			this.results = results;
+		}
+
+		public Cage getCage() {
+			return cage;
+		}
+
+		public Spot getSpot() {
+			return spot;
+		}
+
+		public XLSResults getResults() {
+			return results;
+		}
+	}
+
+	public XLSExportBlock(Experiment exp, String charSeries) {
+		this.exp = exp;
+		this.charSeries = charSeries;
+	}
+
+	public Experiment getExperiment() {
+		return exp;
+	}
+
+	public String getCharSeries() {
+		return charSeries;
+	}
+
+	/**
+	 * Adds a column; the intermediate values of the results are released, only
+	 * the output values are kept.
+	 */
+	public void addColumn(EnumXLSExport exportType, Cage cage, Spot spot, XLSResults results) {
+		results.setDataValues(null);
+		List<Column> list = columns.get(exportType);
+		if (list == null) {
+			list = new ArrayList<Column>();
+			columns.put(exportType, list);
+		}
+		list.add(new Column(cage, spot, results));
+	}
+
+	public List<Column> getColumns(EnumXLSExport exportType) {
+		List<Column> list = columns.get(exportType);
+		return list != null ? list : Collections.<Column>emptyList();
+	}
+
+	public int getColumnCount() {
+		int count = 0;
+		for (List<Column> list : columns.values())
+			count += list.size();
+		return count;
+	}
+}
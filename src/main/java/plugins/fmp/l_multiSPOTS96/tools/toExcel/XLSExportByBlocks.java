@@ -0,0 +1,175 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.poi.ss.util.CellReference;
+
+import icy.gui.frame.progress.ProgressFrame;
+import icy.system.thread.Processor;
+import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentLoader;
+import plugins.fmp.l_multiSPOTS96.experiment.LazyExperiment;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelExportException;
+
+/**
+ * Excel export splitting the export of an experiment into
+ * {@link #prepareExperimentBlock} (load and compute the columns) and
+ * {@link #writeExperimentBlock} (write them).
+ * 
+ * <p>
+ * The experiments are exported by a pipeline: a pool of workers prepares the
+ * experiments in parallel while the calling thread, the only one touching the
+ * workbook, writes the blocks in the order of the experiments. The output is
+ * the same as with the serial export of {@link XLSExport}.
+ */
+public abstract class XLSExportByBlocks extends XLSExport {
+
+	// Parallel preparation of the experiments
+	protected int nPreparationThreads = ExperimentLoader.DEFAULT_IO_THREADS;
+
+	/**
+	 * Exports the experiments by blocks.
+	 * 
+	 * @throws ExcelExportException If export execution fails
+	 */
+	@Override
+	protected void executeExport() throws ExcelExportException {
+		executeBlockExport();
+	}
+
+	/**
+	 * The measures are loaded by the workers, when needed.
+	 */
+	@Override
+	protected boolean loadsMeasuresPerExperiment() {
+		return true;
+	}
+
+	/**
+	 * Executes the export with a pool of workers preparing the experiments and the
+	 * current thread writing them, in order, to the workbook. At most two blocks
+	 * per worker are waiting to be written, which bounds the memory used.
+	 * 
+	 * @throws ExcelExportException If export execution fails
+	 */
+	protected void executeBlockExport() throws ExcelExportException {
+		int nbexpts = expList.getItemCount();
+		ProgressFrame progress = new ProgressFrame(ExcelExportConstants.DEFAULT_PROGRESS_TITLE);
+
+		// the series identifiers depend on the order of the experiments: assign them
+		// before the preparation starts
+		List<Experiment> experiments = new ArrayList<Experiment>();
+		List<String> seriesIdentifiers = new ArrayList<String>();
+		for (int index = options.experimentIndexFirst; index <= options.experimentIndexLast; index++) {
+			Experiment exp = expList.getItemAtNoLoad(index);
+			if (exp == null || shouldSkipExperiment(exp))
+				continue;
+			seriesIdentifiers.add(CellReference.convertNumToColString(experiments.size()));
+			experiments.add(exp);
+		}
+
+		int nThreads = Math.max(1, Math.min(nPreparationThreads, experiments.size()));
+		Processor processor = new Processor(nThreads);
+		processor.setThreadName("prepareExcelExport");
+		processor.setPriority(Processor.NORM_PRIORITY);
+		List<Future<XLSExportBlock>> futures = new ArrayList<Future<XLSExportBlock>>(experiments.size());
+		int window = 2 * nThreads;
+
+		try {
+			progress.setLength(experiments.size());
+			int column = 1;
+			int nSubmitted = 0;
+
+			for (int i = 0; i < experiments.size(); i++) {
+				while (nSubmitted < experiments.size() && nSubmitted < i + window) {
+					futures.add(processor.submit(
+							createPreparationTask(experiments.get(nSubmitted), seriesIdentifiers.get(nSubmitted))));
+					nSubmitted++;
+				}
+
+				XLSExportBlock block = futures.get(i).get();
+				futures.set(i, null);
+				progress.setMessage("Export experiment " + (i + 1) + " of " + experiments.size() + " (" + nbexpts
+						+ " in list)");
+				column = writeExperimentBlock(block, column);
+				progress.incPosition();
+			}
+
+			progress.setMessage(ExcelExportConstants.SAVE_PROGRESS_MESSAGE);
+
+		} catch (ExecutionException e) {
+			throw new ExcelExportException("Experiment preparation failed", "execute_block_export", "prepare_block",
+					e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExcelExportException("Export interrupted", "execute_block_export", "export_loop", e);
+		} catch (ExcelExportException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ExcelExportException("Export execution failed", "execute_block_export", "export_loop", e);
+		} finally {
+			for (Future<XLSExportBlock> future : futures) {
+				if (future != null)
+					future.cancel(false);
+			}
+			processor.shutdown();
+			progress.close();
+		}
+	}
+
+	private Callable<XLSExportBlock> createPreparationTask(final Experiment exp, final String charSeries) {
+		return new Callable<XLSExportBlock>() {
+			@Override
+			public XLSExportBlock call() throws Exception {
+				// the experiment must not be evicted while its columns are computed
+				LazyExperiment lazyExp = exp instanceof LazyExperiment ? (LazyExperiment) exp : null;
+				if (lazyExp != null) {
+					lazyExp.pin();
+					lazyExp.loadIfNeeded();
+				}
+				try {
+					return prepareExperimentBlock(exp, charSeries);
+				} finally {
+					if (lazyExp != null)
+						lazyExp.unpin();
+				}
+			}
+		};
+	}
+
+	public int getNumberOfPreparationThreads() {
+		return nPreparationThreads;
+	}
+
+	public void setNumberOfPreparationThreads(int nThreads) {
+		this.nPreparationThreads = Math.max(1, nThreads);
+	}
+
+	/**
+	 * Loads and computes the columns of an experiment. Called from a worker thread:
+	 * must not access the workbook nor modify the shared export options.
+	 * 
+	 * @param exp        The experiment to export, with its cages loaded; the
+	 *                   measures are loaded by this method if it needs them
+	 * @param charSeries The series identifier
+	 * @return The columns of the experiment
+	 * @throws ExcelExportException If the data cannot be prepared
+	 */
+	protected abstract XLSExportBlock prepareExperimentBlock(Experiment exp, String charSeries)
+			throws ExcelExportException;
+
+	/**
+	 * Writes the columns of an experiment to the workbook. Called from the thread
+	 * running the export, in the order of the experiments.
+	 * 
+	 * @param block       The prepared columns
+	 * @param startColumn The starting column for export
+	 * @return The next available column
+	 * @throws ExcelExportException If export fails
+	 */
+	protected abstract int writeExperimentBlock(XLSExportBlock block, int startColumn) throws ExcelExportException;
+}
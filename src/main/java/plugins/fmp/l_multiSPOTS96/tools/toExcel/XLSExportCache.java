@@ -0,0 +1,258 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentProperties;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotsMeasuresStore;
+
+/**
+ * Values computed by an export for one experiment, saved in its results
+ * directory and reused by the next exports.
+ *
+ * <p>
+ * The cache is valid as long as its key is unchanged. The key describes all
+ * that the values depend on: the state of the measures files (see
+ * {@link SpotsMeasuresStore#getMeasuresFilesState}), the descriptors of the
+ * cages and spots as loaded, the stimuli of the experiment, its time bins and
+ * the export options used to compute the values. Options that only change the
+ * layout of the workbook (transpose, time unit, sheets) are not part of it.
+ * </p>
+ *
+ * <p>
+ * Each series of values is stored under an identifier chosen by the exporter
+ * (see {@link #getSeriesId}). The file is binary: a header with the key, then
+ * the series as raw doubles.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class XLSExportCache {
+
+	private static final Logger LOGGER = Logger.getLogger(XLSExportCache.class.getName());
+
+	// === CONSTANTS ===
+	private static final String CACHE_PREFIX = "MS96_exportCache_";
+	private static final String CACHE_SUFFIX = ".bin";
+	private static final int CACHE_MAGIC = 0x4D533945; // "MS9E"
+	private static final int CACHE_VERSION = 1;
+	private static final String KEY_SEPARATOR = "|";
+
+	// === FIELDS ===
+	private final String name;
+	private final String key;
+	private final Map<String, double[]> series = new HashMap<String, double[]>();
+
+	/**
+	 * @param name The name of the cache, one per exporter
+	 * @param key  The key built by {@link #buildKey}
+	 */
+	public XLSExportCache(String name, String key) {
+		this.name = name;
+		this.key = key;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public double[] get(String seriesId) {
+		return series.get(seriesId);
+	}
+
+	public void put(String seriesId, double[] values) {
+		if (values != null)
+			series.put(seriesId, values);
+	}
+
+	public boolean contains(String seriesId) {
+		return series.containsKey(seriesId);
+	}
+
+	public int size() {
+		return series.size();
+	}
+
+	public static String getSeriesId(EnumXLSExport exportType, int cageIndex, String item) {
+		return exportType + KEY_SEPARATOR + cageIndex + KEY_SEPARATOR + item;
+	}
+
+	// === KEY ===
+
+	/**
+	 * Builds the key of the values exported from an experiment whose cages are
+	 * loaded.
+	 *
+	 * @param exp           The experiment
+	 * @param options       The export options
+	 * @param nOutputFrames The number of output bins of the experiment
+	 * @return the key, or null if the measures have never been saved
+	 */
+	public static String buildKey(Experiment exp, XLSExportOptions options, int nOutputFrames) {
+		String measuresState = SpotsMeasuresStore.getMeasuresFilesState(exp.getResultsDirectory());
+		if (measuresState == null)
+			return null;
+
+		StringBuilder key = new StringBuilder(256);
+		append(key, measuresState);
+		append(key, exp.seqCamData.getTimeManager().getBinDurationMs());
+		append(key, nOutputFrames);
+
+		append(key, options.buildExcelStepMs);
+		append(key, options.binStatistic);
+		append(key, options.relativeToT0);
+		append(key, options.onlyalive);
+		append(key, options.fixedIntervals);
+		append(key, options.startAll_Ms);
+		append(key, options.endAll_Ms);
+
+		ExperimentProperties properties = exp.getProperties();
+		append(key, properties.getField_stim1());
+		append(key, properties.getField_conc1());
+		append(key, properties.getField_stim2());
+		append(key, properties.getField_conc2());
+
+		for (Cage cage : exp.cagesArray.cagesList) {
+			append(key, cage.getProperties().getCageID());
+			append(key, cage.getProperties().getCageNFlies());
+			for (Spot spot : cage.spotsArray.getSpotsList()) {
+				append(key, spot.getProperties().getName());
+				append(key, spot.getProperties().getStimulus());
+				append(key, spot.getProperties().getConcentration());
+			}
+		}
+		return key.toString();
+	}
+
+	private static void append(StringBuilder key, Object value) {
+		key.append(value).append(KEY_SEPARATOR);
+	}
+
+	// === FILE ===
+
+	private static Path getPath(String directory, String name) {
+		return Paths.get(directory, CACHE_PREFIX + name + CACHE_SUFFIX);
+	}
+
+	/**
+	 * Reads the cache saved in a results directory.
+	 *
+	 * @param directory The results directory
+	 * @param name      The name of the cache
+	 * @param key       The expected key
+	 * @return the cache, or null if there is none or if it was computed with a
+	 *         different key
+	 */
+	public static XLSExportCache load(String directory, String name, String key) {
+		if (directory == null || key == null)
+			return null;
+		Path path = getPath(directory, name);
+		if (!Files.exists(path))
+			return null;
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+			if (in.readInt() != CACHE_MAGIC || in.readInt() != CACHE_VERSION)
+				return null;
+			byte[] keyBytes = new byte[in.readInt()];
+			in.readFully(keyBytes);
+			if (!key.equals(new String(keyBytes, StandardCharsets.UTF_8)))
+				return null;
+
+			XLSExportCache cache = new XLSExportCache(name, key);
+			int nSeries = in.readInt();
+			byte[] buffer = new byte[0];
+			for (int i = 0; i < nSeries; i++) {
+				String seriesId = in.readUTF();
+				int length = in.readInt();
+				if (buffer.length < length * 8)
+					buffer = new byte[length * 8];
+				in.readFully(buffer, 0, length * 8);
+				double[] values = new double[length];
+				ByteBuffer.wrap(buffer, 0, length * 8).asDoubleBuffer().get(values);
+				cache.series.put(seriesId, values);
+			}
+			return cache;
+		} catch (IOException e) {
+			LOGGER.warning("Cannot read export cache " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Writes the cache to a results directory, replacing the previous one.
+	 *
+	 * @param directory The results directory
+	 * @return true if successful
+	 */
+	public boolean save(String directory) {
+		if (directory == null || key == null)
+			return false;
+		Path path = getPath(directory, name);
+		Path tempPath = Paths.get(path.toString() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(tempPath.toFile())))) {
+				out.writeInt(CACHE_MAGIC);
+				out.writeInt(CACHE_VERSION);
+				byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+				out.writeInt(keyBytes.length);
+				out.write(keyBytes);
+
+				out.writeInt(series.size());
+				ByteBuffer buffer = ByteBuffer.allocate(0);
+				for (Map.Entry<String, double[]> entry : series.entrySet()) {
+					double[] values = entry.getValue();
+					out.writeUTF(entry.getKey());
+					out.writeInt(values.length);
+					if (buffer.capacity() < values.length * 8)
+						buffer = ByteBuffer.allocate(values.length * 8);
+					buffer.clear();
+					buffer.asDoubleBuffer().put(values);
+					out.write(buffer.array(), 0, values.length * 8);
+				}
+			}
+			Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			LOGGER.warning("Cannot write export cache " + path + ": " + e.getMessage());
+			try {
+				Files.deleteIfExists(tempPath);
+			} catch (IOException e1) {
+				// nothing left to do
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * Removes the cache from a results directory.
+	 */
+	public static boolean delete(String directory, String name) {
+		if (directory == null)
+			return false;
+		try {
+			return Files.deleteIfExists(getPath(directory, name));
+		} catch (IOException e) {
+			LOGGER.warning("Cannot delete export cache in " + directory + ": " + e.getMessage());
+			return false;
+		}
+	}
+}
@@ -10,23 +10,36 @@ import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import icy.gui.frame.progress.ProgressFrame;
 import plugins.fmp.l_multiSPOTS96.experiment.Experiment;
+import plugins.fmp.l_multiSPOTS96.experiment.ExperimentPinScope;
 import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
-import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelDataException;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelExportException;
 import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelResourceException;
 
 public class XLSExportMeasuresCagesAsQuery extends XLSExportMeasuresFromSpot {
+	private static final String EXPORT_CACHE_NAME = "query";
+	// series computed for each cage: PI and SUM are computed from the spots of stim1 and stim2
+	private static final String[] CAGE_SERIES = { "stim1", "stim2", "SUM", "PI" };
+	private static final String CAGE_COUNTS = "counts";
+
 	ArrayList<EnumXLS_QueryColumnHeader> headers = new ArrayList<EnumXLS_QueryColumnHeader>();
 
+	// export cache of the current experiment: read, or being filled
+	private XLSExportCache savedCache = null;
+	private XLSExportCache newCache = null;
+	private boolean measuresLoaded = false;
+	private XLSSpotGroups spotGroups = null;
+
 	public void exportQToFile(String filename, XLSExportOptions options) throws ExcelExportException {
 		System.out.println("XLSExportBase:exportQToFile() - " + ExcelExportConstants.EXPORT_START_MESSAGE);
 
 		this.options = options;
 		this.expList = options.expList;
 
-		try (ExcelResourceManager resourceManager = new ExcelResourceManager(filename)) {
+		try (ExcelResourceManager resourceManager = new ExcelResourceManager(filename);
+				ExperimentPinScope pins = new ExperimentPinScope()) {
 			this.resourceManager = resourceManager;
+			this.pinnedExperiments = pins;
 			this.redCellStyle = resourceManager.getRedCellStyle();
 			this.blueCellStyle = resourceManager.getBlueCellStyle();
 
@@ -43,6 +56,7 @@ public class XLSExportMeasuresCagesAsQuery extends XLSExportMeasuresFromSpot {
 		} catch (Exception e) {
 			throw new ExcelExportException("Unexpected error during export", "export_to_file", filename, e);
 		} finally {
+			pinnedExperiments = null;
 			cleanup();
 		}
 
@@ -65,12 +79,13 @@ public class XLSExportMeasuresCagesAsQuery extends XLSExportMeasuresFromSpot {
 			int iSeries = 0;
 
 			for (int index = options.experimentIndexFirst; index <= options.experimentIndexLast; index++) {
-				Experiment exp = expList.getItemAt(index);
-				exp.load_MS96_spotsMeasures();
+				Experiment exp = expList.getItemAt(index, pinnedExperiments);
+				openExportCache(exp);
 				progress.setMessage("Export experiment " + (index + 1) + " of " + nbexpts);
 				System.out.println("Export experiment " + (index + 1) + " of " + nbexpts);
 				String seriesIdentifier = CellReference.convertNumToColString(iSeries);
 				column = exportExperimentData(exp, options, column, seriesIdentifier);
+				closeExportCache(exp);
 
 				iSeries++;
 				progress.incPosition();
@@ -95,7 +110,8 @@ public class XLSExportMeasuresCagesAsQuery extends XLSExportMeasuresFromSpot {
 	 */
 	protected void prepareQExperiments() throws ExcelDataException {
 		try {
-			expList.loadListOfMeasuresFromAllExperiments(true, options.onlyalive);
+			// the measures are loaded by executeExportQ(), when they are not in the cache
+			expList.loadListOfMeasuresFromAllExperiments(false, options.onlyalive, pinnedExperiments);
 //			expList.chainExperimentsUsingKymoIndexes(options.collateSeries);
 //			expList.setFirstImageForAllExperiments(options.collateSeries);
 //			expAll = expList.get_MsTime_of_StartAndEnd_AllExperiments(options);
@@ -182,7 +198,8 @@ public class XLSExportMeasuresCagesAsQuery extends XLSExportMeasuresFromSpot {
 		String stim2 = exp.getProperties().getField_stim2();
 		String conc2 = exp.getProperties().getField_conc2();
 
-		for (Cage cage : exp.cagesArray.cagesList) {
+		for (int cageIndex = 0; cageIndex < exp.cagesArray.cagesList.size(); cageIndex++) {
+			Cage cage = exp.cagesArray.cagesList.get(cageIndex);
 
 			if (cage.spotsArray.getSpotsList().size() == 0)
 				continue;
@@ -190,27 +207,14 @@ public class XLSExportMeasuresCagesAsQuery extends XLSExportMeasuresFromSpot {
 			if (xlsExportOptions.onlyalive && cage.getProperties().getCageNFlies() < 1)
 				continue;
 
-			double scalingFactorToPhysicalUnits = cage.spotsArray.getScalingFactorToPhysicalUnits(xlsExportType);
-
-			Spot spot1 = cage.combineSpotsWithSameStimConc(stim1, conc1);
-			XLSResults xlsStim1 = getResultForCage(exp, cage, spot1, scalingFactorToPhysicalUnits, xlsExportOptions,
-					xlsExportType);
-			if (spot1 != null)
-				cage.getProperties().setCountSpotsStim1(spot1.getProperties().getCountAggregatedSpots());
-
-			Spot spot2 = cage.combineSpotsWithSameStimConc(stim2, conc2);
-			XLSResults xlsStim2 = getResultForCage(exp, cage, spot2, scalingFactorToPhysicalUnits, xlsExportOptions,
-					xlsExportType);
-			if (spot2 != null)
-				cage.getProperties().setCountSpotsStim2(spot2.getProperties().getCountAggregatedSpots());
-
-			Spot spotSUM = cage.createSpotSUM(spot1, spot2);
-			XLSResults xlsSUM = getResultForCage(exp, cage, spotSUM, scalingFactorToPhysicalUnits, xlsExportOptions,
-					xlsExportType);
-
-			Spot spotPI = cage.createSpotPI(spot1, spot2);
-			XLSResults xlsPI = getResultForCage(exp, cage, spotPI, scalingFactorToPhysicalUnits, xlsExportOptions,
-					xlsExportType);
+			XLSResults[] cageResults = getCachedCageResults(cage, cageIndex, xlsExportType);
+			if (cageResults == null)
+				cageResults = computeCageResults(exp, cage, cageIndex, stim1, conc1, stim2, conc2, xlsExportOptions,
+						xlsExportType);
+			XLSResults xlsStim1 = cageResults[0];
+			XLSResults xlsStim2 = cageResults[1];
+			XLSResults xlsSUM = cageResults[2];
+			XLSResults xlsPI = cageResults[3];
 
 			int tStart = 0;
 			int tEnd = 0;
@@ -236,14 +240,123 @@ public class XLSExportMeasuresCagesAsQuery extends XLSExportMeasuresFromSpot {
 		return pt.x;
 	}
 
-	XLSResults getResultForCage(Experiment exp, Cage cage, Spot spot, double scaling, XLSExportOptions xlsExportOptions,
-			EnumXLSExport xlsExportType) {
-		XLSResults xlsResults = null;
-		if (spot != null) {
-			xlsResults = getXLSResultsDataValuesFromSpotMeasures(exp, cage, spot, xlsExportOptions);
-			xlsResults.transferDataValuesToValuesOut(scaling, xlsExportType);
+	/**
+	 * Computes the series of a cage, in the order of {@link #CAGE_SERIES}, from
+	 * its spots grouped by stimulus (see {@link XLSSpotGroups}); the series are
+	 * added to the cache being filled.
+	 */
+	private XLSResults[] computeCageResults(Experiment exp, Cage cage, int cageIndex, String stim1, String conc1,
+			String stim2, String conc2, XLSExportOptions xlsExportOptions, EnumXLSExport xlsExportType) {
+		if (!measuresLoaded) {
+			exp.load_MS96_spotsMeasures();
+			measuresLoaded = true;
+		}
+		if (spotGroups == null)
+			spotGroups = new XLSSpotGroups(exp.cagesArray.cagesList);
+
+		long binData = exp.seqCamData.getTimeManager().getBinDurationMs();
+		long binExcel = xlsExportOptions.buildExcelStepMs;
+		EnumBinStatistic statistic = xlsExportOptions.binStatistic;
+		double[][] series = {
+				spotGroups.getGroupSeries(cageIndex, stim1, conc1, xlsExportType, binData, binExcel, statistic),
+				spotGroups.getGroupSeries(cageIndex, stim2, conc2, xlsExportType, binData, binExcel, statistic),
+				spotGroups.getSumSeries(cageIndex, stim1, conc1, stim2, conc2, xlsExportType, binData, binExcel,
+						statistic),
+				spotGroups.getPISeries(cageIndex, stim1, conc1, stim2, conc2, xlsExportType, binData, binExcel,
+						statistic) };
+
+		double[] counts = { Double.NaN, Double.NaN };
+		int nSpots1 = spotGroups.getNSpots(cageIndex, stim1, conc1);
+		if (nSpots1 > 0) {
+			cage.getProperties().setCountSpotsStim1(nSpots1);
+			counts[0] = nSpots1;
+		}
+		int nSpots2 = spotGroups.getNSpots(cageIndex, stim2, conc2);
+		if (nSpots2 > 0) {
+			cage.getProperties().setCountSpotsStim2(nSpots2);
+			counts[1] = nSpots2;
+		}
+
+		int nOutputFrames = getNOutputFrames(exp, xlsExportOptions);
+		double scalingFactorToPhysicalUnits = cage.spotsArray.getScalingFactorToPhysicalUnits(xlsExportType);
+		XLSResults[] cageResults = new XLSResults[CAGE_SERIES.length];
+		for (int i = 0; i < CAGE_SERIES.length; i++) {
+			if (series[i] == null)
+				continue;
+			cageResults[i] = createCageResults(cage, i, xlsExportType);
+			cageResults[i].initValuesOutArray(nOutputFrames, Double.NaN);
+			cageResults[i].getDataFromValues(series[i], xlsExportOptions);
+			cageResults[i].transferDataValuesToValuesOut(scalingFactorToPhysicalUnits, xlsExportType);
+			cageResults[i].setDataValues(null);
+		}
+
+		if (newCache != null) {
+			for (int i = 0; i < CAGE_SERIES.length; i++) {
+				if (cageResults[i] != null)
+					newCache.put(XLSExportCache.getSeriesId(xlsExportType, cageIndex, CAGE_SERIES[i]),
+							cageResults[i].getValuesOut());
+			}
+			newCache.put(XLSExportCache.getSeriesId(xlsExportType, cageIndex, CAGE_COUNTS), counts);
 		}
-		return xlsResults;
+		return cageResults;
+	}
+
+	/**
+	 * Reads the series of a cage from the cache of the experiment.
+	 * 
+	 * @return the series in the order of {@link #CAGE_SERIES} (null for a missing
+	 *         stimulus), or null if the cage is not in the cache
+	 */
+	private XLSResults[] getCachedCageResults(Cage cage, int cageIndex, EnumXLSExport xlsExportType) {
+		if (savedCache == null)
+			return null;
+		double[] counts = savedCache.get(XLSExportCache.getSeriesId(xlsExportType, cageIndex, CAGE_COUNTS));
+		if (counts == null)
+			return null;
+
+		XLSResults[] cageResults = new XLSResults[CAGE_SERIES.length];
+		for (int i = 0; i < CAGE_SERIES.length; i++) {
+			double[] values = savedCache.get(XLSExportCache.getSeriesId(xlsExportType, cageIndex, CAGE_SERIES[i]));
+			if (values == null)
+				continue;
+			cageResults[i] = createCageResults(cage, i, xlsExportType);
+			cageResults[i].setValuesOut(values);
+		}
+		if (!Double.isNaN(counts[0]))
+			cage.getProperties().setCountSpotsStim1((int) counts[0]);
+		if (!Double.isNaN(counts[1]))
+			cage.getProperties().setCountSpotsStim2((int) counts[1]);
+		return cageResults;
+	}
+
+	private XLSResults createCageResults(Cage cage, int series, EnumXLSExport xlsExportType) {
+		return new XLSResults(CAGE_SERIES[series], cage.getProperties().getCageNFlies(),
+				cage.getProperties().getCageID(), cage.getProperties().getArrayIndex(), xlsExportType);
+	}
+
+	/**
+	 * Reads the cache of an experiment if it is up to date, and starts a new one
+	 * otherwise. The measures are loaded only if a cage is missing from the
+	 * cache.
+	 */
+	private void openExportCache(Experiment exp) {
+		savedCache = null;
+		newCache = null;
+		measuresLoaded = false;
+		spotGroups = null;
+		if (!options.useExportCache)
+			return;
+		String cacheKey = XLSExportCache.buildKey(exp, options, getNOutputFrames(exp, options));
+		savedCache = XLSExportCache.load(exp.getResultsDirectory(), EXPORT_CACHE_NAME, cacheKey);
+		if (savedCache == null && cacheKey != null)
+			newCache = new XLSExportCache(EXPORT_CACHE_NAME, cacheKey);
+	}
+
+	private void closeExportCache(Experiment exp) {
+		if (newCache != null)
+			newCache.save(exp.getResultsDirectory());
+		savedCache = null;
+		newCache = null;
 	}
 
 	void writeCageProperties(SXSSFSheet sheet, Point pt, Experiment exp, String charSeries, Cage cage,
@@ -1,6 +1,7 @@
 package plugins.fmp.l_multiSPOTS96.tools.toExcel;
 
 import java.awt.Point;
+import java.util.List;
 
 import org.apache.poi.xssf.streaming.SXSSFSheet;
 
@@ -15,8 +16,15 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelResourceExceptio
 /**
  * Excel export implementation for spot measurements. Uses the Template Method
  * pattern for structured export operations.
+ * 
+ * <p>
+ * The spot measures of the experiments are resampled in parallel (see
+ * {@link #prepareExperimentBlock}) and written to the workbook by a single
+ * thread (see {@link #writeExperimentBlock}).
  */
-public class XLSExportMeasuresFromSpot extends XLSExport {
+public class XLSExportMeasuresFromSpot extends XLSExportByBlocks {
+
+	private static final String EXPORT_CACHE_NAME = "spots";
 
 	/**
 	 * Exports spot data for a single experiment.
@@ -32,15 +40,169 @@ public class XLSExportMeasuresFromSpot extends XLSExport {
 			String charSeries) throws ExcelExportException {
 		int column = startColumn;
 
-		if (options.spotAreas) {
-			column = getSpotDataAndExport(exp, column, charSeries, EnumXLSExport.AREA_SUM);
-			getSpotDataAndExport(exp, column, charSeries, EnumXLSExport.AREA_FLYPRESENT);
-			getSpotDataAndExport(exp, column, charSeries, EnumXLSExport.AREA_SUMCLEAN);
+		List<EnumXLSExport> exportTypes = options.getSpotMeasures();
+		for (int i = 0; i < exportTypes.size(); i++) {
+			int nextColumn = getSpotDataAndExport(exp, column, charSeries, exportTypes.get(i));
+			if (i == 0)
+				column = nextColumn;
 		}
 
 		return column;
 	}
 
+	/**
+	 * Computes the columns of the spot areas of an experiment. Each export type
+	 * uses its own copy of the options, the shared options being read by the
+	 * writer thread.
+	 * 
+	 * <p>
+	 * With {@link XLSExportOptions#useExportCache}, the columns are read from the
+	 * cache of the experiment when it is up to date, without loading the
+	 * measures; otherwise they are computed and the cache is rewritten.
+	 * </p>
+	 * 
+	 * @param exp        The experiment to export
+	 * @param charSeries The series identifier
+	 * @return The columns of the experiment
+	 */
+	@Override
+	protected XLSExportBlock prepareExperimentBlock(Experiment exp, String charSeries) throws ExcelExportException {
+		XLSExportBlock block = new XLSExportBlock(exp, charSeries);
+		List<EnumXLSExport> exportTypes = options.getSpotMeasures();
+		if (exportTypes.isEmpty())
+			return block;
+
+		XLSExportCache cache = null;
+		if (options.useExportCache) {
+			String cacheKey = XLSExportCache.buildKey(exp, options, getNOutputFrames(exp, options));
+			XLSExportCache savedCache = XLSExportCache.load(exp.getResultsDirectory(), EXPORT_CACHE_NAME, cacheKey);
+			if (savedCache != null && fillBlockFromCache(block, exp, savedCache, exportTypes))
+				return block;
+			block = new XLSExportBlock(exp, charSeries);
+			if (cacheKey != null)
+				cache = new XLSExportCache(EXPORT_CACHE_NAME, cacheKey);
+		}
+
+		exp.load_MS96_spotsMeasures();
+		for (EnumXLSExport exportType : exportTypes) {
+			XLSExportOptions typeOptions = new XLSExportOptions();
+			typeOptions.copy(options);
+			typeOptions.exportType = exportType;
+
+			for (int cageIndex = 0; cageIndex < exp.cagesArray.cagesList.size(); cageIndex++) {
+				Cage cage = exp.cagesArray.cagesList.get(cageIndex);
+				double scalingFactorToPhysicalUnits = cage.spotsArray.getScalingFactorToPhysicalUnits(exportType);
+				cage.updateSpotsStimulus_i();
+
+				for (int spotIndex = 0; spotIndex < cage.spotsArray.getSpotsList().size(); spotIndex++) {
+					Spot spot = cage.spotsArray.getSpotsList().get(spotIndex);
+					XLSResults xlsResults = getXLSResultsDataValuesFromSpotMeasures(exp, cage, spot, typeOptions);
+					xlsResults.transferDataValuesToValuesOut(scalingFactorToPhysicalUnits, exportType);
+					if (cache != null)
+						cache.put(XLSExportCache.getSeriesId(exportType, cageIndex, Integer.toString(spotIndex)),
+								xlsResults.getValuesOut());
+					block.addColumn(exportType, cage, spot, xlsResults);
+				}
+			}
+		}
+
+		if (cache != null)
+			cache.save(exp.getResultsDirectory());
+		return block;
+	}
+
+	/**
+	 * Fills the columns of an experiment with the values saved in its cache.
+	 * 
+	 * @return false if a column is missing from the cache
+	 */
+	private boolean fillBlockFromCache(XLSExportBlock block, Experiment exp, XLSExportCache cache,
+			List<EnumXLSExport> exportTypes) {
+		for (EnumXLSExport exportType : exportTypes) {
+			for (int cageIndex = 0; cageIndex < exp.cagesArray.cagesList.size(); cageIndex++) {
+				Cage cage = exp.cagesArray.cagesList.get(cageIndex);
+				cage.updateSpotsStimulus_i();
+
+				for (int spotIndex = 0; spotIndex < cage.spotsArray.getSpotsList().size(); spotIndex++) {
+					Spot spot = cage.spotsArray.getSpotsList().get(spotIndex);
+					double[] values = cache
+							.get(XLSExportCache.getSeriesId(exportType, cageIndex, Integer.toString(spotIndex)));
+					if (values == null)
+						return false;
+					XLSResults xlsResults = new XLSResults(cage.getProperties(), spot.getProperties(), 0);
+					xlsResults.setValuesOut(values);
+					block.addColumn(exportType, cage, spot, xlsResults);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the columns prepared by {@link #prepareExperimentBlock}; the sheets
+	 * and columns are the same as those of {@link #exportExperimentData}.
+	 * 
+	 * @param block       The prepared columns
+	 * @param startColumn The starting column for export
+	 * @return The next available column
+	 * @throws ExcelExportException If export fails
+	 */
+	@Override
+	protected int writeExperimentBlock(XLSExportBlock block, int startColumn) throws ExcelExportException {
+		int column = startColumn;
+
+		List<EnumXLSExport> exportTypes = options.getSpotMeasures();
+		for (int i = 0; i < exportTypes.size(); i++) {
+			int nextColumn = writeBlockAndExport(block, column, exportTypes.get(i));
+			if (i == 0)
+				column = nextColumn;
+		}
+
+		return column;
+	}
+
+	/**
+	 * Writes the prepared columns of an export type.
+	 * 
+	 * @param block      The prepared columns
+	 * @param col0       The starting column
+	 * @param exportType The export type
+	 * @return The next available column
+	 * @throws ExcelExportException If export fails
+	 */
+	protected int writeBlockAndExport(XLSExportBlock block, int col0, EnumXLSExport exportType)
+			throws ExcelExportException {
+		try {
+			options.exportType = exportType;
+			SXSSFSheet sheet = getSheet(exportType.toString(), exportType);
+			int colmax = writeBlockToSheet(block, sheet, exportType, col0);
+
+			if (options.onlyalive) {
+				sheet = getSheet(exportType.toString() + ExcelExportConstants.ALIVE_SHEET_SUFFIX, exportType);
+				writeBlockToSheet(block, sheet, exportType, col0);
+			}
+
+			return colmax;
+		} catch (ExcelResourceException e) {
+			throw new ExcelExportException("Failed to export spot data", "write_block_and_export",
+					exportType.toString(), e);
+		}
+	}
+
+	private int writeBlockToSheet(XLSExportBlock block, SXSSFSheet sheet, EnumXLSExport xlsExportType, int col0) {
+		Point pt = new Point(col0, 0);
+		pt = writeExperimentSeparator(sheet, pt);
+
+		for (XLSExportBlock.Column column : block.getColumns(xlsExportType)) {
+			pt.y = 0;
+			pt = writeExperimentSpotInfos(sheet, pt, block.getExperiment(), block.getCharSeries(), column.getCage(),
+					column.getSpot(), xlsExportType);
+			writeXLSResult(sheet, pt, column.getResults());
+			pt.x++;
+		}
+		return pt.x;
+	}
+
 	/**
 	 * Exports spot data for a specific export type.
 	 * 
@@ -1,8 +1,6 @@
 package plugins.fmp.l_multiSPOTS96.tools.toExcel;
 
 import java.awt.Point;
-import java.util.Iterator;
-import java.util.List;
 
 import org.apache.poi.xssf.streaming.SXSSFSheet;
 
@@ -21,7 +19,7 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelResourceExceptio
  * <ul>
  * <li>Processing one experiment at a time instead of batching all data</li>
  * <li>Using streaming data access to avoid large intermediate collections</li>
- * <li>Employing reusable buffers to minimize object creation</li>
+ * <li>Handling spot data as primitive arrays instead of boxed values</li>
  * <li>Writing directly to Excel without intermediate data structures</li>
  * <li>Implementing lazy loading of spot data</li>
  * </ul>
@@ -36,22 +34,18 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelResourceExceptio
  */
 public class XLSExportMeasuresFromSpotOptimized extends XLSExport {
 
-    // Reusable buffers to minimize object creation
-    private final SpotDataBuffer spotDataBuffer;
-    private final ExcelRowBuffer excelRowBuffer;
-    
     // Memory management constants
-    private static final int BUFFER_SIZE = 1024;
     private static final int GC_INTERVAL = 100; // Force GC every 100 spots
     
     private int processedSpots = 0;
 
+    // Bin duration of the measures of the experiment being exported
+    private long binDataMs = 1;
+
     /**
      * Creates a new optimized Excel export instance.
      */
     public XLSExportMeasuresFromSpotOptimized() {
-        this.spotDataBuffer = new SpotDataBuffer(BUFFER_SIZE);
-        this.excelRowBuffer = new ExcelRowBuffer(BUFFER_SIZE);
     }
 
     /**
@@ -118,6 +112,7 @@ public class XLSExportMeasuresFromSpotOptimized extends XLSExport {
      */
     protected int writeExperimentDataToSheetStreaming(Experiment exp, SXSSFSheet sheet, EnumXLSExport xlsExportType,
             int col0, String charSeries) {
+        binDataMs = exp.seqCamData.getTimeManager().getBinDurationMs();
         Point pt = new Point(col0, 0);
         pt = writeExperimentSeparator(sheet, pt);
 
@@ -156,45 +151,32 @@ public class XLSExportMeasuresFromSpotOptimized extends XLSExport {
     protected void writeSpotDataDirectly(SXSSFSheet sheet, Point pt, Spot spot, 
             double scalingFactorToPhysicalUnits, EnumXLSExport xlsExportType) {
         
-        // Get data directly from spot using streaming approach
-        List<Double> dataList = spot.getMeasuresForExcelPass1(xlsExportType, 
-                getBinData(spot), getBinExcel());
+        // Get data directly from spot as a primitive array
+        double[] data = spot.getMeasuresForExcelPass1(xlsExportType, 
+                getBinData(spot), getBinExcel(), options.binStatistic);
         
-        if (dataList == null || dataList.isEmpty()) {
+        if (data.length == 0) {
             return;
         }
 
         // Apply relative to T0 if needed
         if (options.relativeToT0 && xlsExportType != EnumXLSExport.AREA_FLYPRESENT) {
-            dataList = applyRelativeToMaximum(dataList);
+            applyRelativeToMaximum(data);
         }
 
-        // Write data directly to Excel row by row
-        int row = pt.y + getDescriptorRowCount();
-        Iterator<Double> dataIterator = dataList.iterator();
-        
-        while (dataIterator.hasNext() && row < excelRowBuffer.getMaxRows()) {
-            double value = dataIterator.next();
-            double scaledValue = value * scalingFactorToPhysicalUnits;
-            
-            excelRowBuffer.setValue(row, pt.x, scaledValue);
-            row++;
-        }
-        
-        // Flush buffer to Excel
-        excelRowBuffer.flushToSheet(sheet);
+        // Write data directly to Excel, one cell per value
+        XLSUtils.setValues(sheet, pt.x, pt.y, options.transpose, data, 0, data.length, 
+                scalingFactorToPhysicalUnits);
     }
 
     /**
      * Gets the bin data duration for the current experiment.
      * 
-     * @param spot The spot (used to get experiment context)
+     * @param spot The spot
      * @return The bin duration in milliseconds
      */
     private long getBinData(Spot spot) {
-        // This would need to be implemented based on the experiment context
-        // For now, using a default value - this should be extracted from the experiment
-        return 1000; // Default 1 second bin
+        return binDataMs;
     }
 
     /**
@@ -207,93 +189,22 @@ public class XLSExportMeasuresFromSpotOptimized extends XLSExport {
     }
 
     /**
-     * Applies relative to maximum calculation to a data list.
+     * Divides the data by its maximum, in place.
      * 
-     * @param dataList The data list to process
-     * @return The processed data list
+     * @param data The data values
      */
-    private List<Double> applyRelativeToMaximum(List<Double> dataList) {
-        if (dataList == null || dataList.isEmpty()) {
-            return dataList;
+    private void applyRelativeToMaximum(double[] data) {
+        double maximum = data[0];
+        for (double value : data) {
+            maximum = Math.max(maximum, value);
         }
 
-        double maximum = dataList.stream()
-                .mapToDouble(Double::doubleValue)
-                .max()
-                .orElse(1.0);
-
         if (maximum == 0.0) {
-            return dataList;
-        }
-
-        return dataList.stream()
-                .map(value -> value / maximum)
-                .collect(java.util.stream.Collectors.toList());
-    }
-
-    /**
-     * Reusable buffer for spot data to minimize object creation.
-     */
-    private static class SpotDataBuffer {
-        private final double[] buffer;
-        private final int size;
-
-        public SpotDataBuffer(int size) {
-            this.size = size;
-            this.buffer = new double[size];
-        }
-
-        public void clear() {
-            java.util.Arrays.fill(buffer, 0.0);
-        }
-
-        public double[] getBuffer() {
-            return buffer;
-        }
-
-        public int getSize() {
-            return size;
-        }
-    }
-
-    /**
-     * Reusable buffer for Excel row data to minimize object creation.
-     */
-    private static class ExcelRowBuffer {
-        private final double[][] buffer;
-        private final int maxRows;
-        private final int maxCols;
-        private int currentRow = 0;
-        private int currentCol = 0;
-
-        public ExcelRowBuffer(int size) {
-            this.maxRows = size;
-            this.maxCols = size;
-            this.buffer = new double[maxRows][maxCols];
-        }
-
-        public void setValue(int row, int col, double value) {
-            if (row < maxRows && col < maxCols) {
-                buffer[row][col] = value;
-            }
-        }
-
-        public void flushToSheet(SXSSFSheet sheet) {
-            // Implementation would write the buffer to the sheet
-            // This is a simplified version - actual implementation would use POI
-            clear();
-        }
-
-        public void clear() {
-            for (int i = 0; i < maxRows; i++) {
-                java.util.Arrays.fill(buffer[i], 0.0);
-            }
-            currentRow = 0;
-            currentCol = 0;
+            return;
         }
 
-        public int getMaxRows() {
-            return maxRows;
+        for (int i = 0; i < data.length; i++) {
+            data[i] /= maximum;
         }
     }
 
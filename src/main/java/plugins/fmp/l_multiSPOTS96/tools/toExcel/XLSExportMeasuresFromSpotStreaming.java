@@ -1,7 +1,6 @@
 package plugins.fmp.l_multiSPOTS96.tools.toExcel;
 
 import java.awt.Point;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -24,7 +23,7 @@ import plugins.fmp.l_multiSPOTS96.tools.toExcel.exceptions.ExcelResourceExceptio
  * <li><strong>Chunked Processing</strong>: Processes data in small chunks to limit memory usage</li>
  * <li><strong>Zero-Copy Operations</strong>: Minimizes data copying between operations</li>
  * <li><strong>Memory Pooling</strong>: Reuses objects to reduce garbage collection pressure</li>
- * <li><strong>Streaming Iterators</strong>: Uses iterators to process data without loading all into memory</li>
+ * <li><strong>Primitive Arrays</strong>: Spot data is handled as {@code double[]}, never as boxed values</li>
  * <li><strong>Direct Buffer Management</strong>: Manages memory buffers directly for optimal performance</li>
  * </ul>
  * 
@@ -40,9 +39,11 @@ public class XLSExportMeasuresFromSpotStreaming extends XLSExport {
 
     // Memory management constants
     private static final int CHUNK_SIZE = 512; // Process 512 spots at a time
-    private static final int BUFFER_SIZE = 2048; // Buffer size for data processing
     private static final int GC_INTERVAL = 50; // Force GC every 50 spots
     
+    // Bin duration of the measures of the experiment being exported
+    private long binDataMs = 1;
+
     // Progress tracking
     private final AtomicInteger processedSpots = new AtomicInteger(0);
     private final AtomicInteger totalSpots = new AtomicInteger(0);
@@ -52,14 +53,12 @@ public class XLSExportMeasuresFromSpotStreaming extends XLSExport {
     private final AtomicInteger memoryCheckInterval = new AtomicInteger(100); // Check memory every 100 spots
     
     // Memory pools for object reuse
-    private final DataChunkProcessor chunkProcessor;
     private final MemoryPool memoryPool;
 
     /**
      * Creates a new streaming Excel export instance.
      */
     public XLSExportMeasuresFromSpotStreaming() {
-        this.chunkProcessor = new DataChunkProcessor(CHUNK_SIZE, BUFFER_SIZE);
         this.memoryPool = new MemoryPool();
     }
 
@@ -132,6 +131,7 @@ public class XLSExportMeasuresFromSpotStreaming extends XLSExport {
      */
     protected int writeExperimentDataChunked(Experiment exp, SXSSFSheet sheet, EnumXLSExport xlsExportType,
             int col0, String charSeries) {
+        binDataMs = exp.seqCamData.getTimeManager().getBinDurationMs();
         Point pt = new Point(col0, 0);
         pt = writeExperimentSeparator(sheet, pt);
 
@@ -203,104 +203,78 @@ public class XLSExportMeasuresFromSpotStreaming extends XLSExport {
     protected void writeSpotDataStreaming(SXSSFSheet sheet, Point pt, Spot spot, 
             double scalingFactorToPhysicalUnits, EnumXLSExport xlsExportType) {
         
-        // Get data using streaming iterator
-        Iterator<Double> dataIterator = getSpotDataIterator(spot, xlsExportType);
+        // Get data as a primitive array (no boxing)
+        double[] data = getSpotData(spot, xlsExportType);
         
-        if (!dataIterator.hasNext()) {
+        if (data.length == 0) {
             return;
         }
 
         // Apply relative to T0 if needed
         if (options.relativeToT0 && xlsExportType != EnumXLSExport.AREA_FLYPRESENT) {
-            dataIterator = applyRelativeToMaximumStreaming(dataIterator);
+            applyRelativeToMaximum(data);
         }
 
-        // Write data directly to Excel using streaming
-        writeDataToExcelStreaming(sheet, pt, dataIterator, scalingFactorToPhysicalUnits);
+        // Write data directly to Excel
+        writeDataToExcelStreaming(sheet, pt, data, scalingFactorToPhysicalUnits);
     }
 
     /**
-     * Gets a streaming iterator for spot data.
+     * Gets the spot data, one value per Excel bin.
      * 
      * @param spot         The spot
      * @param xlsExportType The export type
-     * @return The data iterator
+     * @return The data values
      */
-    protected Iterator<Double> getSpotDataIterator(Spot spot, EnumXLSExport xlsExportType) {
-        List<Double> dataList = spot.getMeasuresForExcelPass1(xlsExportType, 
-                getBinData(spot), getBinExcel());
-        return dataList != null ? dataList.iterator() : new java.util.ArrayList<Double>().iterator();
+    protected double[] getSpotData(Spot spot, EnumXLSExport xlsExportType) {
+        return spot.getMeasuresForExcelPass1(xlsExportType, getBinData(spot), getBinExcel(), 
+                options.binStatistic);
     }
 
     /**
-     * Applies relative to maximum calculation using streaming.
+     * Divides the data by its maximum, in place.
      * 
-     * @param dataIterator The data iterator
-     * @return The processed data iterator
+     * @param data The data values
      */
-    protected Iterator<Double> applyRelativeToMaximumStreaming(Iterator<Double> dataIterator) {
-        // First pass: find maximum
+    protected void applyRelativeToMaximum(double[] data) {
         double maximum = 0.0;
-        List<Double> tempList = new java.util.ArrayList<>();
-        
-        while (dataIterator.hasNext()) {
-            Double value = dataIterator.next();
-            tempList.add(value);
-            if (value != null && !Double.isNaN(value)) {
+        for (double value : data) {
+            if (!Double.isNaN(value)) {
                 maximum = Math.max(maximum, value);
             }
         }
         
         if (maximum == 0.0) {
-            return tempList.iterator();
+            return;
         }
         
-        // Store maximum in a final variable for use in lambda
-        final double finalMaximum = maximum;
-        
-        // Second pass: apply normalization
-        return tempList.stream()
-                .map(value -> value != null && !Double.isNaN(value) ? value / finalMaximum : value)
-                .iterator();
+        for (int i = 0; i < data.length; i++) {
+            data[i] /= maximum;
+        }
     }
 
     /**
-     * Writes data to Excel using streaming approach.
+     * Writes data to Excel from a primitive array.
      * 
      * @param sheet                        The Excel sheet
      * @param pt                          The current position
-     * @param dataIterator                The data iterator
+     * @param data                        The data values
      * @param scalingFactorToPhysicalUnits The scaling factor
      */
-    protected void writeDataToExcelStreaming(SXSSFSheet sheet, Point pt, Iterator<Double> dataIterator, 
+    protected void writeDataToExcelStreaming(SXSSFSheet sheet, Point pt, double[] data, 
             double scalingFactorToPhysicalUnits) {
-        
-        int row = pt.y + getDescriptorRowCount();
-        
-        while (dataIterator.hasNext()) {
-            Double value = dataIterator.next();
-            
-            if (value != null && !Double.isNaN(value)) {
-                double scaledValue = value * scalingFactorToPhysicalUnits;
-                chunkProcessor.writeValue(sheet, row, pt.x, scaledValue);
-            }
-            
-            row++;
-        }
-        
-        // Flush chunk processor
-        chunkProcessor.flush(sheet);
+        XLSUtils.setValues(sheet, pt.x, pt.y, options.transpose, data, 0, data.length, 
+                scalingFactorToPhysicalUnits);
     }
 
     /**
      * Gets the bin data duration for the current experiment.
      * 
-     * @param spot The spot (used to get experiment context)
+     * @param spot The spot
      * @return The bin duration in milliseconds
      */
     private long getBinData(Spot spot) {
-        // This would need to be implemented based on the experiment context
-        return 1000; // Default 1 second bin
+        return binDataMs;
     }
 
     /**
@@ -452,46 +426,11 @@ public class XLSExportMeasuresFromSpotStreaming extends XLSExport {
         return nOutputFrames;
     }
 
-    /**
-     * Chunk processor for efficient data handling.
-     */
-    private static class DataChunkProcessor {
-        private final int chunkSize;
-        private final int bufferSize;
-        private final double[] buffer;
-        private int bufferPosition = 0;
-
-        public DataChunkProcessor(int chunkSize, int bufferSize) {
-            this.chunkSize = chunkSize;
-            this.bufferSize = bufferSize;
-            this.buffer = new double[bufferSize];
-        }
-
-        public void writeValue(SXSSFSheet sheet, int row, int col, double value) {
-            if (bufferPosition >= bufferSize) {
-                flush(sheet);
-            }
-            buffer[bufferPosition++] = value;
-        }
-
-        public void flush(SXSSFSheet sheet) {
-            // Write buffer to sheet using POI
-            // This is a simplified implementation
-            bufferPosition = 0;
-        }
-
-        public void clear() {
-            bufferPosition = 0;
-            java.util.Arrays.fill(buffer, 0.0);
-        }
-    }
-
     /**
      * Memory pool for object reuse to reduce garbage collection pressure.
      */
     private static class MemoryPool {
         private final java.util.Queue<double[]> doubleArrayPool = new java.util.LinkedList<>();
-        private final java.util.Queue<java.util.List<Double>> listPool = new java.util.LinkedList<>();
         private static final int POOL_SIZE = 10;
 
         public double[] getDoubleArray(int size) {
@@ -508,22 +447,5 @@ public class XLSExportMeasuresFromSpotStreaming extends XLSExport {
                 doubleArrayPool.offer(array);
             }
         }
-
-        public java.util.List<Double> getList() {
-            java.util.List<Double> list = listPool.poll();
-            if (list == null) {
-                list = new java.util.ArrayList<>();
-            } else {
-                list.clear();
-            }
-            return list;
-        }
-
-        public void returnList(java.util.List<Double> list) {
-            if (listPool.size() < POOL_SIZE) {
-                list.clear();
-                listPool.offer(list);
-            }
-        }
     }
 } 
\ No newline at end of file
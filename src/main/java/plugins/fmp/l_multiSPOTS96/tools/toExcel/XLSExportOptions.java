@@ -1,5 +1,8 @@
 package plugins.fmp.l_multiSPOTS96.tools.toExcel;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import plugins.fmp.l_multiSPOTS96.tools.JComponents.JComboBoxExperimentLazy;
 
 public class XLSExportOptions {
@@ -33,6 +36,8 @@ public class XLSExportOptions {
 	public boolean duplicateSeries = true;
 	public int buildExcelStepMs = 1;
 	public int buildExcelUnitMs = 1;
+	// first value of each bin, as the exports made before the bin statistics
+	public EnumBinStatistic binStatistic = EnumBinStatistic.SAMPLE;
 	public boolean fixedIntervals = false;
 	public long startAll_Ms = 0;
 	public long endAll_Ms = 999999;
@@ -40,6 +45,7 @@ public class XLSExportOptions {
 	public boolean absoluteTime = false;
 	public boolean collateSeries = false;
 	public boolean padIntervals = true;
+	public boolean useExportCache = true;
 
 	public int experimentIndexFirst = -1;
 	public int experimentIndexLast = -1;
@@ -85,6 +91,7 @@ public class XLSExportOptions {
 		this.duplicateSeries = xlsExportOptions.duplicateSeries;
 		this.buildExcelStepMs = xlsExportOptions.buildExcelStepMs;
 		this.buildExcelUnitMs = xlsExportOptions.buildExcelUnitMs;
+		this.binStatistic = xlsExportOptions.binStatistic;
 		this.fixedIntervals = xlsExportOptions.fixedIntervals;
 		this.startAll_Ms = xlsExportOptions.startAll_Ms;
 		this.endAll_Ms = xlsExportOptions.endAll_Ms;
@@ -92,6 +99,7 @@ public class XLSExportOptions {
 		this.absoluteTime = xlsExportOptions.absoluteTime;
 		this.collateSeries = xlsExportOptions.collateSeries;
 		this.padIntervals = xlsExportOptions.padIntervals;
+		this.useExportCache = xlsExportOptions.useExportCache;
 
 		this.experimentIndexFirst = xlsExportOptions.experimentIndexFirst;
 		this.experimentIndexLast = xlsExportOptions.experimentIndexLast;
@@ -105,4 +113,24 @@ public class XLSExportOptions {
 		this.compensateEvaporation = xlsExportOptions.compensateEvaporation;
 		this.exportType = xlsExportOptions.exportType;
 	}
+
+	/**
+	 * Gets the spot measures selected: the areas ({@link #sum}) and the presence
+	 * of a fly over the spot ({@link #nPixels}), none if {@link #spotAreas} is
+	 * not set.
+	 * 
+	 * @return the measures to export, in the order of the export
+	 */
+	public List<EnumXLSExport> getSpotMeasures() {
+		List<EnumXLSExport> measures = new ArrayList<EnumXLSExport>(3);
+		if (!spotAreas)
+			return measures;
+		if (sum)
+			measures.add(EnumXLSExport.AREA_SUM);
+		if (nPixels)
+			measures.add(EnumXLSExport.AREA_FLYPRESENT);
+		if (sum)
+			measures.add(EnumXLSExport.AREA_SUMCLEAN);
+		return measures;
+	}
 }
@@ -45,6 +45,7 @@ public class XLSExportOptionsBuilder {
 	private boolean duplicateSeries = DefaultOptions.DUPLICATE_SERIES;
 	private int buildExcelStepMs = DefaultOptions.BUILD_EXCEL_STEP_MS;
 	private int buildExcelUnitMs = DefaultOptions.BUILD_EXCEL_UNIT_MS;
+	private EnumBinStatistic binStatistic = DefaultOptions.BIN_STATISTIC;
 	private boolean fixedIntervals = DefaultOptions.FIXED_INTERVALS;
 	private long startAll_Ms = DefaultOptions.START_ALL_MS;
 	private long endAll_Ms = DefaultOptions.END_ALL_MS;
@@ -52,6 +53,7 @@ public class XLSExportOptionsBuilder {
 	private boolean absoluteTime = DefaultOptions.ABSOLUTE_TIME;
 	private boolean collateSeries = DefaultOptions.COLLATE_SERIES;
 	private boolean padIntervals = DefaultOptions.PAD_INTERVALS;
+	private boolean useExportCache = DefaultOptions.USE_EXPORT_CACHE;
 
 	// Range options
 	private int experimentIndexFirst = DefaultOptions.EXPERIMENT_INDEX_FIRST;
@@ -112,6 +114,7 @@ public class XLSExportOptionsBuilder {
 		this.duplicateSeries = existing.duplicateSeries;
 		this.buildExcelStepMs = existing.buildExcelStepMs;
 		this.buildExcelUnitMs = existing.buildExcelUnitMs;
+		this.binStatistic = existing.binStatistic;
 		this.fixedIntervals = existing.fixedIntervals;
 		this.startAll_Ms = existing.startAll_Ms;
 		this.endAll_Ms = existing.endAll_Ms;
@@ -119,6 +122,7 @@ public class XLSExportOptionsBuilder {
 		this.absoluteTime = existing.absoluteTime;
 		this.collateSeries = existing.collateSeries;
 		this.padIntervals = existing.padIntervals;
+		this.useExportCache = existing.useExportCache;
 
 		this.experimentIndexFirst = existing.experimentIndexFirst;
 		this.experimentIndexLast = existing.experimentIndexLast;
@@ -264,6 +268,16 @@ public class XLSExportOptionsBuilder {
 		return this;
 	}
 
+	public XLSExportOptionsBuilder withBinStatistic(EnumBinStatistic binStatistic) {
+		this.binStatistic = binStatistic;
+		return this;
+	}
+
+	public XLSExportOptionsBuilder withExportCache(boolean useExportCache) {
+		this.useExportCache = useExportCache;
+		return this;
+	}
+
 	public XLSExportOptions withBuildExcelUnitMs(int buildExcelUnitMs) {
 		this.buildExcelUnitMs = buildExcelUnitMs;
 		return null;
@@ -308,6 +322,7 @@ public class XLSExportOptionsBuilder {
 		options.duplicateSeries = this.duplicateSeries;
 		options.buildExcelStepMs = this.buildExcelStepMs;
 		options.buildExcelUnitMs = this.buildExcelUnitMs;
+		options.binStatistic = this.binStatistic;
 		options.fixedIntervals = this.fixedIntervals;
 		options.startAll_Ms = this.startAll_Ms;
 		options.endAll_Ms = this.endAll_Ms;
@@ -315,6 +330,7 @@ public class XLSExportOptionsBuilder {
 		options.absoluteTime = this.absoluteTime;
 		options.collateSeries = this.collateSeries;
 		options.padIntervals = this.padIntervals;
+		options.useExportCache = this.useExportCache;
 
 		options.experimentIndexFirst = this.experimentIndexFirst;
 		options.experimentIndexLast = this.experimentIndexLast;
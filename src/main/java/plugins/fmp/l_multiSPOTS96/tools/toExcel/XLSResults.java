@@ -1,9 +1,7 @@
 package plugins.fmp.l_multiSPOTS96.tools.toExcel;
 
 import java.awt.Color;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 import plugins.fmp.l_multiSPOTS96.experiment.cages.CageProperties;
 import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
@@ -17,7 +15,7 @@ public class XLSResults {
 	private int cageID = 0;
 	private int cagePosition = 0;
 	private Color color;
-	private ArrayList<Double> dataValues = null;
+	private double[] dataValues = null;
 	private int valuesOutLength = 0;
 	private double[] valuesOut = null;
 
@@ -96,11 +94,11 @@ public class XLSResults {
 		this.color = color;
 	}
 
-	public ArrayList<Double> getDataValues() {
+	public double[] getDataValues() {
 		return this.dataValues;
 	}
 
-	public void setDataValues(ArrayList<Double> dataValues) {
+	public void setDataValues(double[] dataValues) {
 		this.dataValues = dataValues;
 	}
 
@@ -114,6 +112,7 @@ public class XLSResults {
 
 	public void setValuesOut(double[] valuesOut) {
 		this.valuesOut = valuesOut;
+		this.valuesOutLength = valuesOut != null ? valuesOut.length : 0;
 	}
 
 	// ---------------------------
@@ -144,26 +143,34 @@ public class XLSResults {
 	}
 
 	public void getDataFromSpot(Spot spot, long binData, long binExcel, XLSExportOptions xlsExportOptions) {
-		dataValues = (ArrayList<Double>) spot.getMeasuresForExcelPass1(xlsExportOptions.exportType, binData, binExcel);
+		getDataFromValues(spot.getMeasuresForExcelPass1(xlsExportOptions.exportType, binData, binExcel,
+				xlsExportOptions.binStatistic), xlsExportOptions);
+	}
+
+	/**
+	 * Takes values already binned (e.g. combined from several spots).
+	 */
+	public void getDataFromValues(double[] binnedValues, XLSExportOptions xlsExportOptions) {
+		dataValues = binnedValues;
 		if (xlsExportOptions.relativeToT0 && xlsExportOptions.exportType != EnumXLSExport.AREA_FLYPRESENT) {
 			relativeToMaximum();
 		}
 	}
 
 	public void transferDataValuesToValuesOut(double scalingFactorToPhysicalUnits, EnumXLSExport xlsExport) {
-		if (valuesOutLength == 0 || dataValues == null || dataValues.size() < 1)
+		if (valuesOutLength == 0 || dataValues == null || dataValues.length < 1)
 			return;
 
 		boolean removeZeros = false;
-		int len = Math.min(valuesOutLength, dataValues.size());
+		int len = Math.min(valuesOutLength, dataValues.length);
 		if (removeZeros) {
 			for (int i = 0; i < len; i++) {
-				double ivalue = dataValues.get(i);
+				double ivalue = dataValues[i];
 				valuesOut[i] = (ivalue == 0 ? Double.NaN : ivalue) * scalingFactorToPhysicalUnits;
 			}
 		} else {
 			for (int i = 0; i < len; i++)
-				valuesOut[i] = dataValues.get(i) * scalingFactorToPhysicalUnits;
+				valuesOut[i] = dataValues[i] * scalingFactorToPhysicalUnits;
 		}
 	}
 
@@ -176,8 +183,8 @@ public class XLSResults {
 			valuesOut[i] = sourceRow.valuesOut[i];
 	}
 
-	public List<Double> relativeToMaximum() {
-		if (dataValues == null || dataValues.size() < 1)
+	public double[] relativeToMaximum() {
+		if (dataValues == null || dataValues.length < 1)
 			return null;
 
 		double value0 = getMaximum();
@@ -187,23 +194,20 @@ public class XLSResults {
 
 	public double getMaximum() {
 		double maximum = 0.;
-		if (dataValues == null || dataValues.size() < 1)
+		if (dataValues == null || dataValues.length < 1)
 			return maximum;
 
-		maximum = dataValues.get(0);
-		for (int index = 0; index < dataValues.size(); index++) {
-			double value = dataValues.get(index);
-			maximum = Math.max(maximum, value);
-		}
+		maximum = dataValues[0];
+		for (int index = 0; index < dataValues.length; index++)
+			maximum = Math.max(maximum, dataValues[index]);
 
 		return maximum;
 	}
 
 	private void relativeToValue(double value0) {
-		for (int index = 0; index < dataValues.size(); index++) {
-			double value = dataValues.get(index);
-			// dataValues.set(index, ((value0 - value) / value0));
-			dataValues.set(index, value / value0);
+		for (int index = 0; index < dataValues.length; index++) {
+			// dataValues[index] = (value0 - dataValues[index]) / value0;
+			dataValues[index] = dataValues[index] / value0;
 		}
 	}
 
@@ -56,8 +56,8 @@ public class XLSResultsArray {
 					.getScalingFactorToPhysicalUnits(xlsExportOptions.exportType);
 			for (Spot spot : cage.spotsArray.getSpotsList()) {
 				XLSResults results = new XLSResults(cage.getProperties(), spot.getProperties(), nOutputFrames);
-				results.setDataValues((ArrayList<Double>) spot.getMeasuresForExcelPass1(xlsExportOptions.exportType,
-						kymoBinCol_Ms, xlsExportOptions.buildExcelStepMs));
+				results.setDataValues(spot.getMeasuresForExcelPass1(xlsExportOptions.exportType, kymoBinCol_Ms,
+						xlsExportOptions.buildExcelStepMs, xlsExportOptions.binStatistic));
 				if (xlsExportOptions.relativeToT0 && xlsExportOptions.exportType != EnumXLSExport.AREA_FLYPRESENT)
 					results.relativeToMaximum(); // relativeToT0();
 				results.transferDataValuesToValuesOut(scalingFactorToPhysicalUnits, xlsExportOptions.exportType);
@@ -0,0 +1,208 @@
+package plugins.fmp.l_multiSPOTS96.tools.toExcel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntToDoubleFunction;
+
+import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotMeasure;
+
+/**
+ * Groups the spots of the cages of an experiment by stimulus and concentration,
+ * and computes the series of the groups directly from the measures of the
+ * spots.
+ *
+ * <p>
+ * The index (cage, stimulus, concentration) to spot indices is built once per
+ * experiment. The series of a group are the sum of the measures of its spots;
+ * the SUM and PI series combine two groups as
+ * {@link Cage#createSpotSUM} and {@link Cage#createSpotPI} do. They are
+ * computed value by value and binned at once (see
+ * {@link XLSBinning.Accumulator}), without copying the spots nor their
+ * measures: only the binned series are allocated.
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class XLSSpotGroups {
+
+	private static final double[][] NO_VALUES = new double[0][];
+
+	private final List<Cage> cages;
+	private final List<Map<String, int[]>> groupsPerCage;
+
+	public XLSSpotGroups(List<Cage> cages) {
+		this.cages = cages;
+		this.groupsPerCage = new ArrayList<Map<String, int[]>>(cages.size());
+		for (Cage cage : cages) {
+			Map<String, List<Integer>> lists = new HashMap<String, List<Integer>>();
+			List<Spot> spots = cage.spotsArray.getSpotsList();
+			for (int i = 0; i < spots.size(); i++) {
+				String key = getGroupKey(spots.get(i).getProperties().getStimulus(),
+						spots.get(i).getProperties().getConcentration());
+				List<Integer> list = lists.get(key);
+				if (list == null) {
+					list = new ArrayList<Integer>(2);
+					lists.put(key, list);
+				}
+				list.add(i);
+			}
+
+			Map<String, int[]> groups = new HashMap<String, int[]>(lists.size() * 2);
+			for (Map.Entry<String, List<Integer>> entry : lists.entrySet()) {
+				int[] indices = new int[entry.getValue().size()];
+				for (int i = 0; i < indices.length; i++)
+					indices[i] = entry.getValue().get(i);
+				groups.put(entry.getKey(), indices);
+			}
+			groupsPerCage.add(groups);
+		}
+	}
+
+	private static String getGroupKey(String stimulus, String concentration) {
+		return stimulus + '\u0000' + concentration;
+	}
+
+	/**
+	 * @return the indices of the spots of a cage with this stimulus and
+	 *         concentration, in the order of the spots
+	 */
+	public int[] getSpotIndices(int cageIndex, String stimulus, String concentration) {
+		int[] indices = groupsPerCage.get(cageIndex).get(getGroupKey(stimulus, concentration));
+		return indices != null ? indices : new int[0];
+	}
+
+	public int getNSpots(int cageIndex, String stimulus, String concentration) {
+		return getSpotIndices(cageIndex, stimulus, concentration).length;
+	}
+
+	// === SERIES ===
+
+	/**
+	 * Sum of the measures of the spots of a group, binned.
+	 *
+	 * @return the binned series (empty if the spots have no measures), or null
+	 *         if no spot of the cage has this stimulus and concentration
+	 */
+	public double[] getGroupSeries(int cageIndex, String stimulus, String concentration, EnumXLSExport exportType,
+			long dataStepMs, long outputStepMs, EnumBinStatistic statistic) {
+		int[] indices = getSpotIndices(cageIndex, stimulus, concentration);
+		if (indices.length == 0)
+			return null;
+		final double[][] values = getValues(cageIndex, indices, exportType);
+		return reduce(i -> sumAt(values, i), getLength(values), dataStepMs, outputStepMs, statistic);
+	}
+
+	/**
+	 * Mean of the measures of the spots of each group, added.
+	 *
+	 * @return the binned series, or null if a group is empty
+	 */
+	public double[] getSumSeries(int cageIndex, String stimulus1, String concentration1, String stimulus2,
+			String concentration2, EnumXLSExport exportType, long dataStepMs, long outputStepMs,
+			EnumBinStatistic statistic) {
+		int[] indices1 = getSpotIndices(cageIndex, stimulus1, concentration1);
+		int[] indices2 = getSpotIndices(cageIndex, stimulus2, concentration2);
+		if (indices1.length == 0 || indices2.length == 0)
+			return null;
+		final double[][] values1 = getValues(cageIndex, indices1, exportType);
+		final double[][] values2 = getValues(cageIndex, indices2, exportType);
+		if (values1.length == 0 || values2.length == 0)
+			return new double[0];
+
+		final double n1 = indices1.length;
+		final double n2 = indices2.length;
+		return reduce(i -> sumAt(values1, i) / n1 + sumAt(values2, i) / n2, getLength(values1), dataStepMs,
+				outputStepMs, statistic);
+	}
+
+	/**
+	 * Preference index of the two groups, each normalized to its maximum:
+	 * (v1 - v2) / (v1 + v2), or 0 when both are 0.
+	 *
+	 * @return the binned series, or null if a group is empty
+	 */
+	public double[] getPISeries(int cageIndex, String stimulus1, String concentration1, String stimulus2,
+			String concentration2, EnumXLSExport exportType, long dataStepMs, long outputStepMs,
+			EnumBinStatistic statistic) {
+		int[] indices1 = getSpotIndices(cageIndex, stimulus1, concentration1);
+		int[] indices2 = getSpotIndices(cageIndex, stimulus2, concentration2);
+		if (indices1.length == 0 || indices2.length == 0)
+			return null;
+		final double[][] values1 = getValues(cageIndex, indices1, exportType);
+		final double[][] values2 = getValues(cageIndex, indices2, exportType);
+		if (values1.length == 0 || values2.length == 0)
+			return new double[0];
+
+		final double max1 = getMaximum(values1);
+		final double max2 = getMaximum(values2);
+		return reduce(i -> {
+			double value1 = sumAt(values1, i) / max1;
+			double value2 = sumAt(values2, i) / max2;
+			double sum = value1 + value2;
+			return sum > 0 ? (value1 - value2) / sum : 0;
+		}, getLength(values1), dataStepMs, outputStepMs, statistic);
+	}
+
+	// === REDUCTION ===
+
+	private static double[] reduce(IntToDoubleFunction valueAt, int nValues, long dataStepMs, long outputStepMs,
+			EnumBinStatistic statistic) {
+		if (nValues == 0)
+			return new double[0];
+		if (statistic == EnumBinStatistic.SAMPLE) {
+			double[] result = new double[XLSBinning.getNBins(nValues, dataStepMs, outputStepMs)];
+			for (int k = 0; k < result.length; k++)
+				result[k] = valueAt.applyAsDouble((int) (k * outputStepMs / dataStepMs));
+			return result;
+		}
+		XLSBinning.Accumulator accumulator = new XLSBinning.Accumulator(nValues, dataStepMs, outputStepMs);
+		for (int i = 0; i < nValues; i++)
+			accumulator.add(valueAt.applyAsDouble(i));
+		return accumulator.getBins().toArray(statistic);
+	}
+
+	/**
+	 * @return the measures of the spots (not copied), without the empty ones
+	 */
+	private double[][] getValues(int cageIndex, int[] indices, EnumXLSExport exportType) {
+		List<Spot> spots = cages.get(cageIndex).spotsArray.getSpotsList();
+		List<double[]> values = new ArrayList<double[]>(indices.length);
+		for (int index : indices) {
+			SpotMeasure measure = spots.get(index).getMeasurements(exportType);
+			if (measure != null && measure.getValues() != null && measure.getValues().length > 0)
+				values.add(measure.getValues());
+		}
+		return values.isEmpty() ? NO_VALUES : values.toArray(new double[values.size()][]);
+	}
+
+	// the first spot with measures gives the length of the group
+	private static int getLength(double[][] values) {
+		return values.length == 0 ? 0 : values[0].length;
+	}
+
+	// a spot shorter than the group adds nothing past its end
+	private static double sumAt(double[][] values, int i) {
+		double sum = 0;
+		for (double[] spotValues : values) {
+			if (i < spotValues.length)
+				sum += spotValues[i];
+		}
+		return sum;
+	}
+
+	private static double getMaximum(double[][] values) {
+		double maximum = 0.;
+		int length = getLength(values);
+		for (int i = 0; i < length; i++) {
+			double value = sumAt(values, i);
+			if (value > maximum)
+				maximum = value;
+		}
+		return maximum;
+	}
+}
@@ -42,6 +42,27 @@ public class XLSUtils {
 		cell.setCellValue(value);
 	}
 
+	/**
+	 * Writes {@code values[from..to[}, multiplied by {@code scale}, along a column
+	 * starting at (x, y) (along a row if transposed). NaN values leave the cell
+	 * empty.
+	 */
+	public static void setValues(SXSSFSheet sheet, int x, int y, boolean transpose, double[] values, int from, int to,
+			double scale) {
+		for (int i = from; i < to; i++, y++) {
+			double value = values[i];
+			if (Double.isNaN(value))
+				continue;
+			SXSSFCell cell = transpose ? getCell(sheet, x, y) : getCell(sheet, y, x);
+			cell.setCellValue(value * scale);
+		}
+	}
+
+	public static void setValues(SXSSFSheet sheet, int x, int y, boolean transpose, double[] values, int from,
+			int to) {
+		setValues(sheet, x, y, transpose, values, from, to, 1.);
+	}
+
 	public static double getValueDouble(SXSSFSheet sheet, Point pt, boolean transpose) {
 		return getCell(sheet, pt, transpose).getNumericCellValue();
 	}
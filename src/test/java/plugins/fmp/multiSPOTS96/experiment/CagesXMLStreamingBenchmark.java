@@ -0,0 +1,112 @@
+package plugins.fmp.multiSPOTS96.experiment;
+
+import java.io.File;
+
+import plugins.fmp.l_multiSPOTS96.experiment.cages.Cage;
+import plugins.fmp.l_multiSPOTS96.experiment.cages.CagesArray;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+
+/**
+ * Benchmark comparing the DOM and the streaming (StAX) readers of
+ * MS96_cages.xml, and checking that both produce the same cages and spots.
+ *
+ * <p>
+ * Usage: {@code CagesXMLStreamingBenchmark <results directory> [repetitions]}
+ * </p>
+ *
+ * @author MultiSPOTS96
+ */
+public class CagesXMLStreamingBenchmark {
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: CagesXMLStreamingBenchmark <results directory> [repetitions]");
+			return;
+		}
+		String fileName = args[0] + File.separator + "MS96_cages.xml";
+		int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		System.out.println("=== MS96_cages.xml: DOM vs streaming ===");
+		System.out.println("File: " + fileName + " (" + new File(fileName).length() / 1024 + " kB)");
+
+		// warm up both paths
+		new CagesArray().xmlReadCagesFromFileNoQuestion(fileName);
+		new CagesArray().xmlReadCagesFromFileStreaming(fileName);
+
+		long domTime = 0;
+		long domMemory = 0;
+		long staxTime = 0;
+		long staxMemory = 0;
+		CagesArray domCages = null;
+		CagesArray staxCages = null;
+		for (int i = 0; i < repetitions; i++) {
+			long memoryBefore = getUsedMemory();
+			long start = System.nanoTime();
+			domCages = new CagesArray();
+			domCages.xmlReadCagesFromFileNoQuestion(fileName);
+			domTime += System.nanoTime() - start;
+			domMemory += Math.max(0, getUsedMemory() - memoryBefore);
+
+			memoryBefore = getUsedMemory();
+			start = System.nanoTime();
+			staxCages = new CagesArray();
+			staxCages.xmlReadCagesFromFileStreaming(fileName);
+			staxTime += System.nanoTime() - start;
+			staxMemory += Math.max(0, getUsedMemory() - memoryBefore);
+		}
+
+		System.out.println("DOM:       " + (domTime / repetitions / 1000000) + " ms, "
+				+ (domMemory / repetitions / 1024) + " kB allocated per load");
+		System.out.println("Streaming: " + (staxTime / repetitions / 1000000) + " ms, "
+				+ (staxMemory / repetitions / 1024) + " kB allocated per load");
+
+		System.out.println("Same object graph: " + isSameGraph(domCages, staxCages));
+
+		// round trip through the streaming writer
+		String copyName = fileName + ".benchmark.xml";
+		staxCages.xmlWriteCagesToFileStreaming(copyName);
+		CagesArray copy = new CagesArray();
+		copy.xmlReadCagesFromFileNoQuestion(copyName);
+		System.out.println("Streaming writer readable by DOM reader: " + isSameGraph(domCages, copy));
+		new File(copyName).delete();
+	}
+
+	private static long getUsedMemory() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static boolean isSameGraph(CagesArray a, CagesArray b) {
+		if (a.cagesList.size() != b.cagesList.size()) {
+			System.out.println("  cages: " + a.cagesList.size() + " vs " + b.cagesList.size());
+			return false;
+		}
+		if (a.nCagesAlongX != b.nCagesAlongX || a.nCagesAlongY != b.nCagesAlongY)
+			return false;
+		for (int i = 0; i < a.cagesList.size(); i++) {
+			Cage cageA = a.cagesList.get(i);
+			Cage cageB = b.cagesList.get(i);
+			if (!cageA.getRoi().getName().equals(cageB.getRoi().getName())
+					|| !cageA.getRoi().getBounds2D().equals(cageB.getRoi().getBounds2D())) {
+				System.out.println("  cage " + i + " differs");
+				return false;
+			}
+			if (cageA.getProperties().getCageID() != cageB.getProperties().getCageID())
+				return false;
+			int nspots = cageA.spotsArray.getSpotsCount();
+			if (nspots != cageB.spotsArray.getSpotsCount())
+				return false;
+			for (int j = 0; j < nspots; j++) {
+				Spot spotA = cageA.spotsArray.getSpotsList().get(j);
+				Spot spotB = cageB.spotsArray.getSpotsList().get(j);
+				if (!spotA.getProperties().equals(spotB.getProperties())
+						|| !spotA.getRoi().getBounds2D().equals(spotB.getRoi().getBounds2D())) {
+					System.out.println("  spot " + spotA.getName() + " differs");
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+}
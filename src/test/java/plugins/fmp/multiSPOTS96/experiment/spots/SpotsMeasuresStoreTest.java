@@ -0,0 +1,137 @@
+package plugins.fmp.multiSPOTS96.experiment.spots;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import plugins.fmp.l_multiSPOTS96.experiment.spots.Spot;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotMeasure;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotsArray;
+import plugins.fmp.l_multiSPOTS96.experiment.spots.SpotsMeasuresStore;
+
+/**
+ * Round trip of the incremental spots measures writer: the measures are saved
+ * in full, edited and saved as segments, then read back from a temporary
+ * results directory and compared with the values in memory.
+ *
+ * <p>
+ * Usage: {@code SpotsMeasuresStoreTest [spots] [frames]}
+ * </p>
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class SpotsMeasuresStoreTest {
+
+	public static void main(String[] args) throws IOException {
+		int nSpots = args.length > 0 ? Integer.parseInt(args[0]) : 96;
+		int nFrames = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+
+		System.out.println("=== SpotsMeasuresStore: write, edit, reload ===");
+		File directory = Files.createTempDirectory("spotsMeasures").toFile();
+		try {
+			Random random = new Random(1);
+			SpotsArray spotsArray = createSpots(random, nSpots, nFrames);
+			SpotsMeasuresStore store = new SpotsMeasuresStore();
+			String dir = directory.getPath();
+
+			boolean flag = store.compact(dir, spotsArray);
+			System.out.println("Full write: " + (flag && !SpotsMeasuresStore.hasSegments(dir) ? "OK" : "FAILED"));
+
+			flag = store.save(dir, spotsArray) && countSegments(directory) == 0;
+			System.out.println("Save without changes writes no segment: " + (flag ? "OK" : "FAILED"));
+
+			// the recorded state is not a copy of the values
+			flag = store.getMemorySize() < 8L * 2 * nSpots * nFrames / 50;
+			System.out.println("Recorded state: " + store.getMemorySize() + " bytes " + (flag ? "OK" : "FAILED"));
+
+			// a value changed, a value whose sign only changes, two values swapped
+			double[] values = spotsArray.getSpotsList().get(1).getSum().getValues();
+			values[10] += 1;
+			values = spotsArray.getSpotsList().get(2).getSum().getValues();
+			values[20] = values[20] == 0. ? -0. : -values[20];
+			values = spotsArray.getSpotsList().get(3).getSumClean().getValues();
+			double swapped = values[30];
+			values[30] = values[31];
+			values[31] = swapped;
+			flag = store.save(dir, spotsArray) && countSegments(directory) == 1;
+			System.out.println("Edited values: " + (flag && isSameAfterReload(dir, spotsArray) ? "OK" : "FAILED"));
+
+			// frames appended to a measure and removed from another one
+			SpotMeasure measure = spotsArray.getSpotsList().get(4).getSum();
+			double[] appended = Arrays.copyOf(measure.getValues(), nFrames + 100);
+			for (int i = nFrames; i < appended.length; i++)
+				appended[i] = random.nextInt(1000);
+			measure.setValues(appended);
+			measure = spotsArray.getSpotsList().get(5).getSumClean();
+			measure.setValues(Arrays.copyOf(measure.getValues(), nFrames - 100));
+			flag = store.save(dir, spotsArray) && countSegments(directory) == 2;
+			System.out.println("Appended and removed frames: "
+					+ (flag && isSameAfterReload(dir, spotsArray) ? "OK" : "FAILED"));
+
+			flag = store.compact(dir, spotsArray) && countSegments(directory) == 0;
+			System.out.println("Compaction: " + (flag && isSameAfterReload(dir, spotsArray) ? "OK" : "FAILED"));
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	private static SpotsArray createSpots(Random random, int nSpots, int nFrames) {
+		SpotsArray spotsArray = new SpotsArray();
+		for (int s = 0; s < nSpots; s++) {
+			Spot spot = new Spot();
+			spot.setName(s / 2, s % 2);
+			spot.getSum().setValues(createValues(random, nFrames));
+			spot.getSumClean().setValues(createValues(random, nFrames));
+			spotsArray.getSpotsList().add(spot);
+		}
+		return spotsArray;
+	}
+
+	private static double[] createValues(Random random, int nFrames) {
+		double[] values = new double[nFrames];
+		for (int i = 0; i < nFrames; i++)
+			values[i] = random.nextInt(20) == 0 ? 0. : random.nextInt(100000) / 8.;
+		return values;
+	}
+
+	/**
+	 * @return true if the measures read from the directory are those in memory
+	 */
+	private static boolean isSameAfterReload(String directory, SpotsArray spotsArray) {
+		SpotsArray loaded = new SpotsArray();
+		if (!loaded.loadSpotsMeasures(directory))
+			return false;
+		int errors = 0;
+		for (Spot spot : spotsArray.getSpotsList()) {
+			Spot loadedSpot = loaded.findSpotByName(spot.getName());
+			if (loadedSpot == null || !isSame(spot.getSum(), loadedSpot.getSum())
+					|| !isSame(spot.getSumClean(), loadedSpot.getSumClean()))
+				errors++;
+		}
+		if (errors > 0)
+			System.out.println("  " + errors + " spots differ");
+		return errors == 0;
+	}
+
+	private static boolean isSame(SpotMeasure expected, SpotMeasure loaded) {
+		double[] a = expected.getValues();
+		double[] b = loaded.getValues();
+		if (a == null || b == null || a.length != b.length)
+			return false;
+		for (int i = 0; i < a.length; i++) {
+			if (Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(b[i]))
+				return false;
+		}
+		return true;
+	}
+
+	private static int countSegments(File directory) {
+		File[] segments = directory.listFiles((dir, name) -> name.startsWith("SpotsMeasures.seg"));
+		return segments == null ? 0 : segments.length;
+	}
+}
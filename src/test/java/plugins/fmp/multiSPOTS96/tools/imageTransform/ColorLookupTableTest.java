@@ -0,0 +1,111 @@
+package plugins.fmp.multiSPOTS96.tools.imageTransform;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Random;
+
+import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColor;
+import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColorL1;
+import plugins.fmp.l_multiSPOTS96.tools.NHDistance.NHDistanceColorL2;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms.ColorLookupTable;
+
+/**
+ * Checks the color lookup table of the color threshold against the distances
+ * to the colors, and compares the speed of both classifications.
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class ColorLookupTableTest {
+
+	public static void main(String[] args) {
+		System.out.println("=== ColorLookupTable ===");
+		System.out.println("Random colors: " + (testRandomColors(40, 200000) ? "OK" : "FAILED"));
+		benchmark(5, 20, 20000000);
+	}
+
+	private static boolean testRandomColors(int repetitions, int npixels) {
+		Random random = new Random(1);
+		int errors = 0;
+		for (int it = 0; it < repetitions; it++) {
+			int distanceType = random.nextInt(2) == 0 ? 1 : 2;
+			int threshold = random.nextInt(10) == 0 ? -1 + random.nextInt(3) : random.nextInt(120);
+			ArrayList<Color> colors = randomColors(random, 1 + random.nextInt(6));
+			ColorLookupTable table = ColorLookupTable.build(distanceType, threshold, colors);
+			NHDistanceColor distance = distanceType == 1 ? new NHDistanceColorL1() : new NHDistanceColorL2();
+
+			for (int i = 0; i < npixels; i++) {
+				int r, g, b;
+				if (i % 2 == 0) {
+					r = random.nextInt(256);
+					g = random.nextInt(256);
+					b = random.nextInt(256);
+				} else {
+					// colors near the border of the threshold
+					Color color = colors.get(random.nextInt(colors.size()));
+					r = clamp(color.getRed() + random.nextInt(2 * threshold + 3) - threshold - 1);
+					g = clamp(color.getGreen() + random.nextInt(2 * threshold + 3) - threshold - 1);
+					b = clamp(color.getBlue() + random.nextInt(2 * threshold + 3) - threshold - 1);
+				}
+				if (table.contains(r, g, b) != isWithinThreshold(r, g, b, colors, distance, threshold))
+					errors++;
+			}
+			if (!table.matches(distanceType, threshold, colors) || table.matches(distanceType, threshold + 1, colors))
+				errors++;
+		}
+		if (errors > 0)
+			System.out.println("  errors: " + errors);
+		return errors == 0;
+	}
+
+	private static void benchmark(int ncolors, int threshold, int npixels) {
+		Random random = new Random(2);
+		ArrayList<Color> colors = randomColors(random, ncolors);
+		int[] pixels = new int[npixels];
+		for (int i = 0; i < npixels; i++)
+			pixels[i] = random.nextInt(1 << 24);
+		NHDistanceColor distance = new NHDistanceColorL2();
+
+		long t0 = System.nanoTime();
+		ColorLookupTable table = ColorLookupTable.build(2, threshold, colors);
+		long t1 = System.nanoTime();
+		int countTable = 0;
+		for (int i = 0; i < npixels; i++) {
+			int rgb = pixels[i];
+			if (table.contains((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF))
+				countTable++;
+		}
+		long t2 = System.nanoTime();
+		int countDistance = 0;
+		for (int i = 0; i < npixels; i++) {
+			int rgb = pixels[i];
+			if (isWithinThreshold((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF, colors, distance, threshold))
+				countDistance++;
+		}
+		long t3 = System.nanoTime();
+
+		System.out.println(String.format("%d pixels, %d colors: table built in %d ms, lookup %d ms, distances %d ms%s",
+				npixels, ncolors, (t1 - t0) / 1000000, (t2 - t1) / 1000000, (t3 - t2) / 1000000,
+				countTable == countDistance ? "" : " (DIFFERENT COUNTS)"));
+	}
+
+	private static boolean isWithinThreshold(int r, int g, int b, ArrayList<Color> colors, NHDistanceColor distance,
+			int threshold) {
+		for (Color color : colors) {
+			if (distance.computeDistance(r, g, b, color.getRed(), color.getGreen(), color.getBlue()) <= threshold)
+				return true;
+		}
+		return false;
+	}
+
+	private static ArrayList<Color> randomColors(Random random, int ncolors) {
+		ArrayList<Color> colors = new ArrayList<Color>();
+		for (int k = 0; k < ncolors; k++)
+			colors.add(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+		return colors;
+	}
+
+	private static int clamp(int value) {
+		return Math.max(0, Math.min(255, value));
+	}
+}
@@ -0,0 +1,113 @@
+package plugins.fmp.multiSPOTS96.tools.imageTransform;
+
+import java.util.Random;
+
+import icy.image.IcyBufferedImage;
+import icy.type.DataType;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformInterface;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.ImageTransformOptions;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms.SortChan0Column0;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms.SortChan0Columns;
+import plugins.fmp.l_multiSPOTS96.tools.imageTransform.transforms.SortSumDiffColumns;
+
+/**
+ * Checks that the transforms sorting columns give the same image with the
+ * counting sort of 8-bit images as with the generic path, which sorts the rows
+ * with {@link java.util.Arrays#sort}: the same values are transformed as an
+ * 8-bit image and as a 16-bit image, and the results are compared pixel by
+ * pixel. Images with few distinct values check that rows with equal keys keep
+ * their order.
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class ColumnCountingSortTest {
+
+	public static void main(String[] args) {
+		System.out.println("=== ColumnCountingSort ===");
+		check("SortChan0Columns", new SortChan0Columns());
+		check("SortChan0Column0", new SortChan0Column0());
+		check("SortSumDiffColumns", new SortSumDiffColumns());
+		benchmark("SortChan0Columns", new SortChan0Columns(), 1920, 1080);
+	}
+
+	private static void check(String name, ImageTransformInterface transform) {
+		Random random = new Random(1);
+		ImageTransformOptions options = new ImageTransformOptions();
+		int errors = 0;
+		// sizes below and above the number of lines of a task, values with ties
+		int[][] sizes = { { 1, 1 }, { 7, 5 }, { 17, 33 }, { 100, 61 }, { 320, 240 } };
+		int[] ranges = { 2, 8, 256 };
+		for (int[] size : sizes) {
+			for (int range : ranges) {
+				IcyBufferedImage bytes = randomImage(random, size[0], size[1], range);
+				IcyBufferedImage shorts = toUShort(bytes);
+				IcyBufferedImage sorted = transform.transform(bytes, null, options);
+				IcyBufferedImage expected = transform.transform(shorts, null, options);
+				if (!isSame(sorted, expected))
+					errors++;
+			}
+		}
+		if (errors > 0)
+			System.out.println("  images differing: " + errors);
+		System.out.println(name + ": " + (errors == 0 ? "OK" : "FAILED"));
+	}
+
+	private static void benchmark(String name, ImageTransformInterface transform, int width, int height) {
+		Random random = new Random(2);
+		ImageTransformOptions options = new ImageTransformOptions();
+		IcyBufferedImage bytes = randomImage(random, width, height, 256);
+		IcyBufferedImage shorts = toUShort(bytes);
+		transform.transform(bytes, null, options);
+
+		long t0 = System.nanoTime();
+		transform.transform(bytes, null, options);
+		long t1 = System.nanoTime();
+		transform.transform(shorts, null, options);
+		long t2 = System.nanoTime();
+		System.out.println(String.format("%s %dx%d: counting sort %d ms, generic %d ms", name, width, height,
+				(t1 - t0) / 1000000, (t2 - t1) / 1000000));
+	}
+
+	/**
+	 * @return an 8-bit RGB image of values from 0 to range - 1
+	 */
+	private static IcyBufferedImage randomImage(Random random, int width, int height, int range) {
+		IcyBufferedImage image = new IcyBufferedImage(width, height, 3, DataType.UBYTE);
+		for (int c = 0; c < 3; c++) {
+			byte[] values = image.getDataXYAsByte(c);
+			for (int i = 0; i < values.length; i++)
+				values[i] = (byte) random.nextInt(range);
+		}
+		image.dataChanged();
+		return image;
+	}
+
+	/**
+	 * @return a 16-bit copy of an 8-bit image, transformed by the generic path
+	 */
+	private static IcyBufferedImage toUShort(IcyBufferedImage image) {
+		IcyBufferedImage copy = new IcyBufferedImage(image.getSizeX(), image.getSizeY(), image.getSizeC(),
+				DataType.USHORT);
+		for (int c = 0; c < image.getSizeC(); c++) {
+			byte[] values = image.getDataXYAsByte(c);
+			short[] copyValues = copy.getDataXYAsShort(c);
+			for (int i = 0; i < values.length; i++)
+				copyValues[i] = (short) (values[i] & 0xFF);
+		}
+		copy.dataChanged();
+		return copy;
+	}
+
+	private static boolean isSame(IcyBufferedImage bytes, IcyBufferedImage shorts) {
+		for (int c = 0; c < 3; c++) {
+			byte[] values = bytes.getDataXYAsByte(c);
+			short[] expected = shorts.getDataXYAsShort(c);
+			for (int i = 0; i < values.length; i++) {
+				if ((values[i] & 0xFF) != (expected[i] & 0xFFFF))
+					return false;
+			}
+		}
+		return true;
+	}
+}
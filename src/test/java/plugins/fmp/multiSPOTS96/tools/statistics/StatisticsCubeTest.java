@@ -0,0 +1,162 @@
+package plugins.fmp.multiSPOTS96.tools.statistics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import plugins.fmp.l_multiSPOTS96.tools.statistics.EnumCubeDimension;
+import plugins.fmp.l_multiSPOTS96.tools.statistics.StatisticsCube;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumXLSExport;
+
+/**
+ * Checks that the cubes of several experiments, merged and queried, give the
+ * same counts, sums, means and standard deviations as a brute-force reduction
+ * of the values, and that a cube read back from its file is the same.
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class StatisticsCubeTest {
+
+	private static final long BIN_MS = 60000;
+	private static final String[] STIMULI = { "sucrose", "water", null };
+	private static final String[] NFLIES = { "0", "1" };
+
+	private static class Value {
+		final String stimulus;
+		final String nflies;
+		final long timeMs;
+		final double value;
+
+		Value(String stimulus, String nflies, long timeMs, double value) {
+			this.stimulus = stimulus;
+			this.nflies = nflies;
+			this.timeMs = timeMs;
+			this.value = value;
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		System.out.println("=== StatisticsCube ===");
+		Random random = new Random(1);
+		List<Value> values = new ArrayList<Value>();
+		StatisticsCube merged = new StatisticsCube(BIN_MS);
+		for (int exp = 0; exp < 5; exp++)
+			merged.merge(buildRandomCube(random, exp, values));
+
+		System.out.println("Merged query: " + (check(merged, values, 1, null) ? "OK" : "FAILED"));
+		System.out.println("Merged query, bins x5: " + (check(merged, values, 5, null) ? "OK" : "FAILED"));
+		System.out.println("Cages with flies: "
+				+ (check(merged.without(EnumCubeDimension.CAGE_NFLIES, "0"), values, 3, "0") ? "OK" : "FAILED"));
+
+		File directory = Files.createTempDirectory("statisticsCube").toFile();
+		try {
+			boolean saved = merged.save(directory.getPath(), "key");
+			StatisticsCube read = StatisticsCube.load(directory.getPath(), "key");
+			boolean same = saved && read != null && read.size() == merged.size() && check(read, values, 2, null);
+			System.out.println("Save and load: " + (same ? "OK" : "FAILED"));
+			System.out.println("Load with another key: "
+					+ (StatisticsCube.load(directory.getPath(), "other") == null ? "OK" : "FAILED"));
+		} finally {
+			for (File file : directory.listFiles())
+				file.delete();
+			directory.delete();
+		}
+	}
+
+	/**
+	 * @return the cube of an experiment of random values, the values being also
+	 *         added to the list
+	 */
+	private static StatisticsCube buildRandomCube(Random random, int exp, List<Value> values) {
+		StatisticsCube cube = new StatisticsCube(BIN_MS);
+		long dataStepMs = 20000 * (1 + random.nextInt(3));
+		for (int cage = 0; cage < 4; cage++) {
+			String nflies = NFLIES[random.nextInt(NFLIES.length)];
+			for (int spot = 0; spot < 2; spot++) {
+				String stimulus = STIMULI[random.nextInt(STIMULI.length)];
+				Map<EnumCubeDimension, String> coordinates = new EnumMap<EnumCubeDimension, String>(
+						EnumCubeDimension.class);
+				coordinates.put(EnumCubeDimension.EXP_EXPT, "exp" + exp);
+				coordinates.put(EnumCubeDimension.CAGE, Integer.toString(cage));
+				coordinates.put(EnumCubeDimension.CAGE_NFLIES, nflies);
+				coordinates.put(EnumCubeDimension.STIMULUS, stimulus);
+
+				int n = random.nextInt(100);
+				for (int i = 0; i < n; i++) {
+					double value = random.nextInt(10) == 0 ? Double.NaN : random.nextDouble() * 100;
+					cube.addValue(EnumXLSExport.AREA_SUM, coordinates, i * dataStepMs, value);
+					if (!Double.isNaN(value))
+						values.add(new Value(stimulus, nflies, i * dataStepMs, value));
+				}
+			}
+		}
+		return cube;
+	}
+
+	/**
+	 * Compares the query per stimulus with the values, those of the cages with
+	 * excluded flies being ignored.
+	 */
+	private static boolean check(StatisticsCube cube, List<Value> values, int binFactor, String excludedNFlies) {
+		long outputBinMs = BIN_MS * binFactor;
+		List<StatisticsCube.Cell> cells = cube.query(EnumXLSExport.AREA_SUM,
+				EnumSet.of(EnumCubeDimension.STIMULUS), null, outputBinMs);
+		int errors = 0;
+		int nCells = 0;
+		for (String stimulus : STIMULI) {
+			StatisticsCube.Cell cell = null;
+			for (StatisticsCube.Cell c : cells) {
+				if (stimulus == null ? c.getCoordinate(EnumCubeDimension.STIMULUS) == null
+						: stimulus.equals(c.getCoordinate(EnumCubeDimension.STIMULUS)))
+					cell = c;
+			}
+			if (cell == null)
+				continue;
+			nCells++;
+
+			for (int bin = 0; bin < cell.getNBins(); bin++) {
+				long count = 0;
+				double sum = 0;
+				for (Value value : values) {
+					if (isIn(value, stimulus, excludedNFlies) && value.timeMs / outputBinMs == bin) {
+						count++;
+						sum += value.value;
+					}
+				}
+				double mean = count == 0 ? Double.NaN : sum / count;
+				double squares = 0;
+				for (Value value : values) {
+					if (isIn(value, stimulus, excludedNFlies) && value.timeMs / outputBinMs == bin)
+						squares += (value.value - mean) * (value.value - mean);
+				}
+				double sd = count < 2 ? Double.NaN : Math.sqrt(squares / (count - 1));
+
+				if (count != cell.getCount(bin) || !same(sum, cell.getSum(bin)) || !same(mean, cell.getMean(bin))
+						|| !same(sd, cell.getStandardDeviation(bin)))
+					errors++;
+			}
+		}
+		if (nCells != cells.size())
+			errors++;
+		if (errors > 0)
+			System.out.println("  " + errors + " bins differ");
+		return errors == 0;
+	}
+
+	private static boolean isIn(Value value, String stimulus, String excludedNFlies) {
+		if (excludedNFlies != null && excludedNFlies.equals(value.nflies))
+			return false;
+		return stimulus == null ? value.stimulus == null : stimulus.equals(value.stimulus);
+	}
+
+	private static boolean same(double a, double b) {
+		return (Double.isNaN(a) && Double.isNaN(b)) || Math.abs(a - b) < 1e-6 * Math.max(1., Math.abs(a));
+	}
+}
@@ -0,0 +1,106 @@
+package plugins.fmp.multiSPOTS96.tools.toExcel;
+
+import java.util.Random;
+
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.EnumBinStatistic;
+import plugins.fmp.l_multiSPOTS96.tools.toExcel.XLSBinning;
+
+/**
+ * Checks the single-pass, accumulated and prefix-sums binning against a
+ * brute-force reduction, and compares their speed with point sampling.
+ *
+ * @author MultiSPOTS96
+ * @version 2.3.3
+ */
+public class XLSBinningTest {
+
+	public static void main(String[] args) {
+		System.out.println("=== XLSBinning ===");
+		System.out.println("Random series: " + (testRandomSeries(5000) ? "OK" : "FAILED"));
+		benchmark(96 * 3, 40000, 60000, 600000);
+	}
+
+	private static boolean testRandomSeries(int repetitions) {
+		Random random = new Random(1);
+		int errors = 0;
+		for (int it = 0; it < repetitions; it++) {
+			int n = random.nextInt(60);
+			double[] values = new double[n];
+			for (int i = 0; i < n; i++)
+				values[i] = random.nextInt(10) == 0 ? Double.NaN : random.nextDouble();
+			long dataStep = 1 + random.nextInt(7);
+			long outputStep = 1 + random.nextInt(20);
+
+			XLSBinning.Bins bins = XLSBinning.compute(values, dataStep, outputStep);
+			XLSBinning.PrefixSums prefixSums = new XLSBinning.PrefixSums(values);
+			XLSBinning.Accumulator accumulator = new XLSBinning.Accumulator(n, dataStep, outputStep);
+			for (int i = 0; i < n; i++)
+				accumulator.add(values[i]);
+			for (EnumBinStatistic statistic : EnumBinStatistic.values()) {
+				if (statistic == EnumBinStatistic.SAMPLE)
+					continue;
+				double[] expected = bins.toArray(statistic);
+				double[] accumulated = accumulator.getBins().toArray(statistic);
+				for (int k = 0; k < expected.length; k++) {
+					if (!same(expected[k], accumulated[k]))
+						errors++;
+				}
+			}
+			for (EnumBinStatistic statistic : new EnumBinStatistic[] { EnumBinStatistic.MEAN, EnumBinStatistic.SUM,
+					EnumBinStatistic.COUNT }) {
+				double[] expected = bins.toArray(statistic);
+				double[] fromPrefix = prefixSums.reduce(dataStep, outputStep, statistic);
+				double[] reduced = XLSBinning.reduce(values, dataStep, outputStep, statistic);
+				for (int k = 0; k < expected.length; k++) {
+					if (!same(expected[k], fromPrefix[k]) || !same(expected[k], reduced[k]))
+						errors++;
+				}
+			}
+
+			if (outputStep <= dataStep)
+				continue;
+			for (int k = 0; k < bins.getNBins(); k++) {
+				double sum = 0;
+				int count = 0;
+				double min = Double.NaN;
+				double max = Double.NaN;
+				for (int i = 0; i < n; i++) {
+					if (i * dataStep / outputStep != k || Double.isNaN(values[i]))
+						continue;
+					sum += values[i];
+					count++;
+					min = Double.isNaN(min) ? values[i] : Math.min(min, values[i]);
+					max = Double.isNaN(max) ? values[i] : Math.max(max, values[i]);
+				}
+				if (!same(count == 0 ? Double.NaN : sum / count, bins.getMean(k)) || !same(min, bins.getMin(k))
+						|| !same(max, bins.getMax(k)) || count != bins.getCount(k))
+					errors++;
+			}
+		}
+		if (errors > 0)
+			System.out.println("  " + errors + " bins differ");
+		return errors == 0;
+	}
+
+	private static void benchmark(int nSeries, int nValues, long dataStep, long outputStep) {
+		double[] values = new double[nValues];
+		Random random = new Random(2);
+		for (int i = 0; i < nValues; i++)
+			values[i] = random.nextDouble() * 1000;
+
+		for (EnumBinStatistic statistic : new EnumBinStatistic[] { EnumBinStatistic.SAMPLE, EnumBinStatistic.MEAN,
+				EnumBinStatistic.MAX }) {
+			long start = System.nanoTime();
+			double check = 0;
+			for (int s = 0; s < nSeries; s++)
+				check += XLSBinning.reduce(values, dataStep, outputStep, statistic)[0];
+			long elapsed = System.nanoTime() - start;
+			System.out.println(statistic + ": " + nSeries + " series of " + nValues + " values in "
+					+ (elapsed / 1000000) + " ms (" + (check > 0) + ")");
+		}
+	}
+
+	private static boolean same(double a, double b) {
+		return (Double.isNaN(a) && Double.isNaN(b)) || Math.abs(a - b) < 1e-9;
+	}
+}